@@ -35,7 +35,6 @@ import java.security.Key;
 import java.util.Collections;
 import java.util.List;
 
-import crypto.Crypto;
 import types.Bark;
 import types.Conversation;
 import types.DawgIdentifier;
@@ -179,7 +178,7 @@ public class AppDatabaseTest {
     public void testKeyDaoLifecycle_insertEntry_findEntry_deleteEntry() {
         // create the KeyEntry + DawgIdentifier + Key objects used for testing.
         final DawgIdentifier d = TestUtils.generateRandomizedDawgIdentifier();
-        final Key k = Crypto.DUMMY_SECRETKEY;
+        final Key k = TestUtils.DUMMY_SECRETKEY;
         final KeyEntry ke = new KeyEntry(d.getUUID(), Collections.singletonList(k));
 
         // insert the entry into the database.
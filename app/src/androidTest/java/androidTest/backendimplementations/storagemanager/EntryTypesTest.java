@@ -17,7 +17,6 @@ import java.util.ArrayList;
 
 import javax.crypto.SecretKey;
 
-import crypto.Crypto;
 import types.Bark;
 import types.Conversation;
 import types.DawgIdentifier;
@@ -75,7 +74,7 @@ public class EntryTypesTest {
     public void testKeyEntryCreation_successfullyCreatesKeyEntry() {
         // create the DawgIdentifier and Key objects used for the entry.
         final DawgIdentifier d = TestUtils.generateRandomizedDawgIdentifier();
-        final Key k = Crypto.DUMMY_SECRETKEY;
+        final Key k = TestUtils.DUMMY_SECRETKEY;
 
         // create the entry.
         final KeyEntry ke = new KeyEntry(d.getUUID().toString(),
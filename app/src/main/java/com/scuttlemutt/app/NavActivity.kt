@@ -105,7 +105,7 @@ class NavActivity() : ConnectionsActivity() {
         mutt = SingletonScuttlemutt.getInstance(this, this.mConnectionsClient!!, name)
         if (!mutt.haveContact(mutt.dawgIdentifier.uuid)) {
             Log.d(TAG, "Adding myself because I'm not in the database yet")
-            val myKeyPair = Crypto.generateKeyPair()
+            val myKeyPair = SingletonScuttlemutt.takeKeyPair()
             val mySecretKey = Crypto.generateSecretKey()
             mutt.addContact(mutt.dawgIdentifier, myKeyPair.public, mySecretKey)
             mutt.sendMessage("This is a conversation with yourself! Feel free to add notes here or whatever else.", mutt.dawgIdentifier)
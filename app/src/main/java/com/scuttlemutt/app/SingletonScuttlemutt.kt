@@ -4,13 +4,20 @@ import android.content.Context
 import android.util.Log
 import androidx.room.Room
 import androidx.room.RoomDatabase
+import backend.initialization.KeyPairPregenerator
 import backend.scuttlemutt.Scuttlemutt
 import com.google.android.gms.nearby.connection.ConnectionsClient
 import com.scuttlemutt.app.backendimplementations.iomanager.EndpointIOManager
 import com.scuttlemutt.app.backendimplementations.storagemanager.AppDatabase
 import com.scuttlemutt.app.backendimplementations.storagemanager.RoomStorageManager
+import crypto.CryptoSuites
+import storagemanager.FileRelayBuffer
+import storagemanager.RelayBuffer
 import storagemanager.StorageManager
 import types.DawgIdentifier
+import java.io.File
+import java.io.IOException
+import java.security.KeyPair
 import java.util.*
 
 /*
@@ -26,6 +33,9 @@ The NavActivity (the entry point for our app) should/does instantiate the Scuttl
  */
 class SingletonScuttlemutt {
     companion object {
+        // the file (under the app's files directory) holding the Barks we carry for other devices.
+        private const val RELAY_BUFFER_FILE_NAME = "scuttlemutt-relay-buffer.log"
+
         /*
         The value of a volatile variable is never cached, and all reads and writes are to and
         from the main memory. These features help ensure the value of Instance is always up to date
@@ -38,6 +48,9 @@ class SingletonScuttlemutt {
         @Volatile
         private var IOMANAGER: EndpointIOManager? = null
 
+        @Volatile
+        private var KEYPAIRS: KeyPairPregenerator? = null
+
         // Should only be called by NavActivity
         fun getInstance(context: Context, connectionsClient: ConnectionsClient, name: String): Scuttlemutt {
             if (INSTANCE == null) {
@@ -51,7 +64,18 @@ class SingletonScuttlemutt {
                             .allowMainThreadQueries()
                             .build()
                         val storagem: StorageManager = RoomStorageManager(appDb, dawgid)
-                        val mutt = Scuttlemutt(IOMANAGER, dawgid, storagem)
+                        // on first launch we need two RSA keypairs (ours + the one for the conversation
+                        // with ourself), which take seconds each, so generate them in parallel.
+                        val numKeyPairs = if (storagem.lookupPrivateKey() == null) 2 else 0
+                        KEYPAIRS = KeyPairPregenerator(CryptoSuites.DEFAULT, numKeyPairs)
+                        // keep the Barks we carry for others on disk, so they survive the app or phone restarting.
+                        val relayBuffer: RelayBuffer? = try {
+                            FileRelayBuffer(File(context.filesDir, RELAY_BUFFER_FILE_NAME))
+                        } catch (e: IOException) {
+                            Log.e("SingletonScuttlemutt", "Failed to open the relay buffer, holding Barks in memory", e)
+                            null
+                        }
+                        val mutt = Scuttlemutt(IOMANAGER, dawgid, storagem, KEYPAIRS, relayBuffer)
                         Log.d("SingletonScuttlemutt", "instantiating instance..: ${mutt.dawgIdentifier}")
                         INSTANCE = mutt
                     }
@@ -67,6 +91,12 @@ class SingletonScuttlemutt {
             return INSTANCE!!
         }
 
+        // Returns a keypair, pregenerated on first launch if possible.  Only valid after getInstance(context).
+        fun takeKeyPair(): KeyPair {
+            assert(KEYPAIRS != null)
+            return KEYPAIRS!!.take()
+        }
+
         // Anything else can call this
         fun getIOManager(): EndpointIOManager {
             // If this assertion fails, some other thing getInstance() before NavActivity
@@ -19,11 +19,14 @@ import javax.crypto.SecretKey;
 import backend.iomanager.IOManager;
 import backend.iomanager.IOManagerException;
 import backend.iomanager.IOManagerHelper;
+import backend.iomanager.ReceivedPacket;
 import types.DawgIdentifier;
 import types.packet.KeyExchangePacket;
 import types.packet.Packet;
 
 public class EndpointIOManager implements IOManager {
+    // how long singleDeviceReceive() waits between checks for a packet.
+    private static final long RETRY_SLEEP_MILLIS = 100;
 
     private final ConnectionsClient connectionsClient;
 
@@ -58,22 +61,26 @@ public class EndpointIOManager implements IOManager {
         if (!currentConnections.keySet().contains(receiverId)) {
             throw new IOManagerException("No available connection to '" + receiverId + "'");
         }
-        connectionsClient.sendPayload(currentConnections.get(receiverId), Payload.fromBytes(packet.toNetworkBytes()));
+        connectionsClient.sendPayload(currentConnections.get(receiverId), Payload.fromBytes(packet.toNetworkBytes(Packet.WireFormat.BINARY)));
     }
 
     @Override
     public <T extends Packet> T meshReceive(Class<T> desiredPacketClass) {
+        return meshReceiveWithSender(desiredPacketClass).getPacket();
+    }
+
+    @Override
+    public <T extends Packet> ReceivedPacket<T> meshReceiveWithSender(Class<T> desiredPacketClass) {
         while(true){
-            List<BlockingQueue<Packet>> inputs = new ArrayList<>(this.packetIngestionQueues.values());
             synchronized (this.packetIngestionQueues) {
-                for(BlockingQueue<Packet> input: this.packetIngestionQueues.values()) {
-                    if(!input.isEmpty()){
+                for(Map.Entry<String, BlockingQueue<Packet>> input: this.packetIngestionQueues.entrySet()) {
+                    if(!input.getValue().isEmpty()){
                                 final Optional foundPacketOptional
-                                        = IOManagerHelper.getPacketTypeFromBlockingQueue(input, desiredPacketClass);
+                                        = IOManagerHelper.getPacketTypeFromBlockingQueue(input.getValue(), desiredPacketClass);
 
                                 // if a Packet of the desired type was found, return it.
                                 if (foundPacketOptional.isPresent()) {
-                                    return (T) foundPacketOptional.get();
+                                    return new ReceivedPacket<>(input.getKey(), (T) foundPacketOptional.get());
                                 }
 
 
@@ -88,7 +95,7 @@ public class EndpointIOManager implements IOManager {
     public <T extends Packet> T singleDeviceReceive(String senderId, Class<T> desiredPacketClass) {
         BlockingQueue queue = packetIngestionQueues.get(senderId);
         while(true) {
-            if (queue.size() > 0) {
+            if (queue != null && queue.size() > 0) {
                 final Optional foundPacketOptional
                         = IOManagerHelper.getPacketTypeFromBlockingQueue(queue, desiredPacketClass);
 
@@ -97,6 +104,30 @@ public class EndpointIOManager implements IOManager {
                     return (T) foundPacketOptional.get();
                 }
             }
+
+            // wait before checking again, so a digest exchange or key exchange waiting on a
+            // neighbor doesn't spin a thread for seconds.
+            try {
+                Thread.sleep(RETRY_SLEEP_MILLIS);
+            } catch (InterruptedException _e) {
+                // the caller gave up waiting (e.g. it timed out), so stop polling.
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (queue == null) {
+                queue = packetIngestionQueues.get(senderId);
+            }
+        }
+    }
+
+    @Override
+    public <T extends Packet> int discardReceived(String senderId, Class<T> packetClass) {
+        synchronized (this.packetIngestionQueues) {
+            BlockingQueue<Packet> queue = this.packetIngestionQueues.get(senderId);
+            if (queue == null) {
+                return 0;
+            }
+            return IOManagerHelper.removePacketTypeFromBlockingQueue(queue, packetClass);
         }
     }
 
@@ -45,7 +45,10 @@ class ConversationViewModel(private val mutt: Scuttlemutt, initContactName: Stri
             withContext(Dispatchers.Default) {
                 var message = msg
                 try {
-                    mutt.sendMessage(msg, contactID)
+                    if (mutt.sendMessage(msg, contactID) == null) {
+                        // only shown locally, since there's no room to send anything.
+                        message = "Too many messages waiting to be sent, message not sent."
+                    }
                 } catch (exception: RuntimeException) {
                     message = "Message too big, message not sent. RuntimeException thrown"
                     mutt.sendMessage(message, contactID)
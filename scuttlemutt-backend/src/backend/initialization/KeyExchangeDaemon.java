@@ -15,6 +15,7 @@ import javax.crypto.SecretKey;
 
 import backend.iomanager.IOManager;
 import backend.iomanager.IOManagerException;
+import backend.meshdaemon.RoutingTable;
 import crypto.Crypto;
 import storagemanager.StorageManager;
 import types.DawgIdentifier;
@@ -40,6 +41,8 @@ public class KeyExchangeDaemon {
     private final PublicKey myPublicKey;  // TODO:  If we ever want to make PublicKeys rotatable,
                                           //   we'll want to edit how they're handled in this class.
     private final DawgIdentifier myDawgId;
+    // learns that each device we exchange keys with is the next hop towards itself, or null.
+    private final RoutingTable routingTable;
     // stores the KeyExchangeDaemonThreads.  we want to store them even after execution completes so
     // that we can verify their status (`COMPLETED_SUCCESSFULLY` or `FAILED`).
     private final Map<String, KeyExchangeDaemonThreadRunnable> threadMap;
@@ -55,10 +58,28 @@ public class KeyExchangeDaemon {
                              final StorageManager storageManager,
                              final PublicKey myPublicKey,
                              final DawgIdentifier myDawgId) {
+        this(ioManager, storageManager, myPublicKey, myDawgId, null);
+    }
+
+    /**
+     * Constructs the KeyExchangeDaemon object, which teaches the RoutingTable a
+     * route to each device it exchanges keys with.
+     * @param ioManager  A valid IOManager object.
+     * @param storageManager  A valid StorageManager object.
+     * @param myPublicKey  This device's PublicKey.
+     * @param myDawgId  The DawgIdentifier associated with this device.
+     * @param routingTable  The MeshDaemon's RoutingTable, or null to skip learning routes.
+     */
+    public KeyExchangeDaemon(final IOManager ioManager,
+                             final StorageManager storageManager,
+                             final PublicKey myPublicKey,
+                             final DawgIdentifier myDawgId,
+                             final RoutingTable routingTable) {
         this.ioManager = ioManager;
         this.storageManager = storageManager;
         this.myPublicKey = myPublicKey;
         this.myDawgId = myDawgId;
+        this.routingTable = routingTable;
         this.threadMap = new HashMap<String, KeyExchangeDaemonThreadRunnable>();
     }
 
@@ -198,6 +219,11 @@ public class KeyExchangeDaemon {
             storageManager.storePublicKeyForUUID(otherDawgId.getUUID(), otherPublicKey);
             storageManager.storeSecretKeyForUUID(otherDawgId.getUUID(), chosenKey);
 
+            // the other device is a neighbor, so it's the next hop for the Barks sent to it.
+            if (routingTable != null) {
+                routingTable.learnFromKeyExchange(this.otherDeviceId, otherPublicKey);
+            }
+
             // update the Thread's status to indicate that it completed successfully!
             this.currentStatus = KEY_EXCHANGE_STATUS.COMPLETED_SUCCESSFULLY;
         }
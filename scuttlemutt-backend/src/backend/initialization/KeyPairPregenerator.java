@@ -0,0 +1,117 @@
+package backend.initialization;
+
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import crypto.CryptoSuite;
+
+/**
+ * Generates KeyPairs in the background so they're ready by the time they're needed.
+ *
+ * Asymmetric keygen (especially RSA-4096) can take seconds, so callers should
+ * construct this as early as possible (ex:  at app startup, or before setting
+ * up every device in a NetworkSimulation) and take() the KeyPairs later.
+ *
+ * A background keygen which fails is retried on the thread which takes it.
+ */
+public class KeyPairPregenerator {
+    // class variables
+    private final CryptoSuite cryptoSuite;
+    // the background keygens which have finished (or failed), in the order they finished.
+    private final BlockingQueue<Future<KeyPair>> readyKeyPairs;
+    // the number of background keygens which have not been taken yet.
+    private final AtomicInteger remaining;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new KeyPairPregenerator and starts generating KeyPairs.
+     *
+     * @param cryptoSuite The CryptoSuite to generate KeyPairs for.
+     * @param count       The number of KeyPairs to generate in the background.
+     */
+    public KeyPairPregenerator(final CryptoSuite cryptoSuite, final int count) {
+        this.cryptoSuite = cryptoSuite;
+        this.readyKeyPairs = new LinkedBlockingQueue<>();
+        this.remaining = new AtomicInteger(count);
+
+        if (count <= 0) {
+            this.executor = null;
+            return;
+        }
+
+        // keygens are CPU-bound, so don't run more of them at once than we have cores.
+        final int numThreads = Math.min(count, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(numThreads, r -> {
+            final Thread t = new Thread(r, "KeyPairPregenerator");
+            t.setDaemon(true);
+            return t;
+        });
+        final ExecutorCompletionService<KeyPair> keygens
+                = new ExecutorCompletionService<>(this.executor, this.readyKeyPairs);
+        for (int i = 0; i < count; i++) {
+            keygens.submit(this.cryptoSuite::generateKeyPair);
+        }
+        this.executor.shutdown();
+    }
+
+    /**
+     * Returns a pre-generated KeyPair, waiting for one to finish if necessary.
+     * Once every pre-generated KeyPair has been taken, or if the background
+     * keygen failed, new KeyPairs are generated on the calling thread.
+     *
+     * @return a new KeyPair.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the KeyPair can't be generated.
+     */
+    public KeyPair take() throws InterruptedException {
+        if (this.remaining.getAndDecrement() > 0) {
+            try {
+                final KeyPair keyPair = this.readyKeyPairs.take().get();
+                if (keyPair != null) {
+                    return keyPair;
+                }
+                System.err.println("Failed to pregenerate a KeyPair -- generating one now");
+            } catch (ExecutionException e) {
+                System.err.println("Failed to pregenerate a KeyPair -- " + e.getCause());
+            }
+        }
+        final KeyPair keyPair = this.cryptoSuite.generateKeyPair();
+        if (keyPair == null) {
+            throw new IllegalStateException("Failed to generate a KeyPair for crypto suite " + this.cryptoSuite.getId());
+        }
+        return keyPair;
+    }
+
+    /**
+     * @return true if a KeyPair can be taken without waiting.
+     */
+    public boolean isReady() {
+        return !this.readyKeyPairs.isEmpty();
+    }
+
+    /**
+     * Waits until every pre-generated KeyPair has finished generating.
+     *
+     * @param timeoutMillis the maximum number of milliseconds to wait.
+     * @return true if every KeyPair is ready, false if the timeout elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitAll(final long timeoutMillis) throws InterruptedException {
+        return this.executor == null || this.executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the CryptoSuite the KeyPairs are generated for.
+     */
+    public CryptoSuite getCryptoSuite() {
+        return this.cryptoSuite;
+    }
+}
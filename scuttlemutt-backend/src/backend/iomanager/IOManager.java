@@ -20,21 +20,45 @@ public interface IOManager {
      * Waits for a Packet to be received by the device from the mesh network, then returns it.
      * Blocks until a packet is received, even if no connections are available.
      *
-     * @param desiredPacketClass the class of the Packet type we wish to receive.
+     * @param desiredPacketClass the class of the Packet type we wish to receive (its subclasses are received too).
      * @return A Packet received by the device.
      */
     <T extends Packet> T meshReceive(final Class<T> desiredPacketClass);
 
+    /**
+     * Waits for a Packet to be received by the device from the mesh network, then returns it along with the id of
+     * the connection it arrived on.  Blocks until a packet is received, even if no connections are available.
+     *
+     * The default implementation doesn't know which connection the Packet arrived on, so its sender id is null.
+     *
+     * @param desiredPacketClass the class of the Packet type we wish to receive (its subclasses are received too).
+     * @return A Packet received by the device + the id of its sender.
+     */
+    default <T extends Packet> ReceivedPacket<T> meshReceiveWithSender(final Class<T> desiredPacketClass) {
+        return new ReceivedPacket<>(null, this.meshReceive(desiredPacketClass));
+    }
+
     /**
      * Waits for a Packet to be received by the device from the specified device, then returns it.
-     * Blocks until a packet is received.
+     * Blocks until a packet is received, or until the calling thread is interrupted.
      *
      * @param senderId  the ID of the packet's sender.
-     * @param desiredPacketClass the class of the Packet type we wish to receive.
-     * @return a Packet from the specified sender.
+     * @param desiredPacketClass the class of the Packet type we wish to receive (its subclasses are received too).
+     * @return a Packet from the specified sender, or null if interrupted while waiting.
      */
     <T extends Packet> T singleDeviceReceive(final String senderId, final Class<T> desiredPacketClass);
 
+    /**
+     * Discards every Packet of the passed type already received from the specified device.  Doesn't block.
+     * Used to drop replies which arrived after we stopped waiting for them, so a later singleDeviceReceive()
+     * doesn't mistake them for the reply it's waiting on.
+     *
+     * @param senderId  the ID of the packets' sender.
+     * @param packetClass the class of the Packet type to discard (its subclasses are discarded too).
+     * @return the number of Packets discarded.
+     */
+    <T extends Packet> int discardReceived(final String senderId, final Class<T> packetClass);
+
     /**
      * @return The list of ids for available connections.
      */
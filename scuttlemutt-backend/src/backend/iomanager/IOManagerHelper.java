@@ -13,7 +13,8 @@ import types.packet.Packet;
 public class IOManagerHelper {
 
     /**
-     * Obtains the first of the desired Packet type from the passed BlockingQueue.
+     * Obtains the first of the desired Packet type (or one of its subclasses, e.g. MeshPacket) from the passed
+     * BlockingQueue.
      *
      * If no such packets of the specified type exist in the BlockingQueue, returns Optional.empty().
      *
@@ -35,7 +36,7 @@ public class IOManagerHelper {
         int packetIdx = 0;
         for (; packetIdx < packetList.size(); packetIdx++) {
             // if the current Packet is of the correct class type, stop the search.
-            if (desiredPacketClass.equals(packetList.get(packetIdx).getClass())) {
+            if (desiredPacketClass.isInstance(packetList.get(packetIdx))) {
                 break;
             }
         }
@@ -55,4 +56,25 @@ public class IOManagerHelper {
         // return the foundPacketOptional.
         return foundPacketOptional;
     }
+
+    /**
+     * Removes every Packet of the desired type (or one of its subclasses) from the passed BlockingQueue.  All other
+     * Packets are reloaded upon the queue, in order.
+     *
+     * @param queue the BlockingQueue which we are removing the Packets from.
+     * @param desiredPacketClass the class of the Packets to remove.
+     * @return the number of Packets removed.
+     */
+    public static <T extends Packet> int removePacketTypeFromBlockingQueue(final BlockingQueue<Packet> queue,
+                                                                          final Class<T> desiredPacketClass) {
+        // drain the queue's packets to a List.
+        final List<Packet> packetList = new ArrayList<Packet>();
+        queue.drainTo(packetList);
+
+        // drop the Packets of the desired type, then reload the rest onto the queue.
+        final int numPackets = packetList.size();
+        packetList.removeIf(desiredPacketClass::isInstance);
+        queue.addAll(packetList);
+        return numPackets - packetList.size();
+    }
 }
@@ -37,23 +37,29 @@ public class QueueIOManager implements IOManager {
 
     @Override
     public <T extends Packet> T meshReceive(final Class<T> desiredPacketClass) {
+        final ReceivedPacket<T> received = this.meshReceiveWithSender(desiredPacketClass);
+        return received == null ? null : received.getPacket();
+    }
+
+    @Override
+    public <T extends Packet> ReceivedPacket<T> meshReceiveWithSender(final Class<T> desiredPacketClass) {
         while (true) {
             // Randomize the checking order to avoid overpolling.
             // Rebuild the list every iteration to remove dead connections.
-            List<BlockingQueue<Packet>> inputs = new ArrayList<>(this.inputQueues.values());
+            List<Map.Entry<String, BlockingQueue<Packet>>> inputs = new ArrayList<>(this.inputQueues.entrySet());
             Collections.shuffle(inputs);
 
-            for (BlockingQueue<Packet> input : inputs) {
-                synchronized (input) {  // obtain a lock on the current BlockingQueue (to ensure singleDeviceReceive
-                                        // doesn't accidentally take input.)
-                    if (input.size() > 0) {
+            for (Map.Entry<String, BlockingQueue<Packet>> input : inputs) {
+                synchronized (input.getValue()) {  // obtain a lock on the current BlockingQueue (to ensure
+                                                   // singleDeviceReceive doesn't accidentally take input.)
+                    if (input.getValue().size() > 0) {
                         // see if a Packet of the desired type is in the BlockingQueue.
                         final Optional<T> foundPacketOptional
-                                = IOManagerHelper.getPacketTypeFromBlockingQueue(input, desiredPacketClass);
+                                = IOManagerHelper.getPacketTypeFromBlockingQueue(input.getValue(), desiredPacketClass);
 
                         // if a Packet of the desired type was found, return it.
                         if (foundPacketOptional.isPresent()) {
-                            return foundPacketOptional.get();
+                            return new ReceivedPacket<>(input.getKey(), foundPacketOptional.get());
                         }
                     }
                 }
@@ -92,13 +98,26 @@ public class QueueIOManager implements IOManager {
             // Wait 100ms before trying again for performance.
             // Could be arbitrarily long before we have any new messages.
             try {
-                Thread.sleep(100);
+                Thread.sleep(RETRY_SLEEP_MILLIS);
             } catch (InterruptedException _e) {
-                // TODO: Graceful handling of an interrupt.
+                // the caller gave up waiting (e.g. it timed out), so stop polling.
+                Thread.currentThread().interrupt();
+                return null;
             }
         }
     }
 
+    @Override
+    public <T extends Packet> int discardReceived(final String senderId, final Class<T> packetClass) {
+        final BlockingQueue<Packet> inputQueue = this.inputQueues.get(senderId);
+        if (inputQueue == null) {
+            return 0;
+        }
+        synchronized (inputQueue) {  // obtain a lock on the BlockingQueue (to ensure no receive takes input.)
+            return IOManagerHelper.removePacketTypeFromBlockingQueue(inputQueue, packetClass);
+        }
+    }
+
     @Override
     public Set<String> availableConnections() throws IOManagerException {
         return new HashSet<>(this.connections);
@@ -0,0 +1,34 @@
+package backend.iomanager;
+
+import types.packet.Packet;
+
+/**
+ * A Packet received from the mesh network, along with the id of the
+ * connection it arrived on.
+ */
+public class ReceivedPacket<T extends Packet> {
+    private final String senderId;
+    private final T packet;
+
+    /**
+     * Constructs a new ReceivedPacket.
+     *
+     * @param senderId the id of the connection the packet arrived on, or null if unknown.
+     * @param packet   the Packet which was received.
+     */
+    public ReceivedPacket(final String senderId, final T packet) {
+        this.senderId = senderId;
+        this.packet = packet;
+    }
+
+    /**
+     * @return the id of the connection the packet arrived on, or null if the IOManager doesn't track it.
+     */
+    public String getSenderId() {
+        return this.senderId;
+    }
+
+    public T getPacket() {
+        return this.packet;
+    }
+}
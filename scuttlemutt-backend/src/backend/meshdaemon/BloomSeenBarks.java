@@ -0,0 +1,126 @@
+package backend.meshdaemon;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import types.Bark;
+import types.UuidBloomFilter;
+
+/**
+ * Memory-bounded SeenBarks built from two rotating Bloom filters of Bark ids.
+ *
+ * New Barks are added to the current filter.  Once it holds barksPerGeneration
+ * Barks, it becomes the previous filter and an empty filter takes its place
+ * (the old previous filter is dropped).  A Bark is seen if either filter
+ * contains it, so every Bark is remembered for at least barksPerGeneration
+ * more Barks.  Memory use is fixed at two filters, no matter how long the
+ * device runs.
+ *
+ * Lookups are lock-free.  add() locks a stripe chosen by the Bark's id, so
+ * when several threads add the same new Bark exactly one of them is told it's
+ * new (a Bloom filter insert alone can't tell them apart, since each may set
+ * some of the bits).  Since a lookup checks
+ * both filters, each filter is sized for half of the requested false positive
+ * rate.  A false positive means a new Bark is treated as already seen, so it
+ * won't be processed or relayed by this device.
+ */
+public class BloomSeenBarks implements SeenBarks {
+    public static final int DEFAULT_BARKS_PER_GENERATION = 100_000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 1e-4;
+
+    // the number of locks add() is striped across.  must be a power of 2.
+    private static final int NUM_ADD_LOCKS = 64;
+
+    // class variables
+    private final int barksPerGeneration;
+    private final double falsePositiveRate;
+    // a per-instance seed, so other devices can't craft ids which collide in our filters.
+    private final long seed;
+    // the number of Barks added to the current filter.
+    private final AtomicInteger currentCount;
+    private volatile Generations generations;
+    // add() holds the lock of the Bark's id while it checks + sets the Bark's bits.
+    private final Object[] addLocks;
+
+    /**
+     * Constructs a new BloomSeenBarks with the default capacity + false positive rate.
+     */
+    public BloomSeenBarks() {
+        this(DEFAULT_BARKS_PER_GENERATION, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Constructs a new BloomSeenBarks.
+     *
+     * @param barksPerGeneration the number of Barks added before the filters rotate.
+     * @param falsePositiveRate  the chance (0 - 1) of a new Bark being reported as seen.
+     */
+    public BloomSeenBarks(final int barksPerGeneration, final double falsePositiveRate) {
+        this.barksPerGeneration = barksPerGeneration;
+        this.falsePositiveRate = falsePositiveRate;
+        this.seed = new SecureRandom().nextLong();
+        this.currentCount = new AtomicInteger(0);
+        this.generations = new Generations(this.newFilter(), null);
+        this.addLocks = new Object[NUM_ADD_LOCKS];
+        for (int i = 0; i < NUM_ADD_LOCKS; i++) {
+            this.addLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean add(final Bark bark) {
+        final UUID id = bark.getUniqueId();
+        final Generations gens;
+        final boolean inPrevious;
+        final boolean addedToCurrent;
+        synchronized (this.addLocks[id.hashCode() & (NUM_ADD_LOCKS - 1)]) {
+            gens = this.generations;
+            inPrevious = gens.previous != null && gens.previous.mightContain(id);
+            // add to the current filter even if the previous one has it, so it outlives the next rotation.
+            addedToCurrent = gens.current.add(id);
+        }
+        if (addedToCurrent && this.currentCount.incrementAndGet() >= this.barksPerGeneration) {
+            this.rotate(gens);
+        }
+        return addedToCurrent && !inPrevious;
+    }
+
+    @Override
+    public boolean contains(final Bark bark) {
+        final UUID id = bark.getUniqueId();
+        final Generations gens = this.generations;
+        return gens.current.mightContain(id) || (gens.previous != null && gens.previous.mightContain(id));
+    }
+
+    // private helpers
+    /**
+     * Replaces the current filter with an empty one, unless another thread
+     * already rotated past the passed generations.
+     */
+    private synchronized void rotate(final Generations expected) {
+        if (this.generations != expected) {
+            return;
+        }
+        this.generations = new Generations(this.newFilter(), expected.current);
+        this.currentCount.set(0);
+    }
+
+    private UuidBloomFilter newFilter() {
+        return UuidBloomFilter.forCapacity(this.barksPerGeneration, this.falsePositiveRate / 2, this.seed);
+    }
+
+    /**
+     * The current + previous filters, swapped as a unit.
+     */
+    private static class Generations {
+        private final UuidBloomFilter current;
+        // null until the first rotation.
+        private final UuidBloomFilter previous;
+
+        private Generations(final UuidBloomFilter current, final UuidBloomFilter previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+}
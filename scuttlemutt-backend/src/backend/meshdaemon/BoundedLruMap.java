@@ -0,0 +1,45 @@
+package backend.meshdaemon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map which holds at most maxEntries entries, forgetting the least recently
+ * used entry once it's full.
+ *
+ * Gets + puts both count as a use, so the entries are iterated least
+ * recently used first.  Used to bound everything the mesh daemon remembers
+ * about Barks, acks + senders, so a long-running relay (or a neighbor
+ * flooding us with new ids) can't run us out of memory.
+ *
+ * Not thread-safe; callers must hold their own lock.
+ */
+public class BoundedLruMap<K, V> extends LinkedHashMap<K, V> {
+    // class variables
+    private final int maxEntries;
+
+    /**
+     * Constructs a new, empty BoundedLruMap.
+     *
+     * @param maxEntries the most entries held at once.  Must be > 0.
+     */
+    public BoundedLruMap(final int maxEntries) {
+        super(16, 0.75f, true);
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Invalid BoundedLruMap limit:  maxEntries = " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the most entries held at once.
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+        return this.size() > this.maxEntries;
+    }
+}
@@ -0,0 +1,55 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+/**
+ * Implements the ForwardingPolicy interface with counter-based suppression:
+ * a Bark is not relayed once we have heard maxDuplicates duplicates of it,
+ * since the neighbors which sent them have already spread it around us.
+ *
+ * The time a Bark spends in the outbound queue is the window in which
+ * duplicates are counted.  The queue backs up when traffic is heavy, which
+ * is when suppression matters most.
+ */
+public class CounterForwardingPolicy implements ForwardingPolicy {
+    public static final int DEFAULT_MAX_DUPLICATES = 2;
+
+    // class variables
+    private final int maxDuplicates;
+    private final int sendsBeforeDrop;
+
+    /**
+     * Constructs a new CounterForwardingPolicy with the default threshold,
+     * which sends each packet to MeshOutput.NUM_REBROADCAST_BEFORE_DROP neighbors.
+     */
+    public CounterForwardingPolicy() {
+        this(DEFAULT_MAX_DUPLICATES, MeshOutput.NUM_REBROADCAST_BEFORE_DROP);
+    }
+
+    /**
+     * Constructs a new CounterForwardingPolicy.
+     *
+     * @param maxDuplicates   the number of duplicates of a Bark which stops it
+     *                        from being relayed.  Must be > 0.
+     * @param sendsBeforeDrop the number of neighbors to send each packet to.  Must be > 0.
+     */
+    public CounterForwardingPolicy(final int maxDuplicates, final int sendsBeforeDrop) {
+        if (maxDuplicates < 1 || sendsBeforeDrop < 1) {
+            throw new IllegalArgumentException("Invalid CounterForwardingPolicy:  maxDuplicates = "
+                    + maxDuplicates + ", sendsBeforeDrop = " + sendsBeforeDrop);
+        }
+        this.maxDuplicates = maxDuplicates;
+        this.sendsBeforeDrop = sendsBeforeDrop;
+    }
+
+    @Override
+    public boolean shouldForward(final Bark bark, final int copiesHeard, final int neighborCount) {
+        // the first copy isn't a duplicate.
+        return copiesHeard - 1 < this.maxDuplicates;
+    }
+
+    @Override
+    public int sendsBeforeDrop(final int neighborCount) {
+        return this.sendsBeforeDrop;
+    }
+}
@@ -0,0 +1,281 @@
+package backend.meshdaemon;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import types.Bark;
+import types.packet.AckPacket;
+
+/**
+ * The delivery acks this device knows about, shared by MeshInput + MeshOutput.
+ *
+ * MeshInput records the acks it receives (and acks the Barks delivered to
+ * us); MeshOutput drains the acks still to be flooded on to our neighbors, and
+ * the ids of the newly acked Barks, which it purges from its queues and relay
+ * buffer.
+ *
+ * An ack can only be checked against the Bark it acks, so the Barks MeshOutput
+ * sends are tracked (see: trackBark).  An ack for a tracked Bark is checked as
+ * it arrives, and dropped if it's forged.  We may hear an ack before (or
+ * without ever holding) its Bark, so an ack which can't be checked yet is
+ * recorded unverified and isn't sent on.  Up to MAX_UNVERIFIED_ACKS different
+ * unverified acks are kept for each Bark, first come first kept, so a forged
+ * ack heard before or after the real one can't push it out.  They're checked
+ * once we hold the Bark (see: isAcked):  the valid one is sent on and the
+ * forged ones are forgotten, so a forged ack never causes a Bark to be
+ * dropped and is never flooded.  Incoming hop counts are capped at our own
+ * hop limit.
+ *
+ * Everything is bounded:  the least recently used acks are forgotten first,
+ * and the oldest acks waiting on MeshOutput are dropped first.  Safe to share
+ * between threads.
+ */
+public class DeliveryAcks {
+    public static final int DEFAULT_MAX_TRACKED_ACKS = 16 * 1024;
+    // the most Barks remembered so their acks can be checked.
+    public static final int DEFAULT_MAX_TRACKED_BARKS = 1024;
+    // the most acks waiting on MeshOutput, of each kind.
+    public static final int DEFAULT_MAX_QUEUED_ACKS = 1024;
+    // the most different unverified acks kept for one Bark.
+    public static final int MAX_UNVERIFIED_ACKS = 4;
+
+    // class variables
+    private final int hopLimit;
+    private final int maxQueuedAcks;
+    // the valid ack heard for each acked Bark, least recently used first.
+    private final Map<UUID, Ack> heardAcks;
+    // the acks heard for Barks we couldn't check them against yet, least recently used first.
+    private final Map<UUID, List<Ack>> unverifiedAcks;
+    // the Barks MeshOutput has sent, least recently used first.
+    private final Map<UUID, Bark> trackedBarks;
+    // the acks MeshOutput should send on to its neighbors, oldest first.
+    private final Deque<AckPacket> acksToSend;
+    // the ids of the Barks acked since MeshOutput last purged, oldest first.
+    private final Deque<UUID> newlyAcked;
+
+    /**
+     * Constructs a new DeliveryAcks with the default limits, which acks
+     * delivered Barks with AckPacket.DEFAULT_HOP_LIMIT hops.
+     */
+    public DeliveryAcks() {
+        this(AckPacket.DEFAULT_HOP_LIMIT, DEFAULT_MAX_TRACKED_ACKS, DEFAULT_MAX_QUEUED_ACKS);
+    }
+
+    /**
+     * Constructs a new DeliveryAcks which remembers DEFAULT_MAX_TRACKED_BARKS Barks.
+     *
+     * @param hopLimit        the number of times an ack may be relayed.
+     * @param maxTrackedAcks  the most acks to remember.
+     * @param maxQueuedAcks   the most acks waiting on MeshOutput, of each kind.
+     */
+    public DeliveryAcks(final int hopLimit, final int maxTrackedAcks, final int maxQueuedAcks) {
+        this(hopLimit, maxTrackedAcks, maxQueuedAcks, DEFAULT_MAX_TRACKED_BARKS);
+    }
+
+    /**
+     * Constructs a new DeliveryAcks.
+     *
+     * @param hopLimit        the number of times an ack may be relayed.
+     * @param maxTrackedAcks  the most acks to remember.
+     * @param maxQueuedAcks   the most acks waiting on MeshOutput, of each kind.
+     * @param maxTrackedBarks the most Barks to remember, to check their acks.
+     */
+    public DeliveryAcks(final int hopLimit, final int maxTrackedAcks, final int maxQueuedAcks,
+                        final int maxTrackedBarks) {
+        if (hopLimit < 0 || hopLimit > AckPacket.MAX_HOP_LIMIT || maxTrackedAcks < 1 || maxQueuedAcks < 1
+                || maxTrackedBarks < 1) {
+            throw new IllegalArgumentException("Invalid DeliveryAcks limits:  hopLimit = " + hopLimit
+                    + ", maxTrackedAcks = " + maxTrackedAcks + ", maxQueuedAcks = " + maxQueuedAcks
+                    + ", maxTrackedBarks = " + maxTrackedBarks);
+        }
+        this.hopLimit = hopLimit;
+        this.maxQueuedAcks = maxQueuedAcks;
+        this.heardAcks = new BoundedLruMap<>(maxTrackedAcks);
+        this.unverifiedAcks = new BoundedLruMap<>(maxTrackedAcks);
+        this.trackedBarks = new BoundedLruMap<>(maxTrackedBarks);
+        this.acksToSend = new ArrayDeque<>();
+        this.newlyAcked = new ArrayDeque<>();
+    }
+
+    /**
+     * Acks a Bark which was delivered to us, queueing an AckPacket for MeshOutput to flood.
+     *
+     * @param barkId    the unique id of the Bark.
+     * @param ackSecret the ack secret of the Bark (see: OpenedBark.getAckSecret).
+     */
+    public synchronized void acknowledge(final UUID barkId, final byte[] ackSecret) {
+        if (this.heardAcks.containsKey(barkId)) {
+            return;
+        }
+        this.unverifiedAcks.remove(barkId);
+        this.heardAcks.put(barkId, new Ack(ackSecret, this.hopLimit));
+        this.enqueue(this.newlyAcked, barkId);
+        this.enqueue(this.acksToSend, new AckPacket(barkId, ackSecret, this.hopLimit));
+    }
+
+    /**
+     * Remembers a Bark we're sending, so an ack for it can be checked as it
+     * arrives.  An unverified ack already heard for the Bark is checked now.
+     *
+     * @param bark the Bark.
+     */
+    public synchronized void trackBark(final Bark bark) {
+        this.trackedBarks.put(bark.getUniqueId(), bark);
+        this.check(bark);
+    }
+
+    /**
+     * Records an ack received from a neighbor.  If the acked Bark is tracked,
+     * the ack is checked now:  a valid ack is queued for MeshOutput to send on
+     * with one fewer hop (unless it has no hops left), and a forged ack is
+     * dropped.  Otherwise it's recorded unverified alongside any other
+     * unverified acks heard for the Bark, unless MAX_UNVERIFIED_ACKS have been.
+     *
+     * @param ack the ack.
+     * @return true if the ack was recorded; false if it repeats an ack we've
+     *         heard, was forged, or there's no room for it.
+     */
+    public synchronized boolean recordAck(final AckPacket ack) {
+        return this.recordAck(ack, bark -> { });
+    }
+
+    /**
+     * Records an ack received from a neighbor, like recordAck(ack).  If the
+     * ack is checked (and valid) as it arrives, the tracked Bark it acks is
+     * passed to onVerified, e.g. so the ack can teach us a route.  An ack
+     * recorded unverified isn't passed on, even once it's checked.
+     *
+     * @param ack        the ack.
+     * @param onVerified called with the Bark the ack was verified against.
+     * @return true if the ack was recorded; false if it repeats an ack we've
+     *         heard, was forged, or there's no room for it.
+     */
+    public synchronized boolean recordAck(final AckPacket ack, final Consumer<Bark> onVerified) {
+        final UUID barkId = ack.getBarkId();
+        final byte[] ackSecret = ack.getAckSecret();
+        if (this.heardAcks.containsKey(barkId)) {
+            return false;
+        }
+        // a neighbor can't make its acks travel further than ours do.
+        final Ack recorded = new Ack(ackSecret, Math.min(ack.getHopsRemaining(), this.hopLimit));
+
+        final Bark bark = this.trackedBarks.get(barkId);
+        if (bark != null) {
+            if (!bark.isAckedBy(ackSecret)) {
+                return false;
+            }
+            this.verify(barkId, recorded);
+            onVerified.accept(bark);
+        } else {
+            final List<Ack> candidates = this.unverifiedAcks.computeIfAbsent(barkId, id -> new ArrayList<>());
+            if (candidates.size() >= MAX_UNVERIFIED_ACKS
+                    || candidates.stream().anyMatch(candidate -> Arrays.equals(candidate.ackSecret, ackSecret))) {
+                return false;
+            }
+            candidates.add(recorded);
+        }
+        this.enqueue(this.newlyAcked, barkId);
+        return true;
+    }
+
+    /**
+     * Returns true if we've heard a valid ack for the passed Bark.  An
+     * unverified ack which matches the Bark is queued to be sent on; the ones
+     * which don't were forged, and are forgotten.
+     *
+     * @param bark the Bark to check.
+     * @return true if the Bark was delivered.
+     */
+    public synchronized boolean isAcked(final Bark bark) {
+        return this.check(bark);
+    }
+
+    /**
+     * @return the acks waiting to be sent to our neighbors, oldest first.  They
+     *         are no longer queued afterwards.
+     */
+    public synchronized List<AckPacket> drainAcksToSend() {
+        final List<AckPacket> acks = new ArrayList<>(this.acksToSend);
+        this.acksToSend.clear();
+        return acks;
+    }
+
+    /**
+     * @return the ids of the Barks acked since the last call, oldest first.
+     */
+    public synchronized List<UUID> drainNewlyAcked() {
+        final List<UUID> barkIds = new ArrayList<>(this.newlyAcked);
+        this.newlyAcked.clear();
+        return barkIds;
+    }
+
+    /**
+     * @return the number of acks remembered.
+     */
+    public synchronized int size() {
+        return this.heardAcks.size() + this.unverifiedAcks.size();
+    }
+
+    // private helpers
+    /**
+     * Checks the ack heard for the passed Bark, if any.  See: isAcked.
+     */
+    private boolean check(final Bark bark) {
+        final UUID barkId = bark.getUniqueId();
+        if (this.heardAcks.containsKey(barkId)) {
+            return true;
+        }
+        final List<Ack> candidates = this.unverifiedAcks.remove(barkId);
+        if (candidates == null) {
+            return false;
+        }
+        for (final Ack candidate : candidates) {
+            if (bark.isAckedBy(candidate.ackSecret)) {
+                this.verify(barkId, candidate);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records an ack which matched its Bark, queueing a copy with one fewer hop
+     * for MeshOutput to send on (unless it has no hops left).
+     */
+    private void verify(final UUID barkId, final Ack ack) {
+        this.heardAcks.put(barkId, ack);
+        if (ack.hopsRemaining > 0) {
+            this.enqueue(this.acksToSend, new AckPacket(barkId, ack.ackSecret, ack.hopsRemaining - 1));
+        }
+    }
+
+    /**
+     * Adds to the back of the passed queue, dropping its oldest element if it's full.
+     */
+    private <T> void enqueue(final Deque<T> queue, final T element) {
+        if (queue.size() >= this.maxQueuedAcks) {
+            queue.removeFirst();
+        }
+        queue.addLast(element);
+    }
+
+    /**
+     * An ack heard for a Bark.
+     */
+    private static class Ack {
+        private final byte[] ackSecret;
+        // the hops the ack had left when we heard it.
+        private final int hopsRemaining;
+
+        private Ack(final byte[] ackSecret, final int hopsRemaining) {
+            this.ackSecret = ackSecret;
+            this.hopsRemaining = hopsRemaining;
+        }
+    }
+}
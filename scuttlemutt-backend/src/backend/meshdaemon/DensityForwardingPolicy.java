@@ -0,0 +1,89 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+/**
+ * Implements the ForwardingPolicy interface with counter-based suppression
+ * whose thresholds follow the number of neighbors around us.
+ *
+ * With sparseNeighbors or fewer neighbors (e.g. a chain of devices), every
+ * Bark is relayed and each packet is sent to up to maxSends neighbors, since
+ * we may be the only path onward.  With denseNeighbors or more (e.g. a
+ * crowded venue), a Bark is only relayed if no duplicate has been heard, and
+ * each packet is sent to a single neighbor.  In between, both thresholds
+ * scale linearly.
+ */
+public class DensityForwardingPolicy implements ForwardingPolicy {
+    public static final int DEFAULT_SPARSE_NEIGHBORS = 2;
+    public static final int DEFAULT_DENSE_NEIGHBORS = 8;
+    public static final int DEFAULT_MAX_SENDS = 4;
+    public static final int DEFAULT_MAX_DUPLICATES = 4;
+
+    // class variables
+    private final int sparseNeighbors;
+    private final int denseNeighbors;
+    private final int maxSends;
+    private final int maxDuplicates;
+
+    /**
+     * Constructs a new DensityForwardingPolicy with the default thresholds.
+     */
+    public DensityForwardingPolicy() {
+        this(DEFAULT_SPARSE_NEIGHBORS, DEFAULT_DENSE_NEIGHBORS, DEFAULT_MAX_SENDS, DEFAULT_MAX_DUPLICATES);
+    }
+
+    /**
+     * Constructs a new DensityForwardingPolicy.
+     *
+     * @param sparseNeighbors the most neighbors at which every Bark is relayed.
+     * @param denseNeighbors  the fewest neighbors at which suppression is strictest.
+     *                        Must be > sparseNeighbors.
+     * @param maxSends        the number of neighbors each packet is sent to when
+     *                        sparse.  Must be > 0.
+     * @param maxDuplicates   the number of duplicates which stops a Bark from
+     *                        being relayed, just above sparse.  Must be > 0.
+     */
+    public DensityForwardingPolicy(final int sparseNeighbors, final int denseNeighbors,
+                                   final int maxSends, final int maxDuplicates) {
+        if (sparseNeighbors < 0 || denseNeighbors <= sparseNeighbors || maxSends < 1 || maxDuplicates < 1) {
+            throw new IllegalArgumentException("Invalid DensityForwardingPolicy:  sparseNeighbors = "
+                    + sparseNeighbors + ", denseNeighbors = " + denseNeighbors + ", maxSends = " + maxSends
+                    + ", maxDuplicates = " + maxDuplicates);
+        }
+        this.sparseNeighbors = sparseNeighbors;
+        this.denseNeighbors = denseNeighbors;
+        this.maxSends = maxSends;
+        this.maxDuplicates = maxDuplicates;
+    }
+
+    @Override
+    public boolean shouldForward(final Bark bark, final int copiesHeard, final int neighborCount) {
+        if (neighborCount <= this.sparseNeighbors) {
+            return true;
+        }
+        // the first copy isn't a duplicate.
+        return copiesHeard - 1 < this.scale(this.maxDuplicates, neighborCount);
+    }
+
+    @Override
+    public int sendsBeforeDrop(final int neighborCount) {
+        return this.scale(this.maxSends, neighborCount);
+    }
+
+    // private helpers
+    /**
+     * Scales a threshold from its sparse value down to 1 as the neighbor count
+     * goes from sparseNeighbors to denseNeighbors.
+     */
+    private int scale(final int sparseValue, final int neighborCount) {
+        if (neighborCount <= this.sparseNeighbors) {
+            return sparseValue;
+        }
+        if (neighborCount >= this.denseNeighbors) {
+            return 1;
+        }
+        final double density = (double) (neighborCount - this.sparseNeighbors)
+                / (this.denseNeighbors - this.sparseNeighbors);
+        return (int) Math.round(sparseValue - density * (sparseValue - 1));
+    }
+}
@@ -0,0 +1,43 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+/**
+ * Implements the ForwardingPolicy interface by relaying every Bark, and
+ * sending each packet to a fixed number of neighbors, no matter how many
+ * neighbors there are.
+ */
+public class FixedForwardingPolicy implements ForwardingPolicy {
+    // class variables
+    private final int sendsBeforeDrop;
+
+    /**
+     * Constructs a new FixedForwardingPolicy which sends each packet to
+     * MeshOutput.NUM_REBROADCAST_BEFORE_DROP neighbors.
+     */
+    public FixedForwardingPolicy() {
+        this(MeshOutput.NUM_REBROADCAST_BEFORE_DROP);
+    }
+
+    /**
+     * Constructs a new FixedForwardingPolicy.
+     *
+     * @param sendsBeforeDrop the number of neighbors to send each packet to.  Must be > 0.
+     */
+    public FixedForwardingPolicy(final int sendsBeforeDrop) {
+        if (sendsBeforeDrop < 1) {
+            throw new IllegalArgumentException("Invalid FixedForwardingPolicy:  sendsBeforeDrop = " + sendsBeforeDrop);
+        }
+        this.sendsBeforeDrop = sendsBeforeDrop;
+    }
+
+    @Override
+    public boolean shouldForward(final Bark bark, final int copiesHeard, final int neighborCount) {
+        return true;
+    }
+
+    @Override
+    public int sendsBeforeDrop(final int neighborCount) {
+        return this.sendsBeforeDrop;
+    }
+}
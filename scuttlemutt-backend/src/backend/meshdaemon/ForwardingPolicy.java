@@ -0,0 +1,36 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+/**
+ * Decides how hard MeshOutput works to spread the Barks it relays, based on
+ * what MeshInput has observed (see ForwardingStats).
+ *
+ * Relaying every Bark to every neighbor floods a crowded area with copies
+ * each device already has, while relaying too little lets Barks die out
+ * along a sparse chain of devices.  Implementations must be thread-safe.
+ */
+public interface ForwardingPolicy {
+    /**
+     * Decides whether to send a Bark we are relaying.  Called as the Bark is
+     * packed into a packet, so copies heard while it waited in the outbound
+     * queue count.  Never called for Barks we haven't received from a
+     * neighbor (e.g. our own messages), which are always sent.
+     *
+     * @param bark          the Bark to relay.
+     * @param copiesHeard   the number of distinct neighbors the Bark was received from so far (at least 1).
+     * @param neighborCount the number of neighbors heard from recently.
+     * @return true to send the Bark, false to drop it.
+     */
+    boolean shouldForward(final Bark bark, final int copiesHeard, final int neighborCount);
+
+    /**
+     * Returns the number of distinct neighbors each packet is sent to before
+     * it is dropped.  Neighbors which connect afterwards can still be offered
+     * its Barks through a digest exchange.
+     *
+     * @param neighborCount the number of neighbors heard from recently.
+     * @return the number of neighbors to send each packet to.  At least 1.
+     */
+    int sendsBeforeDrop(final int neighborCount);
+}
@@ -0,0 +1,101 @@
+package backend.meshdaemon;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What MeshInput has observed about the traffic around us, used by a
+ * ForwardingPolicy to decide how hard to work at relaying.
+ *
+ * Counts the copies of each Bark received from distinct neighbors (a
+ * neighbor resending a Bark doesn't mean it has spread any further) and
+ * remembers when each neighbor was last heard from.  Both are bounded:  the
+ * least recently heard Barks + neighbors are forgotten first, and at most
+ * MAX_SENDERS_PER_BARK senders are counted per Bark.  Safe to share between
+ * threads.
+ */
+public class ForwardingStats {
+    public static final int DEFAULT_MAX_TRACKED_BARKS = 16 * 1024;
+    public static final int DEFAULT_MAX_TRACKED_NEIGHBORS = 256;
+    // neighbors heard from within this long count towards the neighbor count.
+    public static final long DEFAULT_NEIGHBOR_WINDOW_MILLIS = 60 * 1000;
+    // the most distinct senders counted for one Bark; well above any policy's duplicate limit.
+    public static final int MAX_SENDERS_PER_BARK = 32;
+
+    // class variables
+    private final long neighborWindowMillis;
+    // the neighbors each Bark was received from, least recently heard first.  A null
+    // neighbor stands for every copy from an unknown sender.
+    private final Map<UUID, Set<String>> sendersHeard;
+    // when each neighbor was last heard from (epoch millis), least recently heard first.
+    private final Map<String, Long> lastHeardMillis;
+
+    /**
+     * Constructs a new ForwardingStats with the default limits.
+     */
+    public ForwardingStats() {
+        this(DEFAULT_MAX_TRACKED_BARKS, DEFAULT_MAX_TRACKED_NEIGHBORS, DEFAULT_NEIGHBOR_WINDOW_MILLIS);
+    }
+
+    /**
+     * Constructs a new ForwardingStats.
+     *
+     * @param maxTrackedBarks      the most Barks to count copies of.
+     * @param maxTrackedNeighbors  the most neighbors to remember.
+     * @param neighborWindowMillis how recently a neighbor must have been heard
+     *                             from to count as a neighbor.
+     */
+    public ForwardingStats(final int maxTrackedBarks, final int maxTrackedNeighbors,
+                           final long neighborWindowMillis) {
+        this.neighborWindowMillis = neighborWindowMillis;
+        this.sendersHeard = new BoundedLruMap<>(maxTrackedBarks);
+        this.lastHeardMillis = new BoundedLruMap<>(maxTrackedNeighbors);
+    }
+
+    /**
+     * Records that a copy of a Bark was received.  Only the first copy from
+     * each neighbor counts.
+     *
+     * @param senderId the neighbor which sent it, or null if unknown.
+     * @param barkId   the unique id of the Bark.
+     */
+    public synchronized void recordHeard(final String senderId, final UUID barkId) {
+        final Set<String> senders = this.sendersHeard.computeIfAbsent(barkId, id -> new HashSet<>());
+        if (senders.size() < MAX_SENDERS_PER_BARK) {
+            senders.add(senderId);
+        }
+        if (senderId != null) {
+            // re-insert, so the map stays in order of when each neighbor was heard.
+            this.lastHeardMillis.remove(senderId);
+            this.lastHeardMillis.put(senderId, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns the number of distinct neighbors a Bark was received from.
+     *
+     * @param barkId the unique id of the Bark.
+     * @return the number of copies, or 0 if none were received (or the Bark
+     *         was forgotten).
+     */
+    public synchronized int getCopiesHeard(final UUID barkId) {
+        final Set<String> senders = this.sendersHeard.get(barkId);
+        return senders == null ? 0 : senders.size();
+    }
+
+    /**
+     * @return the number of neighbors heard from within the neighbor window.
+     */
+    public synchronized int getNeighborCount() {
+        // forget the neighbors which fell out of the window.  the oldest come first.
+        final long cutoff = System.currentTimeMillis() - this.neighborWindowMillis;
+        final Iterator<Long> heard = this.lastHeardMillis.values().iterator();
+        while (heard.hasNext() && heard.next() < cutoff) {
+            heard.remove();
+        }
+        return this.lastHeardMillis.size();
+    }
+}
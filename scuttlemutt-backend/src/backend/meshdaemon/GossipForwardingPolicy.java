@@ -0,0 +1,59 @@
+package backend.meshdaemon;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import types.Bark;
+
+/**
+ * Implements the ForwardingPolicy interface with probabilistic gossip: each
+ * Bark is relayed with a fixed probability.  In a well-connected area a
+ * probability well below 1 still reaches nearly every device, at a fraction
+ * of the airtime.
+ */
+public class GossipForwardingPolicy implements ForwardingPolicy {
+    public static final double DEFAULT_PROBABILITY = 0.65;
+
+    // class variables
+    private final double probability;
+    private final int sendsBeforeDrop;
+    // null to use ThreadLocalRandom.
+    private final Random random;
+
+    /**
+     * Constructs a new GossipForwardingPolicy with the default probability,
+     * which sends each packet to MeshOutput.NUM_REBROADCAST_BEFORE_DROP neighbors.
+     */
+    public GossipForwardingPolicy() {
+        this(DEFAULT_PROBABILITY, MeshOutput.NUM_REBROADCAST_BEFORE_DROP, null);
+    }
+
+    /**
+     * Constructs a new GossipForwardingPolicy.
+     *
+     * @param probability     the chance (0 - 1] of relaying each Bark.
+     * @param sendsBeforeDrop the number of neighbors to send each packet to.  Must be > 0.
+     * @param random          the source of randomness, or null to use ThreadLocalRandom.
+     *                        Must be thread-safe if the policy is shared.
+     */
+    public GossipForwardingPolicy(final double probability, final int sendsBeforeDrop, final Random random) {
+        if (!(probability > 0 && probability <= 1) || sendsBeforeDrop < 1) {
+            throw new IllegalArgumentException("Invalid GossipForwardingPolicy:  probability = "
+                    + probability + ", sendsBeforeDrop = " + sendsBeforeDrop);
+        }
+        this.probability = probability;
+        this.sendsBeforeDrop = sendsBeforeDrop;
+        this.random = random;
+    }
+
+    @Override
+    public boolean shouldForward(final Bark bark, final int copiesHeard, final int neighborCount) {
+        final Random source = this.random == null ? ThreadLocalRandom.current() : this.random;
+        return source.nextDouble() < this.probability;
+    }
+
+    @Override
+    public int sendsBeforeDrop(final int neighborCount) {
+        return this.sendsBeforeDrop;
+    }
+}
@@ -1,11 +1,14 @@
 package backend.meshdaemon;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 import types.Bark;
 import types.packet.BarkPacket;
@@ -15,32 +18,40 @@ import types.packet.BarkPacket;
  *  to spamming, but spam violations will result in a sender ban.
  *
  *  Violations (drop and ban):
- *  - Sender is spamming the same bark packet or bark. A user should
- *    never send more than once.
- *  - Sender is spamming many different bark packets faster than a pre-
- *    determined max rate.
+ *  - Sender is spamming the same bark packet or bark, resending it more
+ *    than a pre-determined number of times within a short window.
  *
  *  Non-violations (drop only)
  *  - Receiving the same bark packet or bark from different senders. This
  *    is expected to happen with broadcasts, but should still be dropped.
+ *  - Receiving the same bark packet or bark from the same sender a few
+ *    times.  Neighbors resend now and then (e.g. a send retried after an
+ *    error, or the backlog sent after a digest exchange), so a repeat is
+ *    only dropped as a duplicate.
+ *  - Sender is sending bark packets (or barks) faster than a pre-determined
+ *    max rate.  Rates are measured with a token bucket per sender, so a short
+ *    burst is allowed but a sustained flood is not.  An honest neighbor
+ *    catching us up can go over the rate too, so the excess is dropped
+ *    (and not remembered, so it may be resent later) without a ban.  The
+ *    default rates leave room for MeshOutput's paced sends (see:
+ *    MeshOutput.DEFAULT_MAX_PACKETS_PER_SECOND).
+ *
+ *  Safe to share between threads.  The state kept for each sender lives in
+ *  one of several stripes chosen by the sender's name, each guarded by its
+ *  own lock, so checks for different senders rarely wait on each other.
  */
 public class MeshAntiSpam {
+    // the number of independently locked slices of the per-sender state.
+    private static final int NUM_STRIPES = 16;
+
     // Spam detection config
     private final MeshAntiSpamConfig config;
 
     // External seen messages set
-    private Set<Bark> seenMessages;
-
-    // For resend spamming
-    private Map<BarkPacket, Set<String>> seenBarkPackets;
-    private Map<Bark, Set<String>> seenBarks;
-
-    // For rate spamming
-    private Map<String, Deque<Double>> barkPacketWindows;
-    private Map<String, Deque<Double>> barkWindows;
+    private final SeenBarks seenMessages;
 
-    // Set of users that have violated spam rules
-    private Set<String> bannedUsers;
+    // The per-sender state, split by sender.
+    private final Stripe[] stripes;
 
     /**
      * Builds a spam detector with non-persistent storage.
@@ -49,7 +60,7 @@ public class MeshAntiSpam {
      * @param seenMessages a thread-safe set of messages that may
      *                     be updated from the outside.
      */
-    public MeshAntiSpam(Set<Bark> seenMessages) {
+    public MeshAntiSpam(SeenBarks seenMessages) {
         this(seenMessages, new MeshAntiSpamConfig());
     }
 
@@ -61,23 +72,37 @@ public class MeshAntiSpam {
      *                     be updated from the outside.
      * @param config config object for tuning the spam detection.
      */
-    public MeshAntiSpam(Set<Bark> seenMessages, final MeshAntiSpamConfig config) {
+    public MeshAntiSpam(SeenBarks seenMessages, final MeshAntiSpamConfig config) {
         this.config = config;
         this.seenMessages = seenMessages;
 
-        this.seenBarkPackets = new HashMap<>();
-        this.seenBarks = new HashMap<>();
-
-        this.barkPacketWindows = new HashMap<>();
-        this.barkWindows = new HashMap<>();
+        // each stripe remembers its share of the tracked barks + senders.
+        final int maxBarksPerStripe = Math.max(1, config.maxTrackedBarks / NUM_STRIPES);
+        final int maxSendersPerStripe = Math.max(1, config.maxTrackedSenders / NUM_STRIPES);
+        this.stripes = new Stripe[NUM_STRIPES];
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            this.stripes[i] = new Stripe(config, maxBarksPerStripe, maxSendersPerStripe);
+        }
+    }
 
-        this.bannedUsers = new HashSet<>();
+    /**
+     * Returns true if the sender has violated the spam rules.
+     *
+     * @param sender the name of the immediate sender.
+     * @return true if every packet from the sender will be dropped.
+     */
+    public boolean isBanned(String sender) {
+        final Stripe stripe = this.stripeFor(sender);
+        synchronized (stripe) {
+            return stripe.bannedUsers.contains(sender);
+        }
     }
 
     /**
      * Determines if a particular bark packet should be dropped.
-     * There are two reasons a bark should be dropped:
+     * There are three reasons a bark packet should be dropped:
      *  - The bark packet has been seen before.
+     *  - The sender is sending too fast.
      *  - The sender is banned.
      *
      * Monitors violating behavior to determine if the sender
@@ -88,34 +113,33 @@ public class MeshAntiSpam {
      * @return true if the bark packet should be dropped.
      */
     public boolean shouldDropBarkPacket(String sender, BarkPacket barkPacket) {
-        if (this.bannedUsers.contains((sender))) {
-            return true;
+        final List<UUID> barkPacketIds = new ArrayList<>();
+        for (final Bark bark : barkPacket.getPacketBarks()) {
+            barkPacketIds.add(bark.getUniqueId());
         }
 
-        // Check if this sender is resending too many times.
-        if (this.seenBarkPackets.containsKey(barkPacket)) {
-            if (this.seenBarkPackets.get(barkPacket).contains(sender)) {
-                this.bannedUsers.add(sender);
+        final Stripe stripe = this.stripeFor(sender);
+        synchronized (stripe) {
+            if (stripe.bannedUsers.contains((sender))) {
                 return true;
             }
-        } else {
-            this.seenBarkPackets.put(barkPacket, new HashSet<>());
-        }
-        this.seenBarkPackets.get(barkPacket).add(sender);
 
-        // Check if this sender is sending too fast.
-        if (this.windowCheck(sender, this.barkPacketWindows) > this.config.maxBarkPacketRate) {
-            this.bannedUsers.add(sender);
-            return true;
-        }
+            // Check if this sender is sending too fast.  checked first, so a dropped
+            // packet isn't taken for a repeat when it's resent.
+            if (!stripe.barkPacketRates.tryAcquire(sender)) {
+                return true;
+            }
 
-        return false;
+            // Check if this sender is resending too many times.
+            return this.recordSeen(stripe, stripe.seenBarkPackets, barkPacketIds, sender);
+        }
     }
 
     /**
      * Determines if a particular bark should be dropped.
-     * There are two reasons a bark should be dropped:
+     * There are three reasons a bark should be dropped:
      *  - The bark has been seen before.
+     *  - The sender is sending too fast.
      *  - The sender is banned.
      *
      * Monitors violating behavior to determine if the sender
@@ -126,85 +150,159 @@ public class MeshAntiSpam {
      * @return true if the bark should be dropped.
      */
     public boolean shouldDropBark(String sender, Bark bark) {
-        if (this.bannedUsers.contains((sender))) {
-            return true;
-        }
+        final Stripe stripe = this.stripeFor(sender);
+        synchronized (stripe) {
+            if (stripe.bannedUsers.contains((sender))) {
+                return true;
+            }
 
-        // Check if this sender is resending too many times.
-        if (this.seenBarks.containsKey(bark)) {
-            if (this.seenBarks.get(bark).contains(sender)) {
-                this.bannedUsers.add(sender);
+            // Check if this sender is sending too fast.  checked first, so a dropped
+            // bark isn't taken for a repeat when it's resent.
+            if (!stripe.barkRates.tryAcquire(sender)) {
                 return true;
             }
-        } else {
-            this.seenBarks.put(bark, new HashSet<>());
-        }
-        this.seenBarks.get(bark).add(sender);
 
-        // Check if this sender is sending too fast.
-        if (this.windowCheck(sender, this.barkWindows) > this.config.maxBarkRate) {
-            this.bannedUsers.add(sender);
-            return true;
+            // Check if this sender is resending too many times.
+            if (this.recordSeen(stripe, stripe.seenBarks, bark.getUniqueId(), sender)) {
+                return true;
+            }
         }
 
         // Check if this is a valid rebroadcast.
-        if (this.seenMessages.contains(bark)) {
+        if (!this.seenMessages.add(bark)) {
             return true;
-        } else {
-            this.seenMessages.add(bark);
         }
 
         return false;
     }
 
     /**
-     * Updates sliding windows of timestamps for rate detection.
+     * Records that the sender sent the passed bark packet (or bark), and bans
+     * the sender if it has resent it more than config.maxRepeats times within
+     * config.repeatWindowMillis.  Must hold the stripe's lock.
      *
-     * @param sender sender to be checked.
-     * @param windows mapping of all windows.
-     * @return the rate of messages per second (0 if first message).
+     * @return true if the sender has sent it before.
      */
-    private double windowCheck(String sender, Map<String, Deque<Double>> windows) {
-        double timestamp = System.currentTimeMillis() / 1000.0;
-        if (!windows.containsKey(sender)) {
-            windows.put(sender, new ArrayDeque<>(this.config.windowSize));
-            windows.get(sender).addLast(timestamp);
-            return 0;
-        } else {
-            Deque<Double> window = windows.get(sender);
-            if (window.size() >= this.config.windowSize) {
-                window.removeFirst();
-            }
-            window.addLast(timestamp);
+    private <K> boolean recordSeen(final Stripe stripe, final Map<K, Map<String, Repeats>> seen, final K key,
+                                   final String sender) {
+        final Map<String, Repeats> senders = seen.computeIfAbsent(key, k -> new HashMap<>());
+        final Repeats repeats = senders.get(sender);
+        if (repeats == null) {
+            senders.put(sender, new Repeats());
+            return false;
+        }
+
+        // count the repeats within the current window, starting a new window once it has passed.
+        final long nowNanos = this.config.nanoClock.getAsLong();
+        if (repeats.count == 0
+                || nowNanos - repeats.windowStartNanos > TimeUnit.MILLISECONDS.toNanos(this.config.repeatWindowMillis)) {
+            repeats.windowStartNanos = nowNanos;
+            repeats.count = 0;
+        }
+        repeats.count++;
+        if (repeats.count > this.config.maxRepeats) {
+            stripe.bannedUsers.add(sender);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the stripe holding the passed sender's state.
+     */
+    private Stripe stripeFor(final String sender) {
+        return this.stripes[Math.floorMod(sender.hashCode(), NUM_STRIPES)];
+    }
+
+    /**
+     * The state kept for the senders in one stripe.  Guarded by the Stripe's lock.
+     */
+    private static class Stripe {
+        // For resend spamming:  the senders of each bark packet (or bark), and how
+        // often each has resent it.  Keyed by Bark ids, so the Barks themselves can
+        // be garbage collected.
+        private final Map<List<UUID>, Map<String, Repeats>> seenBarkPackets;
+        private final Map<UUID, Map<String, Repeats>> seenBarks;
+
+        // For rate spamming
+        private final TokenBucketRateLimiter barkPacketRates;
+        private final TokenBucketRateLimiter barkRates;
+
+        // Set of users that have violated spam rules
+        private final Set<String> bannedUsers;
 
-            // Return average send rate of the current window
-            return (timestamp - window.getLast()) / window.size();
+        private Stripe(final MeshAntiSpamConfig config, final int maxTrackedBarks, final int maxTrackedSenders) {
+            this.seenBarkPackets = new BoundedLruMap<>(maxTrackedBarks);
+            this.seenBarks = new BoundedLruMap<>(maxTrackedBarks);
+            this.barkPacketRates = new TokenBucketRateLimiter(config.maxBarkPacketRate,
+                    config.maxBarkPacketRate * config.burstSeconds, maxTrackedSenders, config.idleSenderMillis,
+                    config.nanoClock);
+            this.barkRates = new TokenBucketRateLimiter(config.maxBarkRate,
+                    config.maxBarkRate * config.burstSeconds, maxTrackedSenders, config.idleSenderMillis,
+                    config.nanoClock);
+            this.bannedUsers = Collections.newSetFromMap(new BoundedLruMap<>(maxTrackedSenders));
         }
     }
 
+    /**
+     * How often one sender has resent a bark packet (or bark) within the
+     * current window.  Guarded by the Stripe's lock.
+     */
+    private static class Repeats {
+        private long windowStartNanos;
+        private int count;
+    }
+
     /**
      * Simple configuration class used by MeshAntiSpam.
      * Uses public fields for simplicity.
      */
     public static class MeshAntiSpamConfig {
         // Max rate of packets per second.
-        // Exceeding this value will cause ban.
-        // Must be > 0 or all packets will be spam.
+        // Packets over this rate are dropped.
+        // Must be > 0 or all packets will be dropped.
         public double maxBarkPacketRate;
 
         // Max rate of barks per second.
-        // Exceeding this value will cause ban.
-        // Must be > 0 or all barks will be spam.
+        // Barks over this rate are dropped.
+        // Must be > 0 or all barks will be dropped.
         public double maxBarkRate;
 
-        // Max size of "sliding window" for spam detection.
-        // Must be > 1, larger values are more forgiving.
-        public int windowSize;
+        // How many seconds' worth of packets (or barks) a sender may send at
+        // once before its rate counts against it.  Must be large enough that the
+        // bursts hold at least one packet (or bark); larger values are more forgiving.
+        public double burstSeconds;
+
+        // How many times a sender may resend the same bark packet (or bark)
+        // within repeatWindowMillis.  Repeats are always dropped, but exceeding
+        // this value will cause ban.
+        public int maxRepeats;
+        public long repeatWindowMillis;
+
+        // How long a sender must go unseen before its rate is forgotten.
+        public long idleSenderMillis;
+
+        // Returns the current time in nanoseconds.  Replaceable for testing.
+        public LongSupplier nanoClock;
+
+        // Max number of barks (and bark packets) remembered for resend detection.
+        // The least recently seen are forgotten first.
+        public int maxTrackedBarks;
+
+        // Max number of senders with rate windows (and bans) remembered.
+        // The least recently seen are forgotten first.
+        public int maxTrackedSenders;
 
         public MeshAntiSpamConfig() {
-            maxBarkPacketRate = 10.0;
-            maxBarkRate = 100.0;
-            windowSize = 10;
+            // twice what MeshOutput sends each neighbor, so honest neighbors stay well under it.
+            maxBarkPacketRate = 2 * MeshOutput.DEFAULT_MAX_PACKETS_PER_SECOND;
+            maxBarkRate = maxBarkPacketRate * MeshOutput.DEFAULT_MAX_BARKS_PER_PACKET;
+            burstSeconds = 30.0;
+            maxRepeats = 3;
+            repeatWindowMillis = 60 * 1000;
+            idleSenderMillis = 10 * 60 * 1000;
+            nanoClock = System::nanoTime;
+            maxTrackedBarks = 10000;
+            maxTrackedSenders = 1000;
         }
     }
 }
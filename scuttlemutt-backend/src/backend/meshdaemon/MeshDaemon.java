@@ -3,15 +3,15 @@ package backend.meshdaemon;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.crypto.SecretKey;
 
 import backend.iomanager.IOManager;
+import storagemanager.RelayBuffer;
 import storagemanager.StorageManager;
 import types.Bark;
 import types.Conversation;
@@ -22,15 +22,20 @@ import types.Message;
  * Controls input/output logic and an internal Bark queue.
  */
 public class MeshDaemon {
-    private final BlockingQueue<Bark> queue;
+    private final OutboundQueue queue;
     private final MeshInput input;
     private final MeshOutput output;
     private final DawgIdentifier currentUser;
     private final StorageManager storageManager;
     private final Thread inputThread, outputThread;
+    private final ExecutorService cryptoExecutor;
+    private final ExecutorService sendExecutor;
+    private final ExecutorService digestExecutor;
+    private final RoutingTable routingTable;
 
     /**
-     * Constructs a new MeshDaemon.
+     * Constructs a new MeshDaemon which holds the Barks it carries for other
+     * devices in memory.
      *
      * @param ioManager      The underlying IOManager.
      * @param storageManager The place to store messages + conversations meant for
@@ -38,16 +43,103 @@ public class MeshDaemon {
      */
     public MeshDaemon(final IOManager ioManager, final StorageManager storageManager,
                       final DawgIdentifier currentUser) {
+        this(ioManager, storageManager, currentUser, null);
+    }
+
+    /**
+     * Constructs a new MeshDaemon.
+     *
+     * @param ioManager      The underlying IOManager.
+     * @param storageManager The place to store messages + conversations meant for
+     *                       us.
+     * @param relayBuffer    The place to hold the Barks we carry for other devices,
+     *                       so they can be sent to neighbors we meet later (e.g. a
+     *                       FileRelayBuffer, to keep them across restarts).  null
+     *                       holds the most recent Barks in memory.
+     */
+    public MeshDaemon(final IOManager ioManager, final StorageManager storageManager,
+                      final DawgIdentifier currentUser, final RelayBuffer relayBuffer) {
+        this(ioManager, storageManager, currentUser, relayBuffer, false);
+    }
+
+    /**
+     * Constructs a new MeshDaemon, choosing whether to route the Barks it sends.
+     *
+     * @param ioManager      The underlying IOManager.
+     * @param storageManager The place to store messages + conversations meant for
+     *                       us.
+     * @param relayBuffer    The place to hold the Barks we carry for other devices,
+     *                       or null to hold the most recent Barks in memory.
+     * @param routing        Whether to learn routes + tag the Barks we send so relays
+     *                       can route them.  The tag links every Bark sent to the same
+     *                       receiver during an epoch (see: Bark), so with routing off
+     *                       our Barks carry no tag and all Barks are flooded.
+     */
+    public MeshDaemon(final IOManager ioManager, final StorageManager storageManager,
+                      final DawgIdentifier currentUser, final RelayBuffer relayBuffer, final boolean routing) {
         // Shared state between input and output
-        Set<Bark> seenBarks = Collections.synchronizedSet(new HashSet<>());
+        // bounded, so a long-running relay doesn't grow its seen set forever.
+        SeenBarks seenBarks = new BloomSeenBarks();
 
         // grab the private key
         PrivateKey privateKey = storageManager.lookupPrivateKey();
 
+        // what MeshInput hears, so MeshOutput relays less where our neighbors already spread Barks.
+        ForwardingStats forwardingStats = new ForwardingStats();
+
+        // the delivery acks we've heard, so neither side keeps relaying Barks which have arrived.
+        DeliveryAcks acks = new DeliveryAcks();
+
+        // the next hops learned from acks + key exchanges, so Barks with a known route aren't flooded.
+        this.routingTable = routing ? new RoutingTable() : null;
+
         this.currentUser = currentUser;
-        this.queue = new LinkedBlockingQueue<>();
-        this.input = new MeshInput(ioManager, queue, storageManager, privateKey, seenBarks);
-        this.output = new MeshOutput(ioManager, queue, seenBarks);
+        // bounded, so a neighbor flooding us sheds relayed Barks instead of running us out of memory.
+        this.queue = new OutboundQueue(new OutboundQueue.OutboundQueueConfig());
+
+        // inbound crypto is CPU-bound, so open the Barks in each packet on every core.
+        this.cryptoExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            final Thread t = new Thread(r, "MeshInput-crypto");
+            t.setDaemon(true);
+            return t;
+        });
+        // receive on one thread + process on a pool of workers, so slow storage writes don't hold up receiving.
+        // spamming neighbors are dropped before we spend any crypto on their packets.
+        final MeshInput.MeshInputConfig inputConfig = new MeshInput.MeshInputConfig();
+        inputConfig.cryptoExecutor = this.cryptoExecutor;
+        inputConfig.pipeline = new MeshInput.PipelineConfig();
+        inputConfig.antiSpam = new MeshAntiSpam(seenBarks);
+        inputConfig.forwardingStats = forwardingStats;
+        inputConfig.acks = acks;
+        inputConfig.routingTable = this.routingTable;
+        this.input = new MeshInput(ioManager, queue, storageManager, privateKey, seenBarks, inputConfig);
+
+        // send to neighbors concurrently so a slow neighbor doesn't hold up the others.
+        this.sendExecutor = Executors.newFixedThreadPool(MeshOutput.DEFAULT_SEND_THREADS, r -> {
+            final Thread t = new Thread(r, "MeshOutput-send");
+            t.setDaemon(true);
+            return t;
+        });
+        // swap digests with each new neighbor so it's only sent the Barks it's missing.
+        this.digestExecutor = Executors.newCachedThreadPool(r -> {
+            final Thread t = new Thread(r, "MeshOutput-digest");
+            t.setDaemon(true);
+            return t;
+        });
+        final MeshOutput.MeshOutputConfig outputConfig = new MeshOutput.MeshOutputConfig();
+        outputConfig.maxBarksPerPacket = MeshOutput.DEFAULT_MAX_BARKS_PER_PACKET;
+        outputConfig.maxPacketBytes = MeshOutput.DEFAULT_MAX_PACKET_BYTES;
+        outputConfig.lingerMillis = MeshOutput.DEFAULT_LINGER_MILLIS;
+        // paced, so catching a neighbor up stays under its anti-spam rates.
+        outputConfig.maxPacketsPerSecond = MeshOutput.DEFAULT_MAX_PACKETS_PER_SECOND;
+        outputConfig.sendExecutor = this.sendExecutor;
+        outputConfig.digestExecutor = this.digestExecutor;
+        outputConfig.relayBuffer = relayBuffer;
+        outputConfig.forwardingPolicy = new DensityForwardingPolicy();
+        outputConfig.forwardingStats = forwardingStats;
+        outputConfig.acks = acks;
+        outputConfig.routingTable = this.routingTable;
+        this.output = new MeshOutput(ioManager, queue, seenBarks, outputConfig);
         this.storageManager = storageManager;
 
         // Spin out two threads, one to block on the IOManager's receive() and
@@ -65,6 +157,17 @@ public class MeshDaemon {
     public void shutdown() {
         this.inputThread.interrupt();
         this.outputThread.interrupt();
+        this.cryptoExecutor.shutdownNow();
+        this.sendExecutor.shutdownNow();
+        this.digestExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the next hops this MeshDaemon has learned, which key exchanges should teach too, or null if
+     *         routing is off.
+     */
+    public RoutingTable getRoutingTable() {
+        return this.routingTable;
     }
 
     /**
@@ -73,21 +176,28 @@ public class MeshDaemon {
      * @param contents  The message contents.
      * @param recipient The DawgIdentifier of who is receiving the message.
      * @param seqId     The sequence number for this message.
-     * @return UUID of sent bark
+     * @return UUID of sent bark, or null if the outbound queue is too full to take the message.  Nothing is
+     *         stored when the message isn't sent.
      */
     public UUID sendMessage(String contents, DawgIdentifier recipient, Long seqId) {
         UUID recipientId = recipient.getUUID();
         final SecretKey recipientSecretKey = this.storageManager.lookupLatestSecretKeyForUuid(recipientId);
         final PublicKey recipientPublicKey = this.storageManager.lookupPublicKeyForUUID(recipientId);
         final PrivateKey senderPrivateKey = this.storageManager.lookupPrivateKey();
-        final Bark barkMessage = new Bark(contents, this.currentUser,
+        Bark barkMessage = new Bark(contents, this.currentUser,
                 seqId, senderPrivateKey, recipientPublicKey, recipientSecretKey);
+        if (this.routingTable != null) {
+            // only tag our Barks with routing on, since the tag links the Barks sent to the recipient.
+            barkMessage = barkMessage.withRouteTag(recipientPublicKey, System.currentTimeMillis());
+        }
 
         // create a plaintext object to represent the Message.
         final Message message = new Message(contents, seqId, this.currentUser);
 
         // update the Conversation object stored in the StorageManager to include Bark.
         Conversation c = this.storageManager.lookupConversation(recipientId);
+        // remember the Conversation as it was, in case the message can't be sent.
+        final List<UUID> previousMessageIds = c == null ? null : c.getMessageUUIDList();
         if (c == null) {
             // if we've never initiated a conversation with the sender before, create +
             c = new Conversation(recipient, Collections.singletonList(message.getUniqueId()));
@@ -104,7 +214,19 @@ public class MeshDaemon {
         // store the Bark in the database.
         this.storageManager.storeBark(barkMessage);
 
-        this.queue.add(barkMessage);
+        // our user's own messages skip ahead of the Barks we're relaying.
+        if (!this.queue.offer(barkMessage, OutboundQueue.TrafficClass.OWN)) {
+            // undo the stores, so the message isn't shown as sent + its seqId is reused.
+            this.storageManager.deleteBark(barkMessage.getUniqueId());
+            this.storageManager.deleteMessage(message.getUniqueId());
+            if (previousMessageIds == null) {
+                this.storageManager.deleteConversation(recipientId);
+            } else {
+                this.storageManager.storeConversation(new Conversation(c.getOtherPerson(), previousMessageIds));
+            }
+            System.err.println("Failed to send message -- the outbound queue is full");
+            return null;
+        }
         return barkMessage.getUniqueId();
     }
 }
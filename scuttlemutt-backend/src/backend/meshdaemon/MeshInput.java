@@ -1,39 +1,90 @@
 package backend.meshdaemon;
 
 import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.crypto.SecretKey;
 
 import backend.iomanager.IOManager;
 import backend.iomanager.IOManagerException;
+import backend.iomanager.ReceivedPacket;
 import storagemanager.StorageManager;
 import types.Bark;
 import types.Conversation;
 import types.DawgIdentifier;
 import types.Message;
+import types.OpenedBark;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
+import types.packet.MeshPacket;
 
 /**
  * Monitors the incoming requests from the IOManager.
+ *
+ * By default, run() receives + processes each packet on a single thread.  If
+ * a PipelineConfig is supplied, run() only receives packets, handing each one
+ * to a pool of worker threads through bounded queues.  Every packet from the
+ * same neighbor goes to the same worker, so each neighbor's packets are
+ * processed in the order they arrived, while slow storage writes for one
+ * packet don't hold up receiving the next.  Once a worker's queue is full,
+ * the receive thread waits, leaving further packets with the IOManager.
+ *
+ * If a MeshAntiSpam is supplied, each packet is checked against it before any
+ * crypto runs, so a neighbor flooding us is dropped before it costs us any
+ * decryption.  Packets from an unknown sender skip the check.
+ *
+ * If ForwardingStats are supplied, every Bark received (duplicates included)
+ * is counted in them, so MeshOutput's ForwardingPolicy can tell how widely
+ * each Bark has already spread and how many neighbors are around.
+ *
+ * If DeliveryAcks are supplied, the AckPackets received alongside the
+ * BarkPackets are recorded on the receive thread, every Bark delivered to us
+ * is acked, and Barks which have already been delivered are dropped instead
+ * of relayed.  Otherwise AckPackets are received + dropped.
  */
 public class MeshInput implements Runnable {
     // flag to declare if we're in "demo mode".  if we are, the code is adjusted so that we can only
     // receive from one user, and that user is printed to the error console.
     private static final boolean DEMO_MODE = false;
 
+    // the number of locks guarding Conversation updates, striped by sender.
+    private static final int NUM_SENDER_LOCKS = 64;
+
     // class variables
     private final IOManager ioManager;
     private final StorageManager storage;
     private final BlockingQueue<Bark> queue;
     private final PrivateKey myPrivateKey;
-    private final Set<Bark> seenBarks;
+    private final SeenBarks seenBarks;
+    // used to open the Barks in a packet concurrently.  null to open them on the input thread.
+    private final ExecutorService cryptoExecutor;
+    // decides which Barks are still worth relaying.
+    private final RelayLimitConfig relayLimits;
+    // drops packets + Barks from neighbors breaking the spam rules, or null to accept everything.
+    private final MeshAntiSpam antiSpam;
+    // counts the copies of each Bark we hear, or null to skip counting.
+    private final ForwardingStats forwardingStats;
+    // the delivery acks we know about (shared with MeshOutput), or null to ignore acks.
+    private final DeliveryAcks acks;
+    // learns next hops from the acks we hear (shared with MeshOutput), or null to skip learning.
+    private final RoutingTable routingTable;
+    // how packets are processed off the receive thread, or null to process them inline.
+    private final PipelineConfig pipeline;
+    // the packets waiting for each worker (pipeline only).
+    private final List<BlockingQueue<QueuedPacket>> workerQueues;
+    // serializes Conversation updates for the same sender across workers.
+    private final Object[] senderLocks;
+    private final Metrics metrics;
 
     // for demo only.
     private String demoOnlyUsernameReceive;
@@ -44,11 +95,50 @@ public class MeshInput implements Runnable {
      * @param ioManager   The underlying IOManager.
      * @param queue       The queue of outgoing barks to forward
      * @param storage     A StorageManager to store Barks addressed to us.
-     * @param seenBarks   A Set containing the Barks we have seen before.
+     * @param seenBarks   The Barks we have seen before.
      */
     public MeshInput(final IOManager ioManager, final BlockingQueue<Bark> queue,
                      final StorageManager storage, final PrivateKey myPrivateKey,
-                     final Set<Bark> seenBarks) {
+                     final SeenBarks seenBarks) {
+        this(ioManager, queue, storage, myPrivateKey, seenBarks, new MeshInputConfig());
+    }
+
+    /**
+     * Constructs a new MeshInput with the passed options.
+     *
+     * @param ioManager The underlying IOManager.
+     * @param queue     The queue of outgoing barks to forward
+     * @param storage   A StorageManager to store Barks addressed to us.  Must be
+     *                  safe to use from multiple threads if config.pipeline is set.
+     * @param seenBarks The Barks we have seen before.
+     * @param config    The optional parts of the MeshInput (see: MeshInputConfig).
+     */
+    public MeshInput(final IOManager ioManager, final BlockingQueue<Bark> queue,
+                     final StorageManager storage, final PrivateKey myPrivateKey,
+                     final SeenBarks seenBarks, final MeshInputConfig config) {
+        final PipelineConfig pipeline = config.pipeline;
+        if (pipeline != null && (pipeline.numWorkers < 1 || pipeline.queueCapacityPerWorker < 1)) {
+            throw new IllegalArgumentException("Invalid MeshInput pipeline:  numWorkers = " + pipeline.numWorkers
+                    + ", queueCapacityPerWorker = " + pipeline.queueCapacityPerWorker);
+        }
+        this.pipeline = pipeline;
+        this.workerQueues = new ArrayList<>();
+        if (pipeline != null) {
+            for (int i = 0; i < pipeline.numWorkers; i++) {
+                this.workerQueues.add(new LinkedBlockingQueue<>(pipeline.queueCapacityPerWorker));
+            }
+        }
+        this.senderLocks = new Object[NUM_SENDER_LOCKS];
+        for (int i = 0; i < NUM_SENDER_LOCKS; i++) {
+            this.senderLocks[i] = new Object();
+        }
+        this.metrics = new Metrics();
+        this.cryptoExecutor = config.cryptoExecutor;
+        this.relayLimits = config.relayLimits;
+        this.antiSpam = config.antiSpam;
+        this.forwardingStats = config.forwardingStats;
+        this.acks = config.acks;
+        this.routingTable = config.routingTable;
         this.ioManager = ioManager;
         this.queue = queue;
         this.storage = storage;
@@ -68,65 +158,643 @@ public class MeshInput implements Runnable {
 
     @Override
     public void run() {
+        if (this.pipeline != null) {
+            this.runPipeline();
+            return;
+        }
+        while (this.handleInput()) {
+            // keep receiving until the IOManager gives up (e.g. we were interrupted).
+        }
+    }
+
+    /**
+     * Receives + processes a single packet (a BarkPacket or an AckPacket) on
+     * the calling thread.
+     *
+     * @return false if the IOManager gave up waiting (e.g. we were interrupted).
+     */
+    public boolean handleInput() {
+        final ReceivedPacket<MeshPacket> received = this.receivePacket();
+        if (received == null || received.getPacket() == null) {
+            return false;
+        }
+        if (received.getPacket() instanceof AckPacket) {
+            this.handleAck(received.getSenderId(), (AckPacket) received.getPacket());
+            return true;
+        }
+        this.metrics.packetsReceived.increment();
+        this.processPacket(received.getSenderId(), (BarkPacket) received.getPacket());
+        return true;
+    }
+
+    /**
+     * @return the counters describing what this MeshInput has received + done.
+     */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return the number of received packets waiting for a worker (pipeline only).
+     */
+    public int getQueuedPacketCount() {
+        int queued = 0;
+        for (final BlockingQueue<QueuedPacket> workerQueue : this.workerQueues) {
+            queued += workerQueue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * Starts the workers, then receives packets + hands them to the workers
+     * until interrupted.
+     */
+    private void runPipeline() {
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < this.workerQueues.size(); i++) {
+            final BlockingQueue<QueuedPacket> workerQueue = this.workerQueues.get(i);
+            final Thread worker = new Thread(() -> this.runWorker(workerQueue), "MeshInput-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final ReceivedPacket<MeshPacket> received = this.receivePacket();
+                if (received == null || received.getPacket() == null) {
+                    // the IOManager gave up waiting because we were interrupted.
+                    break;
+                }
+                final String senderId = received.getSenderId();
+                if (received.getPacket() instanceof AckPacket) {
+                    // acks are cheap to record, so they skip the workers.
+                    this.handleAck(senderId, (AckPacket) received.getPacket());
+                    continue;
+                }
+                this.metrics.packetsReceived.increment();
+
+                // packets from an unknown sender all go to the first worker, which keeps them in order.
+                final int worker = senderId == null ? 0 : Math.floorMod(senderId.hashCode(), workers.size());
+                this.workerQueues.get(worker).put(new QueuedPacket(senderId, (BarkPacket) received.getPacket(),
+                        System.nanoTime()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Processes the packets handed to a single worker, in order, until interrupted.
+     */
+    private void runWorker(final BlockingQueue<QueuedPacket> workerQueue) {
         while (true) {
-            this.handleInput();
+            final QueuedPacket queued;
+            try {
+                queued = workerQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.metrics.queueWaitNanos.add(System.nanoTime() - queued.enqueuedNanos);
+            try {
+                this.processPacket(queued.senderId, queued.packet);
+            } catch (RuntimeException e) {
+                // don't let one bad packet take the worker down.
+                System.err.println("Failed to process packet -- " + e);
+            }
+        }
+    }
+
+    /**
+     * Records an ack, or drops it if we're ignoring acks.
+     */
+    private void handleAck(final String senderId, final AckPacket ack) {
+        if (this.acks != null) {
+            this.processAck(senderId, ack);
         }
     }
 
-    public void handleInput() {
-        BarkPacket barkPacket;
+    /**
+     * Records an ack, unless it's from a neighbor we've banned.  MeshOutput
+     * purges the acked Bark + sends the ack on once it's verified.  An ack
+     * verified as it arrives also teaches us a route towards the Bark's
+     * receiver, via its sender.
+     *
+     * @param senderId the id of the neighbor which sent the ack, or null if unknown.
+     * @param ack      the ack.
+     */
+    private void processAck(final String senderId, final AckPacket ack) {
+        this.metrics.acksReceived.increment();
+        if (this.antiSpam != null && senderId != null && this.antiSpam.isBanned(senderId)) {
+            this.metrics.acksSpam.increment();
+            return;
+        }
+        final boolean recorded = this.acks.recordAck(ack, ackedBark -> {
+            if (this.routingTable != null && senderId != null
+                    && this.routingTable.learnFromAck(senderId, ackedBark)) {
+                this.metrics.routesLearned.increment();
+            }
+        });
+        if (!recorded) {
+            this.metrics.acksDuplicate.increment();
+        }
+    }
+
+    /**
+     * Waits for the next BarkPacket or AckPacket from the IOManager.  Both are
+     * received together, so a single thread polls the IOManager for them.
+     */
+    private ReceivedPacket<MeshPacket> receivePacket() {
         // normal-only codepath
         if (!DEMO_MODE) {
-            barkPacket = ioManager.meshReceive(BarkPacket.class);
+            return ioManager.meshReceiveWithSender(MeshPacket.class);
 
         // demo-only codepath
         } else {
-            barkPacket = ioManager.singleDeviceReceive(this.demoOnlyUsernameReceive, BarkPacket.class);
+            return new ReceivedPacket<>(this.demoOnlyUsernameReceive,
+                    ioManager.singleDeviceReceive(this.demoOnlyUsernameReceive, MeshPacket.class));
         }
+    }
 
+    /**
+     * Drops the packet if its sender is spamming us, and the Barks in the packet
+     * we've seen before, then stores the ones addressed to us and relays the rest.
+     *
+     * @param senderId   the id of the neighbor which sent the packet, or null if unknown.
+     * @param barkPacket the packet.
+     */
+    private void processPacket(final String senderId, final BarkPacket barkPacket) {
         List<Bark> barkList = barkPacket.getPacketBarks();
+        final boolean checkSpam = this.antiSpam != null && senderId != null;
+        if (checkSpam && this.antiSpam.shouldDropBarkPacket(senderId, barkPacket)) {
+            if (this.antiSpam.isBanned(senderId)) {
+                this.metrics.packetsSpam.increment();
+            } else {
+                // a resent packet, which holds nothing new, or one sent faster than we take them.
+                this.metrics.barksDuplicate.add(barkList.size());
+            }
+            this.metrics.packetsProcessed.increment();
+            return;
+        }
 
+        // drop the barks we have seen before.  this is done up front (in packet order) so that
+        // duplicates within a packet are only processed once.
+        final List<Bark> newBarks = new ArrayList<>();
         for (Bark bark : barkList) {
-            // if we have seen this bark before, ignore it.
-            if (!this.seenBarks.add(bark)) {
-                continue;
+            if (checkSpam) {
+                // the spam check records the Bark as seen.
+                if (!this.antiSpam.shouldDropBark(senderId, bark)) {
+                    newBarks.add(bark);
+                } else if (this.antiSpam.isBanned(senderId)) {
+                    // a spammer's copies don't count towards how widely the Bark has spread.
+                    this.metrics.barksSpam.increment();
+                    continue;
+                } else {
+                    this.metrics.barksDuplicate.increment();
+                }
+            } else if (this.seenBarks.add(bark)) {
+                newBarks.add(bark);
+            } else {
+                this.metrics.barksDuplicate.increment();
+            }
+            if (this.forwardingStats != null) {
+                this.forwardingStats.recordHeard(senderId, bark.getUniqueId());
             }
+        }
 
-            if (bark.isForMe(this.myPrivateKey)) {
-                // this is for us! let's create a plaintext Message object from
-                // the Bark and store it for later usage.
-                storage.storeBark(bark); // TODO @John: can i delete this line?
-
-                // first, let's extract the contents of the message and the
-                // ordering number from the bark
-                final UUID senderId = bark.getSenderUUID(myPrivateKey);
-                final List<SecretKey> secretKeys = this.storage.lookupSecretKeysForUUID(senderId);
-                final PublicKey senderPubKey = this.storage.lookupPublicKeyForUUID(senderId);
-                final DawgIdentifier sender = bark.getSender(secretKeys, senderPubKey);
-                final String messageContents = bark.getContents(secretKeys, senderPubKey);
-
-                // obtain the message ordering num from the Bark.
-                final Long messageOrderingNum = bark.getOrderNum(secretKeys, senderPubKey);
-
-                // create + store the Message object.
-                final Message message = new Message(messageContents, messageOrderingNum, sender);
-                storage.storeMessage(message);
-
-                // update the Conversation stored in the StorageManager to include the Message.
-                Conversation c = this.storage.lookupConversation(senderId);
-                if (c == null) {
-                    // if we've never initiated a conversation with the sender before, create +
-                    // store a new Conversation.
-                    c = new Conversation(sender, Collections.singletonList(message.getUniqueId()));
-                    this.storage.storeConversation(c);
-                } else {
-                    // update existing obj
-                    c.storeMessageUUID(message.getUniqueId());
-                    this.storage.storeConversation(c);
+        // drop the barks which have already been delivered.  they're still marked as seen.
+        if (this.acks != null) {
+            newBarks.removeIf(bark -> {
+                if (!this.acks.isAcked(bark)) {
+                    return false;
                 }
+                this.metrics.barksAcked.increment();
+                return true;
+            });
+        }
+
+        // the keys we share with our contacts; used to cheaply rule out barks which are not for us.
+        final List<SecretKey> knownKeys = this.storage.listAllSecretKeys();
+
+        // do the crypto for every bark (possibly in parallel), then apply the side effects in
+        // packet order so storage + conversation updates are deterministic.
+        for (final OpenResult result : this.openBarks(newBarks, knownKeys)) {
+            if (result.openedBark != null) {
+                this.storeOpenedBark(result.openedBark);
+                this.metrics.barksStored.increment();
+            } else if (!result.failed) {
+                this.relay(result.bark);
+            } else {
+                this.metrics.barksFailed.increment();
+            }
+        }
+        this.metrics.packetsProcessed.increment();
+    }
+
+    /**
+     * Puts a Bark which isn't for us on the output buffer, unless it has run
+     * out of hops or expired.  The relayed copy has one fewer hop remaining.
+     *
+     * @param bark the Bark to relay.
+     */
+    private void relay(final Bark bark) {
+        if (this.relayLimits.enforceExpiry
+                && bark.isExpired(System.currentTimeMillis() - this.relayLimits.clockSkewMillis)) {
+            this.metrics.barksNotRelayed.increment();
+            return;
+        }
+        if (!this.relayLimits.enforceHopLimit) {
+            this.enqueueRelay(bark);
+            return;
+        }
+
+        // don't let the sender pick an arbitrarily large hop count.
+        final int hops = Math.min(bark.getHopsRemaining(), this.relayLimits.maxHopsRemaining);
+        if (hops <= 0) {
+            this.metrics.barksNotRelayed.increment();
+            return;
+        }
+        this.enqueueRelay(bark.withHopsRemaining(hops - 1));
+    }
+
+    /**
+     * Puts a Bark on the output buffer.  If the buffer is full, waits a little
+     * for room (slowing down how fast we take in packets) before the buffer
+     * drops a Bark.
+     */
+    private void enqueueRelay(final Bark bark) {
+        try {
+            if (this.queue.offer(bark, this.relayLimits.maxQueueWaitMillis, TimeUnit.MILLISECONDS)) {
+                this.metrics.barksRelayed.increment();
+                return;
+            }
+        } catch (InterruptedException e) {
+            // leave the flag set so the worker stops.
+            Thread.currentThread().interrupt();
+        }
+        this.metrics.barksNotRelayed.increment();
+    }
+
+    /**
+     * Runs openBark() on each of the passed Barks.  If a crypto executor was
+     * supplied, the Barks are opened concurrently.
+     *
+     * @param barks     the Barks to open.
+     * @param knownKeys every SecretKey we share with a contact.
+     * @return the results, in the same order as the passed Barks.
+     */
+    private List<OpenResult> openBarks(final List<Bark> barks, final List<SecretKey> knownKeys) {
+        final List<OpenResult> results = new ArrayList<>(barks.size());
+        if (this.cryptoExecutor == null || barks.size() <= 1) {
+            for (final Bark bark : barks) {
+                results.add(this.openBark(bark, knownKeys));
+            }
+            return results;
+        }
+
+        final List<Future<OpenResult>> futures = new ArrayList<>(barks.size());
+        for (final Bark bark : barks) {
+            futures.add(this.cryptoExecutor.submit(() -> this.openBark(bark, knownKeys)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                System.err.println("Failed to open bark '" + barks.get(i).getUniqueId() + "' -- " + e.getCause());
+                results.add(new OpenResult(barks.get(i), null, true));
+            } catch (InterruptedException e) {
+                // we're shutting down; don't wait for the rest.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Does the (side-effect free) crypto for a single Bark.
+     *
+     * @param bark      the Bark to open.
+     * @param knownKeys every SecretKey we share with a contact.
+     * @return the result of trying to open the Bark.
+     */
+    private OpenResult openBark(final Bark bark, final List<SecretKey> knownKeys) {
+        // if the recipient tag rules us out, forward it without doing any asymmetric crypto.
+        if (!bark.mayBeForMe(knownKeys)) {
+            return new OpenResult(bark, null, false);
+        }
+
+        // decrypt the bark exactly once. if it isn't for us, we get null.
+        try {
+            return new OpenResult(bark, bark.open(this.myPrivateKey, this.storage), false);
+        } catch (RuntimeException e) {
+            // the bark was addressed to us but could not be read (unknown sender,
+            // bad key, bad signature, etc.).  there's nothing useful to do with it.
+            System.err.println("Failed to open bark '" + bark.getUniqueId() + "' -- " + e);
+            return new OpenResult(bark, null, true);
+        }
+    }
+
+    /**
+     * Stores a Bark which was addressed to us, along with its plaintext Message,
+     * and adds the Message to the Conversation with the sender.
+     *
+     * @param openedBark the opened Bark.
+     */
+    private void storeOpenedBark(final OpenedBark openedBark) {
+        // this is for us! let's create a plaintext Message object from
+        // the Bark and store it for later usage.
+        storage.storeBark(openedBark.getBark()); // TODO @John: can i delete this line?
+
+        // extract the contents of the message and the ordering number from the bark.
+        final UUID senderId = openedBark.getSenderUUID();
+        final DawgIdentifier sender = openedBark.getSender();
+        final String messageContents = openedBark.getContents();
+        final Long messageOrderingNum = openedBark.getOrderNum();
+
+        // create + store the Message object.
+        final Message message = new Message(messageContents, messageOrderingNum, sender);
+        storage.storeMessage(message);
+
+        // let the relays still carrying the Bark know it arrived.
+        if (this.acks != null && openedBark.getAckSecret() != null) {
+            this.acks.acknowledge(openedBark.getBark().getUniqueId(), openedBark.getAckSecret());
+        }
+
+        // update the Conversation stored in the StorageManager to include the Message.  workers may be
+        // storing other Messages from the same sender, so the read-modify-write must hold the sender's lock.
+        synchronized (this.senderLocks[Math.floorMod(senderId.hashCode(), NUM_SENDER_LOCKS)]) {
+            Conversation c = this.storage.lookupConversation(senderId);
+            if (c == null) {
+                // if we've never initiated a conversation with the sender before, create +
+                // store a new Conversation.
+                c = new Conversation(sender, Collections.singletonList(message.getUniqueId()));
+                this.storage.storeConversation(c);
             } else {
-                this.queue.add(bark); // put it on output buffer
+                // update existing obj
+                c.storeMessageUUID(message.getUniqueId());
+                this.storage.storeConversation(c);
             }
         }
     }
+
+    /**
+     * The outcome of opening a single Bark.
+     */
+    private static class OpenResult {
+        private final Bark bark;
+        // non-null if the Bark was for us.
+        private final OpenedBark openedBark;
+        // true if the Bark was for us but could not be read.
+        private final boolean failed;
+
+        private OpenResult(final Bark bark, final OpenedBark openedBark, final boolean failed) {
+            this.bark = bark;
+            this.openedBark = openedBark;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * A packet waiting for a worker.
+     */
+    private static class QueuedPacket {
+        // the neighbor which sent the packet, or null if unknown.
+        private final String senderId;
+        private final BarkPacket packet;
+        // when the packet was handed to the worker (System.nanoTime()).
+        private final long enqueuedNanos;
+
+        private QueuedPacket(final String senderId, final BarkPacket packet, final long enqueuedNanos) {
+            this.senderId = senderId;
+            this.packet = packet;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Counters describing what a MeshInput has received + done.  Safe to
+     * read from any thread while the MeshInput runs.
+     */
+    public static class Metrics {
+        private final LongAdder packetsReceived = new LongAdder();
+        private final LongAdder packetsProcessed = new LongAdder();
+        private final LongAdder queueWaitNanos = new LongAdder();
+        private final LongAdder packetsSpam = new LongAdder();
+        private final LongAdder barksDuplicate = new LongAdder();
+        private final LongAdder barksStored = new LongAdder();
+        private final LongAdder barksRelayed = new LongAdder();
+        private final LongAdder barksNotRelayed = new LongAdder();
+        private final LongAdder barksFailed = new LongAdder();
+        private final LongAdder barksSpam = new LongAdder();
+        private final LongAdder barksAcked = new LongAdder();
+        private final LongAdder acksReceived = new LongAdder();
+        private final LongAdder acksDuplicate = new LongAdder();
+        private final LongAdder acksSpam = new LongAdder();
+        private final LongAdder routesLearned = new LongAdder();
+
+        /**
+         * @return the number of packets received from the IOManager.
+         */
+        public long getPacketsReceived() {
+            return this.packetsReceived.sum();
+        }
+
+        /**
+         * @return the number of packets fully processed, including packets dropped as spam.
+         */
+        public long getPacketsProcessed() {
+            return this.packetsProcessed.sum();
+        }
+
+        /**
+         * @return the total time packets spent waiting for a worker, in nanoseconds (pipeline only).
+         */
+        public long getQueueWaitNanos() {
+            return this.queueWaitNanos.sum();
+        }
+
+        /**
+         * @return the number of packets dropped because their sender was spamming us.
+         */
+        public long getPacketsSpam() {
+            return this.packetsSpam.sum();
+        }
+
+        /**
+         * @return the number of Barks dropped because we had seen them before.
+         */
+        public long getBarksDuplicate() {
+            return this.barksDuplicate.sum();
+        }
+
+        /**
+         * @return the number of Barks addressed to us which were stored.
+         */
+        public long getBarksStored() {
+            return this.barksStored.sum();
+        }
+
+        /**
+         * @return the number of Barks put on the output queue to be relayed.
+         */
+        public long getBarksRelayed() {
+            return this.barksRelayed.sum();
+        }
+
+        /**
+         * @return the number of Barks not relayed because they expired, ran out of hops,
+         *         or the output buffer was full.
+         */
+        public long getBarksNotRelayed() {
+            return this.barksNotRelayed.sum();
+        }
+
+        /**
+         * @return the number of Barks addressed to us which could not be read.
+         */
+        public long getBarksFailed() {
+            return this.barksFailed.sum();
+        }
+
+        /**
+         * @return the number of Barks dropped because their sender was spamming us.
+         */
+        public long getBarksSpam() {
+            return this.barksSpam.sum();
+        }
+
+        /**
+         * @return the number of Barks dropped because they had already been delivered.
+         */
+        public long getBarksAcked() {
+            return this.barksAcked.sum();
+        }
+
+        /**
+         * @return the number of AckPackets received from the IOManager.
+         */
+        public long getAcksReceived() {
+            return this.acksReceived.sum();
+        }
+
+        /**
+         * @return the number of AckPackets dropped because we had heard the ack before, or it was forged.
+         */
+        public long getAcksDuplicate() {
+            return this.acksDuplicate.sum();
+        }
+
+        /**
+         * @return the number of AckPackets dropped because their sender was spamming us.
+         */
+        public long getAcksSpam() {
+            return this.acksSpam.sum();
+        }
+
+        /**
+         * @return the number of routes learned from the acks we heard.
+         */
+        public long getRoutesLearned() {
+            return this.routesLearned.sum();
+        }
+    }
+
+    /**
+     * The optional parts of a MeshInput.  Everything is off by default:  Barks
+     * are opened + processed on the receive thread, every Bark is accepted,
+     * and acks are ignored.
+     */
+    public static class MeshInputConfig {
+        // The executor used to open the Barks in a packet concurrently, or null
+        // to open them on the thread processing the packet.
+        public ExecutorService cryptoExecutor;
+
+        // Decides which Barks are still worth relaying.
+        public RelayLimitConfig relayLimits;
+
+        // How packets are processed off the receive thread, or null to process
+        // them on the receive thread.  If set, the StorageManager must be safe to
+        // use from multiple threads.
+        public PipelineConfig pipeline;
+
+        // Decides which packets + Barks are spam, or null to accept everything.
+        // Should share the MeshInput's SeenBarks.
+        public MeshAntiSpam antiSpam;
+
+        // Where to count the Barks we hear (shared with MeshOutput), or null to
+        // skip counting.
+        public ForwardingStats forwardingStats;
+
+        // Where to record delivery acks (shared with MeshOutput), or null to
+        // ignore acks.
+        public DeliveryAcks acks;
+
+        // Where to learn routes from the acks we hear (shared with MeshOutput),
+        // or null to skip learning.  Needs acks.
+        public RoutingTable routingTable;
+
+        public MeshInputConfig() {
+            cryptoExecutor = null;
+            relayLimits = new RelayLimitConfig();
+            pipeline = null;
+            antiSpam = null;
+            forwardingStats = null;
+            acks = null;
+            routingTable = null;
+        }
+    }
+
+    /**
+     * Configures how MeshInput processes packets off the receive thread.
+     */
+    public static class PipelineConfig {
+        // The number of worker threads processing packets.
+        public int numWorkers;
+
+        // The most received packets waiting for each worker.  Once a worker's queue
+        // is full, receiving waits until the worker catches up.
+        public int queueCapacityPerWorker;
+
+        public PipelineConfig() {
+            numWorkers = Runtime.getRuntime().availableProcessors();
+            queueCapacityPerWorker = 64;
+        }
+    }
+
+    /**
+     * Configures which Barks MeshInput relays.
+     */
+    public static class RelayLimitConfig {
+        // If true, Barks with no hops remaining are dropped instead of relayed.
+        public boolean enforceHopLimit;
+
+        // Barks claiming more hops than this are relayed as if they had this many.
+        // Must be >= 0.
+        public int maxHopsRemaining;
+
+        // If true, expired Barks are dropped instead of relayed.
+        public boolean enforceExpiry;
+
+        // How long past its expiry a Bark is still relayed, to allow for clock skew
+        // between devices.
+        public long clockSkewMillis;
+
+        // How long to wait for room on a full output buffer before the buffer's
+        // overflow policy drops a Bark.  Waiting slows down how fast we take in
+        // packets from a neighbor flooding us.
+        public long maxQueueWaitMillis;
+
+        public RelayLimitConfig() {
+            enforceHopLimit = true;
+            maxHopsRemaining = Bark.DEFAULT_HOP_LIMIT;
+            enforceExpiry = true;
+            clockSkewMillis = 5 * 60 * 1000;
+            maxQueueWaitMillis = 100;
+        }
+    }
 }
@@ -2,108 +2,1125 @@ package backend.meshdaemon;
 
 import backend.iomanager.IOManager;
 import backend.iomanager.IOManagerException;
+import storagemanager.MapRelayBuffer;
+import storagemanager.RelayBuffer;
 import types.Bark;
+import types.UuidBloomFilter;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
+import types.packet.DigestPacket;
+import types.packet.Packet;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Controls outbound messages from the mesh daemon.
  *
+ * Every packet built from the queue stays pending until it has been sent to
+ * as many distinct neighbors as the ForwardingPolicy asks for (by default,
+ * NUM_REBROADCAST_BEFORE_DROP).  Each connected neighbor has
+ * its own queue of the pending packets it hasn't been sent yet, and neighbors
+ * take turns (round-robin) sending one packet each.  This means a packet
+ * waiting on a second neighbor doesn't hold up the packets behind it.
+ *
+ * Each neighbor may be sent at most maxPacketsPerSecond BarkPackets, so a
+ * neighbor we're catching up (e.g. after a digest exchange) isn't sent its
+ * whole backlog faster than its MeshAntiSpam takes packets.
+ *
+ * If a send executor is supplied, each round's sends run concurrently, so a
+ * slow neighbor only delays its own queue.  A neighbor with a send still in
+ * flight sits out until it completes; completed sends are recorded on the
+ * MeshOutput thread at the start of the next round.
+ *
+ * If a digest executor is supplied, MeshOutput also keeps every Bark it sends
+ * in a RelayBuffer (by default, an in-memory buffer of the last MAX_HELD_BARKS
+ * Barks), and swaps a DigestPacket (a Bloom filter of the ids of the held
+ * Barks) with each neighbor when it connects.  Once the neighbor's digest
+ * arrives, it is sent only the held Barks it doesn't already have, including
+ * Barks which are no longer pending.  With a persistent RelayBuffer, Barks
+ * sent before a restart are still offered to neighbors met afterwards.  A neighbor which doesn't
+ * answer within DIGEST_WAIT_MILLIS is sent every pending packet instead.
+ *
+ * If ForwardingStats are supplied, the ForwardingPolicy also decides whether
+ * each Bark we received from a neighbor is worth relaying at all, as it is
+ * packed into a packet.  Our own Barks are always sent.
+ *
+ * If DeliveryAcks are supplied, each round MeshOutput sends the acks MeshInput
+ * queued on to every neighbor, and purges the newly acked Barks from the
+ * queue, the pending packets and the RelayBuffer, marking them as seen.  Acked
+ * Barks taken from the queue later are skipped.
+ *
+ * If a RoutingTable is supplied, each Bark taken from the queue is sent only
+ * to its learned next hop when that neighbor is connected, and flooded as
+ * usual otherwise.  A Bark whose next hop disconnects before it's sent is
+ * flooded instead, and so is a routed Bark which isn't acked within
+ * routedAckTimeoutMillis, in case its route has gone stale.  Routed Barks
+ * are still offered to new neighbors which are missing them.
+ *
  * This class is runnable and should be run in a separate thread since it might
  * block (it will probably block).
  */
 public class MeshOutput implements Runnable {
-    // Number of unique devices that each packet must be broadcasted to before being dropped.
+    // Number of unique devices that each packet must be broadcasted to before being dropped,
+    // unless a ForwardingPolicy says otherwise.
     public static final int NUM_REBROADCAST_BEFORE_DROP = 2;
 
     private static final long RETRY_SLEEP_MILLIS = 100;
 
+    // the most packets we keep around waiting for more neighbors.  the oldest is dropped past this.
+    private static final int MAX_PENDING_PACKETS = 1024;
+
+    // batching defaults used by MeshDaemon.  Nearby Connections caps BYTES payloads at 32KB.
+    public static final int DEFAULT_MAX_BARKS_PER_PACKET = 32;
+    public static final int DEFAULT_MAX_PACKET_BYTES = 30 * 1024;
+    public static final long DEFAULT_LINGER_MILLIS = 20;
+    // the number of concurrent sends MeshDaemon allows.
+    public static final int DEFAULT_SEND_THREADS = 4;
+    // the most BarkPackets MeshDaemon sends each neighbor per second.  MeshAntiSpam's default
+    // rates are sized against this.
+    public static final double DEFAULT_MAX_PACKETS_PER_SECOND = 5;
+    // how long a routed Bark waits for its ack before it's flooded.
+    public static final long DEFAULT_ROUTED_ACK_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // the most recently sent Barks the default RelayBuffer holds + offers to neighbors which connect.
+    public static final int MAX_HELD_BARKS = 1024;
+    // the most held Barks (newest first) described by our digest, which keeps it under ~20KB.
+    private static final int MAX_DIGEST_BARKS = 16 * 1024;
+    // how long we wait for a new neighbor's digest before sending it every pending packet.
+    public static final long DIGEST_WAIT_MILLIS = 5000;
+    // the false positive rate of the digests we send.  a false positive means a neighbor
+    // doesn't get a Bark it was missing.
+    private static final double DIGEST_FALSE_POSITIVE_RATE = 0.01;
+
     private final IOManager ioManager;
     private final BlockingQueue<Bark> queue;
+    private final int maxBarksPerPacket;
+    private final int maxPacketBytes;
+    private final long lingerMillis;
+    // used to send to neighbors concurrently.  null to send on the MeshOutput thread.
+    private final ExecutorService sendExecutor;
+    // used to exchange digests with new neighbors.  null to skip the digest exchange.
+    private final ExecutorService digestExecutor;
 
-    private BarkPacket currentBarkPacket;
-    private Set<String> successfulSends;
-    private Set<Bark> seenBarks;
+    // every packet which still needs to be sent to more neighbors, oldest first.
+    private final Set<PendingPacket> pendingPackets;
+    // the pending packets each connected neighbor has not been sent yet, oldest first.
+    private final Map<String, Deque<PendingPacket>> neighborQueues;
+    // the neighbor (by position in neighborQueues) which sends first in the next round.
+    private int nextNeighborIndex;
+    // the send each neighbor has in flight (concurrent mode only).
+    private final Map<String, InFlightSend> inFlightSends;
+    // the least time between two packets sent to the same neighbor, or 0 to send as fast as we can.
+    private final long sendIntervalNanos;
+    // when each neighbor may next be sent a packet (System.nanoTime()).  only used when pacing.
+    private final Map<String, Long> nextSendNanos;
+    private final SeenBarks seenBarks;
+    // the Barks we've sent + offer to new neighbors, or null if we don't exchange digests.
+    private final RelayBuffer relayBuffer;
+    // the digest exchange of each new neighbor which hasn't finished yet.
+    private final Map<String, DigestExchange> digestExchanges;
+    // decides which relayed Barks to send + how many neighbors to send each packet to.
+    private final ForwardingPolicy forwardingPolicy;
+    // what MeshInput has observed, or null to relay every Bark.
+    private final ForwardingStats forwardingStats;
+    // the number of Barks the ForwardingPolicy chose not to relay.
+    private final AtomicLong suppressedBarks;
+    // the delivery acks MeshInput has heard (shared with it), or null to ignore acks.
+    private final DeliveryAcks acks;
+    // the number of Barks dropped because they had already been delivered.
+    private final AtomicLong ackedBarks;
+    // the next hops learned towards each receiver (shared with MeshInput), or null to flood every Bark.
+    private final RoutingTable routingTable;
+    // the number of Barks sent only to their next hop.
+    private final AtomicLong routedBarks;
+    // how long a routed packet waits for its Barks to be acked before it's flooded.
+    private final long routedAckTimeoutMillis;
+    // a Bark taken from the queue which didn't fit in the last packet.
+    private Bark leftoverBark;
 
     /**
-     * Constructs a new MeshOutput.
+     * Constructs a new MeshOutput which sends a single Bark per packet.
      *
      * @param ioManager The underlying IOManager.
      * @param queue     A queue of barks to send out.
      */
     public MeshOutput(final IOManager ioManager, final BlockingQueue<Bark> queue,
-                      Set<Bark> seenBarks) {
+                      final SeenBarks seenBarks) {
+        this(ioManager, queue, seenBarks, new MeshOutputConfig());
+    }
+
+    /**
+     * Constructs a new MeshOutput with the passed options.
+     *
+     * @param ioManager The underlying IOManager.  Must support concurrent sends
+     *                  if config.sendExecutor is set.
+     * @param queue     A queue of barks to send out.
+     * @param seenBarks The Barks we have seen before.
+     * @param config    The optional parts of the MeshOutput (see: MeshOutputConfig).
+     */
+    public MeshOutput(final IOManager ioManager, final BlockingQueue<Bark> queue,
+                      final SeenBarks seenBarks, final MeshOutputConfig config) {
+        final int maxBarksPerPacket = config.maxBarksPerPacket;
+        final int maxPacketBytes = config.maxPacketBytes;
+        final long lingerMillis = config.lingerMillis;
+        if (maxBarksPerPacket < 1 || maxPacketBytes < 1 || lingerMillis < 0 || !(config.maxPacketsPerSecond > 0)) {
+            throw new IllegalArgumentException("Invalid MeshOutput batching parameters:  maxBarks = "
+                    + maxBarksPerPacket + ", maxBytes = " + maxPacketBytes + ", lingerMillis = " + lingerMillis
+                    + ", maxPacketsPerSecond = " + config.maxPacketsPerSecond);
+        }
         this.ioManager = ioManager;
         this.queue = queue;
-        this.currentBarkPacket = null;
+        this.maxBarksPerPacket = maxBarksPerPacket;
+        this.maxPacketBytes = maxPacketBytes;
+        this.lingerMillis = lingerMillis;
         this.seenBarks = seenBarks;
-        this.successfulSends = new HashSet<>();
+        this.pendingPackets = new LinkedHashSet<>();
+        this.neighborQueues = new LinkedHashMap<>();
+        this.nextNeighborIndex = 0;
+        this.sendExecutor = config.sendExecutor;
+        this.inFlightSends = new HashMap<>();
+        this.sendIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.maxPacketsPerSecond);
+        this.nextSendNanos = new HashMap<>();
+        this.digestExecutor = config.digestExecutor;
+        if (config.digestExecutor == null) {
+            this.relayBuffer = null;
+        } else if (config.relayBuffer == null) {
+            this.relayBuffer = new MapRelayBuffer(MAX_HELD_BARKS, MapRelayBuffer.DEFAULT_MAX_BYTES,
+                    RelayBuffer.EvictionPolicy.OLDEST_FIRST);
+        } else {
+            this.relayBuffer = config.relayBuffer;
+        }
+        this.digestExchanges = new HashMap<>();
+        this.forwardingPolicy = config.forwardingPolicy == null
+                ? new FixedForwardingPolicy() : config.forwardingPolicy;
+        this.forwardingStats = config.forwardingStats;
+        this.suppressedBarks = new AtomicLong(0);
+        this.acks = config.acks;
+        this.ackedBarks = new AtomicLong(0);
+        this.routingTable = config.routingTable;
+        this.routedBarks = new AtomicLong(0);
+        this.routedAckTimeoutMillis = config.routedAckTimeoutMillis;
     }
 
+    /**
+     * @return the number of relayed Barks the ForwardingPolicy chose not to send.
+     */
+    public long getSuppressedBarkCount() {
+        return this.suppressedBarks.get();
+    }
+
+    /**
+     * @return the number of Barks dropped because they had already been delivered.
+     */
+    public long getAckedBarkCount() {
+        return this.ackedBarks.get();
+    }
+
+    /**
+     * @return the number of Barks sent only to their learned next hop instead of being flooded.
+     */
+    public long getRoutedBarkCount() {
+        return this.routedBarks.get();
+    }
+
+    /**
+     * Sends until the thread is interrupted, or our executors are shut down
+     * (see: MeshDaemon.shutdown).
+     */
     @Override
     public void run() {
-        while (true) {
-            this.handleOutput();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                this.handleOutput();
+            } catch (RejectedExecutionException e) {
+                // the executors were shut down under us, so we're shutting down too.
+                return;
+            }
         }
     }
 
     public void handleOutput() {
         // TODO list:
         // - Create BarkPackets tailored for each receiver.
-        // - Keep track of who successfully got a packet.
         // - Verify valid receivers from the DatabaseManager.
         // - Maintain/use a list of receivers that are blocked (e.g. for spam).
         // - Sign/encrypt messages before sending out.
-        if (this.currentBarkPacket == null) {
+        this.collectFinishedSends();
+        this.collectFinishedDigests();
+        this.purgeAcked();
+        this.floodUnackedRoutes();
+
+        Set<String> receiverIds;
+        try {
+            receiverIds = this.ioManager.availableConnections();
+        } catch (IOManagerException e) {
+            System.err.println("Failed to get available connections -- " + e);
+            return;
+        }
+
+        if (receiverIds.isEmpty()) {
+            // Wait before trying again for performance.
+            // Could be arbitrarily long before we have any connections.
             try {
-                Bark nextBark = this.queue.take();
-                this.seenBarks.add(nextBark);
-                this.currentBarkPacket = new BarkPacket(List.of(nextBark));
+                Thread.sleep(RETRY_SLEEP_MILLIS);
             } catch (InterruptedException _e) {
-                // TODO: Add logging/cleanup as necessary.
-                return;
+                // let run() see the interrupt.
+                Thread.currentThread().interrupt();
             }
+            return;
         }
+        this.updateNeighbors(receiverIds);
+        this.sendAcks(receiverIds);
 
-        Set<String> receiverIds;
+        // pull in (at most) one new packet per round.  only block waiting for it if
+        // none of our neighbors have anything left to send, and only until the next
+        // in-flight send might have finished.
+        final long maxWaitMillis;
+        final long pacedWaitMillis = this.millisUntilPacedSend();
+        if (this.hasQueuedSends()) {
+            maxWaitMillis = 0;
+        } else if (pacedWaitMillis >= 0) {
+            maxWaitMillis = Math.min(pacedWaitMillis, RETRY_SLEEP_MILLIS);
+        } else if (this.inFlightSends.isEmpty() && this.digestExchanges.isEmpty() && this.acks == null
+                && this.routingTable == null) {
+            maxWaitMillis = Long.MAX_VALUE;
+        } else {
+            maxWaitMillis = RETRY_SLEEP_MILLIS;
+        }
         try {
-            receiverIds = this.ioManager.availableConnections();
+            final BarkPacket nextPacket = this.nextBarkPacket(maxWaitMillis);
+            if (nextPacket != null) {
+                this.routeOrFlood(nextPacket);
+            }
+        } catch (InterruptedException _e) {
+            // let run() see the interrupt.
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        this.sendRound();
+    }
+
+    /**
+     * Gives each connected neighbor a turn to send the oldest pending packet it
+     * hasn't been sent yet.  The neighbor which goes first rotates each round.
+     * Neighbors which were sent a packet too recently sit out.
+     */
+    private void sendRound() {
+        final long nowNanos = System.nanoTime();
+        final List<String> neighbors = new ArrayList<>(this.neighborQueues.keySet());
+        for (int i = 0; i < neighbors.size(); i++) {
+            final String receiverId = neighbors.get((this.nextNeighborIndex + i) % neighbors.size());
+            if (this.inFlightSends.containsKey(receiverId) || this.isPaced(receiverId, nowNanos)) {
+                continue;
+            }
+            final PendingPacket pending = this.peekPending(this.neighborQueues.get(receiverId));
+            if (pending == null) {
+                continue;
+            }
+
+            // every receiver is sent the same (immutable) packet, unless acks cut it down in between.
+            final BarkPacket packet = pending.packet;
+            if (this.sendIntervalNanos > 0) {
+                this.nextSendNanos.put(receiverId, nowNanos + this.sendIntervalNanos);
+            }
+            if (this.sendExecutor == null) {
+                if (this.trySend(receiverId, packet)) {
+                    this.recordDelivery(receiverId, pending);
+                }
+            } else {
+                this.inFlightSends.put(receiverId, new InFlightSend(pending,
+                        this.sendExecutor.submit(() -> this.trySend(receiverId, packet))));
+            }
+        }
+        this.nextNeighborIndex = neighbors.isEmpty() ? 0 : (this.nextNeighborIndex + 1) % neighbors.size();
+    }
+
+    /**
+     * Sends the packet to the receiver.
+     *
+     * @return true if the send succeeded.
+     */
+    private boolean trySend(final String receiverId, final Packet packet) {
+        try {
+            this.ioManager.send(receiverId, packet);
+            return true;
         } catch (IOManagerException e) {
-            System.err.println("Failed to get available connections -- " + e);
+            System.err.println("Failed to send to '" + receiverId + "' -- " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Records that the receiver got the pending packet, and drops the packet
+     * once it reaches the send threshold.  A failed send isn't recorded, which
+     * leaves the packet at the head of the receiver's queue to retry next round.
+     */
+    private void recordDelivery(final String receiverId, final PendingPacket pending) {
+        final Deque<PendingPacket> neighborQueue = this.neighborQueues.get(receiverId);
+        if (neighborQueue != null) {
+            neighborQueue.remove(pending);
+        }
+        pending.successfulSends.add(receiverId);
+        if (this.relayBuffer != null) {
+            for (final Bark bark : pending.packet.getPacketBarks()) {
+                this.relayBuffer.recordForward(bark.getUniqueId());
+            }
+        }
+
+        // Only drop the packet if we reached the send threshold.  a packet built for a
+        // single neighbor is done once that neighbor has it, unless it was routed:  those
+        // wait for their acks (see: floodUnackedRoutes).
+        if (!pending.routed
+                && (pending.targetId != null || pending.successfulSends.size() >= this.sendsBeforeDrop())) {
+            this.pendingPackets.remove(pending);
+        }
+
+        // a packet cut down from a pending packet delivers that packet too.
+        if (pending.parent != null && this.pendingPackets.contains(pending.parent)) {
+            this.recordDelivery(receiverId, pending.parent);
+        }
+    }
+
+    /**
+     * Records the outcome of every in-flight send which has finished.
+     */
+    private void collectFinishedSends() {
+        final Iterator<Map.Entry<String, InFlightSend>> sends = this.inFlightSends.entrySet().iterator();
+        while (sends.hasNext()) {
+            final Map.Entry<String, InFlightSend> send = sends.next();
+            if (!send.getValue().result.isDone()) {
+                continue;
+            }
+            sends.remove();
+
+            boolean succeeded;
+            try {
+                succeeded = send.getValue().result.get();
+            } catch (ExecutionException | InterruptedException | CancellationException e) {
+                System.err.println("Failed to send to '" + send.getKey() + "' -- " + e);
+                succeeded = false;
+            }
+            if (succeeded) {
+                this.recordDelivery(send.getKey(), send.getValue().pending);
+            }
+        }
+    }
+
+    /**
+     * Sends every ack waiting to go out to every connected neighbor.  Acks are
+     * small + best-effort, so a failed send isn't retried.
+     */
+    private void sendAcks(final Set<String> receiverIds) {
+        if (this.acks == null) {
+            return;
+        }
+        for (final AckPacket ack : this.acks.drainAcksToSend()) {
+            for (final String receiverId : receiverIds) {
+                if (this.sendExecutor == null) {
+                    this.trySend(receiverId, ack);
+                } else {
+                    this.sendExecutor.submit(() -> this.trySend(receiverId, ack));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the Barks acked since the last round from the queue, the pending
+     * packets + the RelayBuffer, marking them as seen.
+     */
+    private void purgeAcked() {
+        if (this.acks == null) {
             return;
         }
+        final Set<UUID> ackedIds = new HashSet<>(this.acks.drainNewlyAcked());
+        if (ackedIds.isEmpty()) {
+            return;
+        }
+
+        this.queue.removeIf(bark -> ackedIds.contains(bark.getUniqueId()) && this.dropIfAcked(bark));
+        if (this.leftoverBark != null && ackedIds.contains(this.leftoverBark.getUniqueId())
+                && this.dropIfAcked(this.leftoverBark)) {
+            this.leftoverBark = null;
+        }
 
-        if (receiverIds.size() > 0) {
-            // Don't resend to previously sent devices.
-            receiverIds.removeAll(this.successfulSends);
+        // cut the acked Barks out of the pending packets.  the neighbor queues skip packets
+        // which are no longer pending.
+        final Iterator<PendingPacket> pendingPackets = this.pendingPackets.iterator();
+        while (pendingPackets.hasNext()) {
+            final PendingPacket pending = pendingPackets.next();
+            final List<Bark> barks = pending.packet.getPacketBarks();
+            final List<Bark> unackedBarks = new ArrayList<>(barks.size());
+            for (final Bark bark : barks) {
+                if (!ackedIds.contains(bark.getUniqueId()) || !this.dropIfAcked(bark)) {
+                    unackedBarks.add(bark);
+                }
+            }
+            if (unackedBarks.isEmpty()) {
+                pendingPackets.remove();
+            } else if (unackedBarks.size() < barks.size()) {
+                pending.packet = new BarkPacket(unackedBarks);
+            }
+        }
 
-            for (String receiverId : receiverIds) {
+        if (this.relayBuffer != null) {
+            for (final UUID barkId : ackedIds) {
+                final Bark held = this.relayBuffer.lookup(barkId);
+                if (held != null && this.acks.isAcked(held)) {
+                    this.relayBuffer.remove(barkId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the Bark as seen + counts it if it has been acked.
+     *
+     * @return true if the Bark has been acked, and should be dropped.
+     */
+    private boolean dropIfAcked(final Bark bark) {
+        if (this.acks == null || !this.acks.isAcked(bark)) {
+            return false;
+        }
+        this.seenBarks.add(bark);
+        this.ackedBarks.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Finishes every digest exchange whose digest has arrived or which has
+     * timed out, queueing the Barks each neighbor is missing ahead of any
+     * packets queued for it since it connected.
+     */
+    private void collectFinishedDigests() {
+        final Iterator<Map.Entry<String, DigestExchange>> exchanges = this.digestExchanges.entrySet().iterator();
+        while (exchanges.hasNext()) {
+            final Map.Entry<String, DigestExchange> exchange = exchanges.next();
+            final String receiverId = exchange.getKey();
+            DigestPacket theirDigest = null;
+            if (exchange.getValue().theirDigest.isDone()) {
                 try {
-                    this.ioManager.send(receiverId, new BarkPacket(this.currentBarkPacket));
-                    successfulSends.add(receiverId);
-                } catch (IOManagerException e) {
-                    System.err.println("Failed to send to '" + receiverId + "' -- " + e);
+                    theirDigest = exchange.getValue().theirDigest.get();
+                } catch (ExecutionException | InterruptedException | CancellationException e) {
+                    System.err.println("Failed to exchange digests with '" + receiverId + "' -- " + e);
                 }
+            } else if (System.nanoTime() - exchange.getValue().deadlineNanos < 0) {
+                continue;
+            } else {
+                exchange.getValue().theirDigest.cancel(true);
+                this.ioManager.discardReceived(receiverId, DigestPacket.class);
+                System.err.println("Timed out waiting for a digest from '" + receiverId + "'");
             }
+            exchanges.remove();
 
-            // Only drop the current packet if we reached the send threshold.
-            if (successfulSends.size() >= NUM_REBROADCAST_BEFORE_DROP) {
-                this.currentBarkPacket = null;
-                this.successfulSends.clear();
+            // without a digest, fall back to sending every packet which was pending when they connected.
+            final List<PendingPacket> backlog = theirDigest == null
+                    ? exchange.getValue().backlog
+                    : this.missingBacklog(receiverId, exchange.getValue(), theirDigest);
+            final Deque<PendingPacket> neighborQueue = this.neighborQueues.get(receiverId);
+            for (int i = backlog.size() - 1; i >= 0; i--) {
+                neighborQueue.addFirst(backlog.get(i));
             }
-        } else {
-            // Wait before trying again for performance.
-            // Could be arbitrarily long before we have any connections.
+        }
+    }
+
+    /**
+     * Returns the packets to send a neighbor, based on its digest, out of
+     * everything we held when it connected.  Pending packets the neighbor
+     * already has are recorded as delivered to it, and pending packets it
+     * only has some of are cut down to the Barks it's missing.
+     */
+    private List<PendingPacket> missingBacklog(final String receiverId, final DigestExchange exchange,
+                                               final DigestPacket theirDigest) {
+        final List<PendingPacket> missing = new ArrayList<>();
+        // the ids of the Barks which are pending, or which we know the neighbor already has.
+        final Set<UUID> offeredIds = new HashSet<>();
+        for (final PendingPacket pending : this.pendingPackets) {
+            if (pending.successfulSends.contains(receiverId)) {
+                for (final Bark bark : pending.packet.getPacketBarks()) {
+                    offeredIds.add(bark.getUniqueId());
+                }
+            }
+        }
+        for (final PendingPacket pending : exchange.backlog) {
+            if (!this.pendingPackets.contains(pending)) {
+                continue;
+            }
+            final List<Bark> barks = pending.packet.getPacketBarks();
+            final List<Bark> missingBarks = new ArrayList<>();
+            for (final Bark bark : barks) {
+                offeredIds.add(bark.getUniqueId());
+                if (!theirDigest.mightHold(bark.getUniqueId())) {
+                    missingBarks.add(bark);
+                }
+            }
+
+            if (missingBarks.isEmpty()) {
+                this.recordDelivery(receiverId, pending);
+            } else if (missingBarks.size() == barks.size()) {
+                missing.add(pending);
+            } else {
+                missing.add(this.addTargetedPacket(new BarkPacket(missingBarks), receiverId, pending));
+            }
+        }
+
+        // the held Barks which are no longer pending.
+        final long now = System.currentTimeMillis();
+        final List<Bark> missingHistory = new ArrayList<>();
+        for (final Bark bark : exchange.heldBarks) {
+            if (!offeredIds.contains(bark.getUniqueId()) && !bark.isExpired(now)
+                    && !theirDigest.mightHold(bark.getUniqueId()) && !this.dropIfAcked(bark)) {
+                missingHistory.add(bark);
+            }
+        }
+        for (final BarkPacket packet : this.packBarks(missingHistory)) {
+            missing.add(this.addTargetedPacket(packet, receiverId, null));
+        }
+        return missing;
+    }
+
+    /**
+     * Sends our digest to a new neighbor + waits for theirs on the digest executor.
+     *
+     * @param backlog the pending packets the neighbor hasn't been sent yet.
+     */
+    private DigestExchange startDigestExchange(final String receiverId, final List<PendingPacket> backlog) {
+        this.relayBuffer.removeExpired(System.currentTimeMillis());
+        final List<Bark> heldBarks = this.relayBuffer.getBarks();
+        final List<Bark> digestBarks = heldBarks.subList(Math.max(0, heldBarks.size() - MAX_DIGEST_BARKS),
+                heldBarks.size());
+        final UuidBloomFilter digest = UuidBloomFilter.forCapacity(Math.max(1, digestBarks.size()),
+                DIGEST_FALSE_POSITIVE_RATE, ThreadLocalRandom.current().nextLong());
+        for (final Bark bark : digestBarks) {
+            digest.add(bark.getUniqueId());
+        }
+        final DigestPacket ourDigest = new DigestPacket(digest);
+
+        final Future<DigestPacket> theirDigest = this.digestExecutor.submit(() -> {
+            if (!this.trySend(receiverId, ourDigest)) {
+                return null;
+            }
+            return this.ioManager.singleDeviceReceive(receiverId, DigestPacket.class);
+        });
+        return new DigestExchange(backlog, heldBarks, theirDigest,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DIGEST_WAIT_MILLIS));
+    }
+
+    /**
+     * Splits the passed Barks into as few packets as the batching limits allow, in order.
+     */
+    private List<BarkPacket> packBarks(final List<Bark> barks) {
+        final List<BarkPacket> packets = new ArrayList<>();
+        List<Bark> packetBarks = new ArrayList<>();
+        int packetBytes = 0;
+        for (final Bark bark : barks) {
+            final int barkBytes = bark.getBinarySize();
+            if (!packetBarks.isEmpty() && (packetBarks.size() >= this.maxBarksPerPacket
+                    || packetBytes + barkBytes > this.maxPacketBytes)) {
+                packets.add(new BarkPacket(packetBarks));
+                packetBarks = new ArrayList<>();
+                packetBytes = 0;
+            }
+            packetBarks.add(bark);
+            packetBytes += barkBytes;
+        }
+        if (!packetBarks.isEmpty()) {
+            packets.add(new BarkPacket(packetBarks));
+        }
+        return packets;
+    }
+
+    /**
+     * Queues the Barks in the passed packet whose next hop is connected for
+     * that neighbor alone, and floods the rest.
+     */
+    private void routeOrFlood(final BarkPacket packet) {
+        if (this.acks != null) {
+            // remembered so the acks we hear for them can be checked before they're sent on.
+            for (final Bark bark : packet.getPacketBarks()) {
+                this.acks.trackBark(bark);
+            }
+        }
+        if (this.routingTable == null) {
+            this.addPendingPacket(packet);
+            return;
+        }
+        final Map<String, List<Bark>> barksByNextHop = new LinkedHashMap<>();
+        final List<Bark> floodedBarks = new ArrayList<>();
+        for (final Bark bark : packet.getPacketBarks()) {
+            final String nextHop = this.routingTable.nextHop(bark);
+            if (nextHop != null && this.neighborQueues.containsKey(nextHop)) {
+                barksByNextHop.computeIfAbsent(nextHop, neighborId -> new ArrayList<>()).add(bark);
+            } else {
+                floodedBarks.add(bark);
+            }
+        }
+        if (barksByNextHop.isEmpty()) {
+            this.addPendingPacket(packet);
+            return;
+        }
+
+        for (final Map.Entry<String, List<Bark>> route : barksByNextHop.entrySet()) {
+            final PendingPacket pending = new PendingPacket(new BarkPacket(route.getValue()), route.getKey(),
+                    null, true);
+            pending.ackDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.routedAckTimeoutMillis);
+            this.trackPending(pending);
+            this.neighborQueues.get(route.getKey()).addLast(pending);
+            this.routedBarks.addAndGet(route.getValue().size());
+        }
+        if (!floodedBarks.isEmpty()) {
+            this.addPendingPacket(new BarkPacket(floodedBarks));
+        }
+    }
+
+    /**
+     * Floods the routed packets whose Barks haven't all been acked within
+     * routedAckTimeoutMillis, in case their route has gone stale.  Acked Barks
+     * have already been cut out of the pending packets.  Neighbors which were
+     * sent a packet aren't sent it again.
+     */
+    private void floodUnackedRoutes() {
+        if (this.routingTable == null) {
+            return;
+        }
+        final long nowNanos = System.nanoTime();
+        final List<PendingPacket> unackedPackets = new ArrayList<>();
+        this.pendingPackets.removeIf(pending -> {
+            if (!pending.routed || nowNanos - pending.ackDeadlineNanos < 0) {
+                return false;
+            }
+            unackedPackets.add(pending);
+            return true;
+        });
+        for (final PendingPacket unacked : unackedPackets) {
+            final PendingPacket pending = new PendingPacket(unacked.packet, null, null, false);
+            pending.successfulSends.addAll(unacked.successfulSends);
+            this.trackPending(pending);
+            for (final Map.Entry<String, Deque<PendingPacket>> neighbor : this.neighborQueues.entrySet()) {
+                if (!pending.successfulSends.contains(neighbor.getKey())) {
+                    neighbor.getValue().addLast(pending);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts tracking a packet which only needs to be sent to one neighbor.
+     * The caller is responsible for queueing it.
+     */
+    private PendingPacket addTargetedPacket(final BarkPacket packet, final String receiverId,
+                                            final PendingPacket parent) {
+        final PendingPacket pending = new PendingPacket(packet, receiverId, parent, false);
+        this.trackPending(pending);
+        return pending;
+    }
+
+    /**
+     * Starts tracking the passed packet and queues it for every connected neighbor.
+     */
+    private void addPendingPacket(final BarkPacket packet) {
+        final PendingPacket pending = new PendingPacket(packet, null, null, false);
+        this.trackPending(pending);
+        for (final Deque<PendingPacket> neighborQueue : this.neighborQueues.values()) {
+            neighborQueue.addLast(pending);
+        }
+    }
+
+    /**
+     * Adds the passed packet to the pending packets, dropping the oldest
+     * packet if there are too many.
+     */
+    private void trackPending(final PendingPacket pending) {
+        if (this.pendingPackets.size() >= MAX_PENDING_PACKETS) {
+            // drop the oldest packet; the neighbor queues skip packets which are no longer pending.
+            final Iterator<PendingPacket> oldest = this.pendingPackets.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        this.pendingPackets.add(pending);
+    }
+
+    /**
+     * Drops the queues (and digest exchanges) of neighbors which disconnected,
+     * and creates queues for new neighbors.  A new neighbor's queue starts
+     * with every pending packet it hasn't been sent yet, or, if we exchange
+     * digests, starts empty until its digest arrives.  Packets routed to a
+     * neighbor which disconnected before it was sent them are flooded instead.
+     *
+     * A digest which arrived after we stopped waiting for it is discarded
+     * when its sender disconnects, so it isn't read in place of the fresh
+     * digest the neighbor sends when it reconnects.
+     */
+    private void updateNeighbors(final Set<String> receiverIds) {
+        if (this.digestExecutor != null) {
+            for (final String receiverId : this.neighborQueues.keySet()) {
+                if (!receiverIds.contains(receiverId)) {
+                    this.ioManager.discardReceived(receiverId, DigestPacket.class);
+                }
+            }
+        }
+        this.neighborQueues.keySet().retainAll(receiverIds);
+        this.nextSendNanos.keySet().retainAll(receiverIds);
+        final List<BarkPacket> unroutedPackets = new ArrayList<>();
+        this.pendingPackets.removeIf(pending -> {
+            if (pending.targetId == null || receiverIds.contains(pending.targetId)) {
+                return false;
+            }
+            if (pending.routed) {
+                if (!pending.successfulSends.isEmpty()) {
+                    // the neighbor has it, so the packet waits for its acks as usual.
+                    return false;
+                }
+                unroutedPackets.add(pending.packet);
+            }
+            return true;
+        });
+        // queued before new neighbors are added, so they pick these up with the rest of their backlog.
+        for (final BarkPacket packet : unroutedPackets) {
+            this.addPendingPacket(packet);
+        }
+        final Iterator<Map.Entry<String, DigestExchange>> exchanges = this.digestExchanges.entrySet().iterator();
+        while (exchanges.hasNext()) {
+            final Map.Entry<String, DigestExchange> exchange = exchanges.next();
+            if (!receiverIds.contains(exchange.getKey())) {
+                exchange.getValue().theirDigest.cancel(true);
+                exchanges.remove();
+            }
+        }
+
+        for (final String receiverId : receiverIds) {
+            if (this.neighborQueues.containsKey(receiverId)) {
+                continue;
+            }
+            final List<PendingPacket> backlog = new ArrayList<>();
+            for (final PendingPacket pending : this.pendingPackets) {
+                if (pending.targetId == null && !pending.successfulSends.contains(receiverId)) {
+                    backlog.add(pending);
+                }
+            }
+
+            final Deque<PendingPacket> neighborQueue = new ArrayDeque<>();
+            if (this.digestExecutor == null) {
+                neighborQueue.addAll(backlog);
+            } else {
+                this.digestExchanges.put(receiverId, this.startDigestExchange(receiverId, backlog));
+            }
+            this.neighborQueues.put(receiverId, neighborQueue);
+        }
+    }
+
+    /**
+     * @return true if any connected neighbor without a send in flight, which
+     *         may be sent a packet now, has a pending packet left to send.
+     */
+    private boolean hasQueuedSends() {
+        final long nowNanos = System.nanoTime();
+        for (final Map.Entry<String, Deque<PendingPacket>> neighbor : this.neighborQueues.entrySet()) {
+            if (!this.inFlightSends.containsKey(neighbor.getKey()) && !this.isPaced(neighbor.getKey(), nowNanos)
+                    && this.peekPending(neighbor.getValue()) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the millis until the first neighbor which was sent a packet too
+     *         recently, and has another pending packet, may be sent it, or -1
+     *         if there's no such neighbor.
+     */
+    private long millisUntilPacedSend() {
+        final long nowNanos = System.nanoTime();
+        long waitNanos = -1;
+        for (final Map.Entry<String, Long> neighbor : this.nextSendNanos.entrySet()) {
+            final long neighborWaitNanos = neighbor.getValue() - nowNanos;
+            if (neighborWaitNanos > 0 && (waitNanos < 0 || neighborWaitNanos < waitNanos)
+                    && this.peekPending(this.neighborQueues.get(neighbor.getKey())) != null) {
+                waitNanos = neighborWaitNanos;
+            }
+        }
+        return waitNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+    }
+
+    /**
+     * @return true if the neighbor was sent a packet too recently to be sent another.
+     */
+    private boolean isPaced(final String receiverId, final long nowNanos) {
+        final Long nextNanos = this.nextSendNanos.get(receiverId);
+        return nextNanos != null && nowNanos - nextNanos < 0;
+    }
+
+    /**
+     * Returns the first packet in the neighbor's queue which is still pending,
+     * discarding any packets ahead of it which no longer are.
+     */
+    private PendingPacket peekPending(final Deque<PendingPacket> neighborQueue) {
+        while (!neighborQueue.isEmpty() && !this.pendingPackets.contains(neighborQueue.peekFirst())) {
+            neighborQueue.removeFirst();
+        }
+        return neighborQueue.peekFirst();
+    }
+
+    /**
+     * Builds the next BarkPacket from the queue.
+     *
+     * @param maxWaitMillis how long to wait for the first Bark.  Long.MAX_VALUE waits forever.
+     * @return a BarkPacket holding between 1 and maxBarksPerPacket Barks, or null
+     *         if no Bark arrived in time.
+     * @throws InterruptedException if interrupted while waiting for the first Bark.
+     */
+    private BarkPacket nextBarkPacket(final long maxWaitMillis) throws InterruptedException {
+        Bark nextBark = this.leftoverBark;
+        this.leftoverBark = null;
+        if (nextBark == null) {
+            nextBark = maxWaitMillis == Long.MAX_VALUE
+                    ? this.queue.take()
+                    : this.queue.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+        }
+        // skip the Barks not worth relaying, without waiting for more.
+        while (nextBark != null && !this.shouldForward(nextBark)) {
+            nextBark = this.queue.poll();
+        }
+        if (nextBark == null) {
+            return null;
+        }
+
+        final List<Bark> barks = new ArrayList<>();
+        int packetBytes = nextBark.getBinarySize();
+        barks.add(nextBark);
+        this.seenBarks.add(nextBark);
+        this.holdBark(nextBark);
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.lingerMillis);
+        while (barks.size() < this.maxBarksPerPacket) {
             try {
-                Thread.sleep(RETRY_SLEEP_MILLIS);
-            } catch (InterruptedException _e) {
-                // TODO: Add logging/cleanup as necessary.
-                return;
+                final long remainingNanos = deadline - System.nanoTime();
+                nextBark = remainingNanos > 0
+                        ? this.queue.poll(remainingNanos, TimeUnit.NANOSECONDS)
+                        : this.queue.poll();
+            } catch (InterruptedException e) {
+                // send what we already took off the queue, then let run() see the interrupt.
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (nextBark == null) {
+                break;
             }
+            if (!this.shouldForward(nextBark)) {
+                continue;
+            }
+
+            // hold onto a Bark which doesn't fit for the next packet.
+            final int barkBytes = nextBark.getBinarySize();
+            if (packetBytes + barkBytes > this.maxPacketBytes) {
+                this.leftoverBark = nextBark;
+                break;
+            }
+            packetBytes += barkBytes;
+            barks.add(nextBark);
+            this.seenBarks.add(nextBark);
+            this.holdBark(nextBark);
+        }
+        return new BarkPacket(barks);
+    }
+
+    /**
+     * Asks the ForwardingPolicy whether a Bark is worth sending.  A suppressed
+     * Bark is still held, so neighbors which connect later can be offered it.
+     * A Bark which has already been delivered is never sent.
+     */
+    private boolean shouldForward(final Bark bark) {
+        if (this.dropIfAcked(bark)) {
+            return false;
+        }
+        if (this.forwardingStats == null) {
+            return true;
+        }
+        final int copiesHeard = this.forwardingStats.getCopiesHeard(bark.getUniqueId());
+        // a Bark we never received is one of ours.
+        if (copiesHeard == 0
+                || this.forwardingPolicy.shouldForward(bark, copiesHeard, this.forwardingStats.getNeighborCount())) {
+            return true;
+        }
+        this.suppressedBarks.incrementAndGet();
+        this.holdBark(bark);
+        return false;
+    }
+
+    /**
+     * @return the number of distinct neighbors each packet should be sent to.
+     */
+    private int sendsBeforeDrop() {
+        final int neighborCount = this.forwardingStats == null
+                ? this.neighborQueues.size()
+                : this.forwardingStats.getNeighborCount();
+        return Math.max(1, this.forwardingPolicy.sendsBeforeDrop(neighborCount));
+    }
+
+    /**
+     * Holds onto a Bark we sent, so it can be offered to neighbors which connect later.
+     */
+    private void holdBark(final Bark bark) {
+        if (this.relayBuffer != null) {
+            this.relayBuffer.store(bark);
+        }
+    }
+
+    /**
+     * The optional parts of a MeshOutput.  Everything is off by default:  each
+     * Bark is sent in its own packet from the MeshOutput thread, without digest
+     * exchanges, acks or routing, to NUM_REBROADCAST_BEFORE_DROP neighbors.
+     * MeshDaemon batches with the DEFAULT_ values.
+     */
+    public static class MeshOutputConfig {
+        // The most Barks to put in a single packet.  Must be > 0.
+        public int maxBarksPerPacket;
+
+        // The most bytes of (binary-encoded) Barks to put in a single packet.  A
+        // single Bark larger than this is still sent on its own.  Must be > 0.
+        public int maxPacketBytes;
+
+        // How long to wait for more Barks before sending a packet which isn't
+        // full.  0 only batches the Barks which are already queued.
+        public long lingerMillis;
+
+        // The most BarkPackets to send each neighbor per second.  Must be > 0;
+        // Double.POSITIVE_INFINITY sends as fast as we can.
+        public double maxPacketsPerSecond;
+
+        // The executor used to send to neighbors concurrently, or null to send on
+        // the MeshOutput thread.  If set, the IOManager must support concurrent
+        // sends.
+        public ExecutorService sendExecutor;
+
+        // The executor used to exchange digests with new neighbors, or null to
+        // skip the digest exchange.
+        public ExecutorService digestExecutor;
+
+        // The buffer of Barks to offer new neighbors, or null to hold the last
+        // MAX_HELD_BARKS Barks in memory.  Only used with a digestExecutor.
+        public RelayBuffer relayBuffer;
+
+        // Decides which relayed Barks to send + how many neighbors to send each
+        // packet to, or null to send every Bark to NUM_REBROADCAST_BEFORE_DROP
+        // neighbors.
+        public ForwardingPolicy forwardingPolicy;
+
+        // What MeshInput has observed (shared with it), or null to relay every Bark.
+        public ForwardingStats forwardingStats;
+
+        // The delivery acks MeshInput has heard (shared with it), or null to
+        // ignore acks.
+        public DeliveryAcks acks;
+
+        // The next hops learned towards each receiver (shared with MeshInput), or
+        // null to flood every Bark.
+        public RoutingTable routingTable;
+
+        // How long a routed Bark waits for its ack before it's flooded, in case
+        // its route has gone stale.  Only used with a routingTable.
+        public long routedAckTimeoutMillis;
+
+        public MeshOutputConfig() {
+            maxBarksPerPacket = 1;
+            maxPacketBytes = Integer.MAX_VALUE;
+            lingerMillis = 0;
+            maxPacketsPerSecond = Double.POSITIVE_INFINITY;
+            sendExecutor = null;
+            digestExecutor = null;
+            relayBuffer = null;
+            forwardingPolicy = null;
+            forwardingStats = null;
+            acks = null;
+            routingTable = null;
+            routedAckTimeoutMillis = DEFAULT_ROUTED_ACK_TIMEOUT_MILLIS;
+        }
+    }
+
+    /**
+     * A packet waiting to be sent to the ForwardingPolicy's number of neighbors, or
+     * to a single target neighbor.  Compared by identity, so the same Barks
+     * queued twice are tracked separately.
+     */
+    private static class PendingPacket {
+        // cut down as the Barks in it are acked.
+        private BarkPacket packet;
+        // the only neighbor this packet is for, or null if it's for every neighbor.
+        private final String targetId;
+        // the pending packet this packet was cut down from, or null.
+        private final PendingPacket parent;
+        // true if the target is the learned next hop of the Barks, which are flooded if it disconnects
+        // before it's sent them, or if they aren't acked by ackDeadlineNanos.
+        private final boolean routed;
+        // when a routed packet stops waiting for its acks (System.nanoTime()).
+        private long ackDeadlineNanos;
+        // the neighbors which have been sent the packet.
+        private final Set<String> successfulSends;
+
+        private PendingPacket(final BarkPacket packet, final String targetId, final PendingPacket parent,
+                              final boolean routed) {
+            this.packet = packet;
+            this.targetId = targetId;
+            this.parent = parent;
+            this.routed = routed;
+            this.successfulSends = new HashSet<>();
+        }
+    }
+
+    /**
+     * A digest exchange with a new neighbor which hasn't finished yet.
+     */
+    private static class DigestExchange {
+        // the pending packets the neighbor hadn't been sent when it connected.
+        private final List<PendingPacket> backlog;
+        // the Barks we held when the neighbor connected.
+        private final List<Bark> heldBarks;
+        // the neighbor's digest, or null if the exchange failed.
+        private final Future<DigestPacket> theirDigest;
+        // when we stop waiting for the neighbor's digest (System.nanoTime()).
+        private final long deadlineNanos;
+
+        private DigestExchange(final List<PendingPacket> backlog, final List<Bark> heldBarks,
+                               final Future<DigestPacket> theirDigest, final long deadlineNanos) {
+            this.backlog = backlog;
+            this.heldBarks = heldBarks;
+            this.theirDigest = theirDigest;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * A send of a pending packet which is running on the send executor.
+     */
+    private static class InFlightSend {
+        private final PendingPacket pending;
+        // true once the send succeeds.
+        private final Future<Boolean> result;
+
+        private InFlightSend(final PendingPacket pending, final Future<Boolean> result) {
+            this.pending = pending;
+            this.result = result;
         }
     }
 }
@@ -0,0 +1,572 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The queue of Barks waiting to be sent by MeshOutput.
+ *
+ * Barks are split into TrafficClasses so a user's own messages don't wait
+ * behind every Bark we're relaying for strangers.  Classes are dequeued with
+ * smooth weighted round-robin:  with the default weights, out of every 7 Barks
+ * taken while all classes are backed up, 4 are OWN, 2 are DIRECT_REPLY and 1 is
+ * RELAY.  Every class with a non-zero weight is always served eventually, so
+ * relayed traffic is never starved.  DIRECT_REPLY is reserved:  nothing in
+ * the backend enqueues it yet, so today OWN + RELAY share the queue 4:1.
+ *
+ * The queue holds at most a fixed number of Barks, so a neighbor flooding us
+ * can't make it grow without bound.  put() blocks until there is room, and
+ * offer() with a timeout waits up to the timeout, which pushes back on
+ * MeshInput.  Once the wait is over (or straight away, for the other offer()
+ * methods), the incoming Bark's OverflowPolicy decides what is dropped.  Every
+ * dropped + rejected Bark is counted.
+ *
+ * The plain BlockingQueue methods (add(), put(), offer()) enqueue Barks as
+ * RELAY traffic.
+ */
+public class OutboundQueue extends AbstractQueue<Bark> implements BlockingQueue<Bark> {
+    /**
+     * The kinds of outbound traffic, from most to least urgent.
+     */
+    public enum TrafficClass {
+        // Barks holding messages our user wrote.
+        OWN,
+        // Barks we generate in response to something we received.  Reserved:
+        // the replies we send today (AckPackets + DigestPackets) aren't Barks,
+        // so MeshOutput sends them without queueing them here.
+        DIRECT_REPLY,
+        // Barks we are forwarding on behalf of other devices.
+        RELAY
+    }
+
+    /**
+     * What to do with an incoming Bark when the queue is full.
+     */
+    public enum OverflowPolicy {
+        // drop the oldest queued RELAY Bark to make room.  If no RELAY Bark is
+        // queued, the incoming Bark is rejected.
+        DROP_OLDEST_RELAY,
+        // drop the incoming Bark.
+        DROP_NEWEST,
+        // don't queue the incoming Bark, so the caller can report the failure.
+        REJECT
+    }
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_OWN_WEIGHT = 4;
+    public static final int DEFAULT_DIRECT_REPLY_WEIGHT = 2;
+    public static final int DEFAULT_RELAY_WEIGHT = 1;
+
+    // class variables
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final int capacity;
+    private final Map<TrafficClass, OverflowPolicy> overflowPolicies;
+    private final Map<TrafficClass, ArrayDeque<Bark>> queues;
+    private final Map<TrafficClass, Integer> weights;
+    // the smooth weighted round-robin credit of each class.
+    private final Map<TrafficClass, Integer> credits;
+    // the number of Barks ever enqueued in each class.
+    private final Map<TrafficClass, Long> enqueuedCounts;
+    // the number of Barks of each class dropped by an OverflowPolicy.
+    private final Map<TrafficClass, Long> droppedCounts;
+    // the number of Barks of each class not queued because the queue was full.
+    private final Map<TrafficClass, Long> rejectedCounts;
+    private int size;
+
+    /**
+     * Constructs a new OutboundQueue with the default capacity, weights +
+     * overflow policies.
+     */
+    public OutboundQueue() {
+        this(new OutboundQueueConfig());
+    }
+
+    /**
+     * Constructs a new OutboundQueue with the passed weights.  A class with
+     * weight n is dequeued n times as often as a class with weight 1 while
+     * both are backed up.
+     *
+     * @param ownWeight         The weight of OWN traffic.
+     * @param directReplyWeight The weight of DIRECT_REPLY traffic.
+     * @param relayWeight       The weight of RELAY traffic.
+     */
+    public OutboundQueue(final int ownWeight, final int directReplyWeight, final int relayWeight) {
+        this(weightedConfig(ownWeight, directReplyWeight, relayWeight));
+    }
+
+    /**
+     * Constructs a new OutboundQueue.
+     *
+     * @param config The capacity, weights + overflow policies of the queue.
+     */
+    public OutboundQueue(final OutboundQueueConfig config) {
+        if (config.ownWeight < 1 || config.directReplyWeight < 1 || config.relayWeight < 1) {
+            throw new IllegalArgumentException("OutboundQueue weights must be positive:  own = " + config.ownWeight
+                    + ", directReply = " + config.directReplyWeight + ", relay = " + config.relayWeight);
+        }
+        if (config.capacity < 1 || config.ownOverflowPolicy == null
+                || config.directReplyOverflowPolicy == null || config.relayOverflowPolicy == null) {
+            throw new IllegalArgumentException("Invalid OutboundQueue limits:  capacity = " + config.capacity
+                    + ", own = " + config.ownOverflowPolicy + ", directReply = " + config.directReplyOverflowPolicy
+                    + ", relay = " + config.relayOverflowPolicy);
+        }
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+        this.notFull = this.lock.newCondition();
+        this.capacity = config.capacity;
+        this.queues = new EnumMap<>(TrafficClass.class);
+        this.weights = new EnumMap<>(TrafficClass.class);
+        this.overflowPolicies = new EnumMap<>(TrafficClass.class);
+        this.credits = new EnumMap<>(TrafficClass.class);
+        this.enqueuedCounts = new EnumMap<>(TrafficClass.class);
+        this.droppedCounts = new EnumMap<>(TrafficClass.class);
+        this.rejectedCounts = new EnumMap<>(TrafficClass.class);
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            this.queues.put(trafficClass, new ArrayDeque<>());
+            this.credits.put(trafficClass, 0);
+            this.enqueuedCounts.put(trafficClass, 0L);
+            this.droppedCounts.put(trafficClass, 0L);
+            this.rejectedCounts.put(trafficClass, 0L);
+        }
+        this.weights.put(TrafficClass.OWN, config.ownWeight);
+        this.weights.put(TrafficClass.DIRECT_REPLY, config.directReplyWeight);
+        this.weights.put(TrafficClass.RELAY, config.relayWeight);
+        this.overflowPolicies.put(TrafficClass.OWN, config.ownOverflowPolicy);
+        this.overflowPolicies.put(TrafficClass.DIRECT_REPLY, config.directReplyOverflowPolicy);
+        this.overflowPolicies.put(TrafficClass.RELAY, config.relayOverflowPolicy);
+        this.size = 0;
+    }
+
+    /**
+     * Enqueues the Bark in the passed TrafficClass without waiting.  If the
+     * queue is full, the class's OverflowPolicy decides what is dropped.
+     *
+     * @param bark         The Bark to send.
+     * @param trafficClass The class of traffic the Bark belongs to.
+     * @return true if the Bark was queued, false if it was dropped or rejected.
+     */
+    public boolean offer(final Bark bark, final TrafficClass trafficClass) {
+        if (bark == null || trafficClass == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            return this.enqueue(bark, trafficClass);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueues the Bark in the passed TrafficClass, waiting up to the passed
+     * timeout for room.  If the queue is still full, the class's
+     * OverflowPolicy decides what is dropped.
+     *
+     * @param bark         The Bark to send.
+     * @param trafficClass The class of traffic the Bark belongs to.
+     * @param timeout      How long to wait for room.
+     * @param unit         The unit of the timeout.
+     * @return true if the Bark was queued, false if it was dropped or rejected.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean offer(final Bark bark, final TrafficClass trafficClass, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        if (bark == null || trafficClass == null) {
+            throw new NullPointerException();
+        }
+        long remainingNanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size >= this.capacity && remainingNanos > 0) {
+                remainingNanos = this.notFull.awaitNanos(remainingNanos);
+            }
+            return this.enqueue(bark, trafficClass);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of Barks of the passed TrafficClass dropped because
+     * the queue was full, either on arrival (DROP_NEWEST) or to make room for
+     * another Bark (DROP_OLDEST_RELAY).
+     *
+     * @param trafficClass The class of traffic.
+     * @return the number of dropped Barks in that class.
+     */
+    public long getDroppedCount(final TrafficClass trafficClass) {
+        this.lock.lock();
+        try {
+            return this.droppedCounts.get(trafficClass);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of Barks of the passed TrafficClass which weren't
+     * queued, and were handed back to the caller, because the queue was full.
+     *
+     * @param trafficClass The class of traffic.
+     * @return the number of rejected Barks in that class.
+     */
+    public long getRejectedCount(final TrafficClass trafficClass) {
+        this.lock.lock();
+        try {
+            return this.rejectedCounts.get(trafficClass);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of Barks of the passed TrafficClass waiting in the queue.
+     *
+     * @param trafficClass The class of traffic.
+     * @return the number of queued Barks in that class.
+     */
+    public int size(final TrafficClass trafficClass) {
+        this.lock.lock();
+        try {
+            return this.queues.get(trafficClass).size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of Barks of the passed TrafficClass ever enqueued.
+     *
+     * @param trafficClass The class of traffic.
+     * @return the number of Barks enqueued in that class.
+     */
+    public long getEnqueuedCount(final TrafficClass trafficClass) {
+        this.lock.lock();
+        try {
+            return this.enqueuedCounts.get(trafficClass);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Bark bark) {
+        return this.offer(bark, TrafficClass.RELAY);
+    }
+
+    @Override
+    public void put(final Bark bark) throws InterruptedException {
+        if (bark == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size >= this.capacity) {
+                this.notFull.await();
+            }
+            this.enqueue(bark, TrafficClass.RELAY);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Bark bark, final long timeout, final TimeUnit unit) throws InterruptedException {
+        return this.offer(bark, TrafficClass.RELAY, timeout, unit);
+    }
+
+    @Override
+    public Bark poll() {
+        this.lock.lock();
+        try {
+            return this.dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Bark take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0) {
+                this.notEmpty.await();
+            }
+            return this.dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Bark poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = this.notEmpty.awaitNanos(remainingNanos);
+            }
+            return this.dequeue();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Bark peek() {
+        this.lock.lock();
+        try {
+            final TrafficClass next = this.selectClass();
+            return next == null ? null : this.queues.get(next).peekFirst();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        this.lock.lock();
+        try {
+            for (final ArrayDeque<Bark> queue : this.queues.values()) {
+                if (queue.remove(o)) {
+                    this.size--;
+                    this.notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        this.lock.lock();
+        try {
+            return this.capacity - this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Bark> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Bark> c, final int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        this.lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && this.size > 0) {
+                c.add(this.dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queue, in no particular order.
+     * Removing through the iterator removes the Bark from the queue.
+     */
+    @Override
+    public Iterator<Bark> iterator() {
+        final List<Bark> snapshot = new ArrayList<>();
+        this.lock.lock();
+        try {
+            for (final ArrayDeque<Bark> queue : this.queues.values()) {
+                snapshot.addAll(queue);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        final Iterator<Bark> snapshotIterator = snapshot.iterator();
+        return new Iterator<Bark>() {
+            private Bark last;
+
+            @Override
+            public boolean hasNext() {
+                return snapshotIterator.hasNext();
+            }
+
+            @Override
+            public Bark next() {
+                this.last = snapshotIterator.next();
+                return this.last;
+            }
+
+            @Override
+            public void remove() {
+                if (this.last == null) {
+                    throw new IllegalStateException();
+                }
+                OutboundQueue.this.remove(this.last);
+                this.last = null;
+            }
+        };
+    }
+
+    // private helpers
+    private static OutboundQueueConfig weightedConfig(final int ownWeight, final int directReplyWeight,
+                                                      final int relayWeight) {
+        final OutboundQueueConfig config = new OutboundQueueConfig();
+        config.ownWeight = ownWeight;
+        config.directReplyWeight = directReplyWeight;
+        config.relayWeight = relayWeight;
+        return config;
+    }
+
+    // the lock must be held when calling these.
+    /**
+     * Adds the Bark to the back of its class's queue, applying the class's
+     * OverflowPolicy if the queue is full.
+     *
+     * @return true if the Bark was queued.
+     */
+    private boolean enqueue(final Bark bark, final TrafficClass trafficClass) {
+        if (this.size >= this.capacity) {
+            switch (this.overflowPolicies.get(trafficClass)) {
+                case DROP_OLDEST_RELAY:
+                    final ArrayDeque<Bark> relayQueue = this.queues.get(TrafficClass.RELAY);
+                    if (relayQueue.isEmpty()) {
+                        this.rejectedCounts.merge(trafficClass, 1L, Long::sum);
+                        return false;
+                    }
+                    relayQueue.pollFirst();
+                    this.size--;
+                    this.droppedCounts.merge(TrafficClass.RELAY, 1L, Long::sum);
+                    break;
+                case DROP_NEWEST:
+                    this.droppedCounts.merge(trafficClass, 1L, Long::sum);
+                    return false;
+                default:
+                    this.rejectedCounts.merge(trafficClass, 1L, Long::sum);
+                    return false;
+            }
+        }
+        this.queues.get(trafficClass).addLast(bark);
+        this.enqueuedCounts.merge(trafficClass, 1L, Long::sum);
+        this.size++;
+        this.notEmpty.signal();
+        return true;
+    }
+
+    /**
+     * Removes + returns the next Bark according to the weighted schedule.
+     */
+    private Bark dequeue() {
+        final TrafficClass next = this.selectClass();
+        if (next == null) {
+            return null;
+        }
+
+        // smooth weighted round-robin:  every backed-up class earns its weight, and the
+        // chosen class pays back the total.
+        int totalWeight = 0;
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            if (!this.queues.get(trafficClass).isEmpty()) {
+                this.credits.merge(trafficClass, this.weights.get(trafficClass), Integer::sum);
+                totalWeight += this.weights.get(trafficClass);
+            }
+        }
+        this.credits.merge(next, -totalWeight, Integer::sum);
+
+        final ArrayDeque<Bark> queue = this.queues.get(next);
+        final Bark bark = queue.pollFirst();
+        this.size--;
+        this.notFull.signal();
+        if (queue.isEmpty()) {
+            // an idle class doesn't bank credit.
+            this.credits.put(next, 0);
+        }
+        return bark;
+    }
+
+    /**
+     * Returns the class dequeue() would take the next Bark from, or null if the
+     * queue is empty.  Ties go to the more urgent class.
+     */
+    private TrafficClass selectClass() {
+        TrafficClass best = null;
+        int bestCredit = Integer.MIN_VALUE;
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            if (this.queues.get(trafficClass).isEmpty()) {
+                continue;
+            }
+            final int credit = this.credits.get(trafficClass) + this.weights.get(trafficClass);
+            if (credit > bestCredit) {
+                best = trafficClass;
+                bestCredit = credit;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The capacity, weights + overflow policies of an OutboundQueue.
+     */
+    public static class OutboundQueueConfig {
+        // The most Barks the queue holds, across every class.  Must be > 0.
+        public int capacity;
+
+        // How often each class is dequeued relative to the others while all are
+        // backed up.  Must be > 0.
+        public int ownWeight;
+        public int directReplyWeight;
+        public int relayWeight;
+
+        // What to do with an incoming Bark of each class when the queue is full.
+        // By default every class pushes out the oldest relayed Bark, so a flood
+        // of relayed traffic is shed first and our own sends only fail once the
+        // queue holds nothing but non-relayed Barks.
+        public OverflowPolicy ownOverflowPolicy;
+        public OverflowPolicy directReplyOverflowPolicy;
+        public OverflowPolicy relayOverflowPolicy;
+
+        public OutboundQueueConfig() {
+            capacity = DEFAULT_CAPACITY;
+            ownWeight = DEFAULT_OWN_WEIGHT;
+            directReplyWeight = DEFAULT_DIRECT_REPLY_WEIGHT;
+            relayWeight = DEFAULT_RELAY_WEIGHT;
+            ownOverflowPolicy = OverflowPolicy.DROP_OLDEST_RELAY;
+            directReplyOverflowPolicy = OverflowPolicy.DROP_OLDEST_RELAY;
+            relayOverflowPolicy = OverflowPolicy.DROP_OLDEST_RELAY;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package backend.meshdaemon;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import types.Bark;
+
+/**
+ * The next hops this device has learned towards each receiver, shared by
+ * MeshInput + MeshOutput.
+ *
+ * Receivers are identified by the route tag each routed Bark carries (see:
+ * Bark.computeRouteTag), which changes every Bark.ROUTE_TAG_EPOCH_MILLIS;
+ * Barks without a tag are always flooded.  Routes are learned from
+ * observed traffic:
+ *
+ *  - a valid ack for a Bark we carried came from a neighbor which leads
+ *    towards the Bark's receiver (see: learnFromAck; the ack is checked by
+ *    DeliveryAcks, which tracks the Barks we carry), and
+ *  - a neighbor we exchanged keys with is one hop from itself (see:
+ *    learnFromKeyExchange).
+ *
+ * MeshOutput sends a Bark only to its next hop when a route is known, and
+ * floods it otherwise.  Routes age out routeTtlMillis after they were last
+ * learned, so a receiver which moves on is flooded to again.
+ *
+ * Everything is bounded:  the least recently used routes are forgotten
+ * first.  Safe to share between threads.
+ */
+public class RoutingTable {
+    public static final long DEFAULT_ROUTE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final int DEFAULT_MAX_ROUTES = 1024;
+
+    // class variables
+    private final long routeTtlMillis;
+    private final LongSupplier millisClock;
+    // the next hop towards each route tag, least recently used first.
+    private final Map<ByteBuffer, Route> routes;
+
+    /**
+     * Constructs a new RoutingTable with the default limits, which uses System.currentTimeMillis().
+     */
+    public RoutingTable() {
+        this(DEFAULT_ROUTE_TTL_MILLIS, DEFAULT_MAX_ROUTES, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs a new RoutingTable.
+     *
+     * @param routeTtlMillis   how long a route is used after it was last learned.
+     * @param maxRoutes        the most routes to remember.
+     * @param millisClock      returns the current time in milliseconds, like System.currentTimeMillis().
+     */
+    public RoutingTable(final long routeTtlMillis, final int maxRoutes, final LongSupplier millisClock) {
+        if (routeTtlMillis < 0 || maxRoutes < 1) {
+            throw new IllegalArgumentException("Invalid RoutingTable limits:  routeTtlMillis = " + routeTtlMillis
+                    + ", maxRoutes = " + maxRoutes);
+        }
+        this.routeTtlMillis = routeTtlMillis;
+        this.millisClock = millisClock;
+        this.routes = new BoundedLruMap<>(maxRoutes);
+    }
+
+    /**
+     * Learns a route from a valid ack received from a neighbor:  the neighbor
+     * leads towards the receiver of the acked Bark.  Only pass Barks the ack
+     * has been checked against (see: DeliveryAcks.recordAck).  Barks without
+     * a route tag teach us nothing.
+     *
+     * @param neighborId the neighbor the ack was received from.
+     * @param ackedBark  the Bark the ack was verified against.
+     * @return true if a route was learned.
+     */
+    public synchronized boolean learnFromAck(final String neighborId, final Bark ackedBark) {
+        if (ackedBark.getRouteTag() == null) {
+            return false;
+        }
+        this.learnRoute(ackedBark.getRouteTag(), neighborId);
+        return true;
+    }
+
+    /**
+     * Learns a route from a key exchange:  the neighbor is the next hop towards
+     * itself.  Learns its route tags for both this epoch + the next one, so the
+     * route outlives the change of tag.
+     *
+     * @param neighborId the neighbor we exchanged keys with.
+     * @param publicKey  the neighbor's public key.
+     */
+    public synchronized void learnFromKeyExchange(final String neighborId, final PublicKey publicKey) {
+        final long nowMillis = this.millisClock.getAsLong();
+        this.learnRoute(Bark.computeRouteTag(publicKey, nowMillis), neighborId);
+        this.learnRoute(Bark.computeRouteTag(publicKey, nowMillis + Bark.ROUTE_TAG_EPOCH_MILLIS), neighborId);
+    }
+
+    /**
+     * Learns (or refreshes) the next hop towards the receivers with the passed route tag.
+     *
+     * @param routeTag   the route tag (see: Bark.computeRouteTag).
+     * @param neighborId the neighbor which leads towards them.
+     */
+    public synchronized void learnRoute(final byte[] routeTag, final String neighborId) {
+        this.routes.put(ByteBuffer.wrap(routeTag.clone()), new Route(neighborId, this.millisClock.getAsLong()));
+    }
+
+    /**
+     * Returns the neighbor which leads towards the receiver of the passed Bark.
+     *
+     * @param bark the Bark to route.
+     * @return the id of the next hop, or null if the Bark should be flooded.
+     */
+    public synchronized String nextHop(final Bark bark) {
+        final byte[] routeTag = bark.getRouteTag();
+        if (routeTag == null) {
+            return null;
+        }
+        final ByteBuffer key = ByteBuffer.wrap(routeTag);
+        final Route route = this.routes.get(key);
+        if (route == null) {
+            return null;
+        }
+        if (this.millisClock.getAsLong() - route.learnedAtMillis > this.routeTtlMillis) {
+            this.routes.remove(key);
+            return null;
+        }
+        return route.neighborId;
+    }
+
+    /**
+     * @return the number of routes remembered, including any which have aged out.
+     */
+    public synchronized int size() {
+        return this.routes.size();
+    }
+
+    // private helpers
+    /**
+     * A learned next hop.
+     */
+    private static class Route {
+        private final String neighborId;
+        private final long learnedAtMillis;
+
+        private Route(final String neighborId, final long learnedAtMillis) {
+            this.neighborId = neighborId;
+            this.learnedAtMillis = learnedAtMillis;
+        }
+    }
+}
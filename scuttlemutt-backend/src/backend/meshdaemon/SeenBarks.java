@@ -0,0 +1,29 @@
+package backend.meshdaemon;
+
+import types.Bark;
+
+/**
+ * Remembers which Barks this device has already handled, so MeshInput and
+ * MeshOutput don't process or relay the same Bark twice.
+ *
+ * Implementations must be thread-safe, since MeshInput and MeshOutput share
+ * one instance.  An implementation may forget old Barks or (rarely) report a
+ * Bark as seen when it wasn't, in exchange for bounded memory.
+ */
+public interface SeenBarks {
+    /**
+     * Marks the passed Bark as seen.
+     *
+     * @param bark the Bark to mark.
+     * @return true if the Bark had not been seen before.
+     */
+    boolean add(final Bark bark);
+
+    /**
+     * Returns true if the passed Bark has been seen.
+     *
+     * @param bark the Bark to check.
+     * @return true if the Bark has been seen.
+     */
+    boolean contains(final Bark bark);
+}
@@ -0,0 +1,44 @@
+package backend.meshdaemon;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import types.Bark;
+
+/**
+ * Exact SeenBarks backed by a Set.  Never forgets a Bark, so memory grows
+ * with every Bark seen; use BloomSeenBarks on long-running devices.  Mostly
+ * useful for tests, which can inspect (or pre-fill) the underlying Set.
+ */
+public class SetSeenBarks implements SeenBarks {
+    // class variables
+    private final Set<Bark> seenBarks;
+
+    /**
+     * Constructs a new SetSeenBarks backed by a new synchronized Set.
+     */
+    public SetSeenBarks() {
+        this(Collections.synchronizedSet(new HashSet<>()));
+    }
+
+    /**
+     * Constructs a new SetSeenBarks backed by the passed Set.  The Set must be
+     * thread-safe if the SetSeenBarks is shared between threads.
+     *
+     * @param seenBarks the Set to store seen Barks in.
+     */
+    public SetSeenBarks(final Set<Bark> seenBarks) {
+        this.seenBarks = seenBarks;
+    }
+
+    @Override
+    public boolean add(final Bark bark) {
+        return this.seenBarks.add(bark);
+    }
+
+    @Override
+    public boolean contains(final Bark bark) {
+        return this.seenBarks.contains(bark);
+    }
+}
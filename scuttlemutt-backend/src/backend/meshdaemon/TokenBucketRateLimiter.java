@@ -0,0 +1,229 @@
+package backend.meshdaemon;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate at which each sender may do something, using a token
+ * bucket per sender.
+ *
+ * Each bucket holds up to burst tokens and refills at permitsPerSecond.  A
+ * request takes one token, and is refused once the bucket is empty, so a
+ * sender may send a burst of requests at once but can't exceed the rate for
+ * long.  A sender seen for the first time starts with a full bucket.
+ *
+ * The buckets live in an open-addressing hash table of primitive arrays, so
+ * checking a sender allocates nothing.  The table tracks at most maxSenders
+ * senders.  Senders which haven't been seen for idleMillis are forgotten
+ * whenever room is needed (their bucket would be full again anyway); if every
+ * sender is active, the one idle the longest is forgotten.
+ *
+ * Not thread-safe; callers must hold their own lock.
+ */
+public class TokenBucketRateLimiter {
+    // tokens are stored in millionths, so partial refills aren't lost to rounding.
+    private static final long UNITS_PER_TOKEN = 1_000_000;
+
+    // class variables
+    private final double unitsPerNano;
+    private final long capacityUnits;
+    private final int maxSenders;
+    private final long idleNanos;
+    private final LongSupplier nanoClock;
+    // the table.  a null key is an empty slot.
+    private final String[] senders;
+    private final long[] tokenUnits;
+    // the last time each sender was seen (nanoClock).
+    private final long[] lastSeenNanos;
+    private final int mask;
+    private int size;
+
+    /**
+     * Constructs a new TokenBucketRateLimiter which uses System.nanoTime().
+     *
+     * @param permitsPerSecond the rate at which each bucket refills.  Must be > 0.
+     * @param burst            the most tokens a bucket holds.  Must be >= 1.
+     * @param maxSenders       the most senders tracked at once.  Must be > 0.
+     * @param idleMillis       how long a sender goes unseen before it may be forgotten.
+     */
+    public TokenBucketRateLimiter(final double permitsPerSecond, final double burst,
+                                  final int maxSenders, final long idleMillis) {
+        this(permitsPerSecond, burst, maxSenders, idleMillis, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter with a custom clock.
+     *
+     * @param permitsPerSecond the rate at which each bucket refills.  Must be > 0.
+     * @param burst            the most tokens a bucket holds.  Must be >= 1.
+     * @param maxSenders       the most senders tracked at once.  Must be > 0.
+     * @param idleMillis       how long a sender goes unseen before it may be forgotten.
+     * @param nanoClock        returns the current time in nanoseconds, like System.nanoTime().
+     */
+    public TokenBucketRateLimiter(final double permitsPerSecond, final double burst,
+                                  final int maxSenders, final long idleMillis, final LongSupplier nanoClock) {
+        if (!(permitsPerSecond > 0) || !(burst >= 1) || maxSenders < 1 || idleMillis < 0) {
+            throw new IllegalArgumentException("Invalid TokenBucketRateLimiter:  permitsPerSecond = "
+                    + permitsPerSecond + ", burst = " + burst + ", maxSenders = " + maxSenders
+                    + ", idleMillis = " + idleMillis);
+        }
+        this.unitsPerNano = permitsPerSecond * UNITS_PER_TOKEN / TimeUnit.SECONDS.toNanos(1);
+        this.capacityUnits = (long) (burst * UNITS_PER_TOKEN);
+        this.maxSenders = maxSenders;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.nanoClock = nanoClock;
+
+        // at most half full, so probe sequences stay short.
+        final int tableSize = Integer.highestOneBit(Math.max(2, maxSenders) * 2 - 1) << 1;
+        this.senders = new String[tableSize];
+        this.tokenUnits = new long[tableSize];
+        this.lastSeenNanos = new long[tableSize];
+        this.mask = tableSize - 1;
+        this.size = 0;
+    }
+
+    /**
+     * Takes a token from the sender's bucket.
+     *
+     * @param sender the name of the sender.
+     * @return true if the sender is within its rate, false if its bucket is empty.
+     */
+    public boolean tryAcquire(final String sender) {
+        final long now = this.nanoClock.getAsLong();
+        int slot = this.find(sender);
+        if (slot < 0) {
+            slot = this.insert(sender, now);
+        } else {
+            this.refill(slot, now);
+        }
+
+        if (this.tokenUnits[slot] < UNITS_PER_TOKEN) {
+            return false;
+        }
+        this.tokenUnits[slot] -= UNITS_PER_TOKEN;
+        return true;
+    }
+
+    /**
+     * Forgets every sender which hasn't been seen for idleMillis.
+     *
+     * @return the number of senders forgotten.
+     */
+    public int evictIdle() {
+        final long now = this.nanoClock.getAsLong();
+        int evicted = 0;
+        int slot = 0;
+        while (slot < this.senders.length) {
+            if (this.senders[slot] != null && now - this.lastSeenNanos[slot] > this.idleNanos) {
+                // removing shifts a later entry into this slot, so check it again.
+                this.removeAt(slot);
+                evicted++;
+            } else {
+                slot++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of senders tracked.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    // private helpers
+    /**
+     * Returns the slot holding the sender, or -1 if it isn't tracked.
+     */
+    private int find(final String sender) {
+        int slot = this.homeSlot(sender);
+        while (this.senders[slot] != null) {
+            if (this.senders[slot].equals(sender)) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Starts tracking the sender with a full bucket, making room if needed.
+     * Returns its slot.
+     */
+    private int insert(final String sender, final long now) {
+        if (this.size >= this.maxSenders) {
+            this.evictIdle();
+            if (this.size >= this.maxSenders) {
+                this.evictLongestIdle();
+            }
+        }
+        int slot = this.homeSlot(sender);
+        while (this.senders[slot] != null) {
+            slot = (slot + 1) & this.mask;
+        }
+        this.senders[slot] = sender;
+        this.tokenUnits[slot] = this.capacityUnits;
+        this.lastSeenNanos[slot] = now;
+        this.size++;
+        return slot;
+    }
+
+    /**
+     * Adds the tokens earned since the sender was last seen.
+     */
+    private void refill(final int slot, final long now) {
+        final long elapsed = now - this.lastSeenNanos[slot];
+        if (elapsed > 0) {
+            final double refilled = this.tokenUnits[slot] + elapsed * this.unitsPerNano;
+            this.tokenUnits[slot] = (long) Math.min(this.capacityUnits, refilled);
+            this.lastSeenNanos[slot] = now;
+        }
+    }
+
+    private void evictLongestIdle() {
+        int oldest = -1;
+        for (int slot = 0; slot < this.senders.length; slot++) {
+            if (this.senders[slot] != null
+                    && (oldest < 0 || this.lastSeenNanos[slot] - this.lastSeenNanos[oldest] < 0)) {
+                oldest = slot;
+            }
+        }
+        if (oldest >= 0) {
+            this.removeAt(oldest);
+        }
+    }
+
+    /**
+     * Empties the slot, shifting back later entries in its probe sequence so
+     * lookups still find them (linear probing has no tombstones).
+     */
+    private void removeAt(int slot) {
+        int next = slot;
+        while (true) {
+            next = (next + 1) & this.mask;
+            if (this.senders[next] == null) {
+                break;
+            }
+            // the entry may move back to the empty slot unless its home lies
+            // cyclically between the empty slot (exclusive) and itself.
+            final int home = this.homeSlot(this.senders[next]);
+            final boolean homeBetween = slot <= next
+                    ? slot < home && home <= next
+                    : slot < home || home <= next;
+            if (!homeBetween) {
+                this.senders[slot] = this.senders[next];
+                this.tokenUnits[slot] = this.tokenUnits[next];
+                this.lastSeenNanos[slot] = this.lastSeenNanos[next];
+                slot = next;
+            }
+        }
+        this.senders[slot] = null;
+        this.size--;
+    }
+
+    private int homeSlot(final String sender) {
+        final int h = sender.hashCode();
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+}
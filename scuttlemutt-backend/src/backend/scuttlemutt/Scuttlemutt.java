@@ -12,10 +12,13 @@ import java.util.UUID;
 import javax.crypto.SecretKey;
 
 import backend.initialization.KeyExchangeDaemon;
+import backend.initialization.KeyPairPregenerator;
 import backend.iomanager.IOManager;
 import backend.iomanager.IOManagerException;
 import backend.meshdaemon.MeshDaemon;
-import crypto.Crypto;
+import crypto.CryptoSuite;
+import crypto.CryptoSuites;
+import storagemanager.RelayBuffer;
 import storagemanager.StorageManager;
 import types.Conversation;
 import types.DawgIdentifier;
@@ -41,22 +44,92 @@ public class Scuttlemutt {
      * Constructs a new Scuttlemutt object
      */
     public Scuttlemutt(IOManager inputIoManager, DawgIdentifier dawgIdentifier, StorageManager storageManager) {
+        this(inputIoManager, dawgIdentifier, storageManager, CryptoSuites.DEFAULT);
+    }
+
+    /**
+     * Constructs a new Scuttlemutt object whose keypair (if one must be generated) comes from the passed CryptoSuite.
+     *
+     * @param inputIoManager The IOManager used to talk to other devices.
+     * @param dawgIdentifier The DawgIdentifier of this device's user.
+     * @param storageManager The StorageManager holding this device's keys + conversations.
+     * @param cryptoSuite    The CryptoSuite to generate a keypair with.
+     */
+    public Scuttlemutt(IOManager inputIoManager, DawgIdentifier dawgIdentifier, StorageManager storageManager,
+                       CryptoSuite cryptoSuite) {
+        this(inputIoManager, dawgIdentifier, storageManager, new KeyPairPregenerator(cryptoSuite, 0));
+    }
+
+    /**
+     * Constructs a new Scuttlemutt object whose keypair (if one must be generated) is taken from the passed
+     * KeyPairPregenerator, waiting for it to become ready if necessary.
+     *
+     * @param inputIoManager      The IOManager used to talk to other devices.
+     * @param dawgIdentifier      The DawgIdentifier of this device's user.
+     * @param storageManager      The StorageManager holding this device's keys + conversations.
+     * @param keyPairPregenerator Where to take a keypair from, if this device doesn't have one yet.
+     */
+    public Scuttlemutt(IOManager inputIoManager, DawgIdentifier dawgIdentifier, StorageManager storageManager,
+                       KeyPairPregenerator keyPairPregenerator) {
+        this(inputIoManager, dawgIdentifier, storageManager, keyPairPregenerator, null);
+    }
+
+    /**
+     * Constructs a new Scuttlemutt object which holds the Barks it carries for other devices in the passed
+     * RelayBuffer.
+     *
+     * @param inputIoManager      The IOManager used to talk to other devices.
+     * @param dawgIdentifier      The DawgIdentifier of this device's user.
+     * @param storageManager      The StorageManager holding this device's keys + conversations.
+     * @param keyPairPregenerator Where to take a keypair from, if this device doesn't have one yet.
+     * @param relayBuffer         Where to hold the Barks we carry for other devices (ex:  a
+     *                            FileRelayBuffer, to keep them across restarts), or null to hold
+     *                            them in memory.
+     */
+    public Scuttlemutt(IOManager inputIoManager, DawgIdentifier dawgIdentifier, StorageManager storageManager,
+                       KeyPairPregenerator keyPairPregenerator, RelayBuffer relayBuffer) {
+        this(inputIoManager, dawgIdentifier, storageManager, keyPairPregenerator, relayBuffer, false);
+    }
+
+    /**
+     * Constructs a new Scuttlemutt object, choosing whether to route the Barks it sends.
+     *
+     * @param inputIoManager      The IOManager used to talk to other devices.
+     * @param dawgIdentifier      The DawgIdentifier of this device's user.
+     * @param storageManager      The StorageManager holding this device's keys + conversations.
+     * @param keyPairPregenerator Where to take a keypair from, if this device doesn't have one yet.
+     * @param relayBuffer         Where to hold the Barks we carry for other devices (ex:  a
+     *                            FileRelayBuffer, to keep them across restarts), or null to hold
+     *                            them in memory.
+     * @param routing             Whether to route Barks towards their receivers instead of flooding
+     *                            them.  Routed Barks carry a route tag which links the Barks sent to
+     *                            the same receiver (see: Bark), so this is off by default.
+     */
+    public Scuttlemutt(IOManager inputIoManager, DawgIdentifier dawgIdentifier, StorageManager storageManager,
+                       KeyPairPregenerator keyPairPregenerator, RelayBuffer relayBuffer, boolean routing) {
         this.dawgIdentifier = dawgIdentifier;
         this.ioManager = inputIoManager;
         this.storageManager = storageManager;
         // only generate a new keypair if we don't already have one
         if (getPrivateKey() == null) {
-            // create a keypair and store them in the storage manager
-            KeyPair keys = Crypto.generateKeyPair();
+            // obtain a keypair and store them in the storage manager
+            final KeyPair keys;
+            try {
+                keys = keyPairPregenerator.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Interrupted while waiting for a keypair", e);
+            }
             this.storageManager.storePrivateKey(keys.getPrivate());
             this.storageManager.storePublicKeyForUUID(dawgIdentifier.getUUID(), keys.getPublic());
         }
 
         // local keys must be initialized before the mesh daemon is constructed.
-        this.meshDaemon = new MeshDaemon(this.ioManager, this.storageManager, this.dawgIdentifier);
+        this.meshDaemon = new MeshDaemon(this.ioManager, this.storageManager, this.dawgIdentifier, relayBuffer,
+                routing);
 
         // initialize KeyExchangeDaemon.
-        this.keyExchangeDaemon = new KeyExchangeDaemon(this.ioManager, this.storageManager, this.getPublicKey(), this.dawgIdentifier);
+        this.keyExchangeDaemon = new KeyExchangeDaemon(this.ioManager, this.storageManager, this.getPublicKey(),
+                this.dawgIdentifier, this.meshDaemon.getRoutingTable());
     }
 
 
@@ -155,7 +228,7 @@ public class Scuttlemutt {
      *
      * @param message   Message that user is trying to send
      * @param dstDawgId Recipient's DawgIdentifier
-     * @return UUID of sent message
+     * @return UUID of sent message, or null if too many messages are waiting to be sent.
      */
     public UUID sendMessage(String message, DawgIdentifier dstDawgId) {
         // compute the sequenceId for the message.
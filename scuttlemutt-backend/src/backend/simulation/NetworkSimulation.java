@@ -12,9 +12,11 @@ import java.util.concurrent.LinkedBlockingQueue;
 import javax.crypto.SecretKey;
 
 import backend.initialization.KeyExchangeDaemon;
+import backend.initialization.KeyPairPregenerator;
 import backend.iomanager.IOManagerException;
 import backend.iomanager.QueueIOManager;
 import backend.scuttlemutt.Scuttlemutt;
+import crypto.CryptoSuites;
 import storagemanager.MapStorageManager;
 import storagemanager.StorageManager;
 import types.DawgIdentifier;
@@ -41,6 +43,10 @@ public class NetworkSimulation {
         this.queueIOManagerMap = new HashMap<String, QueueIOManager>();
         this.storageManagerMap = new HashMap<String, StorageManager>();
         this.scuttlemuttMap = new HashMap<String, Scuttlemutt>();
+
+        // start generating a keypair for every device at once, instead of one after another.
+        final KeyPairPregenerator keyPairPregenerator =
+                new KeyPairPregenerator(CryptoSuites.DEFAULT, deviceLabels.size());
         for (final String deviceLabel : deviceLabels) {
             // create a QueueIOManager.
             final QueueIOManager ioManager = new QueueIOManager();
@@ -52,7 +58,7 @@ public class NetworkSimulation {
 
             // create a Scuttlemutt object which references the above QueueIOManagers
             final DawgIdentifier dawgId = new DawgIdentifier(deviceLabel, UUID.randomUUID());
-            final Scuttlemutt scuttlemutt = new Scuttlemutt(ioManager, dawgId, storageManager);
+            final Scuttlemutt scuttlemutt = new Scuttlemutt(ioManager, dawgId, storageManager, keyPairPregenerator);
 
             // stash the ioManager in the scuttlemuttMap.
             scuttlemuttMap.put(deviceLabel, scuttlemutt);
@@ -203,7 +203,9 @@ public class NetworkSimulationCLI {
             // prepend the message with the current device to ID who sent what.
             final String prependedMsg = currentDeviceId + ":  " + msg;
 
-            currentDevice.sendMessage(prependedMsg, dstDawgId);
+            if (currentDevice.sendMessage(prependedMsg, dstDawgId) == null) {
+                System.out.println("Too many messages waiting to be sent, message not sent.");
+            }
         }
     }
 
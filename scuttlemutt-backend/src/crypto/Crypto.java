@@ -4,16 +4,21 @@ import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 
@@ -27,17 +32,29 @@ import javax.crypto.SecretKey;
  * - byte[] decrypt(byte[] ciphertext, PrivateKey pk)
  * - byte[] sign(byte[] message, PrivateKey pk)
  * - bool verify(byte[] signature, byte[] message, PublicKey pk)
+ * - byte[] hmac(byte[] message, SecretKey key)
+ * - byte[] keyId(SecretKey key)
+ *
+ * Cipher, Signature and Mac instances are cached per-thread and per-transform,
+ * and re-initialized with the key on every call, so we only pay for the JCA
+ * provider lookup once per thread.
  */
 public class Crypto {
     public static final String ASYMMETRIC_KEY_TYPE = "RSA";
     public static final String ASYMMETRIC_CIPHER_SPEC = "RSA/ECB/PKCS1Padding";
     public static final String SYMMETRIC_KEY_TYPE = "AES";
-    public static final KeyPair ALICE_KEYPAIR = Crypto.generateKeyPair();
-    public static final KeyPair BOB_KEYPAIR = Crypto.generateKeyPair();
-    public static final SecretKey DUMMY_SECRETKEY = Crypto.generateSecretKey();
-    public static final SecretKey OTHER_SECRETKEY = Crypto.generateSecretKey();
+    public static final String MAC_TYPE = "HmacSHA256";
+    public static final String SIGNATURE_TYPE = "SHA256withRSA";
     public static final int ASYMMETRIC_KEY_SIZE = 4096;
     public static final int SYMMETRIC_KEY_SIZE = 128; // the size of the symmetric key.
+    public static final String KEY_ID_DIGEST = "SHA-256";
+    public static final int KEY_ID_SIZE = 4; // the number of bytes of the digest kept in a key id.
+
+    // per-thread caches of JCA objects, keyed by transform.  These objects are not
+    // thread-safe, but can be reused after being re-initialized with a new key.
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Mac>> MACS = ThreadLocal.withInitial(HashMap::new);
 
     /**
      * Generates a new 4096-bit RSA KeyPair.
@@ -86,7 +103,7 @@ public class Crypto {
     public static byte[] encrypt(final byte[] payload, final Key key, final String keyType) {
         byte[] result = {};
         try {
-            Cipher encryptCipher = Cipher.getInstance(keyType);
+            Cipher encryptCipher = getCipher(keyType);
             encryptCipher.init(Cipher.ENCRYPT_MODE, key);
             result = encryptCipher.doFinal(payload, 0, payload.length);
         } catch (NoSuchAlgorithmException e) {
@@ -127,7 +144,7 @@ public class Crypto {
     public static byte[] decrypt(final byte[] payload, final Key key, final String keyType) {
         byte[] result = {};
         try {
-            Cipher decryptCipher = Cipher.getInstance(keyType);
+            Cipher decryptCipher = getCipher(keyType);
             decryptCipher.init(Cipher.DECRYPT_MODE, key);
             result = decryptCipher.doFinal(payload);
         } catch (NoSuchAlgorithmException e) {
@@ -171,7 +188,7 @@ public class Crypto {
     public static final byte[] sign(byte[] payload, PrivateKey privateKey) {
         byte[] result = {};
         try {
-            Signature sig = Signature.getInstance("SHA256withRSA");
+            Signature sig = getSignature(SIGNATURE_TYPE);
             sig.initSign(privateKey);
             sig.update(payload);
             result = sig.sign();
@@ -198,7 +215,7 @@ public class Crypto {
     public static final boolean verify(byte[] signature, byte[] payload, PublicKey publicKey) {
         boolean result = false;
         try {
-            Signature publicSignature = Signature.getInstance("SHA256withRSA");
+            Signature publicSignature = getSignature(SIGNATURE_TYPE);
             publicSignature.initVerify(publicKey);
             publicSignature.update(payload);
             result = publicSignature.verify(signature);
@@ -216,4 +233,94 @@ public class Crypto {
         }
         return result;
     }
+
+    /**
+     * Computes a keyed hash (HMAC-SHA256) of the payload with the given key.
+     *
+     * This is several orders of magnitude cheaper than an asymmetric decrypt,
+     * so it is useful for quickly ruling things out before doing real crypto.
+     *
+     * @param payload The data to hash
+     * @param key     The secret key to hash with
+     * @return The 32-byte MAC of the payload, or empty on error
+     */
+    public static byte[] hmac(final byte[] payload, final SecretKey key) {
+        byte[] result = {};
+        try {
+            Mac mac = getMac(MAC_TYPE);
+            mac.init(key);
+            result = mac.doFinal(payload);
+        } catch (NoSuchAlgorithmException e) {
+            // Thrown when a particular cryptographic algorithm is requested
+            // but is not available in the environment. (Never: HMAC is common)
+            e.printStackTrace();
+        } catch (InvalidKeyException e) {
+            // Invalid Keys: invalid encoding, wrong length, uninitialized, etc.
+            // This could happen, but shouldn't.
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    /**
+     * Computes a short identifier for the given secret key: a truncated
+     * SHA-256 hash of its encoded bytes.  Lets a receiver pick the right key
+     * out of a contact's historical keys without trial decryption.
+     *
+     * @param key The secret key to identify
+     * @return The first KEY_ID_SIZE bytes of the hash of the key
+     */
+    public static byte[] keyId(final SecretKey key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance(KEY_ID_DIGEST).digest(key.getEncoded());
+            return Arrays.copyOf(digest, KEY_ID_SIZE);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform.
+            throw new RuntimeException(e);
+        }
+    }
+
+    // helpers (getCipher/getSignature are shared with the CryptoSuite implementations)
+    /**
+     * Returns this thread's cached Cipher for the transform, creating it if needed.
+     * The caller must init() it before use.
+     */
+    static Cipher getCipher(final String transform)
+            throws NoSuchAlgorithmException, NoSuchPaddingException {
+        final Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transform);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transform);
+            ciphers.put(transform, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns this thread's cached Signature for the algorithm, creating it if
+     * needed.  The caller must initSign()/initVerify() it before use.
+     */
+    static Signature getSignature(final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, Signature> signatures = SIGNATURES.get();
+        Signature signature = signatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            signatures.put(algorithm, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns this thread's cached Mac for the algorithm, creating it if needed.
+     * The caller must init() it before use.
+     */
+    private static Mac getMac(final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
 }
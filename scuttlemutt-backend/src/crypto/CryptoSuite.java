@@ -0,0 +1,85 @@
+package crypto;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * A family of asymmetric primitives used for a user's long-lived keypair.
+ *
+ * A suite is responsible for encrypting Bark headers to a receiver's public
+ * key and for signing Bark payloads.  Symmetric encryption of the payload is
+ * the same for every suite (see: Crypto).
+ *
+ * Use CryptoSuites to look up a suite by id or by key.
+ */
+public interface CryptoSuite {
+    /**
+     * @return the id written to the network to identify this suite.
+     */
+    byte getId();
+
+    /**
+     * Generates a new KeyPair for this suite.
+     *
+     * @return the new KeyPair
+     */
+    KeyPair generateKeyPair();
+
+    /**
+     * Encrypts a (small) header so only the owner of the receiver's private key
+     * can read it.
+     *
+     * @param plaintext   the bytes to encrypt
+     * @param receiverKey the public key of the receiver
+     * @return the encrypted (ciphertext) byte array, or empty on error
+     */
+    byte[] encryptHeader(byte[] plaintext, PublicKey receiverKey);
+
+    /**
+     * Decrypts a header written by encryptHeader().
+     *
+     * @param ciphertext the bytes to decrypt
+     * @param myKey      my private key
+     * @return the decrypted (plaintext) byte array, or null on error
+     */
+    byte[] decryptHeader(byte[] ciphertext, PrivateKey myKey);
+
+    /**
+     * Signs the payload with the given private key.
+     *
+     * @param payload    The data to sign
+     * @param privateKey The private key of the signer
+     * @return The signature of the input payload, or empty on error
+     */
+    byte[] sign(byte[] payload, PrivateKey privateKey);
+
+    /**
+     * Verifies that the signature is valid for the given payload and public key
+     *
+     * @return true if the signature is valid, false otherwise
+     */
+    boolean verify(byte[] signature, byte[] payload, PublicKey publicKey);
+
+    /**
+     * Returns the length of the signatures made by the passed key's private half.
+     *
+     * @param publicKey the public key of the signer
+     * @return the signature length in bytes
+     */
+    int signatureLength(PublicKey publicKey);
+
+    /**
+     * Reassembles a PublicKey of this suite from its getEncoded() bytes.
+     *
+     * @throws RuntimeException if the bytes are not a valid key
+     */
+    PublicKey decodePublicKey(byte[] encoded);
+
+    /**
+     * Reassembles a PrivateKey of this suite from its getEncoded() bytes.
+     *
+     * @throws RuntimeException if the bytes are not a valid key
+     */
+    PrivateKey decodePrivateKey(byte[] encoded);
+}
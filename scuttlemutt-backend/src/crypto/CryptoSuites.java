@@ -0,0 +1,50 @@
+package crypto;
+
+import java.security.Key;
+
+/**
+ * A static registry of the available CryptoSuites.
+ *
+ * The available methods to call are:
+ * - CryptoSuite fromId(byte id)
+ * - CryptoSuite forKey(Key key)
+ */
+public class CryptoSuites {
+    public static final CryptoSuite RSA = new RsaCryptoSuite();
+    public static final CryptoSuite EC = new EcCryptoSuite();
+
+    // the suite used for new keypairs unless another one is requested.
+    public static final CryptoSuite DEFAULT = RSA;
+
+    /**
+     * Returns the CryptoSuite with the passed id.
+     *
+     * @throws IllegalArgumentException if no suite has the id
+     * @param id the id of the suite, as written to the network
+     * @return the CryptoSuite with that id
+     */
+    public static CryptoSuite fromId(final byte id) {
+        if (id == RsaCryptoSuite.ID) {
+            return RSA;
+        } else if (id == EcCryptoSuite.ID) {
+            return EC;
+        }
+        throw new IllegalArgumentException("Unknown crypto suite id:  " + id);
+    }
+
+    /**
+     * Returns the CryptoSuite which the passed public or private key belongs to.
+     *
+     * @throws IllegalArgumentException if the key doesn't belong to any suite
+     * @param key a public or private key
+     * @return the CryptoSuite the key belongs to
+     */
+    public static CryptoSuite forKey(final Key key) {
+        if (key instanceof EcCryptoSuite.EcPublicKey || key instanceof EcCryptoSuite.EcPrivateKey) {
+            return EC;
+        } else if (Crypto.ASYMMETRIC_KEY_TYPE.equals(key.getAlgorithm())) {
+            return RSA;
+        }
+        throw new IllegalArgumentException("Key does not belong to a known crypto suite:  " + key.getAlgorithm());
+    }
+}
@@ -0,0 +1,314 @@
+package crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * An elliptic-curve suite: X25519 key agreement for header encryption and
+ * Ed25519 signatures, both from the JDK providers.
+ *
+ * Since X25519 keys can't sign and Ed25519 keys can't agree, a user's keypair
+ * in this suite is a pair of keypairs, wrapped in EcPublicKey/EcPrivateKey.
+ *
+ * Headers are encrypted ECIES-style:
+ * [ephemeral X25519 public key length][ephemeral X25519 public key][GCM nonce][AES-GCM ciphertext]
+ * where the AES key is SHA-256(shared secret || ephemeral public key), truncated.
+ */
+public class EcCryptoSuite implements CryptoSuite {
+    public static final byte ID = 2;
+
+    public static final String AGREEMENT_KEY_TYPE = "X25519";
+    public static final String SIGNATURE_TYPE = "Ed25519";
+    public static final int SIGNATURE_SIZE = 64;
+
+    private static final String HEADER_CIPHER_SPEC = "AES/GCM/NoPadding";
+    private static final String KEY_DERIVATION_DIGEST = "SHA-256";
+    private static final int GCM_NONCE_SIZE = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        try {
+            final KeyPair agreement = KeyPairGenerator.getInstance(AGREEMENT_KEY_TYPE).generateKeyPair();
+            final KeyPair signing = KeyPairGenerator.getInstance(SIGNATURE_TYPE).generateKeyPair();
+            return new KeyPair(new EcPublicKey(agreement.getPublic(), signing.getPublic()),
+                    new EcPrivateKey(agreement.getPrivate(), signing.getPrivate()));
+        } catch (NoSuchAlgorithmException e) {
+            // X25519 + Ed25519 are available from JDK 15 onwards.
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public byte[] encryptHeader(final byte[] plaintext, final PublicKey receiverKey) {
+        try {
+            // agree on a one-time key with the receiver using a fresh ephemeral keypair.
+            final KeyPair ephemeral = KeyPairGenerator.getInstance(AGREEMENT_KEY_TYPE).generateKeyPair();
+            final byte[] ephemeralPublic = ephemeral.getPublic().getEncoded();
+            final SecretKeySpec headerKey = deriveHeaderKey(ephemeral.getPrivate(),
+                    ((EcPublicKey) receiverKey).getAgreementKey(), ephemeralPublic);
+
+            final byte[] nonce = new byte[GCM_NONCE_SIZE];
+            RANDOM.nextBytes(nonce);
+            final Cipher cipher = Crypto.getCipher(HEADER_CIPHER_SPEC);
+            cipher.init(Cipher.ENCRYPT_MODE, headerKey, new GCMParameterSpec(GCM_TAG_BITS, nonce));
+            final byte[] ciphertext = cipher.doFinal(plaintext);
+
+            return ByteBuffer.allocate(1 + ephemeralPublic.length + nonce.length + ciphertext.length)
+                    .put((byte) ephemeralPublic.length)
+                    .put(ephemeralPublic)
+                    .put(nonce)
+                    .put(ciphertext)
+                    .array();
+        } catch (GeneralSecurityException | ClassCastException e) {
+            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public byte[] decryptHeader(final byte[] ciphertext, final PrivateKey myKey) {
+        try {
+            final int ephemeralLength = ciphertext[0] & 0xFF;
+            final int nonceStart = 1 + ephemeralLength;
+            final int bodyStart = nonceStart + GCM_NONCE_SIZE;
+            if (bodyStart > ciphertext.length) {
+                return null;
+            }
+            final byte[] ephemeralPublic = Arrays.copyOfRange(ciphertext, 1, nonceStart);
+            final PublicKey ephemeralKey = KeyFactory.getInstance(AGREEMENT_KEY_TYPE)
+                    .generatePublic(new X509EncodedKeySpec(ephemeralPublic));
+            final SecretKeySpec headerKey = deriveHeaderKey(((EcPrivateKey) myKey).getAgreementKey(),
+                    ephemeralKey, ephemeralPublic);
+
+            final Cipher cipher = Crypto.getCipher(HEADER_CIPHER_SPEC);
+            cipher.init(Cipher.DECRYPT_MODE, headerKey,
+                    new GCMParameterSpec(GCM_TAG_BITS, ciphertext, nonceStart, GCM_NONCE_SIZE));
+            return cipher.doFinal(ciphertext, bodyStart, ciphertext.length - bodyStart);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // the header wasn't encrypted for us (or is malformed).
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] sign(final byte[] payload, final PrivateKey privateKey) {
+        try {
+            final Signature sig = Crypto.getSignature(SIGNATURE_TYPE);
+            sig.initSign(((EcPrivateKey) privateKey).getSigningKey());
+            sig.update(payload);
+            return sig.sign();
+        } catch (GeneralSecurityException | ClassCastException e) {
+            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] signature, final byte[] payload, final PublicKey publicKey) {
+        try {
+            final Signature sig = Crypto.getSignature(SIGNATURE_TYPE);
+            sig.initVerify(((EcPublicKey) publicKey).getSigningKey());
+            sig.update(payload);
+            return sig.verify(signature);
+        } catch (GeneralSecurityException | ClassCastException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public int signatureLength(final PublicKey publicKey) {
+        return SIGNATURE_SIZE;
+    }
+
+    @Override
+    public PublicKey decodePublicKey(final byte[] encoded) {
+        final byte[][] parts = decodeParts(encoded);
+        try {
+            return new EcPublicKey(
+                    KeyFactory.getInstance(AGREEMENT_KEY_TYPE).generatePublic(new X509EncodedKeySpec(parts[0])),
+                    KeyFactory.getInstance(SIGNATURE_TYPE).generatePublic(new X509EncodedKeySpec(parts[1])));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(final byte[] encoded) {
+        final byte[][] parts = decodeParts(encoded);
+        try {
+            return new EcPrivateKey(
+                    KeyFactory.getInstance(AGREEMENT_KEY_TYPE).generatePrivate(new PKCS8EncodedKeySpec(parts[0])),
+                    KeyFactory.getInstance(SIGNATURE_TYPE).generatePrivate(new PKCS8EncodedKeySpec(parts[1])));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // private helpers
+    /**
+     * Derives the AES key used for a header from an X25519 agreement.
+     */
+    private static SecretKeySpec deriveHeaderKey(final PrivateKey myKey, final PublicKey theirKey,
+                                                 final byte[] ephemeralPublic) throws GeneralSecurityException {
+        final KeyAgreement agreement = KeyAgreement.getInstance(AGREEMENT_KEY_TYPE);
+        agreement.init(myKey);
+        agreement.doPhase(theirKey, true);
+        final MessageDigest digest = MessageDigest.getInstance(KEY_DERIVATION_DIGEST);
+        digest.update(agreement.generateSecret());
+        digest.update(ephemeralPublic);
+        return new SecretKeySpec(digest.digest(), 0, Crypto.SYMMETRIC_KEY_SIZE / 8, Crypto.SYMMETRIC_KEY_TYPE);
+    }
+
+    /**
+     * Encodes two keys as [2-byte length][agreement key][2-byte length][signing key].
+     */
+    private static byte[] encodeParts(final byte[] agreementKey, final byte[] signingKey) {
+        return ByteBuffer.allocate(4 + agreementKey.length + signingKey.length)
+                .putShort((short) agreementKey.length)
+                .put(agreementKey)
+                .putShort((short) signingKey.length)
+                .put(signingKey)
+                .array();
+    }
+
+    /**
+     * Splits bytes written by encodeParts() back into the two keys.
+     */
+    private static byte[][] decodeParts(final byte[] encoded) {
+        final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        final byte[] agreementKey = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(agreementKey);
+        final byte[] signingKey = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(signingKey);
+        return new byte[][] {agreementKey, signingKey};
+    }
+
+    /**
+     * The public half of an EC suite keypair: an X25519 key + an Ed25519 key.
+     */
+    public static class EcPublicKey implements PublicKey {
+        private static final long serialVersionUID = 1L;
+
+        private final PublicKey agreementKey;
+        private final PublicKey signingKey;
+
+        public EcPublicKey(final PublicKey agreementKey, final PublicKey signingKey) {
+            this.agreementKey = agreementKey;
+            this.signingKey = signingKey;
+        }
+
+        public PublicKey getAgreementKey() {
+            return this.agreementKey;
+        }
+
+        public PublicKey getSigningKey() {
+            return this.signingKey;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return AGREEMENT_KEY_TYPE + "+" + SIGNATURE_TYPE;
+        }
+
+        @Override
+        public String getFormat() {
+            return "X.509+X.509";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encodeParts(this.agreementKey.getEncoded(), this.signingKey.getEncoded());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EcPublicKey)) {
+                return false;
+            }
+            return Arrays.equals(this.getEncoded(), ((EcPublicKey) o).getEncoded());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.getEncoded());
+        }
+    }
+
+    /**
+     * The private half of an EC suite keypair: an X25519 key + an Ed25519 key.
+     */
+    public static class EcPrivateKey implements PrivateKey {
+        private static final long serialVersionUID = 1L;
+
+        private final PrivateKey agreementKey;
+        private final PrivateKey signingKey;
+
+        public EcPrivateKey(final PrivateKey agreementKey, final PrivateKey signingKey) {
+            this.agreementKey = agreementKey;
+            this.signingKey = signingKey;
+        }
+
+        public PrivateKey getAgreementKey() {
+            return this.agreementKey;
+        }
+
+        public PrivateKey getSigningKey() {
+            return this.signingKey;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return AGREEMENT_KEY_TYPE + "+" + SIGNATURE_TYPE;
+        }
+
+        @Override
+        public String getFormat() {
+            return "PKCS#8+PKCS#8";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return encodeParts(this.agreementKey.getEncoded(), this.signingKey.getEncoded());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EcPrivateKey)) {
+                return false;
+            }
+            return Arrays.equals(this.getEncoded(), ((EcPrivateKey) o).getEncoded());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.getEncoded());
+        }
+    }
+}
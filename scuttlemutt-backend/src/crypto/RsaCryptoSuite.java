@@ -0,0 +1,75 @@
+package crypto;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * The original 4096-bit RSA suite: RSA/PKCS1 header encryption and
+ * SHA256withRSA signatures.  Delegates to the static helpers in Crypto.
+ */
+public class RsaCryptoSuite implements CryptoSuite {
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        return Crypto.generateKeyPair();
+    }
+
+    @Override
+    public byte[] encryptHeader(final byte[] plaintext, final PublicKey receiverKey) {
+        return Crypto.encrypt(plaintext, receiverKey, Crypto.ASYMMETRIC_KEY_TYPE);
+    }
+
+    @Override
+    public byte[] decryptHeader(final byte[] ciphertext, final PrivateKey myKey) {
+        return Crypto.decrypt(ciphertext, myKey, Crypto.ASYMMETRIC_KEY_TYPE);
+    }
+
+    @Override
+    public byte[] sign(final byte[] payload, final PrivateKey privateKey) {
+        return Crypto.sign(payload, privateKey);
+    }
+
+    @Override
+    public boolean verify(final byte[] signature, final byte[] payload, final PublicKey publicKey) {
+        return Crypto.verify(signature, payload, publicKey);
+    }
+
+    @Override
+    public int signatureLength(final PublicKey publicKey) {
+        // an RSA signature is always as long as the modulus.
+        return (((RSAKey) publicKey).getModulus().bitLength() + 7) / 8;
+    }
+
+    @Override
+    public PublicKey decodePublicKey(final byte[] encoded) {
+        try {
+            return KeyFactory.getInstance(Crypto.ASYMMETRIC_KEY_TYPE)
+                    .generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(final byte[] encoded) {
+        try {
+            return KeyFactory.getInstance(Crypto.ASYMMETRIC_KEY_TYPE)
+                    .generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package storagemanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+
+import types.Bark;
+import types.packet.BinaryPacketCodec;
+import types.serialization.SerializationUtils;
+
+/**
+ * Implements the RelayBuffer interface on top of a MapRelayBuffer, persisting
+ * every change to an append-only log file so the held Barks survive restarts.
+ *
+ * The log starts with a header (magic number, Bark binary format version),
+ * followed by records:
+ * - STORE:    [forward count][Bark in the binary format]
+ * - REMOVE:   [uuid]
+ * - FORWARD:  [uuid]
+ *
+ * On construction the log is replayed, then rewritten with only the live
+ * Barks (compacted).  It is compacted again whenever it holds many more
+ * records than Barks.  STORE + REMOVE records are flushed as they are written;
+ * FORWARD records are only advisory, so they are flushed with the next STORE
+ * or REMOVE.  A log cut short by a crash, or damaged, is replayed up to the
+ * last good record.
+ */
+public class FileRelayBuffer implements RelayBuffer, Closeable {
+    // "RELB"
+    private static final int MAGIC = 0x52454c42;
+
+    private static final byte RECORD_STORE = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_FORWARD = 3;
+
+    // the log is never compacted while it holds fewer records than this.
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+    // class variables
+    private final File file;
+    private final MapRelayBuffer buffer;
+    private DataOutputStream log;
+    // the number of records in the log.
+    private int logRecords;
+    // true while replaying the log, when changes must not be logged again.
+    private boolean replaying;
+
+    /**
+     * Constructs a new FileRelayBuffer with the default limits + eviction policy.
+     *
+     * @param file the log file.  Created if it doesn't exist, otherwise reloaded.
+     * @throws IOException if the file can't be read or written.
+     */
+    public FileRelayBuffer(final File file) throws IOException {
+        this(file, MapRelayBuffer.DEFAULT_MAX_BARKS, MapRelayBuffer.DEFAULT_MAX_BYTES,
+                MapRelayBuffer.DEFAULT_EVICTION_POLICY);
+    }
+
+    /**
+     * Constructs a new FileRelayBuffer.
+     *
+     * @param file           the log file.  Created if it doesn't exist, otherwise reloaded.
+     * @param maxBarks       the most Barks to hold.
+     * @param maxBytes       the most bytes of (binary-encoded) Barks to hold.
+     * @param evictionPolicy the order to evict Barks in once the buffer is full.
+     * @throws IOException if the file can't be read or written.
+     */
+    public FileRelayBuffer(final File file, final int maxBarks, final long maxBytes,
+                           final EvictionPolicy evictionPolicy) throws IOException {
+        this.file = file;
+        this.buffer = new MapRelayBuffer(maxBarks, maxBytes, evictionPolicy, this::logRemove);
+        if (file.exists()) {
+            this.replay();
+        }
+        this.compact();
+    }
+
+    @Override
+    public synchronized boolean store(final Bark bark) {
+        final boolean stored = this.buffer.store(bark);
+        if (this.buffer.contains(bark.getUniqueId())) {
+            // log replacements too, so the latest copy is the one reloaded.
+            this.appendRecord(RECORD_STORE, bark.getUniqueId(), bark, true);
+        }
+        return stored;
+    }
+
+    @Override
+    public synchronized Bark lookup(final UUID barkId) {
+        return this.buffer.lookup(barkId);
+    }
+
+    @Override
+    public synchronized boolean contains(final UUID barkId) {
+        return this.buffer.contains(barkId);
+    }
+
+    @Override
+    public synchronized Bark remove(final UUID barkId) {
+        final Bark removed = this.buffer.remove(barkId);
+        if (removed != null) {
+            this.logRemove(barkId);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void recordForward(final UUID barkId) {
+        if (this.buffer.contains(barkId)) {
+            this.buffer.recordForward(barkId);
+            this.appendRecord(RECORD_FORWARD, barkId, null, false);
+        }
+    }
+
+    @Override
+    public synchronized int getForwardCount(final UUID barkId) {
+        return this.buffer.getForwardCount(barkId);
+    }
+
+    @Override
+    public synchronized List<Bark> getBarks() {
+        return this.buffer.getBarks();
+    }
+
+    @Override
+    public synchronized int removeExpired(final long nowMillis) {
+        return this.buffer.removeExpired(nowMillis);
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.buffer.size();
+    }
+
+    /**
+     * Flushes + closes the log.  The buffer must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.log != null) {
+            this.log.close();
+            this.log = null;
+        }
+    }
+
+    // private helpers
+    /**
+     * Logs the removal of a Bark (including evictions + expiries by the MapRelayBuffer).
+     */
+    private synchronized void logRemove(final UUID barkId) {
+        this.appendRecord(RECORD_REMOVE, barkId, null, true);
+    }
+
+    /**
+     * Appends a record to the log, compacting it if it has grown too large.
+     * Write failures are logged and otherwise ignored, so the buffer keeps
+     * working in memory.
+     */
+    private void appendRecord(final byte type, final UUID barkId, final Bark bark, final boolean flush) {
+        if (this.replaying || this.log == null) {
+            return;
+        }
+        try {
+            this.log.writeByte(type);
+            if (type == RECORD_STORE) {
+                SerializationUtils.writeVarInt(this.log, this.buffer.getForwardCount(barkId));
+                bark.writeBinary(this.log);
+            } else {
+                SerializationUtils.writeUUID(this.log, barkId);
+            }
+            if (flush) {
+                this.log.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write to relay buffer '" + this.file + "' -- " + e);
+            return;
+        }
+
+        this.logRecords++;
+        if (this.logRecords > MIN_RECORDS_BEFORE_COMPACTION && this.logRecords > 2 * this.buffer.size()) {
+            try {
+                this.compact();
+            } catch (IOException e) {
+                System.err.println("Failed to compact relay buffer '" + this.file + "' -- " + e);
+            }
+        }
+    }
+
+    /**
+     * Loads the Barks in the log into the buffer.  Replay stops at the first
+     * record which is cut short or malformed, keeping the records before it;
+     * compact() then drops the rest.  A file without our header is moved
+     * aside (to <file>.corrupt), so a new log is started instead.
+     */
+    private void replay() throws IOException {
+        this.replaying = true;
+        boolean badHeader = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            byte version = 0;
+            try {
+                badHeader = in.readInt() != MAGIC;
+                version = in.readByte();
+            } catch (EOFException e) {
+                badHeader = true;
+            }
+            while (!badHeader) {
+                final int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                try {
+                    this.replayRecord(in, type, version);
+                } catch (EOFException e) {
+                    // the last record was cut short (e.g. by a crash).
+                    System.err.println("Relay buffer '" + this.file
+                            + "' ended mid-record, dropping the partial record.");
+                    break;
+                } catch (IOException e) {
+                    // the records after a malformed one can't be found, so they're dropped too.
+                    System.err.println("Relay buffer '" + this.file + "' holds a malformed record, dropping it and "
+                            + "the rest of the log -- " + e);
+                    break;
+                }
+            }
+        } finally {
+            this.replaying = false;
+        }
+        if (badHeader) {
+            this.moveAside();
+        }
+    }
+
+    /**
+     * Applies the passed record from the log to the buffer.
+     *
+     * @throws IOException if the record is cut short or malformed.
+     */
+    private void replayRecord(final DataInputStream in, final int type, final byte version) throws IOException {
+        switch (type) {
+            case RECORD_STORE:
+                final int forwardCount = SerializationUtils.readVarInt(in);
+                this.buffer.restore(Bark.readBinary(in, version), forwardCount);
+                break;
+            case RECORD_REMOVE:
+                this.buffer.remove(SerializationUtils.readUUID(in));
+                break;
+            case RECORD_FORWARD:
+                this.buffer.recordForward(SerializationUtils.readUUID(in));
+                break;
+            default:
+                throw new IOException("Unknown record type:  " + type);
+        }
+    }
+
+    /**
+     * Moves a file which isn't a relay buffer out of the way, so it isn't overwritten.
+     */
+    private void moveAside() throws IOException {
+        final File corruptFile = new File(this.file.getPath() + ".corrupt");
+        Files.move(this.file.toPath(), corruptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("'" + this.file + "' is not a relay buffer, moved it to '" + corruptFile
+                + "' and starting a new one.");
+    }
+
+    /**
+     * Rewrites the log with only the Barks currently held, then reopens it for appending.
+     */
+    private void compact() throws IOException {
+        this.close();
+
+        final File tempFile = new File(this.file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(BinaryPacketCodec.VERSION);
+            for (final Bark bark : this.buffer.getBarks()) {
+                out.writeByte(RECORD_STORE);
+                SerializationUtils.writeVarInt(out, this.buffer.getForwardCount(bark.getUniqueId()));
+                bark.writeBinary(out);
+            }
+        }
+        Files.move(tempFile.toPath(), this.file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+        this.logRecords = this.buffer.size();
+    }
+}
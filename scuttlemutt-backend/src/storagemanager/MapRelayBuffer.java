@@ -0,0 +1,232 @@
+package storagemanager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import types.Bark;
+
+/**
+ * Implements the RelayBuffer interface in memory, using a Map-based backend.
+ *
+ * Barks are kept in insertion order for OLDEST_FIRST eviction + iteration,
+ * and in a sorted set by forward count for MOST_FORWARDED_FIRST eviction, so
+ * every operation other than getBarks() + removeExpired() is O(log n).
+ */
+public class MapRelayBuffer implements RelayBuffer {
+    public static final int DEFAULT_MAX_BARKS = 10_000;
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    public static final EvictionPolicy DEFAULT_EVICTION_POLICY = EvictionPolicy.MOST_FORWARDED_FIRST;
+
+    // most forwarded first, then oldest first.
+    private static final Comparator<Entry> BY_FORWARDS = Comparator.<Entry>comparingInt(e -> -e.forwardCount)
+            .thenComparingLong(e -> e.sequenceNumber);
+
+    // class variables
+    private final int maxBarks;
+    private final long maxBytes;
+    private final EvictionPolicy evictionPolicy;
+    // called with the id of every Bark which is evicted or expires.
+    private final Consumer<UUID> removalListener;
+    // the held Barks, oldest first.
+    private final Map<UUID, Entry> entries;
+    private final TreeSet<Entry> entriesByForwards;
+    private long totalBytes;
+    private long nextSequenceNumber;
+
+    /**
+     * Constructs a new MapRelayBuffer with the default limits + eviction policy.
+     */
+    public MapRelayBuffer() {
+        this(DEFAULT_MAX_BARKS, DEFAULT_MAX_BYTES, DEFAULT_EVICTION_POLICY);
+    }
+
+    /**
+     * Constructs a new MapRelayBuffer.
+     *
+     * @param maxBarks       the most Barks to hold.
+     * @param maxBytes       the most bytes of (binary-encoded) Barks to hold.
+     * @param evictionPolicy the order to evict Barks in once the buffer is full.
+     */
+    public MapRelayBuffer(final int maxBarks, final long maxBytes, final EvictionPolicy evictionPolicy) {
+        this(maxBarks, maxBytes, evictionPolicy, id -> { });
+    }
+
+    /**
+     * Constructs a new MapRelayBuffer which reports the Barks it drops on its own.
+     */
+    MapRelayBuffer(final int maxBarks, final long maxBytes, final EvictionPolicy evictionPolicy,
+                   final Consumer<UUID> removalListener) {
+        if (maxBarks < 1 || maxBytes < 1 || evictionPolicy == null) {
+            throw new IllegalArgumentException("Invalid RelayBuffer limits:  maxBarks = " + maxBarks
+                    + ", maxBytes = " + maxBytes + ", evictionPolicy = " + evictionPolicy);
+        }
+        this.maxBarks = maxBarks;
+        this.maxBytes = maxBytes;
+        this.evictionPolicy = evictionPolicy;
+        this.removalListener = removalListener;
+        this.entries = new LinkedHashMap<>();
+        this.entriesByForwards = new TreeSet<>(BY_FORWARDS);
+        this.totalBytes = 0;
+        this.nextSequenceNumber = 0;
+    }
+
+    @Override
+    public synchronized boolean store(final Bark bark) {
+        return this.restore(bark, 0);
+    }
+
+    /**
+     * Stores the passed Bark with the passed forward count.  Used when
+     * reloading a persisted buffer.  An already held Bark keeps its count.
+     */
+    synchronized boolean restore(final Bark bark, final int forwardCount) {
+        final int barkBytes = bark.getBinarySize();
+        if (bark.isExpired(System.currentTimeMillis()) || barkBytes > this.maxBytes) {
+            return false;
+        }
+
+        final Entry existing = this.entries.get(bark.getUniqueId());
+        if (existing != null) {
+            this.totalBytes += barkBytes - existing.bytes;
+            existing.bark = bark;
+            existing.bytes = barkBytes;
+            this.makeRoom(existing);
+            return false;
+        }
+
+        final Entry entry = new Entry(bark, barkBytes, forwardCount, this.nextSequenceNumber++);
+        this.entries.put(bark.getUniqueId(), entry);
+        this.entriesByForwards.add(entry);
+        this.totalBytes += barkBytes;
+        this.makeRoom(entry);
+        return true;
+    }
+
+    @Override
+    public synchronized Bark lookup(final UUID barkId) {
+        final Entry entry = this.entries.get(barkId);
+        return entry == null ? null : entry.bark;
+    }
+
+    @Override
+    public synchronized boolean contains(final UUID barkId) {
+        return this.entries.containsKey(barkId);
+    }
+
+    @Override
+    public synchronized Bark remove(final UUID barkId) {
+        final Entry entry = this.entries.get(barkId);
+        if (entry == null) {
+            return null;
+        }
+        this.removeEntry(entry);
+        return entry.bark;
+    }
+
+    @Override
+    public synchronized void recordForward(final UUID barkId) {
+        final Entry entry = this.entries.get(barkId);
+        if (entry == null) {
+            return;
+        }
+        // re-sort the entry under its new count.
+        this.entriesByForwards.remove(entry);
+        entry.forwardCount++;
+        this.entriesByForwards.add(entry);
+    }
+
+    @Override
+    public synchronized int getForwardCount(final UUID barkId) {
+        final Entry entry = this.entries.get(barkId);
+        return entry == null ? 0 : entry.forwardCount;
+    }
+
+    @Override
+    public synchronized List<Bark> getBarks() {
+        final List<Bark> barks = new ArrayList<>(this.entries.size());
+        for (final Entry entry : this.entries.values()) {
+            barks.add(entry.bark);
+        }
+        return barks;
+    }
+
+    @Override
+    public synchronized int removeExpired(final long nowMillis) {
+        int removed = 0;
+        final Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.bark.isExpired(nowMillis)) {
+                iterator.remove();
+                this.entriesByForwards.remove(entry);
+                this.totalBytes -= entry.bytes;
+                this.removalListener.accept(entry.bark.getUniqueId());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    // private helpers.  the lock must be held when calling these.
+    /**
+     * Evicts Barks until the buffer is within its limits, never evicting the passed entry.
+     */
+    private void makeRoom(final Entry keep) {
+        if (!this.isOverCapacity()) {
+            return;
+        }
+        // dropping expired Barks first costs nothing worth keeping.
+        this.removeExpired(System.currentTimeMillis());
+        while (this.isOverCapacity()) {
+            final Iterator<Entry> candidates = this.evictionPolicy == EvictionPolicy.OLDEST_FIRST
+                    ? this.entries.values().iterator()
+                    : this.entriesByForwards.iterator();
+            Entry victim = candidates.next();
+            if (victim == keep) {
+                victim = candidates.next();
+            }
+            this.removeEntry(victim);
+            this.removalListener.accept(victim.bark.getUniqueId());
+        }
+    }
+
+    private boolean isOverCapacity() {
+        return this.entries.size() > this.maxBarks || this.totalBytes > this.maxBytes;
+    }
+
+    private void removeEntry(final Entry entry) {
+        this.entries.remove(entry.bark.getUniqueId());
+        this.entriesByForwards.remove(entry);
+        this.totalBytes -= entry.bytes;
+    }
+
+    /**
+     * A held Bark + its bookkeeping.
+     */
+    private static class Entry {
+        private Bark bark;
+        private int bytes;
+        private int forwardCount;
+        // the order the Bark was first stored in.  breaks ties between equal forward counts.
+        private final long sequenceNumber;
+
+        private Entry(final Bark bark, final int bytes, final int forwardCount, final long sequenceNumber) {
+            this.bark = bark;
+            this.bytes = bytes;
+            this.forwardCount = forwardCount;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package storagemanager;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -11,13 +12,12 @@ import java.util.stream.Collectors;
 
 import javax.crypto.SecretKey;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
+import crypto.Crypto;
 import types.Bark;
 import types.Conversation;
 import types.DawgIdentifier;
 import types.Message;
+import types.serialization.SerializationUtils;
 
 /**
  * Implements the StorageManager interface using a Map-based backend.
@@ -28,7 +28,6 @@ import types.Message;
  * adding extra constructors/classes/methods/etc.
  */
 public class MapStorageManager implements StorageManager {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
 
     // maps
     private PrivateKey privateKey;
@@ -37,6 +36,8 @@ public class MapStorageManager implements StorageManager {
     private final Map<UUID, PublicKey> publicKeyMap;
     private final Map<UUID, String> conversationMap;
     private final Map<UUID, List<SecretKey>> secretKeysMap;
+    // index of the secret keys in secretKeysMap by (owner UUID, key id).
+    private final Map<String, SecretKey> keyIdToSecretKeyMap;
     private final Map<UUID, String> uuidToDawgIdentifierMap;
     private final Map<String, String> usernameToDawgIdentifierMap;
 
@@ -47,6 +48,7 @@ public class MapStorageManager implements StorageManager {
         this.messageMap = new ConcurrentHashMap<>();
         this.conversationMap = new ConcurrentHashMap<>();
         this.secretKeysMap = new ConcurrentHashMap<>();
+        this.keyIdToSecretKeyMap = new ConcurrentHashMap<>();
         this.publicKeyMap = new ConcurrentHashMap<>();
         this.privateKey = null;
     }
@@ -57,7 +59,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, Bark.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, Bark.class);
     }
 
     @Override
@@ -66,7 +68,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, DawgIdentifier.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, DawgIdentifier.class);
     }
 
     @Override
@@ -75,7 +77,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, DawgIdentifier.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, DawgIdentifier.class);
     }
 
     @Override
@@ -84,7 +86,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, Conversation.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, Conversation.class);
     }
 
     @Override
@@ -92,6 +94,11 @@ public class MapStorageManager implements StorageManager {
         return this.secretKeysMap.getOrDefault(id, null);
     }
 
+    @Override
+    public SecretKey lookupSecretKeyForKeyId(final UUID id, final byte[] keyId) {
+        return this.keyIdToSecretKeyMap.get(keyIdIndexKey(id, keyId));
+    }
+
     @Override
     public PublicKey lookupPublicKeyForUUID(final UUID id) {
         return this.publicKeyMap.getOrDefault(id, null);
@@ -109,19 +116,19 @@ public class MapStorageManager implements StorageManager {
 
     @Override
     public void storeBark(final Bark bark) {
-        this.barkMap.put(bark.getUniqueId(), GSON.toJson(bark));
+        this.barkMap.put(bark.getUniqueId(), SerializationUtils.GSON.toJson(bark));
     }
 
     @Override
     public void storeDawgIdentifier(final DawgIdentifier dawgIdentifier) {
-        final String dawgIdJson = GSON.toJson(dawgIdentifier);
+        final String dawgIdJson = SerializationUtils.GSON.toJson(dawgIdentifier);
         this.uuidToDawgIdentifierMap.put(dawgIdentifier.getUUID(), dawgIdJson);
         this.usernameToDawgIdentifierMap.put(dawgIdentifier.getUsername(), dawgIdJson);
     }
 
     @Override
     public void storeConversation(final Conversation conversation) {
-        this.conversationMap.put(conversation.getOtherPerson().getUUID(), GSON.toJson(conversation));
+        this.conversationMap.put(conversation.getOtherPerson().getUUID(), SerializationUtils.GSON.toJson(conversation));
     }
 
     @Override
@@ -130,10 +137,12 @@ public class MapStorageManager implements StorageManager {
         // oldest entry at index == 0.
         List<SecretKey> keyList = this.secretKeysMap.getOrDefault(id, new ArrayList<>());
         if (keyList.size() == StorageManager.MAX_NUM_HISTORICAL_KEYS_TO_STORE) {
-            keyList.remove(0);
+            final SecretKey removedKey = keyList.remove(0);
+            this.keyIdToSecretKeyMap.remove(keyIdIndexKey(id, Crypto.keyId(removedKey)));
         }
         keyList.add(key);
         this.secretKeysMap.put(id, keyList);
+        this.keyIdToSecretKeyMap.put(keyIdIndexKey(id, Crypto.keyId(key)), key);
     }
 
     @Override
@@ -157,7 +166,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, Bark.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, Bark.class);
     }
 
     @Override
@@ -166,7 +175,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        final DawgIdentifier deserializedObject = GSON.fromJson(serializedObject, DawgIdentifier.class);
+        final DawgIdentifier deserializedObject = SerializationUtils.GSON.fromJson(serializedObject, DawgIdentifier.class);
         this.usernameToDawgIdentifierMap.remove(deserializedObject.getUsername());
         return deserializedObject;
     }
@@ -177,7 +186,7 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        final DawgIdentifier deserializedObject = GSON.fromJson(serializedObject, DawgIdentifier.class);
+        final DawgIdentifier deserializedObject = SerializationUtils.GSON.fromJson(serializedObject, DawgIdentifier.class);
         this.uuidToDawgIdentifierMap.remove(deserializedObject.getUUID());
         return deserializedObject;
     }
@@ -188,12 +197,18 @@ public class MapStorageManager implements StorageManager {
         if (serializedObject == null) {
             return null;
         }
-        return GSON.fromJson(serializedObject, Conversation.class);
+        return SerializationUtils.GSON.fromJson(serializedObject, Conversation.class);
     }
 
     @Override
     public List<SecretKey> deleteSecretKeysForUUID(final UUID id) {
-        return this.secretKeysMap.remove(id);
+        final List<SecretKey> removedKeys = this.secretKeysMap.remove(id);
+        if (removedKeys != null) {
+            for (final SecretKey key : removedKeys) {
+                this.keyIdToSecretKeyMap.remove(keyIdIndexKey(id, Crypto.keyId(key)));
+            }
+        }
+        return removedKeys;
     }
 
     @Override
@@ -221,11 +236,26 @@ public class MapStorageManager implements StorageManager {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<SecretKey> listAllSecretKeys() {
+        return this.secretKeysMap.values()
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public List<Conversation> listAllConversations() {
         return this.conversationMap.values()
                 .stream()
-                .map(s -> GSON.fromJson(s, Conversation.class))
+                .map(s -> SerializationUtils.GSON.fromJson(s, Conversation.class))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Returns the key used to index a secret key by its owner + key id.
+     */
+    private static String keyIdIndexKey(final UUID id, final byte[] keyId) {
+        return id + ":" + Base64.getEncoder().encodeToString(keyId);
+    }
 }
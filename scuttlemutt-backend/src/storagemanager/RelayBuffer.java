@@ -0,0 +1,97 @@
+package storagemanager;
+
+import java.util.List;
+import java.util.UUID;
+
+import types.Bark;
+
+/**
+ * Interface used for classes which hold the Barks this device carries for
+ * other devices (store-and-forward), so they can be offered to neighbors met
+ * later.
+ *
+ * A RelayBuffer holds a bounded number of Barks.  Once it's full, storing a
+ * new Bark first drops any expired Barks, then evicts Barks according to its
+ * EvictionPolicy.
+ */
+public interface RelayBuffer {
+    /**
+     * The order in which a full RelayBuffer evicts Barks.
+     */
+    enum EvictionPolicy {
+        // evict the Bark which was stored first.
+        OLDEST_FIRST,
+        // evict the Bark which has been forwarded to the most neighbors (oldest first on ties), since it's
+        // the most likely to already be held elsewhere.
+        MOST_FORWARDED_FIRST
+    }
+
+    /**
+     * Stores the passed Bark, evicting other Barks if the buffer is full.
+     * Storing a Bark which is already held replaces it, but keeps its
+     * position + forward count.
+     *
+     * @param bark the Bark to store.
+     * @return true if the Bark wasn't already held.  Expired Barks and Barks
+     *         too large for the buffer are not stored, and return false.
+     */
+    boolean store(final Bark bark);
+
+    /**
+     * Returns the held Bark with the passed id.
+     *
+     * @param barkId the unique id of the Bark.
+     * @return the Bark, or null if it isn't held.
+     */
+    Bark lookup(final UUID barkId);
+
+    /**
+     * Returns true if the Bark with the passed id is held.
+     *
+     * @param barkId the unique id of the Bark.
+     * @return true if the Bark is held.
+     */
+    boolean contains(final UUID barkId);
+
+    /**
+     * Removes the Bark with the passed id.
+     *
+     * @param barkId the unique id of the Bark.
+     * @return the Bark which was removed, or null if it wasn't held.
+     */
+    Bark remove(final UUID barkId);
+
+    /**
+     * Records that the Bark with the passed id was sent to another neighbor.
+     * Does nothing if the Bark isn't held.
+     *
+     * @param barkId the unique id of the Bark.
+     */
+    void recordForward(final UUID barkId);
+
+    /**
+     * Returns the number of neighbors the Bark with the passed id was sent to.
+     *
+     * @param barkId the unique id of the Bark.
+     * @return the forward count, or 0 if the Bark isn't held.
+     */
+    int getForwardCount(final UUID barkId);
+
+    /**
+     * @return a snapshot of every held Bark, oldest first.
+     */
+    List<Bark> getBarks();
+
+    /**
+     * Removes every Bark which expired before the passed time.
+     *
+     * @param nowMillis the current time, in epoch millis.
+     * @return the number of Barks removed.
+     */
+    int removeExpired(final long nowMillis);
+
+    /**
+     * @return the number of Barks held.
+     */
+    int size();
+}
@@ -2,11 +2,14 @@ package storagemanager;
 
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 import javax.crypto.SecretKey;
 
+import crypto.Crypto;
 import types.Bark;
 import types.Conversation;
 import types.DawgIdentifier;
@@ -79,6 +82,29 @@ public interface StorageManager {
      */
     List<SecretKey> lookupSecretKeysForUUID(final UUID id);
 
+    /**
+     * Returns the secret key associated with the given dawgIdentifier id whose
+     * key id (see: Crypto.keyId) matches the passed one.
+     *
+     * Implementations may override this with an indexed lookup.
+     *
+     * @param id    the UUID of the DawgIdentifier to look for
+     * @param keyId the key id of the secret key to look for
+     * @return the matching secret key or null if not found
+     */
+    default SecretKey lookupSecretKeyForKeyId(final UUID id, final byte[] keyId) {
+        final List<SecretKey> keys = this.lookupSecretKeysForUUID(id);
+        if (keys == null) {
+            return null;
+        }
+        for (final SecretKey key : keys) {
+            if (Arrays.equals(Crypto.keyId(key), keyId)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the Message associated with the given dawgIdentifier's id.
      *
@@ -262,4 +288,21 @@ public interface StorageManager {
      * @return a list of DawgIdentifiers this device knows about.
      */
     List<DawgIdentifier> getAllDawgIdentifiers();
+
+    /**
+     * Lists every SecretKey shared with any known contact.  Used to cheaply
+     * check Bark recipient tags before attempting any asymmetric decryption.
+     *
+     * @return a list of all SecretKeys this device knows about.
+     */
+    default List<SecretKey> listAllSecretKeys() {
+        final List<SecretKey> keys = new ArrayList<>();
+        for (final DawgIdentifier dawgIdentifier : this.getAllDawgIdentifiers()) {
+            final List<SecretKey> contactKeys = this.lookupSecretKeysForUUID(dawgIdentifier.getUUID());
+            if (contactKeys != null) {
+                keys.addAll(contactKeys);
+            }
+        }
+        return keys;
+    }
 }
\ No newline at end of file
@@ -1,18 +1,33 @@
 package types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.SecretKey;
 
 import com.google.common.primitives.Bytes;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import crypto.Crypto;
+import crypto.CryptoSuite;
+import crypto.CryptoSuites;
+import crypto.RsaCryptoSuite;
+import storagemanager.StorageManager;
+import types.serialization.SerializationUtils;
 
 /**
  * Represents a "bark" (message) sent by the user.
@@ -20,14 +35,74 @@ import crypto.Crypto;
  * All of the bark fields are encrypted. The header is the senders UUID
  * encrypted with the public key of the receiver. Only the receiver can decrypt
  * it to figure out which symmetric keys to use for
+ *
+ * The header also carries the key id (see: Crypto.keyId) of the symmetric key
+ * used for the payload, so the receiver doesn't have to try each of the
+ * sender's historical keys in turn.
+ *
+ * The header is encrypted + the payload signed using the CryptoSuite of the
+ * receiver's and sender's keys; the id of the receiver's suite travels with
+ * the Bark so receivers with keys from a different suite can skip it.
+ *
+ * The hop count and expiry are the exception:  they're plaintext so that
+ * relays can bound how far (and for how long) a Bark floods.
+ *
+ * A Bark also carries a hash of its ack secret, a value derived from the
+ * shared secret key which only the sender + receiver can compute.  Once the
+ * receiver has the Bark, it floods the secret in an AckPacket; any relay can
+ * check the secret against the hash (see: isAckedBy) and stop carrying the
+ * Bark, without being able to forge an ack itself.
+ *
+ * Finally, when its sender has routing on, a Bark carries a plaintext route
+ * tag:  a 2-byte hash of the receiver's public key + the current route tag
+ * epoch (see: withRouteTag).  It lets relays learn which neighbor leads
+ * towards a receiver (see: RoutingTable).  The tag is NOT anonymous:  anyone
+ * who knows the receiver's public key can compute it, every Bark sent to the
+ * receiver during an epoch carries the same tag, and in a small mesh 2 bytes
+ * is usually enough to single the receiver out.  The tag changes every
+ * ROUTE_TAG_EPOCH_MILLIS, so Barks from different epochs can't be linked by
+ * it, and Barks sent with routing off carry no tag at all.
  */
 public class Bark {
     // constants
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
-
     // stores the maximum number of characters allowed in a Bark.
     public static final int MAX_MESSAGE_SIZE = 160;
 
+    // the number of bytes of the HMAC kept in the recipient tag.
+    public static final int RECIPIENT_TAG_SIZE = 8;
+
+    // the number of bytes of the HMAC kept in the ack secret, and of its hash kept in the ack hash.
+    public static final int ACK_SECRET_SIZE = 16;
+    public static final int ACK_HASH_SIZE = 16;
+    private static final byte[] ACK_SECRET_LABEL = "scuttlemutt-ack".getBytes(StandardCharsets.US_ASCII);
+    private static final String ACK_HASH_DIGEST = "SHA-256";
+
+    // the number of bytes of the hash of the receiver's public key kept in the route tag.
+    public static final int ROUTE_TAG_SIZE = 2;
+    // how long a route tag is used before it changes.
+    public static final long ROUTE_TAG_EPOCH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String ROUTE_TAG_DIGEST = "SHA-256";
+
+    // the version of the binary header format.  Legacy headers are a JSON string, which always
+    // begins with '"', so this value must never collide with that character.
+    private static final byte HEADER_VERSION = 1;
+    private static final int HEADER_SIZE = 1 + 16 + Crypto.KEY_ID_SIZE;
+
+    // the number of times a new Bark may be relayed, by default.
+    public static final int DEFAULT_HOP_LIMIT = 10;
+
+    // the most hops a Bark can carry (the hop count is a single byte on the wire).
+    public static final int MAX_HOP_LIMIT = 255;
+
+    // how long a new Bark is relayed for, by default.
+    public static final long DEFAULT_TTL_MILLIS = 24L * 60 * 60 * 1000;
+
+    // the expiry of Barks which never expire (ex: Barks created before expiry existed).
+    public static final long NO_EXPIRY = 0;
+
+    // the largest encrypted field we will accept when reading the binary format.
+    private static final int MAX_BINARY_FIELD_SIZE = 1 << 16;
+
     // private fields
     /**
      * The unique identifier that is automatically generated when a new Bark is
@@ -48,7 +123,49 @@ public class Bark {
     private final byte[] encryptedPayload;
 
     /**
-     * Constructs a new Bark.
+     * A truncated HMAC of the uniqueId, keyed with the shared secret key. Lets
+     * a relay rule out "not for me" cheaply before trying the header decrypt.
+     * Barks created before this field existed have a null tag.
+     */
+    private final byte[] recipientTag;
+
+    /**
+     * A truncated SHA-256 hash of the ack secret (see: computeAckSecret).  Lets
+     * a relay verify a delivery ack for this Bark.  Barks created before this
+     * field existed have a null hash, and can't be acked.
+     */
+    private final byte[] ackHash;
+
+    /**
+     * A truncated SHA-256 hash of the receiver's public key + the epoch the
+     * Bark was sent in (see: computeRouteTag).  Not encrypted.  Null unless
+     * the sender had routing on, and for Barks created before this field
+     * existed.
+     */
+    private final byte[] routeTag;
+
+    /**
+     * The id of the CryptoSuite the header was encrypted with. Barks created
+     * before this field existed were always encrypted with RSA.
+     */
+    private final byte cryptoSuiteId;
+
+    /**
+     * The number of times this Bark may still be relayed.  Unlike the other
+     * fields, this isn't encrypted or signed:  every relay hands on a copy with
+     * one fewer hop.  Barks created before this field existed get
+     * DEFAULT_HOP_LIMIT.
+     */
+    private final int hopsRemaining;
+
+    /**
+     * The wall-clock time (in epoch millis) after which this Bark should no
+     * longer be relayed, or NO_EXPIRY.  Not encrypted.
+     */
+    private final long expiresAtMillis;
+
+    /**
+     * Constructs a new Bark with the default hop limit + time to live.
      *
      * @param contents          The contents of the message.
      * @param sender            The DawgIdentifier of the sender of the message.
@@ -63,6 +180,30 @@ public class Bark {
             final PrivateKey senderPrivateKey,
             final PublicKey receiverPublicKey,
             final SecretKey encryptionKey) {
+        this(contents, sender, orderNum, senderPrivateKey, receiverPublicKey, encryptionKey,
+                DEFAULT_HOP_LIMIT, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Constructs a new Bark.
+     *
+     * @param contents          The contents of the message.
+     * @param sender            The DawgIdentifier of the sender of the message.
+     * @param orderNum          The number of the message in the conversation order.
+     * @param receiverPublicKey The public key of the receiver.
+     * @param encryptionKey     The symmetric SecretKey used to encrypt the contents
+     *                          of the Bark.
+     * @param hopLimit          The number of times the Bark may be relayed (0 - MAX_HOP_LIMIT).
+     * @param ttlMillis         How long the Bark should be relayed for.
+     */
+    public Bark(String contents,
+            final DawgIdentifier sender,
+            final Long orderNum,
+            final PrivateKey senderPrivateKey,
+            final PublicKey receiverPublicKey,
+            final SecretKey encryptionKey,
+            final int hopLimit,
+            final long ttlMillis) {
 
         // verify that the contents are less than the max message size.
         if (contents.length() > MAX_MESSAGE_SIZE) {
@@ -71,19 +212,52 @@ public class Bark {
                     "than the maximum size!\tBark message length:  " +
                     contents.length() + "\tMaximum size:  " + MAX_MESSAGE_SIZE);
         }
+        if (hopLimit < 0 || hopLimit > MAX_HOP_LIMIT) {
+            throw new IllegalArgumentException("Bark hop limit must be between 0 and " + MAX_HOP_LIMIT
+                    + "\tHop limit:  " + hopLimit);
+        }
         this.uniqueId = UUID.randomUUID();
+        this.recipientTag = computeRecipientTag(this.uniqueId, encryptionKey);
+        this.ackHash = computeAckHash(computeAckSecret(this.uniqueId, encryptionKey));
+        this.routeTag = null;
+        this.hopsRemaining = hopLimit;
+        this.expiresAtMillis = System.currentTimeMillis() + ttlMillis;
 
         // encrypt the uuid with an asymmetric key (small size limit)
-        byte[] headerBytes = GSON.toJson(sender.getUUID()).getBytes();
-        this.encryptedHeader = Crypto.encrypt(headerBytes, receiverPublicKey, Crypto.ASYMMETRIC_KEY_TYPE);
+        final CryptoSuite receiverSuite = CryptoSuites.forKey(receiverPublicKey);
+        byte[] headerBytes = ByteBuffer.allocate(HEADER_SIZE)
+                .put(HEADER_VERSION)
+                .put(SerializationUtils.uuidToBytes(sender.getUUID()))
+                .put(Crypto.keyId(encryptionKey))
+                .array();
+        this.cryptoSuiteId = receiverSuite.getId();
+        this.encryptedHeader = receiverSuite.encryptHeader(headerBytes, receiverPublicKey);
 
         // construct the bark payload, sign the raw header bytes, encrypt both with the SecretKey.
         byte[] payload = new BarkPayload(contents, sender, orderNum).toNetworkBytes();
-        byte[] payloadSignature = Crypto.sign(payload, senderPrivateKey);
+        byte[] payloadSignature = CryptoSuites.forKey(senderPrivateKey).sign(payload, senderPrivateKey);
         byte[] bytes = Bytes.concat(payload, payloadSignature);
         this.encryptedPayload = Crypto.encrypt(bytes, encryptionKey, Crypto.SYMMETRIC_KEY_TYPE);
     }
 
+    /**
+     * Constructs a Bark directly from its (already encrypted) fields.  Used
+     * when reading the binary wire format or JSON.
+     */
+    private Bark(final UUID uniqueId, final byte[] encryptedHeader, final byte[] encryptedPayload,
+                 final byte[] recipientTag, final byte[] ackHash, final byte[] routeTag,
+                 final byte cryptoSuiteId, final int hopsRemaining, final long expiresAtMillis) {
+        this.uniqueId = uniqueId;
+        this.encryptedHeader = encryptedHeader;
+        this.encryptedPayload = encryptedPayload;
+        this.recipientTag = recipientTag;
+        this.ackHash = ackHash;
+        this.routeTag = routeTag;
+        this.cryptoSuiteId = cryptoSuiteId;
+        this.hopsRemaining = hopsRemaining;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
     /**
      * Constructs a copy of a Bark.
      *
@@ -93,6 +267,12 @@ public class Bark {
         this.uniqueId = bark.uniqueId;
         this.encryptedHeader = bark.encryptedHeader;
         this.encryptedPayload = bark.encryptedPayload;
+        this.recipientTag = bark.recipientTag;
+        this.ackHash = bark.ackHash;
+        this.routeTag = bark.routeTag;
+        this.cryptoSuiteId = bark.cryptoSuiteId;
+        this.hopsRemaining = bark.hopsRemaining;
+        this.expiresAtMillis = bark.expiresAtMillis;
     }
 
     // public methods
@@ -115,6 +295,45 @@ public class Bark {
         }
     }
 
+    /**
+     * Cheaply checks whether this Bark could be for me by comparing its
+     * recipient tag against the tags derived from the secret keys I know.
+     *
+     * A false result is definitive and the Bark can be forwarded without any
+     * asymmetric crypto. A true result still needs to be confirmed with
+     * open() or isForMe(). Barks without a tag always return true.
+     *
+     * @param knownKeys every SecretKey I share with a contact.
+     * @return false if this Bark is definitely not for me, true otherwise
+     */
+    public boolean mayBeForMe(final Collection<SecretKey> knownKeys) {
+        if (this.recipientTag == null) {
+            return true;
+        }
+        for (final SecretKey key : knownKeys) {
+            if (MessageDigest.isEqual(this.recipientTag, computeRecipientTag(this.uniqueId, key))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the passed ack secret proves this Bark was delivered,
+     * i.e. it hashes to this Bark's ack hash.  Needs no keys, so any relay
+     * can check an AckPacket before acting on it.
+     *
+     * @param ackSecret the ack secret carried by an AckPacket.
+     * @return true if the secret is this Bark's ack secret.  Barks without an
+     *         ack hash always return false.
+     */
+    public boolean isAckedBy(final byte[] ackSecret) {
+        if (this.ackHash == null || ackSecret == null || ackSecret.length != ACK_SECRET_SIZE) {
+            return false;
+        }
+        return MessageDigest.isEqual(this.ackHash, computeAckHash(ackSecret));
+    }
+
     /**
      * Returns the uuid of the sender
      *
@@ -123,9 +342,57 @@ public class Bark {
      * @return the uuid of the sender
      */
     public UUID getSenderUUID(final PrivateKey myPrivateKey) {
-        String keyType = Crypto.ASYMMETRIC_KEY_TYPE;
-        byte[] bytes = Crypto.decrypt(this.encryptedHeader, myPrivateKey, keyType);
-        return GSON.fromJson(new String(bytes), UUID.class);
+        return decryptHeader(myPrivateKey).senderId;
+    }
+
+    /**
+     * Opens the Bark in a single pass: decrypts the header with the passed
+     * private key, looks up the sender's keys in the passed StorageManager,
+     * then decrypts + verifies the payload exactly once.
+     *
+     * Prefer this method over calling isForMe(), getSenderUUID(), getSender(),
+     * getContents() and getOrderNum() separately, since each of those repeats
+     * the asymmetric and/or symmetric decryption.
+     *
+     * @throws RuntimeException if the Bark is for me but the sender is unknown,
+     *                          decryption fails or the signature is invalid
+     * @param myPrivateKey the private half of my public/private keypair.
+     * @param storage      the StorageManager holding the sender's keys.
+     * @return an OpenedBark if this Bark is for me, otherwise null.
+     */
+    public OpenedBark open(final PrivateKey myPrivateKey, final StorageManager storage) {
+        // if we cannot decrypt the header, the Bark is not for us.
+        final Header header;
+        try {
+            header = decryptHeader(myPrivateKey);
+        } catch (Exception e) {
+            return null;
+        }
+        final UUID senderId = header.senderId;
+        if (senderId == null) {
+            return null;
+        }
+
+        // lookup the sender's keys.  if the header names the secret key, we only need to try that one.
+        final SecretKey hintedKey = header.keyId == null
+                ? null : storage.lookupSecretKeyForKeyId(senderId, header.keyId);
+        final List<SecretKey> secretKeys = hintedKey != null
+                ? List.of(hintedKey) : storage.lookupSecretKeysForUUID(senderId);
+        final PublicKey senderPublicKey = storage.lookupPublicKeyForUUID(senderId);
+        if (secretKeys == null || senderPublicKey == null) {
+            throw new RuntimeException("unknown sender:  " + senderId);
+        }
+
+        // decrypt + verify the payload, then make sure it agrees with the header.
+        final BarkPayload payload = decryptBarkPayload(secretKeys, senderPublicKey);
+        if (!senderId.equals(payload.getSender().getUUID())) {
+            throw new RuntimeException("sender mismatch");
+        }
+
+        // the payload only carries the sender's UUID, so prefer the DawgIdentifier we have stored.
+        final DawgIdentifier storedSender = storage.lookupDawgIdentifierForUuid(senderId);
+        return new OpenedBark(this, senderId,
+                storedSender != null ? storedSender : payload.getSender(), payload, this.findAckSecret(secretKeys));
     }
 
     /**
@@ -150,7 +417,9 @@ public class Bark {
 
     /**
      * Tries to decrypt the sender field with the list of secret keys. Returns
-     * null if that fails.
+     * null if that fails.  The payload only carries the sender's UUID, so the
+     * returned DawgIdentifier has a null username; use open() to get the
+     * sender's stored DawgIdentifier instead.
      *
      * NOTE: The caller should call isForMe with the current user's private key
      * before calling this method. If a packet is not for you, you will not be
@@ -182,6 +451,90 @@ public class Bark {
         return decryptBarkPayload(secretKeys, publicKey).getOrderNum();
     }
 
+    /**
+     * @return a copy of the route tag of this Bark, or null if it has none
+     */
+    public byte[] getRouteTag() {
+        return this.routeTag == null ? null : this.routeTag.clone();
+    }
+
+    /**
+     * @return the id of the CryptoSuite this Bark's header was encrypted with
+     */
+    public byte getCryptoSuiteId() {
+        return this.cryptoSuiteId;
+    }
+
+    /**
+     * @return the number of times this Bark may still be relayed
+     */
+    public int getHopsRemaining() {
+        return this.hopsRemaining;
+    }
+
+    /**
+     * @return the epoch millis after which this Bark should not be relayed, or NO_EXPIRY
+     */
+    public long getExpiresAtMillis() {
+        return this.expiresAtMillis;
+    }
+
+    /**
+     * @return true if this Bark may not be relayed any further
+     */
+    public boolean isExhausted() {
+        return this.hopsRemaining <= 0;
+    }
+
+    /**
+     * Returns true if this Bark expired before the passed time.
+     *
+     * @param nowMillis the current time, in epoch millis
+     * @return true if the Bark has an expiry and it has passed
+     */
+    public boolean isExpired(final long nowMillis) {
+        return this.expiresAtMillis != NO_EXPIRY && this.expiresAtMillis < nowMillis;
+    }
+
+    /**
+     * Returns a copy of this Bark with the passed hop count.  Bark objects are
+     * immutable, so this Bark is unchanged.
+     *
+     * @param hops the number of times the copy may be relayed (clamped to 0 - MAX_HOP_LIMIT)
+     * @return a copy of this Bark with the new hop count
+     */
+    public Bark withHopsRemaining(final int hops) {
+        return new Bark(this.uniqueId, this.encryptedHeader, this.encryptedPayload, this.recipientTag,
+                this.ackHash, this.routeTag, this.cryptoSuiteId, Math.max(0, Math.min(hops, MAX_HOP_LIMIT)), this.expiresAtMillis);
+    }
+
+    /**
+     * Returns a copy of this Bark carrying the route tag of the passed
+     * receiver for the epoch holding the passed time, so relays can route it
+     * (see: RoutingTable).  Only call this with routing on:  the tag links
+     * every Bark sent to the receiver during the epoch.  Bark objects are
+     * immutable, so this Bark is unchanged.
+     *
+     * @param receiverPublicKey the public key of the receiver
+     * @param nowMillis         the current time, in epoch millis
+     * @return a copy of this Bark with the route tag set
+     */
+    public Bark withRouteTag(final PublicKey receiverPublicKey, final long nowMillis) {
+        return new Bark(this.uniqueId, this.encryptedHeader, this.encryptedPayload, this.recipientTag,
+                this.ackHash, computeRouteTag(receiverPublicKey, nowMillis), this.cryptoSuiteId, this.hopsRemaining,
+                this.expiresAtMillis);
+    }
+
+    /**
+     * Returns the copy of this Bark a relay should send on:  the same Bark with
+     * one fewer hop remaining.
+     *
+     * @return a copy of this Bark with the hop count decremented
+     */
+    public Bark decrementHops() {
+        return this.withHopsRemaining(this.hopsRemaining - 1);
+    }
+
     /**
      * @return the UUID of this Bark
      */
@@ -195,7 +548,7 @@ public class Bark {
      * @return a byte[] containing the bytes which represent the Bark.
      */
     public byte[] toNetworkBytes() {
-        return GSON.toJson(this).getBytes();
+        return SerializationUtils.GSON.toJson(this).getBytes();
     }
 
     /**
@@ -204,7 +557,152 @@ public class Bark {
      * @return a Bark derived from the passed byte[].
      */
     public static Bark fromNetworkBytes(final byte[] barkBytes) {
-        return GSON.fromJson(new String(barkBytes), Bark.class);
+        return SerializationUtils.GSON.fromJson(new String(barkBytes), Bark.class);
+    }
+
+    /**
+     * Writes the Bark to the passed DataOutput in the compact binary format:
+     * the 16-byte uniqueId, the crypto suite id, the hop count (1 byte), the
+     * expiry (8 bytes), the length-prefixed raw ciphertexts + recipient tag,
+     * then the length-prefixed ack hash + route tag.
+     *
+     * @param out the DataOutput to write to.
+     * @throws IOException if the underlying write fails.
+     */
+    public void writeBinary(final DataOutput out) throws IOException {
+        SerializationUtils.writeUUID(out, this.uniqueId);
+        out.writeByte(this.cryptoSuiteId);
+        out.writeByte(this.hopsRemaining);
+        out.writeLong(this.expiresAtMillis);
+        SerializationUtils.writeLengthPrefixed(out, this.encryptedHeader);
+        SerializationUtils.writeLengthPrefixed(out, this.encryptedPayload);
+        SerializationUtils.writeLengthPrefixed(out, this.recipientTag);
+        SerializationUtils.writeLengthPrefixed(out, this.ackHash);
+        SerializationUtils.writeLengthPrefixed(out, this.routeTag);
+    }
+
+    /**
+     * Returns the number of bytes writeBinary() writes for this Bark.
+     *
+     * @return the size of the Bark in the binary format.
+     */
+    public int getBinarySize() {
+        return 16 + 1 + 1 + 8
+                + SerializationUtils.lengthPrefixedSize(this.encryptedHeader)
+                + SerializationUtils.lengthPrefixedSize(this.encryptedPayload)
+                + SerializationUtils.lengthPrefixedSize(this.recipientTag)
+                + SerializationUtils.lengthPrefixedSize(this.ackHash)
+                + SerializationUtils.lengthPrefixedSize(this.routeTag);
+    }
+
+    /**
+     * Reads a Bark written by writeBinary().
+     *
+     * @param in            the DataInput to read from.
+     * @param formatVersion the BinaryPacketCodec version the Bark was written
+     *                      with.  Version 1 has no crypto suite id,
+     *                      versions 1 + 2 have no hop count or expiry,
+     *                      versions 1 - 3 have no ack hash, and versions
+     *                      1 - 4 have no route tag.
+     * @return the Bark which was read.
+     * @throws IOException if the input is malformed or ends early.
+     */
+    public static Bark readBinary(final DataInput in, final int formatVersion) throws IOException {
+        final UUID uniqueId = SerializationUtils.readUUID(in);
+        final byte cryptoSuiteId = formatVersion >= 2 ? in.readByte() : RsaCryptoSuite.ID;
+        final int hopsRemaining = formatVersion >= 3 ? in.readUnsignedByte() : DEFAULT_HOP_LIMIT;
+        final long expiresAtMillis = formatVersion >= 3 ? in.readLong() : NO_EXPIRY;
+        final byte[] encryptedHeader = SerializationUtils.readLengthPrefixed(in, MAX_BINARY_FIELD_SIZE);
+        final byte[] encryptedPayload = SerializationUtils.readLengthPrefixed(in, MAX_BINARY_FIELD_SIZE);
+        final byte[] recipientTag = SerializationUtils.readLengthPrefixed(in, RECIPIENT_TAG_SIZE);
+        final byte[] ackHash = formatVersion >= 4
+                ? SerializationUtils.readLengthPrefixed(in, ACK_HASH_SIZE) : new byte[0];
+        final byte[] routeTag = formatVersion >= 5
+                ? SerializationUtils.readLengthPrefixed(in, ROUTE_TAG_SIZE) : new byte[0];
+        return new Bark(uniqueId, encryptedHeader, encryptedPayload,
+                recipientTag.length == 0 ? null : recipientTag, ackHash.length == 0 ? null : ackHash,
+                routeTag.length == 0 ? null : routeTag, cryptoSuiteId, hopsRemaining, expiresAtMillis);
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for Bark.  Writes the same field names
+     * as reflective Gson, but with byte[] fields as Base64 strings.  Legacy JSON
+     * with byte[] fields written as arrays of numbers can still be read.
+     */
+    public static class JsonAdapter extends TypeAdapter<Bark> {
+        @Override
+        public void write(final JsonWriter out, final Bark bark) throws IOException {
+            out.beginObject();
+            out.name("uniqueId");
+            SerializationUtils.writeJsonUUID(out, bark.uniqueId);
+            out.name("encryptedHeader");
+            SerializationUtils.writeJsonBytes(out, bark.encryptedHeader);
+            out.name("encryptedPayload");
+            SerializationUtils.writeJsonBytes(out, bark.encryptedPayload);
+            out.name("recipientTag");
+            SerializationUtils.writeJsonBytes(out, bark.recipientTag);
+            out.name("ackHash");
+            SerializationUtils.writeJsonBytes(out, bark.ackHash);
+            out.name("routeTag");
+            SerializationUtils.writeJsonBytes(out, bark.routeTag);
+            out.name("cryptoSuiteId").value(bark.cryptoSuiteId);
+            out.name("hopsRemaining").value(bark.hopsRemaining);
+            out.name("expiresAtMillis").value(bark.expiresAtMillis);
+            out.endObject();
+        }
+
+        @Override
+        public Bark read(final JsonReader in) throws IOException {
+            UUID uniqueId = null;
+            byte[] encryptedHeader = null;
+            byte[] encryptedPayload = null;
+            byte[] recipientTag = null;
+            byte[] ackHash = null;
+            byte[] routeTag = null;
+            byte cryptoSuiteId = RsaCryptoSuite.ID;
+            int hopsRemaining = DEFAULT_HOP_LIMIT;
+            long expiresAtMillis = NO_EXPIRY;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "uniqueId":
+                        uniqueId = SerializationUtils.readJsonUUID(in);
+                        break;
+                    case "encryptedHeader":
+                        encryptedHeader = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "encryptedPayload":
+                        encryptedPayload = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "recipientTag":
+                        recipientTag = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "ackHash":
+                        ackHash = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "routeTag":
+                        routeTag = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "cryptoSuiteId":
+                        cryptoSuiteId = (byte) in.nextInt();
+                        break;
+                    case "hopsRemaining":
+                        hopsRemaining = Math.max(0, Math.min(in.nextInt(), MAX_HOP_LIMIT));
+                        break;
+                    case "expiresAtMillis":
+                        expiresAtMillis = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (uniqueId == null || encryptedHeader == null || encryptedPayload == null) {
+                throw new IOException("Bark JSON is missing its uniqueId, encryptedHeader or encryptedPayload");
+            }
+            return new Bark(uniqueId, encryptedHeader, encryptedPayload, recipientTag, ackHash, routeTag,
+                    cryptoSuiteId, hopsRemaining, expiresAtMillis);
+        }
     }
 
     // overrides
@@ -225,10 +723,130 @@ public class Bark {
     public String toString() {
         return "encryptedPayload:  " + Arrays.toString(this.encryptedPayload)
                 + "encryptedHeader:  " + Arrays.toString(this.encryptedHeader)
-                + "\tuniqueId:  " + this.uniqueId.toString();
+                + "\tuniqueId:  " + this.uniqueId.toString()
+                + "\thopsRemaining:  " + this.hopsRemaining;
+    }
+
+    /**
+     * Derives the route tag of the Barks sent to the owner of the passed
+     * public key during the epoch holding the passed time, so that a relay
+     * which learns a user's public key (e.g. from a key exchange) can
+     * recognize the Barks sent to them.
+     *
+     * @param receiverPublicKey the public key of the receiver
+     * @param nowMillis         a time in the epoch, in epoch millis
+     * @return the first ROUTE_TAG_SIZE bytes of the SHA-256 hash of the epoch + the encoded key
+     */
+    public static byte[] computeRouteTag(final PublicKey receiverPublicKey, final long nowMillis) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(ROUTE_TAG_DIGEST);
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Math.floorDiv(nowMillis, ROUTE_TAG_EPOCH_MILLIS))
+                    .array());
+            return Arrays.copyOf(digest.digest(receiverPublicKey.getEncoded()), ROUTE_TAG_SIZE);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform.
+            throw new RuntimeException(e);
+        }
     }
 
     // private helpers
+    /**
+     * The decrypted contents of a Bark's header.
+     */
+    private static class Header {
+        private final UUID senderId;
+        // null for legacy headers, which only contain the sender's UUID.
+        private final byte[] keyId;
+
+        private Header(final UUID senderId, final byte[] keyId) {
+            this.senderId = senderId;
+            this.keyId = keyId;
+        }
+    }
+
+    /**
+     * Decrypts + parses the header using the passed private key.  Accepts
+     * both the binary header and the legacy JSON header.
+     *
+     * @throws RuntimeException if decryption or parsing fails
+     * @param myPrivateKey the private key of the current user
+     * @return the decrypted Header
+     */
+    private Header decryptHeader(final PrivateKey myPrivateKey) {
+        final CryptoSuite suite = CryptoSuites.forKey(myPrivateKey);
+        if (suite.getId() != this.cryptoSuiteId) {
+            throw new RuntimeException("Bark was encrypted with crypto suite " + this.cryptoSuiteId);
+        }
+        final byte[] bytes = suite.decryptHeader(this.encryptedHeader, myPrivateKey);
+        if (bytes == null || bytes.length == 0) {
+            throw new RuntimeException("could not decrypt header");
+        }
+        if (bytes[0] == HEADER_VERSION && bytes.length == HEADER_SIZE) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            final UUID senderId = new UUID(buffer.getLong(), buffer.getLong());
+            final byte[] keyId = new byte[Crypto.KEY_ID_SIZE];
+            buffer.get(keyId);
+            return new Header(senderId, keyId);
+        }
+        return new Header(SerializationUtils.GSON.fromJson(new String(bytes), UUID.class), null);
+    }
+
+    /**
+     * Derives the recipient tag for a Bark with the given id and shared key.
+     *
+     * @param uniqueId the unique id of the Bark
+     * @param key      the shared secret key used to encrypt the Bark
+     * @return the first RECIPIENT_TAG_SIZE bytes of the HMAC of the id
+     */
+    private static byte[] computeRecipientTag(final UUID uniqueId, final SecretKey key) {
+        final byte[] mac = Crypto.hmac(SerializationUtils.uuidToBytes(uniqueId), key);
+        return Arrays.copyOf(mac, RECIPIENT_TAG_SIZE);
+    }
+
+    /**
+     * Derives the ack secret for a Bark with the given id and shared key.
+     * Labelled so it can't be confused with the recipient tag, which is an
+     * HMAC of the same id under the same key.
+     *
+     * @param uniqueId the unique id of the Bark
+     * @param key      the shared secret key used to encrypt the Bark
+     * @return the first ACK_SECRET_SIZE bytes of the HMAC of the label + id
+     */
+    private static byte[] computeAckSecret(final UUID uniqueId, final SecretKey key) {
+        final byte[] mac = Crypto.hmac(Bytes.concat(ACK_SECRET_LABEL, SerializationUtils.uuidToBytes(uniqueId)), key);
+        return Arrays.copyOf(mac, ACK_SECRET_SIZE);
+    }
+
+    /**
+     * @return the first ACK_HASH_SIZE bytes of the SHA-256 hash of the ack secret
+     */
+    private static byte[] computeAckHash(final byte[] ackSecret) {
+        try {
+            final byte[] digest = MessageDigest.getInstance(ACK_HASH_DIGEST).digest(ackSecret);
+            return Arrays.copyOf(digest, ACK_HASH_SIZE);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the ack secret of this Bark among the secrets derived from the
+     * passed keys (one of which encrypted the Bark).
+     *
+     * @param keys the secret keys shared with the sender
+     * @return the ack secret, or null if this Bark has no ack hash
+     */
+    private byte[] findAckSecret(final List<SecretKey> keys) {
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            final byte[] ackSecret = computeAckSecret(this.uniqueId, keys.get(i));
+            if (this.isAckedBy(ackSecret)) {
+                return ackSecret;
+            }
+        }
+        return null;
+    }
+
     /**
      * Try to decrypt the Bark's payload using the passed List of Keys. Since it
      * is most likely that the most recent key is the one used for encryption, we
@@ -259,10 +877,15 @@ public class Bark {
             throw new RuntimeException("could not decrypt");
         }
 
-        int sigIndex = bytes.length - Crypto.ASYMMETRIC_KEY_SIZE / 8;
-        byte[] payload = Arrays.copyOfRange(bytes, 0, sigIndex);        
-        byte[] payloadSignature = Arrays.copyOfRange(bytes, sigIndex, bytes.length); 
-        if (Crypto.verify(payloadSignature, payload, publicKey)) {
+        // the signature length depends on the sender's crypto suite + key size.
+        final CryptoSuite senderSuite = CryptoSuites.forKey(publicKey);
+        int sigIndex = bytes.length - senderSuite.signatureLength(publicKey);
+        if (sigIndex < 0) {
+            throw new RuntimeException("invalid signature");
+        }
+        byte[] payload = Arrays.copyOfRange(bytes, 0, sigIndex);
+        byte[] payloadSignature = Arrays.copyOfRange(bytes, sigIndex, bytes.length);
+        if (senderSuite.verify(payloadSignature, payload, publicKey)) {
             return BarkPayload.fromNetworkBytes(payload);
         }
         throw new RuntimeException("invalid signature");
@@ -1,14 +1,37 @@
 package types;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import types.serialization.SerializationUtils;
 
 /**
  * Stores the metadata for a Bark and represents a crytographic "message" to be
  * signed and encrypted.
+ *
+ * BarkPayloads are written in a compact, versioned binary format:
+ * [version][zigzag varint orderNum][16-byte sender UUID][length-prefixed UTF-8 contents]
+ *
+ * Only the sender's UUID is written, so the sender of a payload read from the
+ * binary format has a null username.  Payloads written as JSON by older builds
+ * (which always begin with '{') can still be read.
  */
 public class BarkPayload {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
+    // the version of the binary format written by toNetworkBytes().  Must never be '{'.
+    public static final byte BINARY_VERSION = 1;
+
+    // the largest contents we will accept when reading the binary format (4 UTF-8 bytes per char).
+    private static final int MAX_BINARY_CONTENTS_SIZE = Bark.MAX_MESSAGE_SIZE * 4;
 
     private final String contents;
     private final DawgIdentifier sender;
@@ -57,18 +80,105 @@ public class BarkPayload {
      * Returns a byte[] containing the bytes which represent the BarkPayload.
      *
      * @return a byte[] containing the bytes which represent the BarkPayload.
+     * @throws IllegalStateException if the contents, sender or orderNum is null.
      */
     public byte[] toNetworkBytes() {
-        return GSON.toJson(this).getBytes();
+        if (this.contents == null || this.sender == null || this.orderNum == null) {
+            throw new IllegalStateException("Cannot serialize a BarkPayload without contents, a sender and an"
+                    + " orderNum:  contents = " + (this.contents == null ? null : "<set>")
+                    + ", sender = " + this.sender + ", orderNum = " + this.orderNum);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(BINARY_VERSION);
+            SerializationUtils.writeSignedVarLong(out, this.orderNum);
+            SerializationUtils.writeUUID(out, this.sender.getUUID());
+            SerializationUtils.writeLengthPrefixed(out, this.contents.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // writing to a ByteArrayOutputStream never fails.
+            throw new RuntimeException("Failed to serialize BarkPayload -- " + e);
+        }
+        return bytes.toByteArray();
     }
 
     /**
-     * Returns a BarkPayload derived from the passed byte[].
+     * Returns a BarkPayload derived from the passed byte[].  Accepts both the
+     * binary format and the legacy JSON format.
      *
+     * @throws RuntimeException if the bytes are not a valid BarkPayload
      * @return a BarkPayload derived from the passed byte[].
      */
     public static BarkPayload fromNetworkBytes(final byte[] bytes) {
-        return GSON.fromJson(new String(bytes), BarkPayload.class);
+        if (bytes.length > 0 && bytes[0] == '{') {
+            return SerializationUtils.GSON.fromJson(new String(bytes), BarkPayload.class);
+        }
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            final byte version = in.readByte();
+            if (version != BINARY_VERSION) {
+                throw new RuntimeException("Attempted to read a BarkPayload of an unknown version:  " + version);
+            }
+            final Long orderNum = SerializationUtils.readSignedVarLong(in);
+            final UUID senderId = SerializationUtils.readUUID(in);
+            final byte[] contentBytes = SerializationUtils.readLengthPrefixed(in, MAX_BINARY_CONTENTS_SIZE);
+            return new BarkPayload(new String(contentBytes, StandardCharsets.UTF_8),
+                    new DawgIdentifier(null, senderId), orderNum);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read BarkPayload -- " + e);
+        }
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for BarkPayload.
+     */
+    public static class JsonAdapter extends TypeAdapter<BarkPayload> {
+        private final DawgIdentifier.JsonAdapter dawgIdAdapter = new DawgIdentifier.JsonAdapter();
+
+        @Override
+        public void write(final JsonWriter out, final BarkPayload payload) throws IOException {
+            out.beginObject();
+            out.name("contents").value(payload.contents);
+            out.name("sender");
+            this.dawgIdAdapter.nullSafe().write(out, payload.sender);
+            out.name("orderNum").value(payload.orderNum);
+            out.endObject();
+        }
+
+        @Override
+        public BarkPayload read(final JsonReader in) throws IOException {
+            String contents = null;
+            DawgIdentifier sender = null;
+            Long orderNum = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "contents":
+                        contents = in.nextString();
+                        break;
+                    case "sender":
+                        sender = this.dawgIdAdapter.read(in);
+                        break;
+                    case "orderNum":
+                        orderNum = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (contents == null || sender == null || orderNum == null) {
+                throw new IOException("BarkPayload JSON is missing its contents, sender or orderNum");
+            }
+            return new BarkPayload(contents, sender, orderNum);
+        }
     }
 
     @Override
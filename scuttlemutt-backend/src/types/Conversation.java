@@ -1,11 +1,16 @@
 package types;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import types.serialization.SerializationUtils;
 
 /**
  * Contains the information for a given conversation.
@@ -15,8 +20,6 @@ import com.google.gson.GsonBuilder;
  * metadata though. In the future, we can add more to this class as necessary.
  */
 public class Conversation {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
-
     // Whom we are talking to.
     private final DawgIdentifier otherPerson;
     
@@ -72,7 +75,7 @@ public class Conversation {
      * @return a byte[] containing the bytes which represent the Conversation.
      */
     public byte[] toNetworkBytes() {
-        return GSON.toJson(this).getBytes();
+        return SerializationUtils.GSON.toJson(this).getBytes();
     }
 
     /**
@@ -81,7 +84,58 @@ public class Conversation {
      * @return a Conversation derived from the passed byte[].
      */
     public static Conversation fromNetworkBytes(final byte[] conversationBytes) {
-        return GSON.fromJson(new String(conversationBytes), Conversation.class);
+        return SerializationUtils.GSON.fromJson(new String(conversationBytes), Conversation.class);
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for Conversation.
+     */
+    public static class JsonAdapter extends TypeAdapter<Conversation> {
+        private final DawgIdentifier.JsonAdapter dawgIdAdapter = new DawgIdentifier.JsonAdapter();
+
+        @Override
+        public void write(final JsonWriter out, final Conversation conversation) throws IOException {
+            out.beginObject();
+            out.name("otherPerson");
+            this.dawgIdAdapter.nullSafe().write(out, conversation.otherPerson);
+            out.name("messageList");
+            out.beginArray();
+            for (final UUID messageId : conversation.messageList) {
+                SerializationUtils.writeJsonUUID(out, messageId);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public Conversation read(final JsonReader in) throws IOException {
+            DawgIdentifier otherPerson = null;
+            final List<UUID> messageList = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "otherPerson":
+                        otherPerson = this.dawgIdAdapter.read(in);
+                        break;
+                    case "messageList":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            messageList.add(SerializationUtils.readJsonUUID(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Conversation(otherPerson, messageList);
+        }
     }
 
     // overrides
@@ -1,15 +1,24 @@
 package types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import types.serialization.SerializationUtils;
 
 /**
  * Represents a unique identifier for users on the network.
  */
 public class DawgIdentifier {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
+    // the largest username we will accept when reading the binary format.
+    private static final int MAX_BINARY_USERNAME_SIZE = 1024;
 
     // class variables
     private final String username;
@@ -50,7 +59,7 @@ public class DawgIdentifier {
      * @return a byte[] containing the bytes which represent the DawgIdentifier.
      */
     public byte[] toNetworkBytes() {
-        return GSON.toJson(this).getBytes();
+        return SerializationUtils.GSON.toJson(this).getBytes();
     }
 
     /**
@@ -59,7 +68,71 @@ public class DawgIdentifier {
      * @return a DawgIdentifier derived from the passed byte[].
      */
     public static DawgIdentifier fromNetworkBytes(final byte[] dawgIdentifierBytes) {
-        return GSON.fromJson(new String(dawgIdentifierBytes), DawgIdentifier.class);
+        return SerializationUtils.GSON.fromJson(new String(dawgIdentifierBytes), DawgIdentifier.class);
+    }
+
+    /**
+     * Writes the DawgIdentifier to the passed DataOutput in the compact binary
+     * format: the 16-byte UUID followed by the length-prefixed UTF-8 username.
+     *
+     * @param out the DataOutput to write to.
+     * @throws IOException if the underlying write fails.
+     */
+    public void writeBinary(final DataOutput out) throws IOException {
+        SerializationUtils.writeUUID(out, this.dawgId);
+        SerializationUtils.writeLengthPrefixed(out, this.username.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a DawgIdentifier written by writeBinary().
+     *
+     * @param in the DataInput to read from.
+     * @return the DawgIdentifier which was read.
+     * @throws IOException if the input is malformed or ends early.
+     */
+    public static DawgIdentifier readBinary(final DataInput in) throws IOException {
+        final UUID dawgId = SerializationUtils.readUUID(in);
+        final byte[] usernameBytes = SerializationUtils.readLengthPrefixed(in, MAX_BINARY_USERNAME_SIZE);
+        return new DawgIdentifier(new String(usernameBytes, StandardCharsets.UTF_8), dawgId);
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for DawgIdentifier.
+     */
+    public static class JsonAdapter extends TypeAdapter<DawgIdentifier> {
+        @Override
+        public void write(final JsonWriter out, final DawgIdentifier dawgIdentifier) throws IOException {
+            out.beginObject();
+            out.name("username").value(dawgIdentifier.username);
+            out.name("dawgId");
+            SerializationUtils.writeJsonUUID(out, dawgIdentifier.dawgId);
+            out.endObject();
+        }
+
+        @Override
+        public DawgIdentifier read(final JsonReader in) throws IOException {
+            String username = null;
+            UUID dawgId = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            username = in.nextString();
+                        }
+                        break;
+                    case "dawgId":
+                        dawgId = SerializationUtils.readJsonUUID(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new DawgIdentifier(username, dawgId);
+        }
     }
 
     @Override
@@ -1,10 +1,15 @@
 package types;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
+import java.io.IOException;
 import java.util.UUID;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import types.serialization.SerializationUtils;
+
 /**
  * Simple object type used to store plaintext messages w/ UUIDs.
  *
@@ -14,8 +19,6 @@ import java.util.UUID;
  * - Linking plaintext messages to Conversations via UUIDs.
  */
 public class Message {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
-
     // class variables
     private final UUID uniqueId;
     private final String message;
@@ -29,7 +32,15 @@ public class Message {
      * @param author  The author of the message.
      */
     public Message(final String plaintextMessage, final Long orderNum, final DawgIdentifier author) {
-        this.uniqueId = UUID.randomUUID();
+        this(UUID.randomUUID(), plaintextMessage, orderNum, author);
+    }
+
+    /**
+     * Constructs a Message with a known uniqueId.  Used when reading JSON.
+     */
+    private Message(final UUID uniqueId, final String plaintextMessage, final Long orderNum,
+                    final DawgIdentifier author) {
+        this.uniqueId = uniqueId;
         this.message = plaintextMessage;
         this.orderNum = orderNum;
         this.author = author;
@@ -57,7 +68,7 @@ public class Message {
      * @return a byte[] containing the bytes which represent the Message.
      */
     public byte[] toNetworkBytes() {
-        return GSON.toJson(this).getBytes();
+        return SerializationUtils.GSON.toJson(this).getBytes();
     }
 
     /**
@@ -66,7 +77,60 @@ public class Message {
      * @return a Message derived from the passed byte[].
      */
     public static Message fromNetworkBytes(final byte[] messageBytes) {
-        return GSON.fromJson(new String(messageBytes), Message.class);
+        return SerializationUtils.GSON.fromJson(new String(messageBytes), Message.class);
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for Message.
+     */
+    public static class JsonAdapter extends TypeAdapter<Message> {
+        private final DawgIdentifier.JsonAdapter dawgIdAdapter = new DawgIdentifier.JsonAdapter();
+
+        @Override
+        public void write(final JsonWriter out, final Message message) throws IOException {
+            out.beginObject();
+            out.name("uniqueId");
+            SerializationUtils.writeJsonUUID(out, message.uniqueId);
+            out.name("message").value(message.message);
+            out.name("orderNum").value(message.orderNum);
+            out.name("author");
+            this.dawgIdAdapter.nullSafe().write(out, message.author);
+            out.endObject();
+        }
+
+        @Override
+        public Message read(final JsonReader in) throws IOException {
+            UUID uniqueId = null;
+            String message = null;
+            Long orderNum = null;
+            DawgIdentifier author = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "uniqueId":
+                        uniqueId = SerializationUtils.readJsonUUID(in);
+                        break;
+                    case "message":
+                        message = in.nextString();
+                        break;
+                    case "orderNum":
+                        orderNum = in.nextLong();
+                        break;
+                    case "author":
+                        author = this.dawgIdAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Message(uniqueId, message, orderNum, author);
+        }
     }
 
     // overrides
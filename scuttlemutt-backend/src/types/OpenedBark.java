@@ -0,0 +1,86 @@
+package types;
+
+import java.util.UUID;
+
+/**
+ * A decrypted view of a Bark which was addressed to the current user.
+ *
+ * OpenedBark objects are produced by Bark.open(), which performs the header
+ * decryption, key trial, signature verification and payload parsing exactly
+ * once. The getters on this class are plain field reads, so callers may use
+ * them as often as they like without paying for any more cryptography.
+ */
+public class OpenedBark {
+    // class variables
+    private final Bark bark;
+    private final UUID senderUUID;
+    private final DawgIdentifier sender;
+    private final BarkPayload payload;
+    private final byte[] ackSecret;
+
+    /**
+     * Constructs a new OpenedBark.
+     *
+     * @param bark       The Bark which was opened.
+     * @param senderUUID The UUID of the sender, as read from the Bark's header.
+     * @param sender     The DawgIdentifier of the sender.
+     * @param payload    The verified + decrypted BarkPayload of the Bark.
+     * @param ackSecret  The secret which proves the Bark was delivered, or null.
+     */
+    OpenedBark(final Bark bark, final UUID senderUUID, final DawgIdentifier sender, final BarkPayload payload,
+               final byte[] ackSecret) {
+        this.bark = bark;
+        this.senderUUID = senderUUID;
+        this.sender = sender;
+        this.payload = payload;
+        this.ackSecret = ackSecret;
+    }
+
+    /**
+     * @return the (still encrypted) Bark which was opened.
+     */
+    public Bark getBark() {
+        return this.bark;
+    }
+
+    /**
+     * @return the UUID of the sender of the Bark.
+     */
+    public UUID getSenderUUID() {
+        return this.senderUUID;
+    }
+
+    /**
+     * @return the DawgIdentifier of the sender of the Bark.
+     */
+    public DawgIdentifier getSender() {
+        return this.sender;
+    }
+
+    /**
+     * @return the plaintext contents of the Bark.
+     */
+    public String getContents() {
+        return this.payload.getContents();
+    }
+
+    /**
+     * @return the number of the Bark in the conversation order.
+     */
+    public Long getOrderNum() {
+        return this.payload.getOrderNum();
+    }
+
+    /**
+     * @return the secret to flood in an AckPacket to show the Bark was
+     *         delivered, or null if the Bark can't be acked.
+     */
+    public byte[] getAckSecret() {
+        return this.ackSecret;
+    }
+
+    @Override
+    public String toString() {
+        return "bark:  " + this.bark.getUniqueId() + "\tpayload:  " + this.payload;
+    }
+}
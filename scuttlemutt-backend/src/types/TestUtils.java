@@ -3,13 +3,19 @@ package types;
 import static java.lang.Thread.sleep;
 import static types.Bark.MAX_MESSAGE_SIZE;
 
+import java.security.KeyPair;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
+import javax.crypto.SecretKey;
+
 import org.apache.commons.lang3.RandomStringUtils;
 
 import crypto.Crypto;
+import storagemanager.MapStorageManager;
+import storagemanager.StorageManager;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
 import types.packet.KeyExchangePacket;
 
@@ -19,21 +25,41 @@ import types.packet.KeyExchangePacket;
 public class TestUtils {
     private static final Random r = new Random();
 
+    // keys shared by the tests.  These live here instead of in Crypto so that loading Crypto in production doesn't
+    // run any keygens.
+    public static final KeyPair ALICE_KEYPAIR = Crypto.generateKeyPair();
+    public static final KeyPair BOB_KEYPAIR = Crypto.generateKeyPair();
+    public static final SecretKey DUMMY_SECRETKEY = Crypto.generateSecretKey();
+    public static final SecretKey OTHER_SECRETKEY = Crypto.generateSecretKey();
+
     public static BarkPacket generateRandomizedBarkPacket() {
         return new BarkPacket(List.of(TestUtils.generateRandomizedBark()));
     }
 
     public static KeyExchangePacket generateRandomizedKeyExchangePacket() {
-        return new KeyExchangePacket(Crypto.ALICE_KEYPAIR.getPublic(), Crypto.DUMMY_SECRETKEY, generateRandomizedDawgIdentifier());
+        return new KeyExchangePacket(ALICE_KEYPAIR.getPublic(), DUMMY_SECRETKEY, generateRandomizedDawgIdentifier());
     }
 
     public static Bark generateRandomizedBark() {
         return new Bark(RandomStringUtils.randomAlphanumeric(MAX_MESSAGE_SIZE),
                 generateRandomizedDawgIdentifier(),
                 r.nextLong(),
-                Crypto.BOB_KEYPAIR.getPrivate(),
-                Crypto.ALICE_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                BOB_KEYPAIR.getPrivate(),
+                ALICE_KEYPAIR.getPublic(),
+                DUMMY_SECRETKEY);
+    }
+
+    /**
+     * Opens a Bark from generateRandomizedBark() as its receiver (Alice), and
+     * returns the ack she would flood for it.
+     */
+    public static AckPacket generateAckPacket(final Bark bark) {
+        final UUID senderId = bark.getSenderUUID(ALICE_KEYPAIR.getPrivate());
+        final StorageManager aliceStorage = new MapStorageManager();
+        aliceStorage.storePublicKeyForUUID(senderId, BOB_KEYPAIR.getPublic());
+        aliceStorage.storeSecretKeyForUUID(senderId, DUMMY_SECRETKEY);
+        final OpenedBark opened = bark.open(ALICE_KEYPAIR.getPrivate(), aliceStorage);
+        return new AckPacket(bark.getUniqueId(), opened.getAckSecret(), AckPacket.DEFAULT_HOP_LIMIT);
     }
 
     public static DawgIdentifier generateRandomizedDawgIdentifier() {
@@ -0,0 +1,180 @@
+package types;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of UUIDs.  Lookups + inserts are lock-free.
+ *
+ * The filter never reports a UUID which was added as missing, but may report
+ * a UUID which was never added as present.  Two filters built with the same
+ * size, number of hashes and seed hash UUIDs identically, so a filter can be
+ * sent to another device (see: toLongArray() and fromLongArray()).
+ */
+public class UuidBloomFilter {
+    private static final int BITS_PER_WORD = 64;
+
+    // class variables
+    private final AtomicLongArray words;
+    private final int numBits;
+    private final int numHashes;
+    private final long seed;
+
+    /**
+     * Constructs a new, empty UuidBloomFilter.
+     *
+     * @param numBits   the number of bits in the filter.  Rounded up to a multiple of 64.
+     * @param numHashes the number of bits set per UUID.
+     * @param seed      mixed into the hashes.  Filters must share a seed to be compared.
+     */
+    public UuidBloomFilter(final int numBits, final int numHashes, final long seed) {
+        this(new AtomicLongArray(Math.max(1, (numBits + BITS_PER_WORD - 1) / BITS_PER_WORD)), numHashes, seed);
+    }
+
+    private UuidBloomFilter(final AtomicLongArray words, final int numHashes, final long seed) {
+        if (numHashes < 1) {
+            throw new IllegalArgumentException("A UuidBloomFilter needs at least one hash:  " + numHashes);
+        }
+        this.words = words;
+        this.numBits = words.length() * BITS_PER_WORD;
+        this.numHashes = numHashes;
+        this.seed = seed;
+    }
+
+    /**
+     * Constructs a new, empty UuidBloomFilter sized to hold the passed number
+     * of UUIDs with (at most) the passed false positive rate.
+     *
+     * @param expectedInsertions the number of UUIDs the filter should hold.
+     * @param falsePositiveRate  the chance (0 - 1) of a missing UUID being reported as present.
+     * @param seed               mixed into the hashes.
+     * @return a new UuidBloomFilter.
+     */
+    public static UuidBloomFilter forCapacity(final int expectedInsertions, final double falsePositiveRate,
+                                              final long seed) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid UuidBloomFilter capacity:  expectedInsertions = "
+                    + expectedInsertions + ", falsePositiveRate = " + falsePositiveRate);
+        }
+        // the standard optimal sizing:  m = -n ln(p) / ln(2)^2, k = (m / n) ln(2).
+        final double numBits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        final int numHashes = (int) Math.max(1, Math.round(numBits / expectedInsertions * Math.log(2)));
+        return new UuidBloomFilter((int) Math.min(Integer.MAX_VALUE - BITS_PER_WORD, Math.ceil(numBits)),
+                numHashes, seed);
+    }
+
+    /**
+     * Rebuilds a UuidBloomFilter from the output of toLongArray().
+     *
+     * @param words     the filter's bits.
+     * @param numHashes the number of bits set per UUID.
+     * @param seed      the seed the filter was built with.
+     * @return a copy of the filter.
+     */
+    public static UuidBloomFilter fromLongArray(final long[] words, final int numHashes, final long seed) {
+        return new UuidBloomFilter(new AtomicLongArray(words), numHashes, seed);
+    }
+
+    /**
+     * Adds the passed UUID to the filter.
+     *
+     * @param id the UUID to add.
+     * @return true if any bit changed, meaning the UUID was definitely not in the filter before.
+     */
+    public boolean add(final UUID id) {
+        final long h1 = hash1(id);
+        final long h2 = hash2(id);
+        boolean changed = false;
+        for (int i = 0; i < this.numHashes; i++) {
+            changed |= this.setBit(this.bitIndex(h1, h2, i));
+        }
+        return changed;
+    }
+
+    /**
+     * Returns true if the passed UUID may have been added to the filter.
+     *
+     * @param id the UUID to check.
+     * @return false if the UUID was definitely never added, true otherwise.
+     */
+    public boolean mightContain(final UUID id) {
+        final long h1 = hash1(id);
+        final long h2 = hash2(id);
+        for (int i = 0; i < this.numHashes; i++) {
+            final int bit = this.bitIndex(h1, h2, i);
+            if ((this.words.get(bit / BITS_PER_WORD) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the filter's bits.
+     */
+    public long[] toLongArray() {
+        final long[] copy = new long[this.words.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = this.words.get(i);
+        }
+        return copy;
+    }
+
+    public int getNumBits() {
+        return this.numBits;
+    }
+
+    public int getNumHashes() {
+        return this.numHashes;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    // private helpers
+    /**
+     * Sets the bit at the passed index.
+     *
+     * @return true if the bit was previously unset.
+     */
+    private boolean setBit(final int bit) {
+        final int word = bit / BITS_PER_WORD;
+        final long mask = 1L << bit;
+        while (true) {
+            final long old = this.words.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (this.words.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the i-th bit for a UUID, using double hashing.
+     */
+    private int bitIndex(final long h1, final long h2, final int i) {
+        return (int) Math.floorMod(h1 + i * h2, (long) this.numBits);
+    }
+
+    private long hash1(final UUID id) {
+        return mix64(id.getMostSignificantBits() ^ this.seed);
+    }
+
+    private long hash2(final UUID id) {
+        // odd, so every stride visits a different sequence of bits.
+        return mix64(id.getLeastSignificantBits() ^ Long.rotateLeft(this.seed, 32)) | 1;
+    }
+
+    /**
+     * The SplitMix64 finalizer.  UUIDs sent by other devices aren't
+     * necessarily random, so their bits are mixed before use.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
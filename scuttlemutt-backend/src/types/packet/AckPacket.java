@@ -0,0 +1,159 @@
+package types.packet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import types.Bark;
+import types.serialization.SerializationUtils;
+
+/**
+ * This class represents the delivery acks flooded by the receiver of a Bark.
+ *
+ * An AckPacket carries the id of the delivered Bark and its ack secret, which
+ * only the Bark's sender + receiver can compute.  Relays check the secret
+ * against the Bark's ack hash (see: Bark.isAckedBy) before dropping their
+ * copies of the Bark, so an ack can't be forged for a Bark which wasn't
+ * delivered.
+ *
+ * Acks are flooded with a small hop count:  they only need to reach the relays
+ * near the receiver which are still carrying the Bark.
+ */
+public class AckPacket extends MeshPacket {
+    // the number of times a new ack may be relayed, by default.
+    public static final int DEFAULT_HOP_LIMIT = 3;
+
+    // the most hops an ack can carry (the hop count is a single byte on the wire).
+    public static final int MAX_HOP_LIMIT = 255;
+
+    private final UUID barkId;
+    private final byte[] ackSecret;
+    private final int hopsRemaining;
+
+    /**
+     * Constructs the packet.
+     *
+     * @param barkId        The id of the Bark which was delivered.
+     * @param ackSecret     The ack secret of the Bark (see: OpenedBark.getAckSecret).
+     * @param hopsRemaining The number of times the ack may still be relayed (0 - MAX_HOP_LIMIT).
+     */
+    public AckPacket(final UUID barkId, final byte[] ackSecret, final int hopsRemaining) {
+        if (barkId == null || ackSecret == null || ackSecret.length != Bark.ACK_SECRET_SIZE
+                || hopsRemaining < 0 || hopsRemaining > MAX_HOP_LIMIT) {
+            throw new PacketException("Attempted to build an invalid AckPacket:  barkId = " + barkId
+                    + ", ackSecret = " + (ackSecret == null ? null : ackSecret.length + " bytes")
+                    + ", hopsRemaining = " + hopsRemaining);
+        }
+        this.barkId = barkId;
+        this.ackSecret = ackSecret;
+        this.hopsRemaining = hopsRemaining;
+    }
+
+    /**
+     * @return the id of the Bark which was delivered.
+     */
+    public UUID getBarkId() {
+        return this.barkId;
+    }
+
+    /**
+     * @return the ack secret of the Bark.
+     */
+    public byte[] getAckSecret() {
+        return this.ackSecret.clone();
+    }
+
+    /**
+     * @return the number of times this ack may still be relayed.
+     */
+    public int getHopsRemaining() {
+        return this.hopsRemaining;
+    }
+
+    /**
+     * Returns true if this ack proves the passed Bark was delivered.
+     *
+     * @param bark the Bark to check.
+     * @return true if the ack is for the Bark and its secret matches the Bark's ack hash.
+     */
+    public boolean acks(final Bark bark) {
+        return this.barkId.equals(bark.getUniqueId()) && bark.isAckedBy(this.ackSecret);
+    }
+
+    /**
+     * Returns the copy of this ack a relay should send on:  the same ack with
+     * one fewer hop remaining.
+     *
+     * @return a copy of this ack with the hop count decremented.
+     * @throws PacketException if the ack has no hops remaining.
+     */
+    public AckPacket decrementHops() {
+        return new AckPacket(this.barkId, this.ackSecret, this.hopsRemaining - 1);
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for AckPacket.
+     */
+    public static class JsonAdapter extends TypeAdapter<AckPacket> {
+        @Override
+        public void write(final JsonWriter out, final AckPacket packet) throws IOException {
+            out.beginObject();
+            out.name("barkId");
+            SerializationUtils.writeJsonUUID(out, packet.barkId);
+            out.name("ackSecret");
+            SerializationUtils.writeJsonBytes(out, packet.ackSecret);
+            out.name("hopsRemaining").value(packet.hopsRemaining);
+            out.endObject();
+        }
+
+        @Override
+        public AckPacket read(final JsonReader in) throws IOException {
+            UUID barkId = null;
+            byte[] ackSecret = null;
+            int hopsRemaining = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "barkId":
+                        barkId = SerializationUtils.readJsonUUID(in);
+                        break;
+                    case "ackSecret":
+                        ackSecret = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "hopsRemaining":
+                        hopsRemaining = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new AckPacket(barkId, ackSecret, hopsRemaining);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AckPacket)) {
+            return false;
+        }
+        AckPacket other = (AckPacket) o;
+        return this.barkId.equals(other.barkId)
+                && Arrays.equals(this.ackSecret, other.ackSecret)
+                && this.hopsRemaining == other.hopsRemaining;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.barkId.hashCode() * 31 + this.hopsRemaining;
+    }
+
+    @Override
+    public String toString() {
+        return "ack:  " + this.barkId + "\thopsRemaining:  " + this.hopsRemaining;
+    }
+}
@@ -2,13 +2,22 @@ package types.packet;
 
 import types.Bark;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 /**
  * This class represents the messaging packets sent by the IOManager.
+ *
+ * BarkPackets (and the Barks inside them) are immutable, so a single
+ * BarkPacket can be shared between threads and sent to many receivers.
  */
-public class BarkPacket extends Packet {
+public class BarkPacket extends MeshPacket {
     public final List<Bark> packetBarks;
 
     /**
@@ -16,7 +25,7 @@ public class BarkPacket extends Packet {
      * @param packetBarks  The contents of the packet.
      */
     public BarkPacket(final List<Bark> packetBarks) {
-        this.packetBarks = packetBarks;
+        this.packetBarks = List.copyOf(packetBarks);
     }
 
     /**
@@ -24,19 +33,54 @@ public class BarkPacket extends Packet {
      * @param barkPacket  The packet to copy.
      */
     public BarkPacket(final BarkPacket barkPacket) {
-        this.packetBarks = new ArrayList<>();
-
-        for (Bark bark : barkPacket.packetBarks) {
-            this.packetBarks.add(new Bark(bark));
-        }
+        // both the list and the Barks are immutable, so they can be shared.
+        this.packetBarks = barkPacket.packetBarks;
     }
 
     /**
      * Returns the Barks contained inside the BarkPacket.
-     * @return  The Barks contained inside the BarkPacket.
+     * @return  The (unmodifiable) Barks contained inside the BarkPacket.
      */
     public List<Bark> getPacketBarks() {
-        return List.copyOf(packetBarks);
+        return this.packetBarks;
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for BarkPacket.
+     */
+    public static class JsonAdapter extends TypeAdapter<BarkPacket> {
+        private final Bark.JsonAdapter barkAdapter = new Bark.JsonAdapter();
+
+        @Override
+        public void write(final JsonWriter out, final BarkPacket packet) throws IOException {
+            out.beginObject();
+            out.name("packetBarks");
+            out.beginArray();
+            for (final Bark bark : packet.packetBarks) {
+                this.barkAdapter.nullSafe().write(out, bark);
+            }
+            out.endArray();
+            out.endObject();
+        }
+
+        @Override
+        public BarkPacket read(final JsonReader in) throws IOException {
+            final List<Bark> barks = new ArrayList<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (in.nextName().equals("packetBarks") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        barks.add(this.barkAdapter.nullSafe().read(in));
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new BarkPacket(barks);
+        }
     }
 
     @Override
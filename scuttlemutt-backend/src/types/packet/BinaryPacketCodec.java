@@ -0,0 +1,174 @@
+package types.packet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import crypto.RsaCryptoSuite;
+import types.Bark;
+import types.DawgIdentifier;
+import types.serialization.SerializationUtils;
+
+/**
+ * Converts Packets to/from a compact binary wire format.
+ *
+ * Every packet starts with a version byte and a type byte.  The rest of the
+ * packet is type-specific and made up of length-prefixed (varint) raw byte
+ * fields and 16-byte UUIDs:
+ * - BarkPacket:         [count] then for each Bark: [uniqueId][suite id][hops][expiry][header][payload][recipientTag]
+ *                       [ackHash][routeTag]
+ * - KeyExchangePacket:  [publicKey][secretKey][dawgId uuid][dawgId username][suite id]
+ * - DigestPacket:       [numHashes][seed][word count] then each 8-byte word of the filter
+ * - AckPacket:          [barkId uuid][ackSecret][hops]
+ *
+ * Version 1 packets (which have no crypto suite ids), version 2 packets
+ * (which have no Bark hop counts or expiries), version 3 packets (which
+ * have no Bark ack hashes) and version 4 packets (which have no Bark route
+ * tags) can still be decoded.
+ *
+ * Unlike the JSON format, byte[] ciphertexts are written as-is instead of as
+ * arrays of decimal numbers, which roughly thirds the size of a BarkPacket.
+ */
+public class BinaryPacketCodec {
+    // the version of the binary format written by this class.  JSON packets always begin with
+    // '{', so this value must never collide with that character.
+    public static final byte VERSION = 5;
+
+    // the oldest version of the binary format we can still decode.
+    public static final byte MIN_VERSION = 1;
+
+    // packet type tags.
+    public static final byte TYPE_BARK_PACKET = 1;
+    public static final byte TYPE_KEY_EXCHANGE_PACKET = 2;
+    public static final byte TYPE_DIGEST_PACKET = 3;
+    public static final byte TYPE_ACK_PACKET = 4;
+
+    // the largest serialized key we will accept.
+    private static final int MAX_KEY_SIZE = 1 << 14;
+
+    // the most Barks we will accept in a single BarkPacket.
+    private static final int MAX_BARKS_PER_PACKET = 1 << 12;
+
+    /**
+     * Returns true if the passed byte[] looks like it was written by this codec.
+     *
+     * @param receivedBytes the bytes received from the network.
+     * @return true if the bytes should be decoded with this codec.
+     */
+    public static boolean isBinaryPacket(final byte[] receivedBytes) {
+        return receivedBytes.length >= 2 && receivedBytes[0] >= MIN_VERSION && receivedBytes[0] <= VERSION;
+    }
+
+    /**
+     * Encodes the passed Packet in the binary format.
+     *
+     * @param packet the Packet to encode.
+     * @return the encoded bytes.
+     */
+    public static byte[] encode(final Packet packet) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            if (packet instanceof BarkPacket) {
+                out.writeByte(TYPE_BARK_PACKET);
+                final List<Bark> barks = ((BarkPacket) packet).getPacketBarks();
+                SerializationUtils.writeVarInt(out, barks.size());
+                for (final Bark bark : barks) {
+                    bark.writeBinary(out);
+                }
+            } else if (packet instanceof KeyExchangePacket) {
+                out.writeByte(TYPE_KEY_EXCHANGE_PACKET);
+                final KeyExchangePacket kePacket = (KeyExchangePacket) packet;
+                SerializationUtils.writeLengthPrefixed(out, kePacket.getPublicKeyBytes());
+                SerializationUtils.writeLengthPrefixed(out, kePacket.getSecretKeyBytes());
+                kePacket.getDawgId().writeBinary(out);
+                out.writeByte(kePacket.getCryptoSuiteId());
+            } else if (packet instanceof DigestPacket) {
+                out.writeByte(TYPE_DIGEST_PACKET);
+                final DigestPacket digestPacket = (DigestPacket) packet;
+                SerializationUtils.writeVarInt(out, digestPacket.getNumHashes());
+                out.writeLong(digestPacket.getSeed());
+                SerializationUtils.writeVarInt(out, digestPacket.getDigestWords().length);
+                for (final long word : digestPacket.getDigestWords()) {
+                    out.writeLong(word);
+                }
+            } else if (packet instanceof AckPacket) {
+                out.writeByte(TYPE_ACK_PACKET);
+                final AckPacket ackPacket = (AckPacket) packet;
+                SerializationUtils.writeUUID(out, ackPacket.getBarkId());
+                SerializationUtils.writeLengthPrefixed(out, ackPacket.getAckSecret());
+                out.writeByte(ackPacket.getHopsRemaining());
+            } else {
+                throw new PacketException("Attempted to encode a packet of an unknown type.\tPacket:  " + packet);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // writing to a ByteArrayOutputStream never fails.
+            throw new PacketException("Failed to encode packet -- " + e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a Packet written by encode().
+     *
+     * @param receivedBytes the bytes received from the network.
+     * @return a Packet of the correct type constructed from the receivedBytes.
+     */
+    public static Packet decode(final byte[] receivedBytes) {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(receivedBytes));
+        try {
+            final byte version = in.readByte();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new PacketException("Attempted to decode a packet of an unknown version:  " + version);
+            }
+
+            final byte type = in.readByte();
+            switch (type) {
+                case TYPE_BARK_PACKET:
+                    final int count = SerializationUtils.readVarInt(in);
+                    if (count > MAX_BARKS_PER_PACKET) {
+                        throw new PacketException("Attempted to decode a BarkPacket with too many barks:  " + count);
+                    }
+                    final List<Bark> barks = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        barks.add(Bark.readBinary(in, version));
+                    }
+                    return new BarkPacket(barks);
+                case TYPE_KEY_EXCHANGE_PACKET:
+                    final byte[] publicKeyBytes = SerializationUtils.readLengthPrefixed(in, MAX_KEY_SIZE);
+                    final byte[] secretKeyBytes = SerializationUtils.readLengthPrefixed(in, MAX_KEY_SIZE);
+                    final DawgIdentifier dawgId = DawgIdentifier.readBinary(in);
+                    final byte cryptoSuiteId = version >= 2 ? in.readByte() : RsaCryptoSuite.ID;
+                    return new KeyExchangePacket(publicKeyBytes, secretKeyBytes, dawgId, cryptoSuiteId);
+                case TYPE_DIGEST_PACKET:
+                    final int numHashes = SerializationUtils.readVarInt(in);
+                    final long seed = in.readLong();
+                    final int wordCount = SerializationUtils.readVarInt(in);
+                    if (wordCount > DigestPacket.MAX_DIGEST_WORDS) {
+                        throw new PacketException("Attempted to decode a DigestPacket which is too large:  " + wordCount);
+                    }
+                    final long[] words = new long[wordCount];
+                    for (int i = 0; i < wordCount; i++) {
+                        words[i] = in.readLong();
+                    }
+                    return new DigestPacket(words, numHashes, seed);
+                case TYPE_ACK_PACKET:
+                    final UUID barkId = SerializationUtils.readUUID(in);
+                    final byte[] ackSecret = SerializationUtils.readLengthPrefixed(in, Bark.ACK_SECRET_SIZE);
+                    final int hopsRemaining = in.readUnsignedByte();
+                    return new AckPacket(barkId, ackSecret, hopsRemaining);
+                default:
+                    throw new PacketException("Attempted to decode a packet of an unknown type:  " + type);
+            }
+        } catch (IOException e) {
+            throw new PacketException("Failed to decode packet -- " + e);
+        }
+    }
+}
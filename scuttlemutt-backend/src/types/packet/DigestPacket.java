@@ -0,0 +1,158 @@
+package types.packet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import types.UuidBloomFilter;
+
+/**
+ * This class represents the digest packets exchanged by neighbors when they
+ * connect.
+ *
+ * A DigestPacket carries a Bloom filter of the ids of the Barks its sender
+ * holds, so the receiver can send only the Barks the sender is missing.  A
+ * false positive means the receiver skips a Bark the sender didn't have, so
+ * the filter's false positive rate should be kept low.
+ */
+public class DigestPacket extends Packet {
+    // the largest filter we will accept (32KB, the most Nearby Connections sends in one payload).
+    public static final int MAX_DIGEST_WORDS = 32 * 1024 / Long.BYTES;
+    // the most hashes per id we will accept.
+    private static final int MAX_NUM_HASHES = 32;
+
+    private final long[] digestWords;
+    private final int numHashes;
+    private final long seed;
+    // the filter rebuilt from the words, used for lookups.
+    private final UuidBloomFilter digest;
+
+    /**
+     * Constructs the packet.
+     *
+     * @param digest A Bloom filter of the ids of the Barks held by the sender.
+     */
+    public DigestPacket(final UuidBloomFilter digest) {
+        this(digest.toLongArray(), digest.getNumHashes(), digest.getSeed());
+    }
+
+    /**
+     * Constructs the packet from an already-serialized filter.  Used when
+     * reading the binary wire format or JSON.
+     */
+    DigestPacket(final long[] digestWords, final int numHashes, final long seed) {
+        if (digestWords.length < 1 || digestWords.length > MAX_DIGEST_WORDS
+                || numHashes < 1 || numHashes > MAX_NUM_HASHES) {
+            throw new PacketException("Attempted to build an invalid DigestPacket:  words = "
+                    + digestWords.length + ", numHashes = " + numHashes);
+        }
+        this.digestWords = digestWords;
+        this.numHashes = numHashes;
+        this.seed = seed;
+        this.digest = UuidBloomFilter.fromLongArray(digestWords, numHashes, seed);
+    }
+
+    /**
+     * @return a copy of the Bloom filter carried by the packet.
+     */
+    public UuidBloomFilter getDigest() {
+        return UuidBloomFilter.fromLongArray(this.digestWords, this.numHashes, this.seed);
+    }
+
+    /**
+     * Returns true if the sender may hold the Bark with the passed id.
+     *
+     * @param barkId the id of the Bark.
+     * @return false if the sender definitely doesn't hold the Bark, true otherwise.
+     */
+    public boolean mightHold(final UUID barkId) {
+        return this.digest.mightContain(barkId);
+    }
+
+    long[] getDigestWords() {
+        return this.digestWords;
+    }
+
+    int getNumHashes() {
+        return this.numHashes;
+    }
+
+    long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for DigestPacket.
+     */
+    public static class JsonAdapter extends TypeAdapter<DigestPacket> {
+        @Override
+        public void write(final JsonWriter out, final DigestPacket packet) throws IOException {
+            out.beginObject();
+            out.name("digestWords");
+            out.beginArray();
+            for (final long word : packet.digestWords) {
+                out.value(word);
+            }
+            out.endArray();
+            out.name("numHashes").value(packet.numHashes);
+            out.name("seed").value(packet.seed);
+            out.endObject();
+        }
+
+        @Override
+        public DigestPacket read(final JsonReader in) throws IOException {
+            final List<Long> words = new ArrayList<>();
+            int numHashes = 1;
+            long seed = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "digestWords":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            words.add(in.nextLong());
+                        }
+                        in.endArray();
+                        break;
+                    case "numHashes":
+                        numHashes = in.nextInt();
+                        break;
+                    case "seed":
+                        seed = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new DigestPacket(words.stream().mapToLong(Long::longValue).toArray(), numHashes, seed);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DigestPacket)) {
+            return false;
+        }
+        DigestPacket other = (DigestPacket) o;
+        return Arrays.equals(this.digestWords, other.digestWords)
+                && this.numHashes == other.numHashes
+                && this.seed == other.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.digestWords) * 31 + this.numHashes;
+    }
+
+    @Override
+    public String toString() {
+        return "digest: " + this.digestWords.length * Long.SIZE + " bits, " + this.numHashes + " hashes";
+    }
+}
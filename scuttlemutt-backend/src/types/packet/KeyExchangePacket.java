@@ -1,5 +1,6 @@
 package types.packet;
 
+import java.io.IOException;
 import java.security.Key;
 
 import types.DawgIdentifier;
@@ -8,6 +9,12 @@ import java.security.PublicKey;
 
 import javax.crypto.SecretKey;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import crypto.CryptoSuites;
+import crypto.RsaCryptoSuite;
 import types.serialization.SerializationUtils;
 
 /**
@@ -19,6 +26,9 @@ public class KeyExchangePacket extends Packet {
 
     private final DawgIdentifier dawgId;
 
+    // the id of the CryptoSuite the public key belongs to.
+    private final byte cryptoSuiteId;
+
     /**
      * Constructs the packet.
      *
@@ -30,6 +40,19 @@ public class KeyExchangePacket extends Packet {
         this.publicKeyBytes = SerializationUtils.serializeKey(publicKey);
         this.secretKeyBytes = SerializationUtils.serializeKey(secretKey);
         this.dawgId = dawgId;
+        this.cryptoSuiteId = CryptoSuites.forKey(publicKey).getId();
+    }
+
+    /**
+     * Constructs the packet from already-serialized keys.  Used when reading
+     * the binary wire format or JSON.
+     */
+    KeyExchangePacket(final byte[] publicKeyBytes, final byte[] secretKeyBytes, final DawgIdentifier dawgId,
+                      final byte cryptoSuiteId) {
+        this.publicKeyBytes = publicKeyBytes;
+        this.secretKeyBytes = secretKeyBytes;
+        this.dawgId = dawgId;
+        this.cryptoSuiteId = cryptoSuiteId;
     }
 
     public PublicKey getPublicKey() {
@@ -44,6 +67,70 @@ public class KeyExchangePacket extends Packet {
         return this.dawgId;
     }
 
+    /**
+     * @return the id of the CryptoSuite the sender's public key belongs to.
+     */
+    public byte getCryptoSuiteId() {
+        return this.cryptoSuiteId;
+    }
+
+    byte[] getPublicKeyBytes() {
+        return this.publicKeyBytes;
+    }
+
+    byte[] getSecretKeyBytes() {
+        return this.secretKeyBytes;
+    }
+
+    /**
+     * Reflection-free Gson TypeAdapter for KeyExchangePacket.
+     */
+    public static class JsonAdapter extends TypeAdapter<KeyExchangePacket> {
+        private final DawgIdentifier.JsonAdapter dawgIdAdapter = new DawgIdentifier.JsonAdapter();
+
+        @Override
+        public void write(final JsonWriter out, final KeyExchangePacket packet) throws IOException {
+            out.beginObject();
+            out.name("publicKeyBytes");
+            SerializationUtils.writeJsonBytes(out, packet.publicKeyBytes);
+            out.name("secretKeyBytes");
+            SerializationUtils.writeJsonBytes(out, packet.secretKeyBytes);
+            out.name("dawgId");
+            this.dawgIdAdapter.nullSafe().write(out, packet.dawgId);
+            out.name("cryptoSuiteId").value(packet.cryptoSuiteId);
+            out.endObject();
+        }
+
+        @Override
+        public KeyExchangePacket read(final JsonReader in) throws IOException {
+            byte[] publicKeyBytes = null;
+            byte[] secretKeyBytes = null;
+            DawgIdentifier dawgId = null;
+            byte cryptoSuiteId = RsaCryptoSuite.ID;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "publicKeyBytes":
+                        publicKeyBytes = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "secretKeyBytes":
+                        secretKeyBytes = SerializationUtils.readJsonBytes(in);
+                        break;
+                    case "dawgId":
+                        dawgId = this.dawgIdAdapter.nullSafe().read(in);
+                        break;
+                    case "cryptoSuiteId":
+                        cryptoSuiteId = (byte) in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new KeyExchangePacket(publicKeyBytes, secretKeyBytes, dawgId, cryptoSuiteId);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof KeyExchangePacket)) {
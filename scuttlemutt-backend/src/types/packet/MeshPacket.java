@@ -0,0 +1,11 @@
+package types.packet;
+
+/**
+ * Abstract class used by the packet types flooded through the mesh:  Barks
+ * (see: BarkPacket) and their delivery acks (see: AckPacket).
+ *
+ * MeshInput receives every MeshPacket on a single thread and handles each by
+ * its type, so it only needs to poll the IOManager once for both kinds.
+ */
+public abstract class MeshPacket extends Packet {
+}
@@ -1,7 +1,6 @@
 package types.packet;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import types.serialization.SerializationUtils;
 
 /**
  * Abstract class used by packet object types.
@@ -9,7 +8,15 @@ import com.google.gson.GsonBuilder;
  * Any packet type intended to be sent using an IOManager should extend this abstract class.
  */
 public abstract class Packet {
-    private static Gson GSON = new GsonBuilder().setLenient().create();
+    /**
+     * The formats a Packet can be written to the network in.  fromNetworkBytes() accepts either.
+     */
+    public enum WireFormat {
+        // human-readable Gson JSON.
+        JSON,
+        // compact binary format, see BinaryPacketCodec.
+        BINARY
+    }
 
     /**
      * Returns a byte[] containing the contents of the BarkPacket.
@@ -17,7 +24,19 @@ public abstract class Packet {
      */
     public byte[] toNetworkBytes() {
         // since the packetBarks are contained in a list, we have to serialize them instead of the overall object.
-        return GSON.toJson(this).getBytes();
+        return SerializationUtils.GSON.toJson(this).getBytes();
+    }
+
+    /**
+     * Returns a byte[] containing the contents of the Packet in the requested format.
+     * @param format  The WireFormat to write the Packet in.
+     * @return a byte[] containing the contents of the Packet.
+     */
+    public byte[] toNetworkBytes(final WireFormat format) {
+        if (format == WireFormat.BINARY) {
+            return BinaryPacketCodec.encode(this);
+        }
+        return this.toNetworkBytes();
     }
 
     /**
@@ -26,15 +45,26 @@ public abstract class Packet {
      * @return  A Packet of the correct type constructed from the receivedBytes.
      */
     public static Packet fromNetworkBytes(final byte[] receivedBytes) {
+        // binary packets carry an explicit type tag, so there's no need to guess.
+        if (BinaryPacketCodec.isBinaryPacket(receivedBytes)) {
+            return BinaryPacketCodec.decode(receivedBytes);
+        }
+
         // convert the byte[] into a String for easy processing.
         final String packetJson = new String(receivedBytes);
 
         // if the packet's JSON form contains the substring "packetBarks", it's a BarkPacket.
         if (packetJson.contains("packetBarks")) {
-            return GSON.fromJson(packetJson, BarkPacket.class);
+            return SerializationUtils.GSON.fromJson(packetJson, BarkPacket.class);
         // if the packet's JSON form contains the substring "publicKey" or "keyBytes", it's a KeyExchangePacket.
         } else if (packetJson.contains("keyBytes") || packetJson.contains("publicKey")) {
-            return GSON.fromJson(packetJson, KeyExchangePacket.class);
+            return SerializationUtils.GSON.fromJson(packetJson, KeyExchangePacket.class);
+        // if the packet's JSON form contains the substring "digestWords", it's a DigestPacket.
+        } else if (packetJson.contains("digestWords")) {
+            return SerializationUtils.GSON.fromJson(packetJson, DigestPacket.class);
+        // if the packet's JSON form contains the substring "ackSecret", it's an AckPacket.
+        } else if (packetJson.contains("ackSecret")) {
+            return SerializationUtils.GSON.fromJson(packetJson, AckPacket.class);
         // otherwise, we don't know what type the packet is.
         } else {
             throw new PacketException("Attempted to deserialize a packet of an unknown type.\tPacket:  " + packetJson);
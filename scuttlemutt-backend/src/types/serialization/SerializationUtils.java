@@ -1,6 +1,11 @@
 package types.serialization;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.security.KeyFactory;
@@ -15,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.UUID;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -25,16 +31,48 @@ import org.apache.commons.lang3.SerializationException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import crypto.Crypto;
+import crypto.CryptoSuite;
+import crypto.CryptoSuites;
+import types.Bark;
+import types.BarkPayload;
+import types.Conversation;
+import types.DawgIdentifier;
+import types.Message;
+import types.packet.AckPacket;
+import types.packet.BarkPacket;
+import types.packet.DigestPacket;
+import types.packet.KeyExchangePacket;
 
 public class SerializationUtils {
-    private static final Gson GSON = new GsonBuilder().setLenient().create();
+    /**
+     * Shared Gson instance with hand-written (reflection-free) TypeAdapters
+     * registered for all of our types.  Use this instead of creating a new Gson.
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .setLenient()
+            .registerTypeAdapter(Bark.class, new Bark.JsonAdapter().nullSafe())
+            .registerTypeAdapter(BarkPayload.class, new BarkPayload.JsonAdapter().nullSafe())
+            .registerTypeAdapter(Conversation.class, new Conversation.JsonAdapter().nullSafe())
+            .registerTypeAdapter(DawgIdentifier.class, new DawgIdentifier.JsonAdapter().nullSafe())
+            .registerTypeAdapter(Message.class, new Message.JsonAdapter().nullSafe())
+            .registerTypeAdapter(BarkPacket.class, new BarkPacket.JsonAdapter().nullSafe())
+            .registerTypeAdapter(KeyExchangePacket.class, new KeyExchangePacket.JsonAdapter().nullSafe())
+            .registerTypeAdapter(DigestPacket.class, new DigestPacket.JsonAdapter().nullSafe())
+            .registerTypeAdapter(AckPacket.class, new AckPacket.JsonAdapter().nullSafe())
+            .create();
 
     // used to indicate key type in serialized String form.
     private static final byte[] SERIALIZED_SECRETKEY_PREFIX_BYTES = "secretkey:".getBytes();
     private static final byte[] SERIALIZED_PUBLICKEY_PREFIX_BYTES = "publickey:".getBytes();
     private static final byte[] SERIALIZED_PRIVATEKEY_PREFIX_BYTES = "privatekey:".getBytes();
+    // non-RSA public/private keys carry the id of their CryptoSuite, ex:  "publickey@2:".
+    private static final byte[] SERIALIZED_SUITE_PUBLICKEY_PREFIX_BYTES = "publickey@".getBytes();
+    private static final byte[] SERIALIZED_SUITE_PRIVATEKEY_PREFIX_BYTES = "privatekey@".getBytes();
 
     public static String serializeKeyList(final List<Key> keyList) {
         // create a List to store the JSONs for each serialized Key.
@@ -78,6 +116,14 @@ public class SerializationUtils {
         // deserialization later.
         if (k instanceof SecretKey) {
             return ArrayUtils.addAll(SERIALIZED_SECRETKEY_PREFIX_BYTES, encodedBytes);
+        }
+
+        // RSA keys keep the original prefixes so older builds can still read them.
+        final CryptoSuite suite = CryptoSuites.forKey(k);
+        if (suite != CryptoSuites.RSA) {
+            final byte[] prefix = k instanceof PublicKey
+                    ? SERIALIZED_SUITE_PUBLICKEY_PREFIX_BYTES : SERIALIZED_SUITE_PRIVATEKEY_PREFIX_BYTES;
+            return ArrayUtils.addAll(ArrayUtils.addAll(prefix, (suite.getId() + ":").getBytes()), encodedBytes);
         } else if (k instanceof PublicKey) {
             return ArrayUtils.addAll(SERIALIZED_PUBLICKEY_PREFIX_BYTES, encodedBytes);
         } else if (k instanceof PrivateKey){
@@ -91,7 +137,25 @@ public class SerializationUtils {
     public static Key deserializeKey(final byte[] serializedBytes) {
         // Figure out the type of the Key serialized in the byte[], reassemble + return
         // the Key.
-        if (indexOf(serializedBytes, SERIALIZED_SECRETKEY_PREFIX_BYTES) != -1) {
+        if (indexOf(serializedBytes, SERIALIZED_SUITE_PUBLICKEY_PREFIX_BYTES) == 0
+                || indexOf(serializedBytes, SERIALIZED_SUITE_PRIVATEKEY_PREFIX_BYTES) == 0) {
+            // find the suite id between the '@' and the ':'.
+            final int idStart = indexOf(serializedBytes, "@".getBytes()) + 1;
+            final int idEnd = indexOf(serializedBytes, ":".getBytes());
+            if (idEnd < idStart) {
+                throw new SerializationException("Tried to deserialize a key with a malformed suite id!");
+            }
+            final CryptoSuite suite = CryptoSuites.fromId(
+                    Byte.parseByte(new String(serializedBytes, idStart, idEnd - idStart)));
+
+            // get the base64 encoded key + let the suite reassemble it.
+            final byte[] encodedKey = Base64.getDecoder().decode(
+                    Arrays.copyOfRange(serializedBytes, idEnd + 1, serializedBytes.length));
+            if (indexOf(serializedBytes, SERIALIZED_SUITE_PUBLICKEY_PREFIX_BYTES) == 0) {
+                return suite.decodePublicKey(encodedKey);
+            }
+            return suite.decodePrivateKey(encodedKey);
+        } else if (indexOf(serializedBytes, SERIALIZED_SECRETKEY_PREFIX_BYTES) != -1) {
             // trim off the prefix.
             final byte[] keyBytes = Arrays.copyOfRange(serializedBytes,
                     SERIALIZED_SECRETKEY_PREFIX_BYTES.length,
@@ -149,6 +213,245 @@ public class SerializationUtils {
         throw new SerializationException("Tried to deserialize an unknown key type!");
     }
 
+    /**
+     * Returns the 16-byte big-endian representation of the passed UUID.
+     *
+     * @param uuid the UUID to convert.
+     * @return a byte[] of length 16 containing the UUID.
+     */
+    public static byte[] uuidToBytes(final UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * Returns the UUID stored in the passed 16-byte big-endian byte[].
+     *
+     * @param bytes a byte[] of length 16 containing the UUID.
+     * @return the UUID stored in the byte[].
+     */
+    public static UUID uuidFromBytes(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Writes the passed int as an unsigned LEB128 varint (1-5 bytes).
+     *
+     * @param out   the DataOutput to write to.
+     * @param value the non-negative value to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeVarInt(final DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint written by writeVarInt().
+     *
+     * @param in the DataInput to read from.
+     * @return the value which was read.
+     * @throws IOException if the varint is malformed or the input ends early.
+     */
+    public static int readVarInt(final DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes the passed long as a zigzag-encoded LEB128 varint, so that small
+     * negative values stay small too.
+     *
+     * @param out   the DataOutput to write to.
+     * @param value the value to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeSignedVarLong(final DataOutput out, final long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    /**
+     * Reads a zigzag-encoded varint written by writeSignedVarLong().
+     *
+     * @param in the DataInput to read from.
+     * @return the value which was read.
+     * @throws IOException if the varint is malformed or the input ends early.
+     */
+    public static long readSignedVarLong(final DataInput in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes the passed byte[] prefixed with its length as a varint.  A null
+     * byte[] is written the same way as an empty one.
+     *
+     * @param out   the DataOutput to write to.
+     * @param bytes the byte[] to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeLengthPrefixed(final DataOutput out, final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Returns the number of bytes writeLengthPrefixed() writes for the passed byte[].
+     *
+     * @param bytes the byte[] to measure.
+     * @return the size of the length prefix plus the bytes.
+     */
+    public static int lengthPrefixedSize(final byte[] bytes) {
+        final int length = bytes == null ? 0 : bytes.length;
+        // each varint byte holds 7 bits.
+        final int prefixSize = length == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(length)) / 7;
+        return prefixSize + length;
+    }
+
+    /**
+     * Reads a byte[] written by writeLengthPrefixed().
+     *
+     * @param in        the DataInput to read from.
+     * @param maxLength the largest length we are willing to allocate for.
+     * @return the byte[] which was read.
+     * @throws IOException if the length is invalid or the input ends early.
+     */
+    public static byte[] readLengthPrefixed(final DataInput in, final int maxLength) throws IOException {
+        final int length = readVarInt(in);
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid length prefix:  " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the passed UUID as 16 raw bytes.
+     *
+     * @param out  the DataOutput to write to.
+     * @param uuid the UUID to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeUUID(final DataOutput out, final UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads a UUID written by writeUUID().
+     *
+     * @param in the DataInput to read from.
+     * @return the UUID which was read.
+     * @throws IOException if the input ends early.
+     */
+    public static UUID readUUID(final DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Writes the passed byte[] as a Base64 JSON string (or null).
+     *
+     * @param out   the JsonWriter to write to.
+     * @param bytes the byte[] to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeJsonBytes(final JsonWriter out, final byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.nullValue();
+        } else {
+            out.value(Base64.getEncoder().encodeToString(bytes));
+        }
+    }
+
+    /**
+     * Reads a byte[] written by writeJsonBytes().  For compatibility with JSON
+     * written by reflective Gson, an array of numbers is also accepted.
+     *
+     * @param in the JsonReader to read from.
+     * @return the byte[] which was read, or null.
+     * @throws IOException if the JSON is malformed.
+     */
+    public static byte[] readJsonBytes(final JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in.beginArray();
+            while (in.hasNext()) {
+                bytes.write(in.nextInt());
+            }
+            in.endArray();
+            return bytes.toByteArray();
+        }
+        try {
+            return Base64.getDecoder().decode(in.nextString());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 in JSON -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the passed UUID as a JSON string (or null).
+     *
+     * @param out  the JsonWriter to write to.
+     * @param uuid the UUID to write.
+     * @throws IOException if the underlying write fails.
+     */
+    public static void writeJsonUUID(final JsonWriter out, final UUID uuid) throws IOException {
+        out.value(uuid == null ? null : uuid.toString());
+    }
+
+    /**
+     * Reads a UUID written by writeJsonUUID().
+     *
+     * @param in the JsonReader to read from.
+     * @return the UUID which was read, or null.
+     * @throws IOException if the JSON is malformed.
+     */
+    public static UUID readJsonUUID(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return UUID.fromString(in.nextString());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid UUID in JSON -- " + e.getMessage());
+        }
+    }
+
     public static PublicKey deserializePublicKey(final byte[] keyBytes) {
         try {
             final byte[] encodedKey = Base64.getDecoder().decode(keyBytes);
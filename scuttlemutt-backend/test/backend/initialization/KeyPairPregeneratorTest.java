@@ -0,0 +1,64 @@
+package backend.initialization;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import crypto.CryptoSuites;
+import crypto.EcCryptoSuite;
+
+public class KeyPairPregeneratorTest {
+    private static final int NUM_KEYPAIRS = 3;
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    @Test
+    public void testTake_morePairsThanPregenerated_returnsDistinctKeyPairs() throws InterruptedException {
+        // pre-generate a few keypairs + wait for them to finish.
+        final KeyPairPregenerator pregenerator = new KeyPairPregenerator(CryptoSuites.EC, NUM_KEYPAIRS);
+        assertTrue(pregenerator.awaitAll(TIMEOUT_MILLIS));
+        assertTrue(pregenerator.isReady());
+
+        // take every pre-generated keypair, plus one which must be generated on this thread.
+        final Set<PublicKey> publicKeys = new HashSet<>();
+        for (int i = 0; i < NUM_KEYPAIRS + 1; i++) {
+            final KeyPair keyPair = pregenerator.take();
+            assertNotNull(keyPair);
+            publicKeys.add(keyPair.getPublic());
+        }
+        assertEquals(NUM_KEYPAIRS + 1, publicKeys.size());
+        assertFalse(pregenerator.isReady());
+    }
+
+    @Test
+    public void testTake_nothingPregenerated_generatesOnCallingThread() throws InterruptedException {
+        final KeyPairPregenerator pregenerator = new KeyPairPregenerator(CryptoSuites.EC, 0);
+        assertTrue(pregenerator.awaitAll(TIMEOUT_MILLIS));
+        assertFalse(pregenerator.isReady());
+        assertEquals(CryptoSuites.EC, CryptoSuites.forKey(pregenerator.take().getPrivate()));
+    }
+
+    @Test
+    public void testTake_backgroundKeygenFails_generatesOnCallingThread() throws InterruptedException {
+        // the first keygen (the background one) fails, like a provider error would.
+        final AtomicInteger keygens = new AtomicInteger(0);
+        final EcCryptoSuite flakySuite = new EcCryptoSuite() {
+            @Override
+            public KeyPair generateKeyPair() {
+                return keygens.getAndIncrement() == 0 ? null : super.generateKeyPair();
+            }
+        };
+        final KeyPairPregenerator pregenerator = new KeyPairPregenerator(flakySuite, 1);
+        assertTrue(pregenerator.awaitAll(TIMEOUT_MILLIS));
+        assertNotNull(pregenerator.take());
+        assertEquals(2, keygens.get());
+    }
+}
@@ -3,8 +3,10 @@ package backend.iomanager;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.Test;
 import types.TestUtils;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
 import types.packet.KeyExchangePacket;
+import types.packet.MeshPacket;
 import types.packet.Packet;
 
 import java.util.ArrayList;
@@ -307,4 +309,64 @@ public class QueueIOManagerTest {
         // assert that the obtained BarkPacket is identical to barkPacket1.
         assertEquals(barkPacket1, receivedBarkPacket);
     }
+
+    @Test
+    public void testMeshReceive_meshPacket_returnsBarkAndAckPackets_leavesOtherTypes() {
+        // setup QueueIOManager infra for test.
+        final QueueIOManager m1 = new QueueIOManager();
+
+        final String connectionLabel = "Connection-m2-" + RandomStringUtils.randomAlphanumeric(15);
+
+        final BlockingQueue<Packet> q2to1 = new LinkedBlockingQueue<Packet>();
+
+        m1.connect(connectionLabel, q2to1, new LinkedBlockingQueue<Packet>());
+
+        // load up q2to1 with a KeyExchangePacket, then a BarkPacket and an AckPacket.
+        final KeyExchangePacket kePacket = TestUtils.generateRandomizedKeyExchangePacket();
+        q2to1.add(kePacket);
+        final BarkPacket barkPacket = TestUtils.generateRandomizedBarkPacket();
+        q2to1.add(barkPacket);
+        final AckPacket ackPacket = TestUtils.generateAckPacket(TestUtils.generateRandomizedBark());
+        q2to1.add(ackPacket);
+
+        // both kinds of MeshPacket are received, in order, from one call each.
+        assertEquals(barkPacket, m1.meshReceive(MeshPacket.class));
+        assertEquals(ackPacket, m1.meshReceive(MeshPacket.class));
+
+        // the KeyExchangePacket is left for whoever is waiting on it.
+        assertEquals(kePacket, m1.singleDeviceReceive(connectionLabel, KeyExchangePacket.class));
+    }
+
+    @Test
+    public void testDiscardReceived_dropsOnlyThatTypeFromThatSender() {
+        // setup QueueIOManager infra for test.
+        final QueueIOManager m1 = new QueueIOManager();
+
+        final String connectionLabel = "Connection-m2-" + RandomStringUtils.randomAlphanumeric(15);
+        final String otherLabel = "Connection-m3-" + RandomStringUtils.randomAlphanumeric(15);
+
+        final BlockingQueue<Packet> q2to1 = new LinkedBlockingQueue<Packet>();
+        final BlockingQueue<Packet> q3to1 = new LinkedBlockingQueue<Packet>();
+
+        m1.connect(connectionLabel, q2to1, new LinkedBlockingQueue<Packet>());
+        m1.connect(otherLabel, q3to1, new LinkedBlockingQueue<Packet>());
+
+        // load up q2to1 with a KeyExchangePacket between two BarkPackets, and q3to1 with a KeyExchangePacket.
+        final BarkPacket barkPacket1 = TestUtils.generateRandomizedBarkPacket();
+        final BarkPacket barkPacket2 = TestUtils.generateRandomizedBarkPacket();
+        q2to1.add(barkPacket1);
+        q2to1.add(TestUtils.generateRandomizedKeyExchangePacket());
+        q2to1.add(barkPacket2);
+        final KeyExchangePacket otherPacket = TestUtils.generateRandomizedKeyExchangePacket();
+        q3to1.add(otherPacket);
+
+        // only m2's BarkPackets are discarded; everything else is left.
+        assertEquals(2, m1.discardReceived(connectionLabel, BarkPacket.class));
+        assertEquals(1, q2to1.size());
+        assertEquals(otherPacket, m1.singleDeviceReceive(otherLabel, KeyExchangePacket.class));
+
+        // nothing is discarded from a sender we aren't connected to.
+        assertEquals(0, m1.discardReceived("Unknown-" + RandomStringUtils.randomAlphanumeric(15),
+                KeyExchangePacket.class));
+    }
 }
@@ -0,0 +1,95 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for BloomSeenBarks.
+ */
+public class BloomSeenBarksTest {
+    private static final int BARKS_PER_GENERATION = 50;
+    // low enough that the random Barks below never collide.
+    private static final double FALSE_POSITIVE_RATE = 1e-9;
+
+    @Test
+    public void testAdd_sameBarkTwice_onlyFirstIsNew() {
+        final SeenBarks seenBarks = new BloomSeenBarks(BARKS_PER_GENERATION, FALSE_POSITIVE_RATE);
+        final Bark bark = TestUtils.generateRandomizedBark();
+        assertFalse(seenBarks.contains(bark));
+        assertTrue(seenBarks.add(bark));
+        assertFalse(seenBarks.add(bark));
+        assertTrue(seenBarks.contains(bark));
+    }
+
+    @Test
+    public void testAdd_manyBarks_oldBarksForgottenAfterTwoGenerations() {
+        final SeenBarks seenBarks = new BloomSeenBarks(BARKS_PER_GENERATION, FALSE_POSITIVE_RATE);
+        final Bark oldBark = TestUtils.generateRandomizedBark();
+        seenBarks.add(oldBark);
+
+        // the old Bark survives one rotation...
+        for (int i = 0; i < BARKS_PER_GENERATION; i++) {
+            assertTrue(seenBarks.add(TestUtils.generateRandomizedBark()));
+        }
+        assertTrue(seenBarks.contains(oldBark));
+
+        // ...but not two.
+        for (int i = 0; i < BARKS_PER_GENERATION; i++) {
+            seenBarks.add(TestUtils.generateRandomizedBark());
+        }
+        assertFalse(seenBarks.contains(oldBark));
+    }
+
+    @Test
+    public void testAdd_sameBarksConcurrently_exactlyOneAddIsNew() throws Exception {
+        final int numThreads = 8;
+        final int numBarks = 200;
+        final SeenBarks seenBarks = new BloomSeenBarks(BARKS_PER_GENERATION * numBarks, FALSE_POSITIVE_RATE);
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < numBarks; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+
+        // every thread adds every Bark at once, like pipeline workers handed the same Barks.
+        final AtomicIntegerArray newCounts = new AtomicIntegerArray(numBarks);
+        final CyclicBarrier start = new CyclicBarrier(numThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                adders.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < numBarks; i++) {
+                        if (seenBarks.add(barks.get(i))) {
+                            newCounts.incrementAndGet(i);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> adder : adders) {
+                adder.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < numBarks; i++) {
+            assertEquals(1, newCounts.get(i));
+        }
+    }
+}
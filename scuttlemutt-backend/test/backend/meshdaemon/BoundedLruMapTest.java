@@ -0,0 +1,44 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs tests for BoundedLruMap.
+ */
+public class BoundedLruMapTest {
+    private static final int MAX_ENTRIES = 3;
+
+    @Test
+    public void testPut_full_forgetsLeastRecentlyUsed() {
+        final BoundedLruMap<String, Integer> map = new BoundedLruMap<>(MAX_ENTRIES);
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+
+        // reading "a" makes "b" the least recently used.
+        assertEquals(1, map.get("a"));
+        map.put("d", 4);
+        assertEquals(MAX_ENTRIES, map.size());
+        assertFalse(map.containsKey("b"));
+        assertEquals(List.of("c", "a", "d"), new ArrayList<>(map.keySet()));
+
+        // updating an entry counts as a use too.
+        map.put("c", 5);
+        map.put("e", 6);
+        assertTrue(map.containsKey("c"));
+        assertFalse(map.containsKey("a"));
+    }
+
+    @Test
+    public void testConstructor_invalidLimit_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedLruMap<String, Integer>(0));
+    }
+}
@@ -0,0 +1,107 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import types.Bark;
+import types.TestUtils;
+import types.packet.AckPacket;
+
+/**
+ * Runs tests for DeliveryAcks.
+ */
+public class DeliveryAcksTest {
+    private DeliveryAcks acks;
+
+    @BeforeEach
+    public void setup() {
+        this.acks = new DeliveryAcks();
+    }
+
+    @Test
+    public void testRecordAck_trackedBark_forgedAckIsDroppedAndValidAckSentOn() {
+        final Bark bark = TestUtils.generateRandomizedBark();
+        this.acks.trackBark(bark);
+
+        assertFalse(this.acks.recordAck(forgedAck(bark)));
+        assertEquals(List.of(), this.acks.drainAcksToSend());
+        assertFalse(this.acks.isAcked(bark));
+
+        final AckPacket validAck = TestUtils.generateAckPacket(bark);
+        assertTrue(this.acks.recordAck(validAck));
+        assertEquals(List.of(validAck.decrementHops()), this.acks.drainAcksToSend());
+        assertTrue(this.acks.isAcked(bark));
+
+        // repeats of a verified ack are duplicates.
+        assertFalse(this.acks.recordAck(validAck));
+        assertEquals(List.of(), this.acks.drainAcksToSend());
+    }
+
+    @Test
+    public void testRecordAck_untrackedBark_forgedAckBeforeValidAckIsIgnored() {
+        final Bark bark = TestUtils.generateRandomizedBark();
+
+        // a forged ack heard first doesn't keep the valid one out.
+        assertTrue(this.acks.recordAck(forgedAck(bark, (byte) 1)));
+        final AckPacket validAck = TestUtils.generateAckPacket(bark);
+        assertTrue(this.acks.recordAck(validAck));
+        assertEquals(List.of(), this.acks.drainAcksToSend());
+
+        // it's checked + sent on once we hold the Bark.
+        this.acks.trackBark(bark);
+        assertEquals(List.of(validAck.decrementHops()), this.acks.drainAcksToSend());
+        assertTrue(this.acks.isAcked(bark));
+    }
+
+    @Test
+    public void testRecordAck_untrackedBark_forgedAcksAfterValidAckDoNotReplaceIt() {
+        final Bark bark = TestUtils.generateRandomizedBark();
+        final AckPacket validAck = TestUtils.generateAckPacket(bark);
+        assertTrue(this.acks.recordAck(validAck));
+
+        // forged acks heard later are kept alongside it until there's no room, then dropped.
+        for (int i = 1; i < DeliveryAcks.MAX_UNVERIFIED_ACKS; i++) {
+            assertTrue(this.acks.recordAck(forgedAck(bark, (byte) i)));
+        }
+        assertFalse(this.acks.recordAck(forgedAck(bark, (byte) DeliveryAcks.MAX_UNVERIFIED_ACKS)));
+
+        this.acks.trackBark(bark);
+        assertEquals(List.of(validAck.decrementHops()), this.acks.drainAcksToSend());
+        assertTrue(this.acks.isAcked(bark));
+    }
+
+    @Test
+    public void testRecordAck_reportsOnlyTheBarksAcksAreVerifiedAgainst() {
+        final Bark trackedBark = TestUtils.generateRandomizedBark();
+        final Bark untrackedBark = TestUtils.generateRandomizedBark();
+        this.acks.trackBark(trackedBark);
+        final List<Bark> verified = new ArrayList<>();
+
+        // forged acks + acks which can't be checked yet are never reported.
+        assertFalse(this.acks.recordAck(forgedAck(trackedBark), verified::add));
+        assertTrue(this.acks.recordAck(TestUtils.generateAckPacket(untrackedBark), verified::add));
+        assertEquals(List.of(), verified);
+
+        assertTrue(this.acks.recordAck(TestUtils.generateAckPacket(trackedBark), verified::add));
+        assertEquals(List.of(trackedBark), verified);
+    }
+
+    // private helpers
+    private static AckPacket forgedAck(final Bark bark) {
+        return forgedAck(bark, (byte) 0);
+    }
+
+    private static AckPacket forgedAck(final Bark bark, final byte fill) {
+        final byte[] ackSecret = new byte[Bark.ACK_SECRET_SIZE];
+        Arrays.fill(ackSecret, fill);
+        return new AckPacket(bark.getUniqueId(), ackSecret, AckPacket.DEFAULT_HOP_LIMIT);
+    }
+}
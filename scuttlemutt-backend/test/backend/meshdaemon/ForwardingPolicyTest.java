@@ -0,0 +1,85 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for the ForwardingPolicy implementations + ForwardingStats.
+ */
+public class ForwardingPolicyTest {
+    private static final Bark BARK = TestUtils.generateRandomizedBark();
+
+    @Test
+    public void testCounterForwardingPolicy_suppressesAfterMaxDuplicates() {
+        final ForwardingPolicy policy = new CounterForwardingPolicy(2, 3);
+        assertTrue(policy.shouldForward(BARK, 1, 5));
+        assertTrue(policy.shouldForward(BARK, 2, 5));
+        assertFalse(policy.shouldForward(BARK, 3, 5));
+        assertEquals(3, policy.sendsBeforeDrop(5));
+    }
+
+    @Test
+    public void testGossipForwardingPolicy_forwardsAboutProbability() {
+        final ForwardingPolicy policy = new GossipForwardingPolicy(0.5, 2, new Random(42));
+        int forwarded = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (policy.shouldForward(BARK, 1, 5)) {
+                forwarded++;
+            }
+        }
+        assertTrue(forwarded > 400 && forwarded < 600, "forwarded " + forwarded);
+        assertTrue(new GossipForwardingPolicy(1.0, 2, null).shouldForward(BARK, 10, 5));
+    }
+
+    @Test
+    public void testDensityForwardingPolicy_scalesWithNeighbors() {
+        final ForwardingPolicy policy = new DensityForwardingPolicy(2, 8, 4, 4);
+
+        // sparse:  relay everything, to many neighbors.
+        assertTrue(policy.shouldForward(BARK, 100, 2));
+        assertEquals(4, policy.sendsBeforeDrop(1));
+
+        // dense:  only relay Barks with no duplicates, to a single neighbor.
+        assertTrue(policy.shouldForward(BARK, 1, 8));
+        assertFalse(policy.shouldForward(BARK, 2, 20));
+        assertEquals(1, policy.sendsBeforeDrop(20));
+
+        // in between, the thresholds fall as neighbors are added.
+        int lastSends = Integer.MAX_VALUE;
+        for (int neighbors = 2; neighbors <= 8; neighbors++) {
+            final int sends = policy.sendsBeforeDrop(neighbors);
+            assertTrue(sends <= lastSends);
+            lastSends = sends;
+        }
+        assertTrue(policy.shouldForward(BARK, 2, 5));
+        assertFalse(policy.shouldForward(BARK, 4, 5));
+    }
+
+    @Test
+    public void testForwardingStats_countsCopiesAndNeighbors() {
+        final ForwardingStats stats = new ForwardingStats(2, 8, 60 * 1000);
+        final UUID first = UUID.randomUUID();
+        stats.recordHeard("Neighbor0", first);
+        stats.recordHeard("Neighbor1", first);
+        stats.recordHeard(null, first);
+        // a neighbor resending the Bark isn't another copy.
+        stats.recordHeard("Neighbor0", first);
+        assertEquals(3, stats.getCopiesHeard(first));
+        assertEquals(2, stats.getNeighborCount());
+
+        // only the 2 most recently heard Barks are tracked.
+        stats.recordHeard("Neighbor0", UUID.randomUUID());
+        stats.recordHeard("Neighbor0", UUID.randomUUID());
+        assertEquals(0, stats.getCopiesHeard(first));
+        assertEquals(2, stats.getNeighborCount());
+    }
+}
@@ -0,0 +1,119 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+import storagemanager.MapRelayBuffer;
+import types.Bark;
+import types.TestUtils;
+import types.packet.BarkPacket;
+import types.serialization.SerializationUtils;
+
+/**
+ * Runs tests for MeshAntiSpam.
+ */
+public class MeshAntiSpamTest {
+    private static final String SENDER = "Connection-1";
+
+    private long nowNanos;
+    private MeshAntiSpam.MeshAntiSpamConfig config;
+
+    @BeforeEach
+    public void setup() {
+        this.nowNanos = 0;
+        this.config = new MeshAntiSpam.MeshAntiSpamConfig();
+        this.config.nanoClock = () -> this.nowNanos;
+    }
+
+    @Test
+    public void testShouldDropBarkPacket_withinRate_neverDropped() {
+        final MeshAntiSpam antiSpam = new MeshAntiSpam(new SetSeenBarks(new HashSet<>()), this.config);
+        final long gapNanos = (long) (TimeUnit.SECONDS.toNanos(1) / this.config.maxBarkPacketRate);
+        for (int i = 0; i < 10 * this.config.maxBarkPacketRate * this.config.burstSeconds; i++) {
+            assertFalse(antiSpam.shouldDropBarkPacket(SENDER, TestUtils.generateRandomizedBarkPacket()));
+            this.nowNanos += gapNanos;
+        }
+        assertFalse(antiSpam.isBanned(SENDER));
+    }
+
+    @Test
+    public void testShouldDropBarkPacket_flood_droppedWithoutBan() {
+        final MeshAntiSpam antiSpam = new MeshAntiSpam(new SetSeenBarks(new HashSet<>()), this.config);
+        boolean dropped = false;
+        for (int i = 0; i <= this.config.maxBarkPacketRate * this.config.burstSeconds; i++) {
+            dropped = antiSpam.shouldDropBarkPacket(SENDER, TestUtils.generateRandomizedBarkPacket());
+        }
+        assertTrue(dropped);
+        assertFalse(antiSpam.isBanned(SENDER));
+
+        // once the sender slows down, its packets are taken again.
+        this.nowNanos += TimeUnit.SECONDS.toNanos(1);
+        assertFalse(antiSpam.shouldDropBarkPacket(SENDER, TestUtils.generateRandomizedBarkPacket()));
+    }
+
+    @Test
+    public void testShouldDrop_relayBufferCatchUp_neverDropped() {
+        final MeshAntiSpam antiSpam = new MeshAntiSpam(new SetSeenBarks(new HashSet<>()), this.config);
+        final JsonObject template = SerializationUtils.GSON.toJsonTree(TestUtils.generateRandomizedBark())
+                .getAsJsonObject();
+
+        // a neighbor sends us a full FileRelayBuffer's worth of Barks, as fast as MeshDaemon's MeshOutput allows.
+        final long gapNanos = (long) (TimeUnit.SECONDS.toNanos(1) / MeshOutput.DEFAULT_MAX_PACKETS_PER_SECOND);
+        for (int sent = 0; sent < MapRelayBuffer.DEFAULT_MAX_BARKS; sent += MeshOutput.DEFAULT_MAX_BARKS_PER_PACKET) {
+            final List<Bark> barks = new ArrayList<>();
+            for (int i = 0; i < MeshOutput.DEFAULT_MAX_BARKS_PER_PACKET; i++) {
+                template.addProperty("uniqueId", UUID.randomUUID().toString());
+                barks.add(SerializationUtils.GSON.fromJson(template, Bark.class));
+            }
+            assertFalse(antiSpam.shouldDropBarkPacket(SENDER, new BarkPacket(barks)));
+            for (final Bark bark : barks) {
+                assertFalse(antiSpam.shouldDropBark(SENDER, bark));
+            }
+            this.nowNanos += gapNanos;
+        }
+        assertFalse(antiSpam.isBanned(SENDER));
+    }
+
+    @Test
+    public void testShouldDropBark_fewRepeats_droppedWithoutBan() {
+        final MeshAntiSpam antiSpam = new MeshAntiSpam(new SetSeenBarks(new HashSet<>()), this.config);
+        final Bark bark = TestUtils.generateRandomizedBark();
+        assertFalse(antiSpam.shouldDropBark(SENDER, bark));
+
+        // repeats spread out over several windows are never a violation.
+        for (int i = 0; i < 3 * this.config.maxRepeats; i++) {
+            assertTrue(antiSpam.shouldDropBark(SENDER, bark));
+            this.nowNanos += TimeUnit.MILLISECONDS.toNanos(this.config.repeatWindowMillis) / this.config.maxRepeats + 1;
+        }
+        assertFalse(antiSpam.isBanned(SENDER));
+    }
+
+    @Test
+    public void testShouldDropBarkPacket_manyRepeatsInWindow_bansSender() {
+        final MeshAntiSpam antiSpam = new MeshAntiSpam(new SetSeenBarks(new HashSet<>()), this.config);
+        final BarkPacket barkPacket = TestUtils.generateRandomizedBarkPacket();
+        assertFalse(antiSpam.shouldDropBarkPacket(SENDER, barkPacket));
+        for (int i = 0; i < this.config.maxRepeats; i++) {
+            assertTrue(antiSpam.shouldDropBarkPacket(SENDER, barkPacket));
+            assertFalse(antiSpam.isBanned(SENDER));
+        }
+
+        // the same packet from another neighbor isn't held against it.
+        assertFalse(antiSpam.shouldDropBarkPacket("Connection-2", barkPacket));
+
+        assertTrue(antiSpam.shouldDropBarkPacket(SENDER, barkPacket));
+        assertTrue(antiSpam.isBanned(SENDER));
+        assertFalse(antiSpam.isBanned("Connection-2"));
+    }
+}
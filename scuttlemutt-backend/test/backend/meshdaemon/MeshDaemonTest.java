@@ -1,22 +1,25 @@
 package backend.meshdaemon;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.crypto.SecretKey;
 
 import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.powermock.reflect.Whitebox;
 
 import backend.iomanager.QueueIOManager;
-import crypto.Crypto;
 import storagemanager.MapStorageManager;
 import storagemanager.StorageManager;
 import types.Bark;
@@ -53,14 +56,21 @@ public class MeshDaemonTest {
                                 new LinkedBlockingQueue<Packet>());
 
                 // store a SymmetricKey for the fake "connection".
-                this.storageManager.storePublicKeyForUUID(otherDawgId.getUUID(), Crypto.ALICE_KEYPAIR.getPublic());
-                this.storageManager.storePrivateKey(Crypto.ALICE_KEYPAIR.getPrivate());
-                this.conversationKey = Crypto.DUMMY_SECRETKEY;
+                this.storageManager.storePublicKeyForUUID(otherDawgId.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+                this.storageManager.storePrivateKey(TestUtils.ALICE_KEYPAIR.getPrivate());
+                this.conversationKey = TestUtils.DUMMY_SECRETKEY;
                 this.storageManager.storeSecretKeyForUUID(this.otherDawgId.getUUID(),
                                 this.conversationKey);
 
-                // get a reference to the MeshDaemon's internal Bark queue.
-                this.meshDaemonInternalBarkQueue = Whitebox.getInternalState(this.meshDaemon, "queue");
+                // swap in an internal Bark queue which MeshOutput isn't draining, so the
+                // tests can check what the MeshDaemon sends.
+                this.meshDaemonInternalBarkQueue = new OutboundQueue();
+                Whitebox.setInternalState(this.meshDaemon, "queue", this.meshDaemonInternalBarkQueue);
+        }
+
+        @AfterEach
+        public void teardown() {
+                this.meshDaemon.shutdown();
         }
 
         @Test
@@ -76,7 +86,7 @@ public class MeshDaemonTest {
 
                 // check that the Bark queue was fed a Bark object containing the message.
                 final Bark sentBark = this.meshDaemonInternalBarkQueue.remove();
-                final String decryptedMessage = sentBark.getContents(List.of(this.conversationKey), Crypto.ALICE_KEYPAIR.getPublic());
+                final String decryptedMessage = sentBark.getContents(List.of(this.conversationKey), TestUtils.ALICE_KEYPAIR.getPublic());
                 assertEquals(messageContents, decryptedMessage);
 
                 // verify that the StorageManager stored the data for a Bark.
@@ -101,4 +111,59 @@ public class MeshDaemonTest {
                 assertEquals(messageContents, message.getPlaintextMessage());
                 assertEquals(seqId, message.getOrderNum());
         }
+
+        @Test
+        public void testSendMessage_queueFull_returnsNullAndStoresNothing() {
+                // give the MeshDaemon a queue with room for one Bark.
+                final OutboundQueue.OutboundQueueConfig config = new OutboundQueue.OutboundQueueConfig();
+                config.capacity = 1;
+                config.ownOverflowPolicy = OutboundQueue.OverflowPolicy.REJECT;
+                final OutboundQueue fullQueue = new OutboundQueue(config);
+                fullQueue.offer(TestUtils.generateRandomizedBark(), OutboundQueue.TrafficClass.OWN);
+                Whitebox.setInternalState(this.meshDaemon, "queue", fullQueue);
+
+                // the first message to a new contact doesn't leave a Conversation behind.
+                assertNull(this.meshDaemon.sendMessage(RandomStringUtils.randomAlphanumeric(15), this.otherDawgId, 0L));
+                assertNull(this.storageManager.lookupConversation(this.otherDawgId.getUUID()));
+
+                // a later message doesn't change the existing Conversation.
+                fullQueue.clear();
+                final UUID sentBarkId = this.meshDaemon.sendMessage(RandomStringUtils.randomAlphanumeric(15),
+                                this.otherDawgId, 0L);
+                assertNotNull(sentBarkId);
+                final List<UUID> messageIds = this.storageManager.lookupConversation(this.otherDawgId.getUUID())
+                                .getMessageUUIDList();
+                assertNull(this.meshDaemon.sendMessage(RandomStringUtils.randomAlphanumeric(15), this.otherDawgId, 1L));
+                assertEquals(messageIds, this.storageManager.lookupConversation(this.otherDawgId.getUUID())
+                                .getMessageUUIDList());
+                assertEquals(1, fullQueue.size());
+                assertEquals(sentBarkId, fullQueue.peek().getUniqueId());
+        }
+
+        @Test
+        public void testSendMessage_onlyTagsBarksForRoutingWithRoutingOn() {
+                // routing is off by default, so the Bark doesn't carry a route tag.
+                assertNull(this.meshDaemon.getRoutingTable());
+                this.meshDaemon.sendMessage(RandomStringUtils.randomAlphanumeric(15), this.otherDawgId, 0L);
+                assertNull(this.meshDaemonInternalBarkQueue.remove().getRouteTag());
+
+                final MeshDaemon routingDaemon = new MeshDaemon(this.ioManager, this.storageManager, this.userDawgId,
+                                null, true);
+                final BlockingQueue<Bark> routingQueue = new OutboundQueue();
+                Whitebox.setInternalState(routingDaemon, "queue", routingQueue);
+                assertNotNull(routingDaemon.getRoutingTable());
+                routingDaemon.sendMessage(RandomStringUtils.randomAlphanumeric(15), this.otherDawgId, 1L);
+                assertNotNull(routingQueue.remove().getRouteTag());
+                routingDaemon.shutdown();
+        }
+
+        @Test
+        public void testShutdown_stopsTheDaemonThreads() throws InterruptedException {
+                this.meshDaemon.shutdown();
+                for (final String threadName : List.of("inputThread", "outputThread")) {
+                        final Thread thread = Whitebox.getInternalState(this.meshDaemon, threadName);
+                        thread.join(10000);
+                        assertFalse(thread.isAlive());
+                }
+        }
 }
@@ -1,6 +1,7 @@
 package backend.meshdaemon;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.security.PrivateKey;
@@ -9,7 +10,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -17,12 +21,14 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import backend.iomanager.IOManagerException;
 import backend.iomanager.QueueIOManager;
-import crypto.Crypto;
 import storagemanager.MapStorageManager;
 import storagemanager.StorageManager;
 import types.Bark;
+import types.DawgIdentifier;
 import types.TestUtils;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
 import types.packet.Packet;
 
@@ -34,6 +40,13 @@ import types.packet.Packet;
  * - Sending a bark that has been seen (via altering seenBarks).
  * - Sending a bark twice.
  * - Sending many barks, mixed seen and not seen, mixed repeated.
+ * - Opening many barks for us in parallel.
+ * - Relaying barks with a hop count + expiry.
+ * - Processing packets from several neighbors on a pipeline of workers.
+ * - Dropping packets from a neighbor caught spamming.
+ * - Dropping a neighbor's resent packets + backlog as duplicates, without a ban.
+ * - Acking barks for us + dropping barks which were acked.
+ * - Learning routes from the acks we hear.
  */
 public class MeshInputTest {
     // Max should be strictly larger than min.
@@ -46,6 +59,8 @@ public class MeshInputTest {
     private BlockingQueue<Bark> meshQueue;
     private Set<Bark> seenBarks;
     private MeshInput meshInput;
+    private PrivateKey privateKey;
+    private StorageManager storage;
 
     /**
      * Sets up a single meshInput object with all the appropriate internals.
@@ -60,10 +75,10 @@ public class MeshInputTest {
 
         this.meshQueue = new LinkedBlockingQueue<>();
         this.seenBarks = new HashSet<>();
-        PrivateKey privateKey = Crypto.BOB_KEYPAIR.getPrivate();
-        StorageManager storage = new MapStorageManager();
+        this.privateKey = TestUtils.BOB_KEYPAIR.getPrivate();
+        this.storage = new MapStorageManager();
 
-        this.meshInput = new MeshInput(ioManager, meshQueue, storage, privateKey, seenBarks);
+        this.meshInput = new MeshInput(ioManager, meshQueue, storage, privateKey, new SetSeenBarks(seenBarks));
     }
 
     /**
@@ -168,4 +183,315 @@ public class MeshInputTest {
         // Make sure that we got the expected size (and ignored the marked packets)
         assertEquals(num_packets - num_packets / 2, outputs.size());
     }
+
+    @Test
+    public void test_multiBark_forUs_parallelOpenStoresMessagesInOrder() {
+        // have Alice send us a single packet containing many barks.
+        final DawgIdentifier alice = TestUtils.generateRandomizedDawgIdentifier();
+        this.storage.storeDawgIdentifier(alice);
+        this.storage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        this.storage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+
+        final int numBarks = ThreadLocalRandom.current().nextInt(MIN_MULTIPACKET_COUNT, MAX_MULTIPACKET_COUNT + 1);
+        final List<Bark> barks = new ArrayList<>();
+        for (long i = 0; i < numBarks; i++) {
+            barks.add(new Bark(RandomStringUtils.randomAlphanumeric(15), alice, i,
+                    TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                    TestUtils.DUMMY_SECRETKEY));
+        }
+        this.inputQueue.add(new BarkPacket(barks));
+
+        // open the barks on a pool.
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+            config.cryptoExecutor = executor;
+            new MeshInput(ioManager, meshQueue, storage, privateKey, new SetSeenBarks(seenBarks), config).handleInput();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // nothing should have been forwarded, and every message should be in the
+        // conversation in the order the barks were sent.
+        assertEquals(null, meshQueue.poll());
+        final List<UUID> messageIds = this.storage.lookupConversation(alice.getUUID()).getMessageUUIDList();
+        assertEquals(numBarks, messageIds.size());
+        for (int i = 0; i < numBarks; i++) {
+            assertEquals(Long.valueOf(i), this.storage.lookupMessage(messageIds.get(i)).getOrderNum());
+        }
+    }
+
+    @Test
+    public void test_relay_decrementsHopsAndDropsExhaustedOrExpired() {
+        final Bark fresh = new Bark(RandomStringUtils.randomAlphanumeric(15),
+                TestUtils.generateRandomizedDawgIdentifier(), 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.ALICE_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY, 3, Bark.DEFAULT_TTL_MILLIS);
+        final Bark exhausted = fresh.withHopsRemaining(0);
+        final Bark expired = new Bark(RandomStringUtils.randomAlphanumeric(15),
+                TestUtils.generateRandomizedDawgIdentifier(), 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.ALICE_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY, 3, -60 * 60 * 1000);
+
+        // only the fresh bark should be relayed, with one fewer hop.
+        this.inputQueue.add(new BarkPacket(List.of(expired, fresh)));
+        this.meshInput.handleInput();
+        final Bark relayed = meshQueue.poll();
+        assertEquals(fresh, relayed);
+        assertEquals(2, relayed.getHopsRemaining());
+        assertEquals(null, meshQueue.poll());
+
+        // a bark with no hops left isn't relayed.
+        this.seenBarks.clear();
+        this.inputQueue.add(new BarkPacket(List.of(exhausted)));
+        this.meshInput.handleInput();
+        assertEquals(null, meshQueue.poll());
+
+        // with the limits turned off, both are relayed as-is.
+        final MeshInput.RelayLimitConfig noLimits = new MeshInput.RelayLimitConfig();
+        noLimits.enforceHopLimit = false;
+        noLimits.enforceExpiry = false;
+        this.seenBarks.clear();
+        this.inputQueue.add(new BarkPacket(List.of(exhausted, expired)));
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.relayLimits = noLimits;
+        new MeshInput(ioManager, meshQueue, storage, privateKey, new SetSeenBarks(seenBarks), config).handleInput();
+        assertEquals(exhausted, meshQueue.poll());
+        assertEquals(expired, meshQueue.poll());
+    }
+
+    @Test
+    public void test_pipeline_processesEachNeighborsPacketsInOrder() throws InterruptedException {
+        // Alice sends us messages through one neighbor, while another neighbor sends barks to relay.
+        final DawgIdentifier alice = TestUtils.generateRandomizedDawgIdentifier();
+        this.storage.storeDawgIdentifier(alice);
+        this.storage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        this.storage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+
+        final BlockingQueue<Packet> relayInputQueue = new LinkedBlockingQueue<>();
+        this.ioManager.connect("Relay-" + RandomStringUtils.randomAlphanumeric(15), relayInputQueue,
+                new LinkedBlockingQueue<>());
+
+        final List<Bark> relayBarks = new ArrayList<>();
+        for (long i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            this.inputQueue.add(new BarkPacket(List.of(new Bark(RandomStringUtils.randomAlphanumeric(15), alice, i,
+                    TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                    TestUtils.DUMMY_SECRETKEY))));
+            final Bark relayBark = TestUtils.generateRandomizedBark();
+            relayBarks.add(relayBark);
+            relayInputQueue.add(new BarkPacket(List.of(relayBark)));
+        }
+
+        final MeshInput.PipelineConfig pipeline = new MeshInput.PipelineConfig();
+        pipeline.numWorkers = 2;
+        pipeline.queueCapacityPerWorker = 2;
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.pipeline = pipeline;
+        final MeshInput pipelinedInput = new MeshInput(ioManager, meshQueue, storage, privateKey,
+                new SetSeenBarks(seenBarks), config);
+        final Thread inputThread = new Thread(pipelinedInput);
+        inputThread.start();
+        try {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (System.currentTimeMillis() < deadline
+                    && pipelinedInput.getMetrics().getPacketsProcessed() < 2 * MIN_MULTIPACKET_COUNT) {
+                Thread.sleep(10);
+            }
+        } finally {
+            inputThread.interrupt();
+            inputThread.join(10000);
+        }
+        assertFalse(inputThread.isAlive());
+
+        // every message is in the conversation in the order it was sent, and every other bark
+        // was relayed in the order it was sent.
+        final List<UUID> messageIds = this.storage.lookupConversation(alice.getUUID()).getMessageUUIDList();
+        assertEquals(MIN_MULTIPACKET_COUNT, messageIds.size());
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            assertEquals(Long.valueOf(i), this.storage.lookupMessage(messageIds.get(i)).getOrderNum());
+        }
+        for (final Bark relayBark : relayBarks) {
+            assertEquals(relayBark, this.meshQueue.poll());
+        }
+
+        final MeshInput.Metrics metrics = pipelinedInput.getMetrics();
+        assertEquals(2 * MIN_MULTIPACKET_COUNT, metrics.getPacketsReceived());
+        assertEquals(MIN_MULTIPACKET_COUNT, metrics.getBarksStored());
+        assertEquals(MIN_MULTIPACKET_COUNT, metrics.getBarksRelayed());
+        assertEquals(0, pipelinedInput.getQueuedPacketCount());
+    }
+
+    @Test
+    public void test_antiSpam_dropsPacketsFromBannedNeighbor() {
+        final BlockingQueue<Packet> otherInputQueue = new LinkedBlockingQueue<>();
+        this.ioManager.connect("Other-" + RandomStringUtils.randomAlphanumeric(15), otherInputQueue,
+                new LinkedBlockingQueue<>());
+        final SetSeenBarks sharedSeenBarks = new SetSeenBarks(seenBarks);
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.antiSpam = new MeshAntiSpam(sharedSeenBarks);
+        final MeshInput spamCheckedInput = new MeshInput(ioManager, meshQueue, storage, privateKey, sharedSeenBarks,
+                config);
+
+        // a neighbor may resend a packet a few times, but resending it more often is a violation.
+        final BarkPacket barkPacket = TestUtils.generateRandomizedBarkPacket();
+        this.inputQueue.add(barkPacket);
+        spamCheckedInput.handleInput();
+        assertEquals(barkPacket.packetBarks.get(0), meshQueue.poll());
+        final int maxRepeats = new MeshAntiSpam.MeshAntiSpamConfig().maxRepeats;
+        for (int i = 0; i <= maxRepeats; i++) {
+            this.inputQueue.add(barkPacket);
+            spamCheckedInput.handleInput();
+            assertEquals(null, meshQueue.poll());
+        }
+
+        // so new barks from that neighbor are dropped too, while other neighbors are unaffected.
+        this.inputQueue.add(TestUtils.generateRandomizedBarkPacket());
+        spamCheckedInput.handleInput();
+        assertEquals(null, meshQueue.poll());
+        final BarkPacket otherPacket = TestUtils.generateRandomizedBarkPacket();
+        otherInputQueue.add(otherPacket);
+        spamCheckedInput.handleInput();
+        assertEquals(otherPacket.packetBarks.get(0), meshQueue.poll());
+
+        assertEquals(2, spamCheckedInput.getMetrics().getPacketsSpam());
+        assertEquals(maxRepeats, spamCheckedInput.getMetrics().getBarksDuplicate());
+        assertEquals(2, spamCheckedInput.getMetrics().getBarksRelayed());
+    }
+
+    /**
+     * Tests that the backlog a neighbor sends after a digest exchange (see:
+     * MeshOutput.missingBacklog) is dropped as duplicates, without banning the
+     * neighbor, even when it repeats Barks the neighbor already sent us.
+     */
+    @Test
+    public void test_antiSpam_backlogResendIsNotSpam() {
+        final SetSeenBarks sharedSeenBarks = new SetSeenBarks(seenBarks);
+        final ForwardingStats forwardingStats = new ForwardingStats();
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.antiSpam = new MeshAntiSpam(sharedSeenBarks);
+        config.forwardingStats = forwardingStats;
+        final MeshInput spamCheckedInput = new MeshInput(ioManager, meshQueue, storage, privateKey, sharedSeenBarks,
+                config);
+
+        final Bark sentBark = TestUtils.generateRandomizedBark();
+        this.inputQueue.add(new BarkPacket(List.of(sentBark)));
+        spamCheckedInput.handleInput();
+        assertEquals(sentBark, meshQueue.poll());
+
+        // the send is retried after an error, even though the packet arrived.
+        this.inputQueue.add(new BarkPacket(List.of(sentBark)));
+        spamCheckedInput.handleInput();
+        assertEquals(null, meshQueue.poll());
+
+        // then the backlog repeats the Bark alongside one we're missing.
+        final Bark missingBark = TestUtils.generateRandomizedBark();
+        this.inputQueue.add(new BarkPacket(List.of(sentBark, missingBark)));
+        spamCheckedInput.handleInput();
+        assertEquals(missingBark, meshQueue.poll());
+        assertEquals(null, meshQueue.poll());
+
+        assertEquals(0, spamCheckedInput.getMetrics().getPacketsSpam());
+        assertEquals(0, spamCheckedInput.getMetrics().getBarksSpam());
+        assertEquals(2, spamCheckedInput.getMetrics().getBarksDuplicate());
+        // the repeats came from the same neighbor, so the Bark hasn't spread any further.
+        assertEquals(1, forwardingStats.getCopiesHeard(sentBark.getUniqueId()));
+
+        // and the neighbor's new Barks are still accepted.
+        final BarkPacket newPacket = TestUtils.generateRandomizedBarkPacket();
+        this.inputQueue.add(newPacket);
+        spamCheckedInput.handleInput();
+        assertEquals(newPacket.packetBarks.get(0), meshQueue.poll());
+    }
+
+    /**
+     * Tests that barks for us are acked, and that barks acked by others are no longer relayed.
+     */
+    @Test
+    public void test_acks_acksBarksForUsAndDropsAckedBarks() {
+        final DeliveryAcks acks = new DeliveryAcks();
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.acks = acks;
+        final MeshInput ackingInput = new MeshInput(ioManager, meshQueue, storage, privateKey,
+                new SetSeenBarks(seenBarks), config);
+
+        // a bark from alice to us is stored + acked.
+        final DawgIdentifier alice = TestUtils.generateRandomizedDawgIdentifier();
+        this.storage.storeDawgIdentifier(alice);
+        this.storage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        this.storage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+        final Bark barkForUs = new Bark(RandomStringUtils.randomAlphanumeric(15), alice, 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        this.inputQueue.add(new BarkPacket(List.of(barkForUs)));
+        ackingInput.handleInput();
+        final List<AckPacket> ourAcks = acks.drainAcksToSend();
+        assertEquals(1, ourAcks.size());
+        assertEquals(barkForUs.getUniqueId(), ourAcks.get(0).getBarkId());
+        assertTrue(ourAcks.get(0).acks(barkForUs));
+
+        // an ack heard from a neighbor stops us relaying the acked bark, but a forged ack doesn't.
+        final Bark ackedBark = TestUtils.generateRandomizedBark();
+        final Bark forgedAckBark = TestUtils.generateRandomizedBark();
+        // neither can be checked before we hold its bark, so neither is sent on yet.
+        this.inputQueue.add(new AckPacket(ackedBark.getUniqueId(), TestUtils.generateAckPacket(ackedBark)
+                .getAckSecret(), AckPacket.MAX_HOP_LIMIT));
+        this.inputQueue.add(new AckPacket(forgedAckBark.getUniqueId(), new byte[Bark.ACK_SECRET_SIZE], 1));
+        assertTrue(ackingInput.handleInput());
+        assertTrue(ackingInput.handleInput());
+        assertEquals(List.of(), acks.drainAcksToSend());
+        this.inputQueue.add(new BarkPacket(List.of(ackedBark, forgedAckBark)));
+        ackingInput.handleInput();
+        assertEquals(forgedAckBark, meshQueue.poll());
+        assertEquals(null, meshQueue.poll());
+        assertTrue(seenBarks.contains(ackedBark));
+
+        // only the valid ack is sent on, with its hops capped at our hop limit + one fewer hop.
+        final List<AckPacket> sentOnAcks = acks.drainAcksToSend();
+        assertEquals(1, sentOnAcks.size());
+        assertTrue(sentOnAcks.get(0).acks(ackedBark));
+        assertEquals(AckPacket.DEFAULT_HOP_LIMIT - 1, sentOnAcks.get(0).getHopsRemaining());
+        assertEquals(2, ackingInput.getMetrics().getAcksReceived());
+        assertEquals(1, ackingInput.getMetrics().getBarksAcked());
+    }
+
+    /**
+     * Tests that a valid ack for a bark we carried teaches us a route via its sender.
+     */
+    @Test
+    public void test_routing_learnsRouteFromAck() throws IOManagerException {
+        final DeliveryAcks acks = new DeliveryAcks();
+        final RoutingTable routingTable = new RoutingTable();
+        final MeshInput.MeshInputConfig config = new MeshInput.MeshInputConfig();
+        config.acks = acks;
+        config.routingTable = routingTable;
+        final MeshInput routingInput = new MeshInput(ioManager, meshQueue, storage, privateKey,
+                new SetSeenBarks(seenBarks), config);
+        final String neighborId = this.ioManager.availableConnections().iterator().next();
+
+        // an ack for a bark we never carried can't be checked, so it teaches us nothing.
+        final Bark untrackedBark = TestUtils.generateRandomizedBark();
+        this.inputQueue.add(TestUtils.generateAckPacket(untrackedBark));
+        assertTrue(routingInput.handleInput());
+        assertEquals(null, routingTable.nextHop(untrackedBark));
+
+        final Bark carriedBark = TestUtils.generateRandomizedBark()
+                .withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), System.currentTimeMillis());
+        acks.trackBark(carriedBark);
+        this.inputQueue.add(TestUtils.generateAckPacket(carriedBark));
+        assertTrue(routingInput.handleInput());
+        assertEquals(neighborId, routingTable.nextHop(carriedBark));
+        assertEquals(1, routingInput.getMetrics().getRoutesLearned());
+    }
+
+    /**
+     * Tests that handleInput() reports the IOManager giving up instead of throwing, so run() exits cleanly.
+     */
+    @Test
+    public void test_handleInput_interrupted_returnsFalse() {
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(this.meshInput.handleInput());
+        } finally {
+            // clear the interrupt so it doesn't leak into other tests.
+            Thread.interrupted();
+        }
+        assertEquals(0, this.meshInput.getMetrics().getPacketsReceived());
+    }
 }
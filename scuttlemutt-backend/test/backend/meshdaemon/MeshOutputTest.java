@@ -4,22 +4,33 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.powermock.reflect.Whitebox;
 
+import backend.iomanager.IOManagerException;
 import backend.iomanager.QueueIOManager;
 import types.Bark;
 import types.TestUtils;
+import types.UuidBloomFilter;
+import types.packet.AckPacket;
 import types.packet.BarkPacket;
+import types.packet.DigestPacket;
 import types.packet.Packet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -29,11 +40,22 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  * Tests for:
  * - Sending single a bark
  * - Sending multiple barks, in order
+ * - Batching multiple barks into a packet, bounded by count and by size
+ * - Sending with a single neighbor, then catching up a new neighbor
+ * - Pacing the packets sent to each neighbor
+ * - Stopping when interrupted or when the executors are shut down
+ * - Sending concurrently while one neighbor is stuck
+ * - Exchanging digests with new neighbors + sending them only the barks they're missing
+ * - Suppressing relayed barks according to a forwarding policy
+ * - Flooding acks + purging the barks they ack
+ * - Sending barks to their learned next hop, and flooding them without one
+ * - Flooding routed barks which aren't acked in time
  */
 public class MeshOutputTest {
     // Max should be strictly larger than min.
     private final int MIN_MULTIPACKET_COUNT = 10;
     private final int MAX_MULTIPACKET_COUNT = 20;
+    private static final long TIMEOUT_MILLIS = 10000;
 
     private QueueIOManager ioManager;
     private Set<BlockingQueue<Packet>> outputQueues;
@@ -60,7 +82,7 @@ public class MeshOutputTest {
         this.meshQueue = new LinkedBlockingQueue<>();
         this.seenBarks = new HashSet<>();
 
-        this.meshOutput = new MeshOutput(ioManager, meshQueue, seenBarks);
+        this.meshOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks));
     }
 
     /**
@@ -129,4 +151,560 @@ public class MeshOutputTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that queued barks are coalesced into packets of at most maxBarksPerPacket barks,
+     * in order.
+     */
+    @Test
+    public void test_batching_maxBarksPerPacket() {
+        final int maxBarks = 4;
+        final int numBarks = 2 * maxBarks + 1;
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < numBarks; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+        this.meshQueue.addAll(barks);
+
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.maxBarksPerPacket = maxBarks;
+        final MeshOutput batchingOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        for (int i = 0; i < 3; i++) {
+            batchingOutput.handleOutput();
+        }
+
+        // each connection should get two full packets and one packet with the leftover bark.
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            assertEquals(new BarkPacket(barks.subList(0, maxBarks)), outputQueue.poll());
+            assertEquals(new BarkPacket(barks.subList(maxBarks, 2 * maxBarks)), outputQueue.poll());
+            assertEquals(new BarkPacket(barks.subList(2 * maxBarks, numBarks)), outputQueue.poll());
+            assertEquals(null, outputQueue.poll());
+        }
+        assertTrue(this.seenBarks.containsAll(barks));
+    }
+
+    /**
+     * Tests that a bark which would push a packet over maxPacketBytes is sent in the next packet.
+     */
+    @Test
+    public void test_batching_maxPacketBytes() {
+        final Bark first = TestUtils.generateRandomizedBark();
+        final Bark second = TestUtils.generateRandomizedBark();
+        final Bark third = TestUtils.generateRandomizedBark();
+        this.meshQueue.addAll(List.of(first, second, third));
+
+        // only the first two barks fit in a packet.
+        final int maxBytes = first.getBinarySize() + second.getBinarySize();
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.maxBarksPerPacket = Integer.MAX_VALUE;
+        config.maxPacketBytes = maxBytes;
+        final MeshOutput batchingOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        batchingOutput.handleOutput();
+        batchingOutput.handleOutput();
+
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            assertEquals(new BarkPacket(List.of(first, second)), outputQueue.poll());
+            assertEquals(new BarkPacket(List.of(third)), outputQueue.poll());
+        }
+    }
+
+    /**
+     * Tests that a bark waiting on a second neighbor doesn't hold up the barks behind it,
+     * and that a neighbor which connects later is sent every bark still pending.
+     */
+    @Test
+    public void test_singleNeighbor_doesNotBlockQueue() {
+        final QueueIOManager sparseIOManager = new QueueIOManager();
+        final BlockingQueue<Packet> firstOutput = new LinkedBlockingQueue<>();
+        sparseIOManager.connect("First-" + RandomStringUtils.randomAlphanumeric(15),
+                new LinkedBlockingQueue<>(), firstOutput);
+
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+        this.meshQueue.addAll(barks);
+        final MeshOutput sparseOutput = new MeshOutput(sparseIOManager, meshQueue, new SetSeenBarks(seenBarks));
+
+        // the only neighbor should get every bark, even though none of them can be dropped yet.
+        for (int i = 0; i < barks.size(); i++) {
+            sparseOutput.handleOutput();
+        }
+        for (Bark bark : barks) {
+            assertEquals(new BarkPacket(List.of(bark)), firstOutput.poll());
+        }
+
+        // a second neighbor connects + catches up on every pending bark, in order.
+        final BlockingQueue<Packet> secondOutput = new LinkedBlockingQueue<>();
+        sparseIOManager.connect("Second-" + RandomStringUtils.randomAlphanumeric(15),
+                new LinkedBlockingQueue<>(), secondOutput);
+        for (int i = 0; i < barks.size(); i++) {
+            sparseOutput.handleOutput();
+        }
+        for (Bark bark : barks) {
+            assertEquals(new BarkPacket(List.of(bark)), secondOutput.poll());
+        }
+        assertEquals(null, firstOutput.poll());
+    }
+
+    /**
+     * Tests that in concurrent mode, a neighbor whose send never completes doesn't
+     * hold up the other neighbors.
+     */
+    @Test
+    public void test_concurrentSends_stuckNeighborDoesNotBlockOthers() throws InterruptedException {
+        final String stuckLabel = "Stuck-" + RandomStringUtils.randomAlphanumeric(15);
+        final CountDownLatch unstick = new CountDownLatch(1);
+        final QueueIOManager stuckIOManager = new QueueIOManager() {
+            @Override
+            public void send(final String receiverId, final Packet packet) throws IOManagerException {
+                if (receiverId.equals(stuckLabel)) {
+                    try {
+                        unstick.await();
+                    } catch (InterruptedException e) {
+                        throw new IOManagerException("Interrupted");
+                    }
+                }
+                super.send(receiverId, packet);
+            }
+        };
+        stuckIOManager.connect(stuckLabel, new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            stuckIOManager.connect("Connection-" + RandomStringUtils.randomAlphanumeric(15),
+                    new LinkedBlockingQueue<>(), outputQueue);
+        }
+
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+        this.meshQueue.addAll(barks);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(this.outputQueues.size() + 1);
+        try {
+            final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+            config.sendExecutor = executor;
+            final MeshOutput concurrentOutput = new MeshOutput(stuckIOManager, meshQueue, new SetSeenBarks(seenBarks),
+                    config);
+
+            // keep running rounds until the other neighbors have every bark (or we time out).
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (System.currentTimeMillis() < deadline
+                    && this.outputQueues.stream().anyMatch(q -> q.size() < barks.size())) {
+                concurrentOutput.handleOutput();
+            }
+
+            for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+                for (Bark bark : barks) {
+                    assertEquals(new BarkPacket(List.of(bark)), outputQueue.poll());
+                }
+            }
+        } finally {
+            unstick.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a neighbor which connects is sent our digest, and is then only sent the
+     * barks missing from its digest, including barks which are no longer pending.
+     */
+    @Test
+    public void test_digestExchange_sendsOnlyMissingBarks() {
+        final QueueIOManager digestIOManager = new QueueIOManager();
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+        this.meshQueue.addAll(barks);
+
+        final ExecutorService digestExecutor = Executors.newCachedThreadPool();
+        try {
+            final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+            config.digestExecutor = digestExecutor;
+            final MeshOutput digestOutput = new MeshOutput(digestIOManager, meshQueue, new SetSeenBarks(seenBarks),
+                    config);
+
+            // the first neighbor holds nothing, so it gets every bark.
+            final BlockingQueue<Packet> firstOutput = new LinkedBlockingQueue<>();
+            digestIOManager.connect("First-" + RandomStringUtils.randomAlphanumeric(15),
+                    digestQueue(List.of()), firstOutput);
+            final List<Bark> firstBarks = runUntilSent(digestOutput, firstOutput, barks.size());
+            assertEquals(barks, firstBarks);
+
+            // the second neighbor already holds the first half of the barks.
+            final List<Bark> secondHeld = barks.subList(0, barks.size() / 2);
+            final List<Bark> secondMissing = barks.subList(barks.size() / 2, barks.size());
+            final BlockingQueue<Packet> secondOutput = new LinkedBlockingQueue<>();
+            digestIOManager.connect("Second-" + RandomStringUtils.randomAlphanumeric(15),
+                    digestQueue(secondHeld), secondOutput);
+            assertEquals(secondMissing, runUntilSent(digestOutput, secondOutput, secondMissing.size()));
+
+            // every bark has now reached both neighbors, so none are pending.  a third neighbor
+            // holding nothing still gets every bark we remember.
+            final BlockingQueue<Packet> thirdOutput = new LinkedBlockingQueue<>();
+            digestIOManager.connect("Third-" + RandomStringUtils.randomAlphanumeric(15),
+                    digestQueue(List.of()), thirdOutput);
+            assertEquals(barks, runUntilSent(digestOutput, thirdOutput, barks.size()));
+
+            // each neighbor was sent our digest, and nothing was sent twice.
+            for (BlockingQueue<Packet> output : List.of(firstOutput, secondOutput, thirdOutput)) {
+                assertEquals(1, output.stream().filter(packet -> packet instanceof DigestPacket).count());
+                assertFalse(output.stream().anyMatch(packet -> packet instanceof BarkPacket));
+            }
+        } finally {
+            digestExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that a digest which arrives after we stopped waiting for it is discarded, so it
+     * isn't read in place of the digest the neighbor sends when it reconnects.
+     */
+    @Test
+    public void test_digestExchange_lateDigestNotReadOnReconnect() {
+        final String neighborLabel = "Late-" + RandomStringUtils.randomAlphanumeric(15);
+        final AtomicBoolean neighborGone = new AtomicBoolean(false);
+        // hides the neighbor instead of disconnecting it, so its input queue outlives the connection.
+        final QueueIOManager digestIOManager = new QueueIOManager() {
+            @Override
+            public Set<String> availableConnections() throws IOManagerException {
+                final Set<String> connections = super.availableConnections();
+                if (neighborGone.get()) {
+                    connections.remove(neighborLabel);
+                }
+                return connections;
+            }
+        };
+        final BlockingQueue<Packet> neighborInput = new LinkedBlockingQueue<>();
+        final BlockingQueue<Packet> neighborOutput = new LinkedBlockingQueue<>();
+        digestIOManager.connect(neighborLabel, neighborInput, neighborOutput);
+        // another neighbor stays connected, so the MeshOutput doesn't wait for connections.
+        digestIOManager.connect("Other-" + RandomStringUtils.randomAlphanumeric(15), digestQueue(List.of()),
+                new LinkedBlockingQueue<>());
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            barks.add(TestUtils.generateRandomizedBark());
+        }
+        this.meshQueue.addAll(barks);
+
+        final ExecutorService digestExecutor = Executors.newCachedThreadPool();
+        try {
+            final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+            config.digestExecutor = digestExecutor;
+            final MeshOutput digestOutput = new MeshOutput(digestIOManager, meshQueue, new SetSeenBarks(seenBarks),
+                    config);
+
+            // the neighbor's digest doesn't arrive in time, so it's sent every bark.
+            digestOutput.handleOutput();
+            final Map<String, Object> exchanges = Whitebox.getInternalState(digestOutput, "digestExchanges");
+            for (Object exchange : exchanges.values()) {
+                Whitebox.setInternalState(exchange, "deadlineNanos", System.nanoTime());
+            }
+            assertEquals(barks, runUntilSent(digestOutput, neighborOutput, barks.size()));
+
+            // its digest, holding every bark, arrives late.  then it disconnects, and a new bark is queued.
+            neighborInput.addAll(digestQueue(barks));
+            neighborGone.set(true);
+            final Bark newBark = TestUtils.generateRandomizedBark();
+            this.meshQueue.add(newBark);
+            digestOutput.handleOutput();
+
+            // it reconnects holding nothing, so it's sent every bark again.
+            neighborInput.addAll(digestQueue(List.of()));
+            neighborGone.set(false);
+            final List<Bark> resent = runUntilSent(digestOutput, neighborOutput, barks.size() + 1);
+            assertEquals(barks.size() + 1, resent.size());
+            assertTrue(resent.containsAll(barks) && resent.contains(newBark));
+        } finally {
+            digestExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the forwarding policy drops relayed barks which have already spread around
+     * us, never drops our own barks, and decides how many neighbors get each packet.
+     */
+    @Test
+    public void test_forwardingPolicy_suppressesWidelyHeardBarks() {
+        final ForwardingStats stats = new ForwardingStats();
+        final Bark widelyHeardBark = TestUtils.generateRandomizedBark();
+        for (int i = 0; i < 3; i++) {
+            stats.recordHeard("Neighbor" + i, widelyHeardBark.getUniqueId());
+        }
+        final Bark heardOnceBark = TestUtils.generateRandomizedBark();
+        stats.recordHeard("Neighbor0", heardOnceBark.getUniqueId());
+        final Bark ownBark = TestUtils.generateRandomizedBark();
+        this.meshQueue.addAll(List.of(widelyHeardBark, heardOnceBark, ownBark));
+
+        // suppress after 2 duplicates, and send each packet to a single neighbor.
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.forwardingPolicy = new CounterForwardingPolicy(2, 1);
+        config.forwardingStats = stats;
+        final MeshOutput adaptiveOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        // the suppressed bark is skipped, so two rounds send the other two.
+        adaptiveOutput.handleOutput();
+        adaptiveOutput.handleOutput();
+
+        final List<Bark> sent = new ArrayList<>();
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            for (Packet packet : outputQueue) {
+                sent.addAll(((BarkPacket) packet).getPacketBarks());
+            }
+        }
+        assertEquals(2, sent.size());
+        assertTrue(sent.containsAll(List.of(heardOnceBark, ownBark)));
+        assertEquals(1, adaptiveOutput.getSuppressedBarkCount());
+    }
+
+    /**
+     * Tests that acks are sent on to every neighbor, and the barks they ack are
+     * purged from the pending packets + queue.
+     */
+    @Test
+    public void test_acks_purgeAckedBarksAndFloodAcks() {
+        final DeliveryAcks acks = new DeliveryAcks();
+        // keep each packet pending until a third neighbor has it.
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.forwardingPolicy = new FixedForwardingPolicy(MeshOutput.NUM_REBROADCAST_BEFORE_DROP + 1);
+        config.acks = acks;
+        final MeshOutput ackingOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        final BlockingQueue<Packet> lateQueue = new LinkedBlockingQueue<>();
+        final Bark sentBark = TestUtils.generateRandomizedBark();
+        final Bark queuedBark = TestUtils.generateRandomizedBark();
+        final Bark unackedBark = TestUtils.generateRandomizedBark();
+        this.meshQueue.add(sentBark);
+        ackingOutput.handleOutput();
+
+        // acks for the pending bark + the queued bark arrive, then a neighbor connects.
+        this.meshQueue.addAll(List.of(queuedBark, unackedBark));
+        final AckPacket sentAck = TestUtils.generateAckPacket(sentBark);
+        acks.recordAck(sentAck);
+        acks.recordAck(TestUtils.generateAckPacket(queuedBark));
+        this.ioManager.connect("Late-" + RandomStringUtils.randomAlphanumeric(15), new LinkedBlockingQueue<>(),
+                lateQueue);
+        ackingOutput.handleOutput();
+
+        // the late neighbor gets the acks + the unacked bark, but neither acked bark.
+        final List<Bark> lateBarks = new ArrayList<>();
+        final List<AckPacket> lateAcks = new ArrayList<>();
+        for (Packet packet : lateQueue) {
+            if (packet instanceof AckPacket) {
+                lateAcks.add((AckPacket) packet);
+            } else {
+                lateBarks.addAll(((BarkPacket) packet).getPacketBarks());
+            }
+        }
+        assertEquals(List.of(unackedBark), lateBarks);
+        assertEquals(2, lateAcks.size());
+        assertTrue(lateAcks.contains(sentAck.decrementHops()));
+        assertEquals(0, this.meshQueue.size());
+        assertTrue(seenBarks.contains(queuedBark));
+        assertEquals(2, ackingOutput.getAckedBarkCount());
+    }
+
+    /**
+     * Tests that a bark with a known route is only sent to its next hop, a bark
+     * without one is flooded, and a routed bark is flooded once its next hop
+     * disconnects.
+     */
+    @Test
+    public void test_routing_sendsToNextHopAndFallsBackToFlooding() {
+        final String hopLabel = "Hop-" + RandomStringUtils.randomAlphanumeric(15);
+        final AtomicBoolean hopFails = new AtomicBoolean(false);
+        final QueueIOManager routingIOManager = new QueueIOManager() {
+            @Override
+            public void send(final String receiverId, final Packet packet) throws IOManagerException {
+                if (receiverId.equals(hopLabel) && hopFails.get()) {
+                    throw new IOManagerException("Failed to reach '" + hopLabel + "'");
+                }
+                super.send(receiverId, packet);
+            }
+        };
+        final BlockingQueue<Packet> hopOutput = new LinkedBlockingQueue<>();
+        final BlockingQueue<Packet> otherOutput = new LinkedBlockingQueue<>();
+        routingIOManager.connect(hopLabel, new LinkedBlockingQueue<>(), hopOutput);
+        routingIOManager.connect("Other-" + RandomStringUtils.randomAlphanumeric(15),
+                new LinkedBlockingQueue<>(), otherOutput);
+
+        // every randomized bark is sent to Alice; learn that the hop leads to her.
+        final RoutingTable routingTable = new RoutingTable();
+        final Bark routedBark = TestUtils.generateRandomizedBark()
+                .withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), System.currentTimeMillis());
+        routingTable.learnRoute(routedBark.getRouteTag(), hopLabel);
+        final Bark barkForBob = new Bark(RandomStringUtils.randomAlphanumeric(15),
+                TestUtils.generateRandomizedDawgIdentifier(), 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.routingTable = routingTable;
+        final MeshOutput routingOutput = new MeshOutput(routingIOManager, meshQueue, new SetSeenBarks(seenBarks),
+                config);
+
+        this.meshQueue.add(routedBark);
+        routingOutput.handleOutput();
+        assertEquals(new BarkPacket(List.of(routedBark)), hopOutput.poll());
+        assertEquals(null, otherOutput.poll());
+
+        // no route is known to Bob, so his bark is flooded.
+        this.meshQueue.add(barkForBob);
+        routingOutput.handleOutput();
+        assertEquals(new BarkPacket(List.of(barkForBob)), hopOutput.poll());
+        assertEquals(new BarkPacket(List.of(barkForBob)), otherOutput.poll());
+
+        // the hop can't be reached, then disconnects; its bark goes to everyone else.
+        final Bark strandedBark = TestUtils.generateRandomizedBark()
+                .withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), System.currentTimeMillis());
+        hopFails.set(true);
+        this.meshQueue.add(strandedBark);
+        routingOutput.handleOutput();
+        assertEquals(null, otherOutput.poll());
+        routingIOManager.disconnect(hopLabel);
+        routingOutput.handleOutput();
+        assertEquals(new BarkPacket(List.of(strandedBark)), otherOutput.poll());
+        assertEquals(2, routingOutput.getRoutedBarkCount());
+    }
+
+    /**
+     * Tests that run() returns once interrupted, with or without neighbors,
+     * and doesn't die on the send executor being shut down first.
+     */
+    @Test
+    public void test_run_stopsWhenShutDown() throws InterruptedException {
+        // no neighbors, so the MeshOutput is polling for connections.
+        final Thread idleThread = new Thread(new MeshOutput(new QueueIOManager(), meshQueue,
+                new SetSeenBarks(seenBarks)));
+        idleThread.start();
+        idleThread.interrupt();
+        idleThread.join(TIMEOUT_MILLIS);
+        assertFalse(idleThread.isAlive());
+
+        // neighbors + barks to send, with the executor shut down before the thread is interrupted.
+        final ExecutorService sendExecutor = Executors.newFixedThreadPool(2);
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.sendExecutor = sendExecutor;
+        final MeshOutput busyOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<>());
+        final Thread busyThread = new Thread(busyOutput);
+        busyThread.setUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+        for (int i = 0; i < MIN_MULTIPACKET_COUNT; i++) {
+            this.meshQueue.add(TestUtils.generateRandomizedBark());
+        }
+        busyThread.start();
+        sendExecutor.shutdownNow();
+        busyThread.interrupt();
+        busyThread.join(TIMEOUT_MILLIS);
+        assertFalse(busyThread.isAlive());
+        assertEquals(List.of(), uncaught);
+    }
+
+    /**
+     * Tests that a neighbor isn't sent a second packet until the pacing interval has passed.
+     */
+    @Test
+    public void test_pacing_holdsBackPacketsSentTooSoon() {
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.maxPacketsPerSecond = 2;
+        final MeshOutput pacedOutput = new MeshOutput(ioManager, meshQueue, new SetSeenBarks(seenBarks), config);
+        final Bark firstBark = TestUtils.generateRandomizedBark();
+        final Bark secondBark = TestUtils.generateRandomizedBark();
+        this.meshQueue.add(firstBark);
+        this.meshQueue.add(secondBark);
+
+        pacedOutput.handleOutput();
+        pacedOutput.handleOutput();
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            assertEquals(List.of(new BarkPacket(List.of(firstBark))), new ArrayList<>(outputQueue));
+        }
+
+        // the second packet goes out once the interval has passed.
+        this.outputQueues.forEach(BlockingQueue::clear);
+        for (BlockingQueue<Packet> outputQueue : this.outputQueues) {
+            assertEquals(List.of(secondBark), runUntilSent(pacedOutput, outputQueue, 1));
+        }
+    }
+
+    /**
+     * Tests that a routed bark which isn't acked in time is flooded to the
+     * neighbors which weren't sent it, and that an acked one isn't.
+     */
+    @Test
+    public void test_routing_floodsRoutedBarksWhichAreNotAcked() {
+        final String hopLabel = "Hop-" + RandomStringUtils.randomAlphanumeric(15);
+        final BlockingQueue<Packet> hopOutput = new LinkedBlockingQueue<>();
+        final BlockingQueue<Packet> otherOutput = new LinkedBlockingQueue<>();
+        final QueueIOManager routingIOManager = new QueueIOManager();
+        routingIOManager.connect(hopLabel, new LinkedBlockingQueue<>(), hopOutput);
+        routingIOManager.connect("Other-" + RandomStringUtils.randomAlphanumeric(15),
+                new LinkedBlockingQueue<>(), otherOutput);
+
+        // every randomized bark is sent to Alice; the hop is believed to lead to her.
+        final Bark ackedBark = TestUtils.generateRandomizedBark()
+                .withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), System.currentTimeMillis());
+        final Bark unackedBark = TestUtils.generateRandomizedBark()
+                .withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), System.currentTimeMillis());
+        final RoutingTable routingTable = new RoutingTable();
+        routingTable.learnRoute(ackedBark.getRouteTag(), hopLabel);
+        final DeliveryAcks acks = new DeliveryAcks();
+        final MeshOutput.MeshOutputConfig config = new MeshOutput.MeshOutputConfig();
+        config.acks = acks;
+        config.routingTable = routingTable;
+        config.routedAckTimeoutMillis = 0;
+        final MeshOutput routingOutput = new MeshOutput(routingIOManager, meshQueue, new SetSeenBarks(seenBarks),
+                config);
+
+        this.meshQueue.add(ackedBark);
+        routingOutput.handleOutput();
+        acks.recordAck(TestUtils.generateAckPacket(ackedBark));
+        this.meshQueue.add(unackedBark);
+        routingOutput.handleOutput();
+        routingOutput.handleOutput();
+
+        hopOutput.removeIf(packet -> packet instanceof AckPacket);
+        otherOutput.removeIf(packet -> packet instanceof AckPacket);
+        assertEquals(List.of(new BarkPacket(List.of(ackedBark)), new BarkPacket(List.of(unackedBark))),
+                new ArrayList<>(hopOutput));
+        assertEquals(List.of(new BarkPacket(List.of(unackedBark))), new ArrayList<>(otherOutput));
+    }
+
+    /**
+     * Returns an input queue holding a DigestPacket of the passed barks.
+     */
+    private static BlockingQueue<Packet> digestQueue(final List<Bark> heldBarks) {
+        final UuidBloomFilter digest = UuidBloomFilter.forCapacity(100, 1e-6, 0L);
+        for (Bark bark : heldBarks) {
+            digest.add(bark.getUniqueId());
+        }
+        final BlockingQueue<Packet> inputQueue = new LinkedBlockingQueue<>();
+        inputQueue.add(new DigestPacket(digest));
+        return inputQueue;
+    }
+
+    /**
+     * Runs the MeshOutput until the passed number of barks have been sent to the output
+     * queue (or we time out), then takes + returns them.  DigestPackets are left in the queue.
+     */
+    private static List<Bark> runUntilSent(final MeshOutput output, final BlockingQueue<Packet> outputQueue,
+                                           final int numBarks) {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline && countBarks(outputQueue) < numBarks) {
+            output.handleOutput();
+        }
+
+        final List<Bark> sent = new ArrayList<>();
+        outputQueue.removeIf(packet -> {
+            if (packet instanceof BarkPacket) {
+                sent.addAll(((BarkPacket) packet).getPacketBarks());
+                return true;
+            }
+            return false;
+        });
+        return sent;
+    }
+
+    private static int countBarks(final BlockingQueue<Packet> outputQueue) {
+        return outputQueue.stream()
+                .filter(packet -> packet instanceof BarkPacket)
+                .mapToInt(packet -> ((BarkPacket) packet).getPacketBarks().size())
+                .sum();
+    }
+}
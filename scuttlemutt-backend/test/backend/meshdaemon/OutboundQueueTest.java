@@ -0,0 +1,215 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backend.meshdaemon.OutboundQueue.OutboundQueueConfig;
+import backend.meshdaemon.OutboundQueue.OverflowPolicy;
+import backend.meshdaemon.OutboundQueue.TrafficClass;
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for OutboundQueue.
+ */
+public class OutboundQueueTest {
+    private static final int NUM_BARKS_PER_CLASS = 20;
+    private static final int SMALL_CAPACITY = 3;
+
+    // a Bark can't be told apart by class once dequeued, so reuse a few Barks + track
+    // which class each was enqueued in.
+    private static final Bark OWN_BARK = TestUtils.generateRandomizedBark();
+    private static final Bark DIRECT_REPLY_BARK = TestUtils.generateRandomizedBark();
+    private static final Bark RELAY_BARK = TestUtils.generateRandomizedBark();
+
+    private OutboundQueue queue;
+
+    @BeforeEach
+    public void setup() {
+        this.queue = new OutboundQueue();
+    }
+
+    @Test
+    public void testAdd_enqueuesAsRelay() {
+        this.queue.add(RELAY_BARK);
+        assertEquals(1, this.queue.size());
+        assertEquals(1, this.queue.size(TrafficClass.RELAY));
+        assertEquals(0, this.queue.size(TrafficClass.OWN));
+        assertEquals(1, this.queue.getEnqueuedCount(TrafficClass.RELAY));
+        assertEquals(RELAY_BARK, this.queue.poll());
+        assertEquals(0, this.queue.size(TrafficClass.RELAY));
+        assertNull(this.queue.poll());
+    }
+
+    @Test
+    public void testPoll_allClassesBackedUp_servesClassesByWeight() {
+        for (int i = 0; i < NUM_BARKS_PER_CLASS; i++) {
+            this.queue.offer(RELAY_BARK, TrafficClass.RELAY);
+            this.queue.offer(DIRECT_REPLY_BARK, TrafficClass.DIRECT_REPLY);
+            this.queue.offer(OWN_BARK, TrafficClass.OWN);
+        }
+
+        // every 7 Barks taken should hold 4 OWN, 2 DIRECT_REPLY and 1 RELAY.
+        final Map<TrafficClass, Integer> taken = new EnumMap<>(TrafficClass.class);
+        for (int i = 0; i < 7; i++) {
+            final Bark bark = this.queue.peek();
+            assertEquals(bark, this.queue.poll());
+            final TrafficClass trafficClass = bark == OWN_BARK ? TrafficClass.OWN
+                    : bark == DIRECT_REPLY_BARK ? TrafficClass.DIRECT_REPLY : TrafficClass.RELAY;
+            taken.merge(trafficClass, 1, Integer::sum);
+        }
+        assertEquals(OutboundQueue.DEFAULT_OWN_WEIGHT, taken.get(TrafficClass.OWN));
+        assertEquals(OutboundQueue.DEFAULT_DIRECT_REPLY_WEIGHT, taken.get(TrafficClass.DIRECT_REPLY));
+        assertEquals(OutboundQueue.DEFAULT_RELAY_WEIGHT, taken.get(TrafficClass.RELAY));
+    }
+
+    @Test
+    public void testPoll_directReplyProducer_servedAheadOfRelayBacklog() throws InterruptedException {
+        for (int i = 0; i < 2 * NUM_BARKS_PER_CLASS; i++) {
+            this.queue.add(RELAY_BARK);
+        }
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < NUM_BARKS_PER_CLASS; i++) {
+                this.queue.offer(DIRECT_REPLY_BARK, TrafficClass.DIRECT_REPLY);
+            }
+        });
+        producer.start();
+        producer.join();
+        assertEquals(NUM_BARKS_PER_CLASS, this.queue.getEnqueuedCount(TrafficClass.DIRECT_REPLY));
+
+        // replies are taken 2:1 against the relay backlog, so they're all out in 1.5x their number.
+        int repliesTaken = 0;
+        for (int i = 0; i < NUM_BARKS_PER_CLASS * (OutboundQueue.DEFAULT_DIRECT_REPLY_WEIGHT
+                + OutboundQueue.DEFAULT_RELAY_WEIGHT) / OutboundQueue.DEFAULT_DIRECT_REPLY_WEIGHT; i++) {
+            if (this.queue.poll() == DIRECT_REPLY_BARK) {
+                repliesTaken++;
+            }
+        }
+        assertEquals(NUM_BARKS_PER_CLASS, repliesTaken);
+        assertEquals(0, this.queue.size(TrafficClass.DIRECT_REPLY));
+    }
+
+    @Test
+    public void testPoll_ownBacklog_doesNotStarveRelay() {
+        for (int i = 0; i < NUM_BARKS_PER_CLASS; i++) {
+            this.queue.offer(OWN_BARK, TrafficClass.OWN);
+        }
+        this.queue.add(RELAY_BARK);
+
+        // the relayed Bark must come out within one full round of OWN + RELAY.
+        boolean sawRelay = false;
+        for (int i = 0; i < OutboundQueue.DEFAULT_OWN_WEIGHT + OutboundQueue.DEFAULT_RELAY_WEIGHT; i++) {
+            sawRelay |= this.queue.poll() == RELAY_BARK;
+        }
+        assertTrue(sawRelay);
+    }
+
+    @Test
+    public void testPoll_withinClass_isFifo() throws InterruptedException {
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < NUM_BARKS_PER_CLASS; i++) {
+            final Bark bark = TestUtils.generateRandomizedBark();
+            barks.add(bark);
+            this.queue.offer(bark, TrafficClass.OWN);
+        }
+        for (final Bark bark : barks) {
+            assertEquals(bark, this.queue.poll(1, TimeUnit.SECONDS));
+        }
+        assertNull(this.queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRemove_removesFromAnyClass() {
+        this.queue.offer(OWN_BARK, TrafficClass.OWN);
+        this.queue.add(RELAY_BARK);
+        assertTrue(this.queue.remove(RELAY_BARK));
+        assertFalse(this.queue.remove(RELAY_BARK));
+        assertEquals(1, this.queue.size());
+        assertEquals(0, this.queue.size(TrafficClass.RELAY));
+        assertEquals(OWN_BARK, this.queue.poll());
+    }
+
+    @Test
+    public void testOffer_full_dropsOldestRelay() {
+        this.queue = new OutboundQueue(smallConfig(OverflowPolicy.DROP_OLDEST_RELAY));
+        final Bark oldestRelay = TestUtils.generateRandomizedBark();
+        this.queue.add(oldestRelay);
+        this.queue.add(RELAY_BARK);
+        this.queue.offer(OWN_BARK, TrafficClass.OWN);
+        assertEquals(0, this.queue.remainingCapacity());
+
+        // an own send pushes out the oldest relayed Bark.
+        final Bark ownBark = TestUtils.generateRandomizedBark();
+        assertTrue(this.queue.offer(ownBark, TrafficClass.OWN));
+        assertEquals(SMALL_CAPACITY, this.queue.size());
+        assertFalse(this.queue.contains(oldestRelay));
+        assertTrue(this.queue.contains(ownBark));
+        assertEquals(1, this.queue.getDroppedCount(TrafficClass.RELAY));
+
+        // once no relayed Barks are left, own sends are rejected.
+        assertTrue(this.queue.offer(TestUtils.generateRandomizedBark(), TrafficClass.OWN));
+        assertFalse(this.queue.offer(TestUtils.generateRandomizedBark(), TrafficClass.OWN));
+        assertEquals(2, this.queue.getDroppedCount(TrafficClass.RELAY));
+        assertEquals(1, this.queue.getRejectedCount(TrafficClass.OWN));
+        assertEquals(SMALL_CAPACITY, this.queue.size(TrafficClass.OWN));
+    }
+
+    @Test
+    public void testOffer_full_dropsNewest() throws InterruptedException {
+        this.queue = new OutboundQueue(smallConfig(OverflowPolicy.DROP_NEWEST));
+        for (int i = 0; i < SMALL_CAPACITY; i++) {
+            assertTrue(this.queue.offer(RELAY_BARK));
+        }
+        assertFalse(this.queue.offer(DIRECT_REPLY_BARK, TrafficClass.DIRECT_REPLY));
+        assertFalse(this.queue.offer(TestUtils.generateRandomizedBark(), 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, this.queue.getDroppedCount(TrafficClass.DIRECT_REPLY));
+        assertEquals(1, this.queue.getDroppedCount(TrafficClass.RELAY));
+        assertEquals(SMALL_CAPACITY, this.queue.size(TrafficClass.RELAY));
+        assertEquals(0, this.queue.size(TrafficClass.DIRECT_REPLY));
+    }
+
+    @Test
+    public void testPut_full_blocksUntilRoom() throws InterruptedException {
+        this.queue = new OutboundQueue(smallConfig(OverflowPolicy.DROP_NEWEST));
+        for (int i = 0; i < SMALL_CAPACITY; i++) {
+            this.queue.put(RELAY_BARK);
+        }
+        final Thread producer = new Thread(() -> {
+            try {
+                this.queue.put(OWN_BARK);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+
+        assertEquals(RELAY_BARK, this.queue.take());
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertTrue(this.queue.contains(OWN_BARK));
+        assertEquals(0, this.queue.getDroppedCount(TrafficClass.RELAY));
+    }
+
+    // private helpers
+    private static OutboundQueueConfig smallConfig(final OverflowPolicy policy) {
+        final OutboundQueueConfig config = new OutboundQueueConfig();
+        config.capacity = SMALL_CAPACITY;
+        config.ownOverflowPolicy = policy;
+        config.directReplyOverflowPolicy = policy;
+        config.relayOverflowPolicy = policy;
+        return config;
+    }
+}
@@ -0,0 +1,87 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for RoutingTable.
+ */
+public class RoutingTableTest {
+    private static final long ROUTE_TTL_MILLIS = 1000;
+    private static final String NEIGHBOR = "neighbor";
+
+    private long nowMillis;
+    private RoutingTable routingTable;
+
+    @BeforeEach
+    public void setup() {
+        this.nowMillis = 1_000_000L;
+        this.routingTable = new RoutingTable(ROUTE_TTL_MILLIS, 8, () -> this.nowMillis);
+    }
+
+    @Test
+    public void testLearnFromAck_routesLaterBarksToTheSameReceiver() {
+        assertTrue(this.routingTable.learnFromAck(NEIGHBOR, this.routedBark()));
+
+        // every randomized Bark is sent to Alice, so they share a route.
+        assertEquals(NEIGHBOR, this.routingTable.nextHop(this.routedBark()));
+        assertEquals(1, this.routingTable.size());
+
+        // untagged Barks are always flooded.
+        assertNull(this.routingTable.nextHop(TestUtils.generateRandomizedBark()));
+    }
+
+    @Test
+    public void testLearnFromAck_untaggedBarkIsIgnored() {
+        assertFalse(this.routingTable.learnFromAck(NEIGHBOR, TestUtils.generateRandomizedBark()));
+        assertEquals(0, this.routingTable.size());
+    }
+
+    @Test
+    public void testLearnFromKeyExchange_routesBarksToThatNeighbor() {
+        this.routingTable.learnFromKeyExchange(NEIGHBOR, TestUtils.ALICE_KEYPAIR.getPublic());
+        assertEquals(NEIGHBOR, this.routingTable.nextHop(this.routedBark()));
+    }
+
+    @Test
+    public void testLearnFromKeyExchange_routeOutlivesTheRouteTagChanging() {
+        final RoutingTable longLivedTable = new RoutingTable(2 * Bark.ROUTE_TAG_EPOCH_MILLIS, 8,
+                () -> this.nowMillis);
+        longLivedTable.learnFromKeyExchange(NEIGHBOR, TestUtils.ALICE_KEYPAIR.getPublic());
+
+        this.nowMillis += Bark.ROUTE_TAG_EPOCH_MILLIS;
+        assertEquals(NEIGHBOR, longLivedTable.nextHop(this.routedBark()));
+    }
+
+    @Test
+    public void testNextHop_routesAgeOut() {
+        final Bark bark = this.routedBark();
+        this.routingTable.learnRoute(bark.getRouteTag(), NEIGHBOR);
+
+        this.nowMillis += ROUTE_TTL_MILLIS;
+        assertEquals(NEIGHBOR, this.routingTable.nextHop(bark));
+        this.nowMillis += 1;
+        assertNull(this.routingTable.nextHop(bark));
+        assertEquals(0, this.routingTable.size());
+
+        // relearning the route refreshes it.
+        this.routingTable.learnRoute(bark.getRouteTag(), "other");
+        assertEquals("other", this.routingTable.nextHop(bark));
+    }
+
+    // private helpers
+    /**
+     * Returns a randomized Bark (sent to Alice) carrying her route tag for the current epoch.
+     */
+    private Bark routedBark() {
+        return TestUtils.generateRandomizedBark().withRouteTag(TestUtils.ALICE_KEYPAIR.getPublic(), this.nowMillis);
+    }
+}
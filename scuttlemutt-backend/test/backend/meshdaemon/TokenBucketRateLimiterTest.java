@@ -0,0 +1,96 @@
+package backend.meshdaemon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs tests for TokenBucketRateLimiter.
+ */
+public class TokenBucketRateLimiterTest {
+    private static final double PERMITS_PER_SECOND = 10.0;
+    private static final int BURST = 5;
+    private static final int MAX_SENDERS = 8;
+    private static final long IDLE_MILLIS = 1000;
+
+    private long nowNanos;
+    private TokenBucketRateLimiter limiter;
+
+    @BeforeEach
+    public void setup() {
+        // start away from zero, so nothing depends on the clock starting there.
+        this.nowNanos = 123_456_789L;
+        this.limiter = new TokenBucketRateLimiter(PERMITS_PER_SECOND, BURST, MAX_SENDERS, IDLE_MILLIS,
+                () -> this.nowNanos);
+    }
+
+    @Test
+    public void testTryAcquire_burstThenRefill() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(this.limiter.tryAcquire("alice"));
+        }
+        assertFalse(this.limiter.tryAcquire("alice"));
+        // other senders have their own buckets.
+        assertTrue(this.limiter.tryAcquire("bob"));
+
+        // a tenth of a second earns one token back at 10 per second.
+        this.advanceMillis(100);
+        assertTrue(this.limiter.tryAcquire("alice"));
+        assertFalse(this.limiter.tryAcquire("alice"));
+
+        // a long wait only refills up to the burst.
+        this.advanceMillis(60_000);
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(this.limiter.tryAcquire("alice"));
+        }
+        assertFalse(this.limiter.tryAcquire("alice"));
+    }
+
+    @Test
+    public void testTryAcquire_sustainedRate_neverRefused() {
+        // one request every tenth of a second is exactly the rate.
+        for (int i = 0; i < 10 * BURST; i++) {
+            assertTrue(this.limiter.tryAcquire("alice"));
+            this.advanceMillis(100);
+        }
+    }
+
+    @Test
+    public void testEvictIdle_forgetsOnlyIdleSenders() {
+        for (int i = 0; i < MAX_SENDERS / 2; i++) {
+            this.limiter.tryAcquire("idle-" + i);
+        }
+        this.advanceMillis(IDLE_MILLIS + 1);
+        for (int i = 0; i < MAX_SENDERS / 2; i++) {
+            this.limiter.tryAcquire("active-" + i);
+        }
+        assertEquals(MAX_SENDERS, this.limiter.size());
+        assertEquals(MAX_SENDERS / 2, this.limiter.evictIdle());
+        assertEquals(MAX_SENDERS / 2, this.limiter.size());
+    }
+
+    @Test
+    public void testTryAcquire_manySenders_staysBoundedAndKeepsActiveBuckets() {
+        // drain a sender which keeps sending, while many other senders come + go.  the clock
+        // ticks so senders can be told apart by age, but too little to earn back a token.
+        for (int i = 0; i < BURST; i++) {
+            this.limiter.tryAcquire("alice");
+        }
+        for (int i = 0; i < 20 * MAX_SENDERS; i++) {
+            this.nowNanos++;
+            assertTrue(this.limiter.tryAcquire("sender-" + i));
+            assertFalse(this.limiter.tryAcquire("alice"));
+            assertTrue(this.limiter.size() <= MAX_SENDERS);
+        }
+    }
+
+    // private helpers
+    private void advanceMillis(final long millis) {
+        this.nowNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,72 @@
+package crypto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+import types.TestUtils;
+
+public class CryptoSuiteTest {
+
+    // runtime-defined test objects
+    private static final KeyPair ecAlice = CryptoSuites.EC.generateKeyPair();
+    private static final KeyPair ecBob = CryptoSuites.EC.generateKeyPair();
+    private static final int MESSAGE_SIZE = 300;
+
+    @Test
+    public void testEcEncryptHeaderThenDecryptHeader_givesSameMessage() {
+        byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertext = CryptoSuites.EC.encryptHeader(bytes, ecBob.getPublic());
+        assertArrayEquals(bytes, CryptoSuites.EC.decryptHeader(ciphertext, ecBob.getPrivate()));
+    }
+
+    @Test
+    public void testEcDecryptHeader_wrongKey_returnsNull() {
+        byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertext = CryptoSuites.EC.encryptHeader(bytes, ecBob.getPublic());
+        assertNull(CryptoSuites.EC.decryptHeader(ciphertext, ecAlice.getPrivate()));
+    }
+
+    @Test
+    public void testEcSignThenVerify_validOnlyForSigner() {
+        byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] signature = CryptoSuites.EC.sign(bytes, ecAlice.getPrivate());
+        assertEquals(CryptoSuites.EC.signatureLength(ecAlice.getPublic()), signature.length);
+        assertTrue(CryptoSuites.EC.verify(signature, bytes, ecAlice.getPublic()));
+        assertFalse(CryptoSuites.EC.verify(signature, bytes, ecBob.getPublic()));
+    }
+
+    @Test
+    public void testRsaSignatureLength_matchesActualSignature() {
+        byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] signature = CryptoSuites.RSA.sign(bytes, TestUtils.ALICE_KEYPAIR.getPrivate());
+        assertEquals(signature.length, CryptoSuites.RSA.signatureLength(TestUtils.ALICE_KEYPAIR.getPublic()));
+    }
+
+    @Test
+    public void testDecodeKeys_reassemblesEqualKeys() {
+        assertEquals(ecAlice.getPublic(), CryptoSuites.EC.decodePublicKey(ecAlice.getPublic().getEncoded()));
+        assertEquals(ecAlice.getPrivate(), CryptoSuites.EC.decodePrivateKey(ecAlice.getPrivate().getEncoded()));
+        assertEquals(TestUtils.ALICE_KEYPAIR.getPublic(),
+                CryptoSuites.RSA.decodePublicKey(TestUtils.ALICE_KEYPAIR.getPublic().getEncoded()));
+    }
+
+    @Test
+    public void testLookup_forKeyAndFromId_returnMatchingSuite() {
+        assertEquals(CryptoSuites.EC, CryptoSuites.forKey(ecAlice.getPublic()));
+        assertEquals(CryptoSuites.EC, CryptoSuites.forKey(ecAlice.getPrivate()));
+        assertEquals(CryptoSuites.RSA, CryptoSuites.forKey(TestUtils.ALICE_KEYPAIR.getPrivate()));
+        assertEquals(CryptoSuites.EC, CryptoSuites.fromId(EcCryptoSuite.ID));
+        assertEquals(CryptoSuites.RSA, CryptoSuites.fromId(RsaCryptoSuite.ID));
+        assertThrows(IllegalArgumentException.class, () -> CryptoSuites.fromId((byte) 42));
+    }
+}
@@ -1,23 +1,32 @@
 package crypto;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.SecretKey;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.Test;
 
+import types.TestUtils;
+
 public class CryptoTest {
 
     // runtime-defined test objects
-    private static final KeyPair alice = Crypto.ALICE_KEYPAIR;
-    private static final KeyPair bob = Crypto.BOB_KEYPAIR;
-    private static final SecretKey secretKey = Crypto.DUMMY_SECRETKEY;
+    private static final KeyPair alice = TestUtils.ALICE_KEYPAIR;
+    private static final KeyPair bob = TestUtils.BOB_KEYPAIR;
+    private static final SecretKey secretKey = TestUtils.DUMMY_SECRETKEY;
     private static final int MESSAGE_SIZE = 300;
 
     @Test
@@ -98,4 +107,44 @@ public class CryptoTest {
         boolean isValid = Crypto.verify(signature, bytes, bob.getPublic());
         assertFalse(isValid);
     }
+
+    @Test
+    public void testDecryptWithWrongKeyThenRightKey_cachedCipherStillWorks() {
+        byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertext = Crypto.encrypt(bytes, secretKey, Crypto.SYMMETRIC_KEY_TYPE);
+
+        // a failed decrypt must not leave this thread's cached Cipher unusable.
+        Crypto.decrypt(ciphertext, TestUtils.OTHER_SECRETKEY, Crypto.SYMMETRIC_KEY_TYPE);
+        assertArrayEquals(bytes, Crypto.decrypt(ciphertext, secretKey, Crypto.SYMMETRIC_KEY_TYPE));
+    }
+
+    @Test
+    public void testEncryptDecryptSignVerify_concurrentThreads_allSucceed() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    byte[] bytes = RandomStringUtils.randomAlphanumeric(MESSAGE_SIZE).getBytes(StandardCharsets.UTF_8);
+                    byte[] ciphertext = Crypto.encrypt(bytes, secretKey, Crypto.SYMMETRIC_KEY_TYPE);
+                    byte[] signature = Crypto.sign(bytes, alice.getPrivate());
+                    return new String(Crypto.decrypt(ciphertext, secretKey, Crypto.SYMMETRIC_KEY_TYPE),
+                            StandardCharsets.UTF_8).equals(new String(bytes, StandardCharsets.UTF_8))
+                            && Crypto.verify(signature, bytes, alice.getPublic());
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testKeyId_sameKeySameId_differentKeyDifferentId() {
+        assertEquals(Crypto.KEY_ID_SIZE, Crypto.keyId(secretKey).length);
+        assertArrayEquals(Crypto.keyId(secretKey), Crypto.keyId(secretKey));
+        assertFalse(Arrays.equals(Crypto.keyId(secretKey), Crypto.keyId(TestUtils.OTHER_SECRETKEY)));
+    }
 }
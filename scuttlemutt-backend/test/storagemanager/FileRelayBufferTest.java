@@ -0,0 +1,158 @@
+package storagemanager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import storagemanager.RelayBuffer.EvictionPolicy;
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for FileRelayBuffer.
+ */
+public class FileRelayBufferTest {
+    private static final int NUM_BARKS = 10;
+
+    private File file;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        this.file = Files.createTempFile("relay", ".log").toFile();
+        this.file.delete();
+    }
+
+    @AfterEach
+    public void teardown() {
+        this.file.delete();
+        new File(this.file.getPath() + ".tmp").delete();
+        new File(this.file.getPath() + ".corrupt").delete();
+    }
+
+    @Test
+    public void testReopen_restoresBarksAndForwardCounts() throws IOException {
+        final List<Bark> barks = new ArrayList<>();
+        try (FileRelayBuffer buffer = new FileRelayBuffer(this.file)) {
+            for (int i = 0; i < NUM_BARKS; i++) {
+                final Bark bark = TestUtils.generateRandomizedBark();
+                barks.add(bark);
+                buffer.store(bark);
+            }
+            buffer.recordForward(barks.get(0).getUniqueId());
+            buffer.remove(barks.get(1).getUniqueId());
+        }
+        barks.remove(1);
+
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(barks, reopened.getBarks());
+            assertEquals(1, reopened.getForwardCount(barks.get(0).getUniqueId()));
+        }
+    }
+
+    @Test
+    public void testReopen_keepsEvictions() throws IOException {
+        final List<Bark> barks = new ArrayList<>();
+        try (FileRelayBuffer buffer = new FileRelayBuffer(this.file, NUM_BARKS / 2, Long.MAX_VALUE,
+                EvictionPolicy.OLDEST_FIRST)) {
+            for (int i = 0; i < NUM_BARKS; i++) {
+                final Bark bark = TestUtils.generateRandomizedBark();
+                barks.add(bark);
+                buffer.store(bark);
+            }
+        }
+
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(barks.subList(NUM_BARKS / 2, NUM_BARKS), reopened.getBarks());
+        }
+    }
+
+    @Test
+    public void testReopen_truncatedLog_keepsCompleteRecords() throws IOException {
+        final List<Bark> barks = new ArrayList<>();
+        try (FileRelayBuffer buffer = new FileRelayBuffer(this.file)) {
+            for (int i = 0; i < NUM_BARKS; i++) {
+                final Bark bark = TestUtils.generateRandomizedBark();
+                barks.add(bark);
+                buffer.store(bark);
+            }
+        }
+
+        // cut the last record in half, as a crash mid-write would.
+        final Bark lastBark = barks.remove(NUM_BARKS - 1);
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.setLength(raf.length() - lastBark.getBinarySize() / 2);
+        }
+
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(barks, reopened.getBarks());
+            assertFalse(reopened.contains(lastBark.getUniqueId()));
+        }
+    }
+
+    @Test
+    public void testReopen_malformedRecord_keepsRecordsBeforeItAndRepairsLog() throws IOException {
+        final List<Bark> barks = new ArrayList<>();
+        try (FileRelayBuffer buffer = new FileRelayBuffer(this.file)) {
+            for (int i = 0; i < NUM_BARKS; i++) {
+                final Bark bark = TestUtils.generateRandomizedBark();
+                barks.add(bark);
+                buffer.store(bark);
+            }
+        }
+
+        // give the middle record an unknown type.  the header is 5 bytes, and each
+        // record is its type, its forward count (1 byte) + the Bark.
+        final int damaged = NUM_BARKS / 2;
+        long offset = 5;
+        for (int i = 0; i < damaged; i++) {
+            offset += 2 + barks.get(i).getBinarySize();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+            raf.seek(offset);
+            raf.writeByte(0x7f);
+        }
+
+        final List<Bark> kept = barks.subList(0, damaged);
+        final Bark newBark = TestUtils.generateRandomizedBark();
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(kept, reopened.getBarks());
+            reopened.store(newBark);
+        }
+
+        // the log was rewritten without the damage, so later changes are kept too.
+        final List<Bark> expected = new ArrayList<>(kept);
+        expected.add(newBark);
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(expected, reopened.getBarks());
+        }
+    }
+
+    @Test
+    public void testReopen_notARelayBuffer_movesItAsideAndStartsOver() throws IOException {
+        final byte[] contents = "not a relay buffer".getBytes(StandardCharsets.UTF_8);
+        Files.write(this.file.toPath(), contents);
+
+        final Bark bark = TestUtils.generateRandomizedBark();
+        try (FileRelayBuffer buffer = new FileRelayBuffer(this.file)) {
+            assertEquals(0, buffer.size());
+            buffer.store(bark);
+        }
+        assertArrayEquals(contents, Files.readAllBytes(new File(this.file.getPath() + ".corrupt").toPath()));
+
+        try (FileRelayBuffer reopened = new FileRelayBuffer(this.file)) {
+            assertEquals(List.of(bark), reopened.getBarks());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package storagemanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import storagemanager.RelayBuffer.EvictionPolicy;
+import types.Bark;
+import types.TestUtils;
+
+/**
+ * Runs tests for MapRelayBuffer.
+ */
+public class MapRelayBufferTest {
+    private static final int CAPACITY = 5;
+
+    @Test
+    public void testBarkLifecycle() {
+        final MapRelayBuffer buffer = new MapRelayBuffer();
+        final Bark bark = TestUtils.generateRandomizedBark();
+
+        // store the Bark, then store it again.
+        assertTrue(buffer.store(bark));
+        assertFalse(buffer.store(bark));
+        assertEquals(1, buffer.size());
+        assertEquals(bark, buffer.lookup(bark.getUniqueId()));
+
+        // forward the Bark + check the count.
+        buffer.recordForward(bark.getUniqueId());
+        buffer.recordForward(bark.getUniqueId());
+        assertEquals(2, buffer.getForwardCount(bark.getUniqueId()));
+
+        // remove the Bark.
+        assertEquals(bark, buffer.remove(bark.getUniqueId()));
+        assertFalse(buffer.contains(bark.getUniqueId()));
+        assertNull(buffer.remove(bark.getUniqueId()));
+        assertEquals(0, buffer.getForwardCount(bark.getUniqueId()));
+    }
+
+    @Test
+    public void testStore_oldestFirst_evictsOldestBarks() {
+        final MapRelayBuffer buffer = new MapRelayBuffer(CAPACITY, Long.MAX_VALUE, EvictionPolicy.OLDEST_FIRST);
+        final List<Bark> barks = storeBarks(buffer, CAPACITY * 2);
+
+        // only the newest Barks remain, in order.
+        assertEquals(barks.subList(CAPACITY, barks.size()), buffer.getBarks());
+    }
+
+    @Test
+    public void testStore_mostForwardedFirst_evictsMostForwardedBarks() {
+        final MapRelayBuffer buffer = new MapRelayBuffer(CAPACITY, Long.MAX_VALUE,
+                EvictionPolicy.MOST_FORWARDED_FIRST);
+        final List<Bark> barks = storeBarks(buffer, CAPACITY);
+
+        // forward every Bark but the first once, and the last Bark twice.
+        for (int i = 1; i < barks.size(); i++) {
+            buffer.recordForward(barks.get(i).getUniqueId());
+        }
+        final Bark mostForwarded = barks.get(barks.size() - 1);
+        buffer.recordForward(mostForwarded.getUniqueId());
+
+        // the most forwarded Bark goes first, then the oldest of the Barks forwarded once.
+        buffer.store(TestUtils.generateRandomizedBark());
+        assertFalse(buffer.contains(mostForwarded.getUniqueId()));
+        buffer.store(TestUtils.generateRandomizedBark());
+        assertFalse(buffer.contains(barks.get(1).getUniqueId()));
+        assertTrue(buffer.contains(barks.get(0).getUniqueId()));
+        assertEquals(CAPACITY, buffer.size());
+    }
+
+    @Test
+    public void testStore_byteLimit_evictsUntilUnderLimit() {
+        final Bark first = TestUtils.generateRandomizedBark();
+        final MapRelayBuffer buffer = new MapRelayBuffer(Integer.MAX_VALUE, first.getBinarySize() * 2L,
+                EvictionPolicy.OLDEST_FIRST);
+        buffer.store(first);
+        final List<Bark> barks = storeBarks(buffer, CAPACITY);
+
+        // every TestUtils Bark is the same size, so exactly two fit.
+        assertEquals(barks.subList(barks.size() - 2, barks.size()), buffer.getBarks());
+    }
+
+    @Test
+    public void testStore_expiredBarks_areDropped() throws InterruptedException {
+        final MapRelayBuffer buffer = new MapRelayBuffer(CAPACITY, Long.MAX_VALUE, EvictionPolicy.OLDEST_FIRST);
+        final Bark expiring = new Bark("expiring", TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.BOB_KEYPAIR.getPrivate(), TestUtils.ALICE_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY,
+                Bark.DEFAULT_HOP_LIMIT, 500);
+        assertTrue(buffer.store(expiring));
+        Thread.sleep(600);
+
+        // an expired Bark can't be stored, and is the first to go once the buffer is full.
+        assertFalse(buffer.store(expiring.withHopsRemaining(1)));
+        final List<Bark> barks = storeBarks(buffer, CAPACITY);
+        assertEquals(barks, buffer.getBarks());
+        assertEquals(0, buffer.removeExpired(System.currentTimeMillis()));
+    }
+
+    /**
+     * Stores + returns the passed number of new Barks.
+     */
+    private static List<Bark> storeBarks(final RelayBuffer buffer, final int numBarks) {
+        final List<Bark> barks = new ArrayList<>();
+        for (int i = 0; i < numBarks; i++) {
+            final Bark bark = TestUtils.generateRandomizedBark();
+            barks.add(bark);
+            assertTrue(buffer.store(bark));
+        }
+        return barks;
+    }
+}
@@ -2,6 +2,7 @@ package storagemanager;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.security.PublicKey;
 import java.util.ArrayList;
@@ -153,7 +154,7 @@ public class MapStorageManagerTest {
 
     @Test
     public void testPublicKeyStorageLifecycle() {
-        final PublicKey publicKey = Crypto.ALICE_KEYPAIR.getPublic();
+        final PublicKey publicKey = TestUtils.ALICE_KEYPAIR.getPublic();
 
         // store the key
         this.mapStorageManager.storePublicKeyForUUID(d.getUUID(), publicKey);
@@ -194,4 +195,46 @@ public class MapStorageManagerTest {
         final Conversation obtainedConversation = this.mapStorageManager.listAllConversations().get(0);
         assertEquals(c, obtainedConversation);
     }
+
+    @Test
+    public void testListAllSecretKeys_keysForEveryContactAreListed() {
+        // store keys for two different contacts.
+        final DawgIdentifier other = TestUtils.generateRandomizedDawgIdentifier();
+        final SecretKey key1 = Crypto.generateSecretKey();
+        final SecretKey key2 = Crypto.generateSecretKey();
+        final SecretKey key3 = Crypto.generateSecretKey();
+        this.mapStorageManager.storeSecretKeyForUUID(d.getUUID(), key1);
+        this.mapStorageManager.storeSecretKeyForUUID(d.getUUID(), key2);
+        this.mapStorageManager.storeSecretKeyForUUID(other.getUUID(), key3);
+
+        // verify that every key is listed.
+        final List<SecretKey> allKeys = this.mapStorageManager.listAllSecretKeys();
+        assertEquals(3, allKeys.size());
+        assertTrue(allKeys.containsAll(List.of(key1, key2, key3)));
+    }
+
+    @Test
+    public void testLookupSecretKeyForKeyId_matchesDefaultLookupThroughEvictionAndDelete() {
+        // store one more key than the maximum so the oldest key is evicted.
+        final List<SecretKey> keyList = new ArrayList<>();
+        for (int i = 0; i < StorageManager.MAX_NUM_HISTORICAL_KEYS_TO_STORE + 1; i++) {
+            keyList.add(Crypto.generateSecretKey());
+            this.mapStorageManager.storeSecretKeyForUUID(d.getUUID(), keyList.get(i));
+        }
+
+        // the evicted key can no longer be found, every other key can.
+        assertNull(this.mapStorageManager.lookupSecretKeyForKeyId(d.getUUID(), Crypto.keyId(keyList.get(0))));
+        for (final SecretKey key : keyList.subList(1, keyList.size())) {
+            assertEquals(key, this.mapStorageManager.lookupSecretKeyForKeyId(d.getUUID(), Crypto.keyId(key)));
+        }
+
+        // keys are scoped to their owner.
+        final SecretKey newestKey = keyList.get(keyList.size() - 1);
+        assertNull(this.mapStorageManager.lookupSecretKeyForKeyId(
+                TestUtils.generateRandomizedDawgIdentifier().getUUID(), Crypto.keyId(newestKey)));
+
+        // deleting the owner's keys removes them from the index.
+        this.mapStorageManager.deleteSecretKeysForUUID(d.getUUID());
+        assertNull(this.mapStorageManager.lookupSecretKeyForKeyId(d.getUUID(), Crypto.keyId(newestKey)));
+    }
 }
@@ -0,0 +1,62 @@
+package types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static types.Bark.MAX_MESSAGE_SIZE;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.jupiter.api.Test;
+
+import types.serialization.SerializationUtils;
+
+public class BarkPayloadTest {
+    // test variables
+    private static final String contents = RandomStringUtils.randomAlphanumeric(MAX_MESSAGE_SIZE);
+    private static final DawgIdentifier sender = TestUtils.generateRandomizedDawgIdentifier();
+
+    @Test
+    public void testNetworkBytes_binaryRoundTrip_returnsEqualPayload() {
+        for (final long orderNum : new long[] {0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            final BarkPayload payload = new BarkPayload(contents, sender, orderNum);
+            final BarkPayload rebuiltPayload = BarkPayload.fromNetworkBytes(payload.toNetworkBytes());
+
+            // the binary format only carries the sender's UUID.
+            assertEquals(payload, rebuiltPayload);
+            assertEquals(orderNum, rebuiltPayload.getOrderNum());
+            assertNull(rebuiltPayload.getSender().getUsername());
+        }
+    }
+
+    @Test
+    public void testNetworkBytes_binaryIsSmallerThanJson() {
+        final BarkPayload payload = new BarkPayload(contents, sender, 42L);
+        final byte[] jsonBytes = SerializationUtils.GSON.toJson(payload).getBytes();
+        assertTrue(payload.toNetworkBytes().length < jsonBytes.length);
+    }
+
+    @Test
+    public void testFromNetworkBytes_legacyJson_returnsEqualPayload() {
+        final BarkPayload payload = new BarkPayload(contents, sender, 42L);
+        final byte[] jsonBytes = SerializationUtils.GSON.toJson(payload).getBytes();
+        final BarkPayload rebuiltPayload = BarkPayload.fromNetworkBytes(jsonBytes);
+
+        // JSON payloads still carry the full sender.
+        assertEquals(payload, rebuiltPayload);
+        assertEquals(sender.getUsername(), rebuiltPayload.getSender().getUsername());
+    }
+
+    @Test
+    public void testFromNetworkBytes_unknownVersion_throwsRuntimeException() {
+        final byte[] bytes = new BarkPayload(contents, sender, 42L).toNetworkBytes();
+        bytes[0] = (byte) (BarkPayload.BINARY_VERSION + 1);
+        assertThrows(RuntimeException.class, () -> BarkPayload.fromNetworkBytes(bytes));
+    }
+
+    @Test
+    public void testToNetworkBytes_nullOrderNum_throwsIllegalStateException() {
+        final BarkPayload payload = new BarkPayload(contents, sender, null);
+        assertThrows(IllegalStateException.class, payload::toNetworkBytes);
+    }
+}
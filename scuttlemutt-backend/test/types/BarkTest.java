@@ -1,14 +1,23 @@
 package types;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static types.Bark.MAX_MESSAGE_SIZE;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,7 +26,17 @@ import javax.crypto.SecretKey;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.Test;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
 import crypto.Crypto;
+import crypto.CryptoSuites;
+import crypto.EcCryptoSuite;
+import storagemanager.MapStorageManager;
+import storagemanager.StorageManager;
+import types.packet.BinaryPacketCodec;
+import types.serialization.SerializationUtils;
 
 public class BarkTest {
     // test variables
@@ -31,9 +50,9 @@ public class BarkTest {
         assertThrows(RuntimeException.class, () -> new Bark(oversizedMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY));
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY));
     }
 
     @Test
@@ -42,22 +61,22 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
         assertNotNull(b);
     }
 
     @Test
     public void testGetContents_keyListContainsValidKey_returnsMessageSuccessfully() {
-        final SecretKey validKey = Crypto.DUMMY_SECRETKEY;
+        final SecretKey validKey = TestUtils.DUMMY_SECRETKEY;
 
         // create a Bark object with the valid message String.
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
                 validKey);
 
         // create the keyList. To make things a bit more difficult, make validKey not
@@ -69,7 +88,7 @@ public class BarkTest {
         keyList.add(otherKey);
 
         // call getContents().
-        final String contents = b.getContents(keyList, Crypto.ALICE_KEYPAIR.getPublic());
+        final String contents = b.getContents(keyList, TestUtils.ALICE_KEYPAIR.getPublic());
         assertEquals(validMessage, contents);
     }
 
@@ -79,9 +98,9 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
 
         // create the keyList. To make things a bit more difficult, make validKey not
         // the last object.
@@ -91,7 +110,7 @@ public class BarkTest {
         keyList.add(invalidKey);
 
         // assert that we were unable to successfully decrypt the contents.
-        assertThrows(RuntimeException.class, () -> b.getContents(keyList, Crypto.ALICE_KEYPAIR.getPublic()));
+        assertThrows(RuntimeException.class, () -> b.getContents(keyList, TestUtils.ALICE_KEYPAIR.getPublic()));
     }
     
     @Test
@@ -100,9 +119,9 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.BOB_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.BOB_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
 
         // create the keyList. To make things a bit more difficult, make validKey not
         // the last object.
@@ -112,7 +131,7 @@ public class BarkTest {
         keyList.add(invalidKey);
 
         // assert that we were unable to successfully decrypt the contents.
-        assertThrows(RuntimeException.class, () -> b.getContents(keyList, Crypto.ALICE_KEYPAIR.getPublic()));
+        assertThrows(RuntimeException.class, () -> b.getContents(keyList, TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
@@ -121,9 +140,9 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
 
         // verify that it is equal to itself.
         assertEquals(b, b);
@@ -136,15 +155,15 @@ public class BarkTest {
         final Bark b1 = new Bark(validMessage,
                 alice,
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
         final Bark b2 = new Bark(validMessage,
                 alice,
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
 
         // verify that they are not equal since they don't have the same unique ID.
         assertNotEquals(b1, b2);
@@ -156,9 +175,9 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 TestUtils.generateRandomizedDawgIdentifier(),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
 
         // Convert the Bark object to a byte[] for sending over the network.
         final byte[] byteArray = b.toNetworkBytes();
@@ -175,10 +194,10 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 new DawgIdentifier("alice", UUID.randomUUID()),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
-        assertTrue(b.isForMe(Crypto.BOB_KEYPAIR.getPrivate()));
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        assertTrue(b.isForMe(TestUtils.BOB_KEYPAIR.getPrivate()));
     }
 
     @Test
@@ -186,75 +205,392 @@ public class BarkTest {
         final Bark b = new Bark(validMessage,
                 new DawgIdentifier("alice", UUID.randomUUID()),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
-                Crypto.DUMMY_SECRETKEY);
-        assertFalse(b.isForMe(Crypto.ALICE_KEYPAIR.getPrivate()));
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        assertFalse(b.isForMe(TestUtils.ALICE_KEYPAIR.getPrivate()));
     }
 
     @Test
     public void testEquals_BarkFromAliceToBob_bobGetsContents() {
         // alice sends message to bob, only bob can getContents
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
         final Bark b = new Bark(validMessage,
                 new DawgIdentifier("alice", UUID.randomUUID()),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
                 secret);
-        assertEquals(validMessage, b.getContents(List.of(secret), Crypto.ALICE_KEYPAIR.getPublic()));
+        assertEquals(validMessage, b.getContents(List.of(secret), TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
     public void testThrows_BarkFromAliceToBob_aliceGetsContents() {
         // alice sends message to bob, only bob can getContents
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
         final Bark b = new Bark(validMessage,
                 new DawgIdentifier("alice", UUID.randomUUID()),
                 0L,
-                Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(),
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
                 secret);
-        assertThrows(RuntimeException.class, () -> b.getContents(List.of(Crypto.OTHER_SECRETKEY), Crypto.ALICE_KEYPAIR.getPublic()));
+        assertThrows(RuntimeException.class, () -> b.getContents(List.of(TestUtils.OTHER_SECRETKEY), TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
     public void testEquals_BarkFromAliceToBob_bobGetSender() {
         // alice sends message to bob, only bob can getSender
         DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
-        final Bark b = new Bark(validMessage, alice, 0L, Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(), secret);
-        assertEquals(alice, b.getSender(List.of(Crypto.DUMMY_SECRETKEY), Crypto.ALICE_KEYPAIR.getPublic()));
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), secret);
+        assertEquals(alice, b.getSender(List.of(TestUtils.DUMMY_SECRETKEY), TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
     public void testThrows_BarkFromAliceToBob_aliceGetSender() {
         // alice sends message to bob, only bob can getSender
         DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
-        final Bark b = new Bark(validMessage, alice, 0L, Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(), secret);
-        assertThrows(RuntimeException.class, () -> b.getSender(List.of(Crypto.OTHER_SECRETKEY), Crypto.ALICE_KEYPAIR.getPublic()));
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), secret);
+        assertThrows(RuntimeException.class, () -> b.getSender(List.of(TestUtils.OTHER_SECRETKEY), TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
     public void testEquals_BarkFromAliceToBob_bobGetOrderNum() {
         // alice sends message to bob, only bob can getOrderNum
         DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
-        final Bark b = new Bark(validMessage, alice, 0L, Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(), secret);
-        assertEquals(0L, b.getOrderNum(List.of(Crypto.DUMMY_SECRETKEY), Crypto.ALICE_KEYPAIR.getPublic()));
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), secret);
+        assertEquals(0L, b.getOrderNum(List.of(TestUtils.DUMMY_SECRETKEY), TestUtils.ALICE_KEYPAIR.getPublic()));
     }
 
     @Test
     public void testThrows_BarkFromAliceToBob_aliceGetOrderNum() {
         // alice sends message to bob, only bob can getOrderNum
         DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
-        SecretKey secret = Crypto.DUMMY_SECRETKEY;
-        final Bark b = new Bark(validMessage, alice, 0L, Crypto.ALICE_KEYPAIR.getPrivate(),
-                Crypto.BOB_KEYPAIR.getPublic(), secret);
-        assertThrows(RuntimeException.class, () -> b.getOrderNum(List.of(Crypto.OTHER_SECRETKEY), Crypto.ALICE_KEYPAIR.getPublic()));
+        SecretKey secret = TestUtils.DUMMY_SECRETKEY;
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), secret);
+        assertThrows(RuntimeException.class, () -> b.getOrderNum(List.of(TestUtils.OTHER_SECRETKEY), TestUtils.ALICE_KEYPAIR.getPublic()));
+    }
+
+    @Test
+    public void testOpen_BarkFromAliceToBob_bobOpensBark() {
+        // alice sends message to bob, bob knows alice's keys.
+        DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 7L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        final StorageManager bobStorage = new MapStorageManager();
+        bobStorage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+
+        // open the bark once and verify every field of the decrypted view.
+        final OpenedBark opened = b.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage);
+        assertNotNull(opened);
+        assertEquals(b, opened.getBark());
+        assertEquals(alice.getUUID(), opened.getSenderUUID());
+        assertEquals(alice, opened.getSender());
+        assertEquals(validMessage, opened.getContents());
+        assertEquals(7L, opened.getOrderNum());
+    }
+
+    @Test
+    public void testOpen_BarkFromAliceToBob_aliceOpens_returnsNull() {
+        // alice sends message to bob, alice cannot open it.
+        DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        assertNull(b.open(TestUtils.ALICE_KEYPAIR.getPrivate(), new MapStorageManager()));
+    }
+
+    @Test
+    public void testOpen_BarkFromUnknownSender_throws() {
+        // bob has no keys on record for alice.
+        DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        assertThrows(RuntimeException.class, () -> b.open(TestUtils.BOB_KEYPAIR.getPrivate(), new MapStorageManager()));
+    }
+
+    @Test
+    public void testMayBeForMe_knownKeyInList_returnsTrue() {
+        final Bark b = new Bark(validMessage,
+                TestUtils.generateRandomizedDawgIdentifier(),
+                0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        assertTrue(b.mayBeForMe(List.of(TestUtils.OTHER_SECRETKEY, TestUtils.DUMMY_SECRETKEY)));
+    }
+
+    @Test
+    public void testMayBeForMe_noKnownKeyInList_returnsFalse() {
+        final Bark b = new Bark(validMessage,
+                TestUtils.generateRandomizedDawgIdentifier(),
+                0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        assertFalse(b.mayBeForMe(List.of(TestUtils.OTHER_SECRETKEY)));
+        assertFalse(b.mayBeForMe(List.of()));
+    }
+
+    @Test
+    public void testMayBeForMe_survivesNetworkByteConversion() {
+        final Bark b = new Bark(validMessage,
+                TestUtils.generateRandomizedDawgIdentifier(),
+                0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        final Bark rebuiltBark = Bark.fromNetworkBytes(b.toNetworkBytes());
+        assertTrue(rebuiltBark.mayBeForMe(List.of(TestUtils.DUMMY_SECRETKEY)));
+        assertFalse(rebuiltBark.mayBeForMe(List.of(TestUtils.OTHER_SECRETKEY)));
+    }
+
+    @Test
+    public void testFromNetworkBytes_legacyReflectiveJson_canStillBeOpened() {
+        final DawgIdentifier alice = TestUtils.generateRandomizedDawgIdentifier();
+        final Bark b = new Bark(validMessage,
+                alice,
+                0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+
+        // serialize the Bark the way older builds did (reflective Gson, byte[] as number arrays).
+        final byte[] legacyBytes = new Gson().toJson(b).getBytes();
+        final Bark rebuiltBark = Bark.fromNetworkBytes(legacyBytes);
+        assertEquals(b, rebuiltBark);
+
+        // the new format should be smaller + still carry everything needed to open the Bark.
+        assertTrue(b.toNetworkBytes().length < legacyBytes.length);
+        final StorageManager storage = new MapStorageManager();
+        storage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        storage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+        assertEquals(validMessage, rebuiltBark.open(TestUtils.BOB_KEYPAIR.getPrivate(), storage).getContents());
+    }
+
+    @Test
+    public void testOpen_senderStored_returnsStoredDawgIdentifier() {
+        // the payload only carries alice's UUID, so her username comes from storage.
+        final DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        final StorageManager bobStorage = new MapStorageManager();
+        bobStorage.storeDawgIdentifier(alice);
+        bobStorage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+
+        final OpenedBark opened = b.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage);
+        assertEquals("alice", opened.getSender().getUsername());
+    }
+
+    @Test
+    public void testOpen_ecCryptoSuiteBark_bobOpensBark() {
+        // alice + bob both use the EC suite.
+        final KeyPair aliceKeys = CryptoSuites.EC.generateKeyPair();
+        final KeyPair bobKeys = CryptoSuites.EC.generateKeyPair();
+        final DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 3L, aliceKeys.getPrivate(), bobKeys.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        assertEquals(EcCryptoSuite.ID, b.getCryptoSuiteId());
+
+        final StorageManager bobStorage = new MapStorageManager();
+        bobStorage.storePublicKeyForUUID(alice.getUUID(), aliceKeys.getPublic());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+
+        // the suite id survives the trip over the network, and bob can open the Bark.
+        final Bark rebuiltBark = Bark.fromNetworkBytes(b.toNetworkBytes());
+        assertEquals(EcCryptoSuite.ID, rebuiltBark.getCryptoSuiteId());
+        final OpenedBark opened = rebuiltBark.open(bobKeys.getPrivate(), bobStorage);
+        assertNotNull(opened);
+        assertEquals(validMessage, opened.getContents());
+        assertEquals(3L, opened.getOrderNum());
+
+        // an RSA user can't open it.
+        assertNull(rebuiltBark.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage));
+    }
+
+    @Test
+    public void testOpen_barkEncryptedWithOlderKey_bobOpensBark() {
+        // alice sends a message with an older key, then rotates her key twice.
+        final DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final SecretKey olderKey = Crypto.generateSecretKey();
+        final Bark b = new Bark(validMessage, alice, 0L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), olderKey);
+        final StorageManager bobStorage = new MapStorageManager();
+        bobStorage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), olderKey);
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), Crypto.generateSecretKey());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), Crypto.generateSecretKey());
+
+        // bob picks the right key using the key id in the header.
+        final OpenedBark opened = b.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage);
+        assertNotNull(opened);
+        assertEquals(validMessage, opened.getContents());
+    }
+
+    @Test
+    public void testDecrementHops_returnsCopyWithOneFewerHop() {
+        final Bark b = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY, 1, Bark.DEFAULT_TTL_MILLIS);
+        final Bark relayed = b.decrementHops();
+
+        // the copy is the same Bark with one fewer hop, and the original is unchanged.
+        assertEquals(b, relayed);
+        assertEquals(1, b.getHopsRemaining());
+        assertEquals(0, relayed.getHopsRemaining());
+        assertFalse(b.isExhausted());
+        assertTrue(relayed.isExhausted());
+        assertEquals(b.getExpiresAtMillis(), relayed.getExpiresAtMillis());
+
+        // the copy can still be opened.
+        final StorageManager bobStorage = new MapStorageManager();
+        final UUID senderId = b.getSenderUUID(TestUtils.BOB_KEYPAIR.getPrivate());
+        bobStorage.storePublicKeyForUUID(senderId, TestUtils.ALICE_KEYPAIR.getPublic());
+        bobStorage.storeSecretKeyForUUID(senderId, TestUtils.DUMMY_SECRETKEY);
+        assertEquals(validMessage, relayed.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage).getContents());
+    }
+
+    @Test
+    public void testIsExpired_pastExpiry_returnsTrue() {
+        final Bark b = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY, Bark.DEFAULT_HOP_LIMIT, 1000);
+        assertFalse(b.isExpired(System.currentTimeMillis()));
+        assertTrue(b.isExpired(b.getExpiresAtMillis() + 1));
+    }
+
+    @Test
+    public void testConversion_keepsHopsAndExpiry() throws IOException {
+        final Bark b = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY, 7, Bark.DEFAULT_TTL_MILLIS);
+
+        // JSON.
+        final Bark fromJson = Bark.fromNetworkBytes(b.toNetworkBytes());
+        assertEquals(7, fromJson.getHopsRemaining());
+        assertEquals(b.getExpiresAtMillis(), fromJson.getExpiresAtMillis());
+
+        // binary.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        b.writeBinary(new DataOutputStream(bytes));
+        assertEquals(bytes.size(), b.getBinarySize());
+        final Bark fromBinary = Bark.readBinary(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), BinaryPacketCodec.VERSION);
+        assertEquals(7, fromBinary.getHopsRemaining());
+        assertEquals(b.getExpiresAtMillis(), fromBinary.getExpiresAtMillis());
+    }
+
+    @Test
+    public void testReadBinary_version2_getsDefaultHopsAndNoExpiry() throws IOException {
+        final Bark b = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY, 3, Bark.DEFAULT_TTL_MILLIS);
+
+        // version 2 Barks are the same, minus the hop count + expiry after the suite id.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        b.writeBinary(new DataOutputStream(bytes));
+        final byte[] v3 = bytes.toByteArray();
+        final byte[] v2 = new byte[v3.length - 9];
+        System.arraycopy(v3, 0, v2, 0, 17);
+        System.arraycopy(v3, 26, v2, 17, v3.length - 26);
+
+        final Bark legacy = Bark.readBinary(new DataInputStream(new ByteArrayInputStream(v2)), 2);
+        assertEquals(b, legacy);
+        assertEquals(Bark.DEFAULT_HOP_LIMIT, legacy.getHopsRemaining());
+        assertEquals(Bark.NO_EXPIRY, legacy.getExpiresAtMillis());
+        assertFalse(legacy.isExpired(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testAckSecret_fromOpenedBark_acksOnlyThatBark() {
+        // alice sends message to bob, bob opens it + learns the ack secret.
+        DawgIdentifier alice = new DawgIdentifier("alice", UUID.randomUUID());
+        final Bark b = new Bark(validMessage, alice, 7L, TestUtils.ALICE_KEYPAIR.getPrivate(),
+                TestUtils.BOB_KEYPAIR.getPublic(), TestUtils.DUMMY_SECRETKEY);
+        final StorageManager bobStorage = new MapStorageManager();
+        bobStorage.storePublicKeyForUUID(alice.getUUID(), TestUtils.ALICE_KEYPAIR.getPublic());
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.OTHER_SECRETKEY);
+        bobStorage.storeSecretKeyForUUID(alice.getUUID(), TestUtils.DUMMY_SECRETKEY);
+        final byte[] ackSecret = b.open(TestUtils.BOB_KEYPAIR.getPrivate(), bobStorage).getAckSecret();
+        assertNotNull(ackSecret);
+        assertEquals(Bark.ACK_SECRET_SIZE, ackSecret.length);
+
+        // a relay can check the secret against either wire format, but not use it on another Bark.
+        assertTrue(b.isAckedBy(ackSecret));
+        assertTrue(Bark.fromNetworkBytes(b.toNetworkBytes()).isAckedBy(ackSecret));
+        assertTrue(b.withHopsRemaining(1).isAckedBy(ackSecret));
+        assertFalse(TestUtils.generateRandomizedBark().isAckedBy(ackSecret));
+        assertFalse(b.isAckedBy(new byte[Bark.ACK_SECRET_SIZE]));
+        assertFalse(b.isAckedBy(null));
+    }
+
+    @Test
+    public void testReadBinary_version3_cannotBeAcked() throws IOException {
+        final Bark b = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY).withRouteTag(TestUtils.BOB_KEYPAIR.getPublic(), 0L);
+
+        // version 3 Barks are the same, minus the ack hash + route tag at the end.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        b.writeBinary(new DataOutputStream(bytes));
+        final byte[] v5 = bytes.toByteArray();
+        final byte[] v3 = Arrays.copyOf(v5, v5.length - 1 - Bark.ACK_HASH_SIZE - 1 - Bark.ROUTE_TAG_SIZE);
+
+        final Bark legacy = Bark.readBinary(new DataInputStream(new ByteArrayInputStream(v3)), 3);
+        assertEquals(b, legacy);
+        assertFalse(legacy.isAckedBy(new byte[Bark.ACK_SECRET_SIZE]));
+    }
+
+    @Test
+    public void testRouteTag_identifiesReceiverAcrossFormats() throws IOException {
+        final Bark untagged = new Bark(validMessage, TestUtils.generateRandomizedDawgIdentifier(), 0L,
+                TestUtils.ALICE_KEYPAIR.getPrivate(), TestUtils.BOB_KEYPAIR.getPublic(),
+                TestUtils.DUMMY_SECRETKEY);
+        // Barks only carry a tag when their sender routes them.
+        assertNull(untagged.getRouteTag());
+        assertNull(Bark.fromNetworkBytes(untagged.toNetworkBytes()).getRouteTag());
+
+        // the tag is derived from the receiver's public key + the epoch alone.
+        final long nowMillis = 10 * Bark.ROUTE_TAG_EPOCH_MILLIS;
+        final Bark b = untagged.withRouteTag(TestUtils.BOB_KEYPAIR.getPublic(), nowMillis);
+        final byte[] routeTag = Bark.computeRouteTag(TestUtils.BOB_KEYPAIR.getPublic(), nowMillis);
+        assertEquals(Bark.ROUTE_TAG_SIZE, routeTag.length);
+        assertArrayEquals(routeTag, b.getRouteTag());
+        assertArrayEquals(routeTag, Bark.fromNetworkBytes(b.toNetworkBytes()).getRouteTag());
+        assertArrayEquals(routeTag, b.withHopsRemaining(1).getRouteTag());
+
+        // version 4 Barks are the same, minus the route tag at the end.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        b.writeBinary(new DataOutputStream(bytes));
+        final byte[] v5 = bytes.toByteArray();
+        final byte[] v4 = Arrays.copyOf(v5, v5.length - 1 - Bark.ROUTE_TAG_SIZE);
+        final Bark legacy = Bark.readBinary(new DataInputStream(new ByteArrayInputStream(v4)), 4);
+        assertEquals(b, legacy);
+        assertNull(legacy.getRouteTag());
+    }
+
+    @Test
+    public void testComputeRouteTag_changesEachEpoch() {
+        final long epochStart = 10 * Bark.ROUTE_TAG_EPOCH_MILLIS;
+        final byte[] routeTag = Bark.computeRouteTag(TestUtils.BOB_KEYPAIR.getPublic(), epochStart);
+        assertArrayEquals(routeTag, Bark.computeRouteTag(TestUtils.BOB_KEYPAIR.getPublic(),
+                epochStart + Bark.ROUTE_TAG_EPOCH_MILLIS - 1));
+        assertFalse(Arrays.equals(routeTag, Bark.computeRouteTag(TestUtils.BOB_KEYPAIR.getPublic(),
+                epochStart + Bark.ROUTE_TAG_EPOCH_MILLIS)));
+    }
+
+    @Test
+    public void testFromNetworkBytes_jsonMissingUniqueId_throwsJsonParseException() {
+        final Bark b = TestUtils.generateRandomizedBark();
+        final JsonObject json = SerializationUtils.GSON.toJsonTree(b).getAsJsonObject();
+        json.remove("uniqueId");
+        assertThrows(JsonParseException.class, () -> Bark.fromNetworkBytes(json.toString().getBytes()));
     }
 }
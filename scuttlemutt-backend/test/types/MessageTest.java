@@ -62,4 +62,15 @@ public class MessageTest {
         // verify that the two Message objects are not equal.
         assertEquals(m1, m2);
     }
+
+    @Test
+    public void testNetworkBytes_roundTrip_preservesUniqueId() {
+        final Message m = new Message(plaintextMessage1, orderNum1, sender1);
+        final Message rebuiltMessage = Message.fromNetworkBytes(m.toNetworkBytes());
+
+        // verify that the rebuilt Message is identical, including its uniqueId.
+        assertEquals(m, rebuiltMessage);
+        assertEquals(m.getUniqueId(), rebuiltMessage.getUniqueId());
+        assertEquals(sender1.getUsername(), rebuiltMessage.getAuthor().getUsername());
+    }
 }
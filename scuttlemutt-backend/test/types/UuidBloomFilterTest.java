@@ -0,0 +1,63 @@
+package types;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class UuidBloomFilterTest {
+    private static final int NUM_IDS = 10000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final long SEED = 42L;
+
+    @Test
+    public void testMightContain_addedIds_alwaysTrue() {
+        final UuidBloomFilter filter = UuidBloomFilter.forCapacity(NUM_IDS, FALSE_POSITIVE_RATE, SEED);
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < NUM_IDS; i++) {
+            final UUID id = UUID.randomUUID();
+            ids.add(id);
+            filter.add(id);
+        }
+        for (final UUID id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+
+        // adding an id twice changes nothing.
+        assertFalse(filter.add(ids.get(0)));
+    }
+
+    @Test
+    public void testMightContain_missingIds_falsePositiveRateNearTarget() {
+        final UuidBloomFilter filter = UuidBloomFilter.forCapacity(NUM_IDS, FALSE_POSITIVE_RATE, SEED);
+        for (int i = 0; i < NUM_IDS; i++) {
+            filter.add(UUID.randomUUID());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < NUM_IDS; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        // allow plenty of slack over the target rate.
+        assertTrue(falsePositives < NUM_IDS * FALSE_POSITIVE_RATE * 2, "false positives:  " + falsePositives);
+    }
+
+    @Test
+    public void testFromLongArray_copyHasSameContents() {
+        final UuidBloomFilter filter = UuidBloomFilter.forCapacity(100, FALSE_POSITIVE_RATE, SEED);
+        final UUID id = UUID.randomUUID();
+        filter.add(id);
+
+        final UuidBloomFilter copy = UuidBloomFilter.fromLongArray(filter.toLongArray(),
+                filter.getNumHashes(), filter.getSeed());
+        assertTrue(copy.mightContain(id));
+        assertArrayEquals(filter.toLongArray(), copy.toLongArray());
+    }
+}
@@ -9,7 +9,6 @@ import javax.crypto.SecretKey;
 
 import org.junit.jupiter.api.Test;
 
-import crypto.Crypto;
 import types.DawgIdentifier;
 import types.TestUtils;
 
@@ -17,15 +16,15 @@ public class KeyExchangePacketTest {
     @Test
     public void testConstructor_createsObjectSuccessfully() {
         // Successfully create a KeyExchangePacket object.
-        PublicKey pubKey = Crypto.ALICE_KEYPAIR.getPublic();
-        SecretKey secKey = Crypto.DUMMY_SECRETKEY;
+        PublicKey pubKey = TestUtils.ALICE_KEYPAIR.getPublic();
+        SecretKey secKey = TestUtils.DUMMY_SECRETKEY;
         new KeyExchangePacket(pubKey, secKey, TestUtils.generateRandomizedDawgIdentifier());
     }
 
     @Test
     public void testGetPacketContents_returnsContents() {
-        PublicKey pubKey = Crypto.ALICE_KEYPAIR.getPublic();
-        SecretKey secKey = Crypto.DUMMY_SECRETKEY;
+        PublicKey pubKey = TestUtils.ALICE_KEYPAIR.getPublic();
+        SecretKey secKey = TestUtils.DUMMY_SECRETKEY;
         
         // Successfully create a KeyExchangePacket object.
         final KeyExchangePacket packet = new KeyExchangePacket(pubKey, secKey, TestUtils.generateRandomizedDawgIdentifier());
@@ -35,14 +34,14 @@ public class KeyExchangePacketTest {
         final SecretKey packetSecretKey = packet.getSecretKey();
 
         // Assert that the contents are as expected.
-        assertEquals(Crypto.ALICE_KEYPAIR.getPublic(), packetPublicKey);
-        assertEquals(Crypto.DUMMY_SECRETKEY, packetSecretKey);
+        assertEquals(TestUtils.ALICE_KEYPAIR.getPublic(), packetPublicKey);
+        assertEquals(TestUtils.DUMMY_SECRETKEY, packetSecretKey);
     }
 
     @Test
     public void testEquals_differentObjectsButSameKeys_returnsTrue() {
-        PublicKey pubKey = Crypto.ALICE_KEYPAIR.getPublic();
-        SecretKey secKey = Crypto.DUMMY_SECRETKEY;
+        PublicKey pubKey = TestUtils.ALICE_KEYPAIR.getPublic();
+        SecretKey secKey = TestUtils.DUMMY_SECRETKEY;
         DawgIdentifier dawgId = TestUtils.generateRandomizedDawgIdentifier();
         // Create two KeyExchangePacket objects with the same PublicKey.
         final KeyExchangePacket packet1 = new KeyExchangePacket(pubKey, secKey, dawgId);
@@ -54,10 +53,10 @@ public class KeyExchangePacketTest {
 
     @Test
     public void testEquals_differentObjectsAndDifferentKeys_returnsFalse() {
-        PublicKey pubKey1 = Crypto.ALICE_KEYPAIR.getPublic();
-        PublicKey pubKey2 = Crypto.BOB_KEYPAIR.getPublic();
-        SecretKey secKey1 = Crypto.DUMMY_SECRETKEY;
-        SecretKey secKey2 = Crypto.OTHER_SECRETKEY;
+        PublicKey pubKey1 = TestUtils.ALICE_KEYPAIR.getPublic();
+        PublicKey pubKey2 = TestUtils.BOB_KEYPAIR.getPublic();
+        SecretKey secKey1 = TestUtils.DUMMY_SECRETKEY;
+        SecretKey secKey2 = TestUtils.OTHER_SECRETKEY;
 
         // Create four KeyExchangePacket objects with the different keys.
         final KeyExchangePacket packet1 = new KeyExchangePacket(pubKey1, secKey1, TestUtils.generateRandomizedDawgIdentifier());
@@ -1,9 +1,22 @@
 package types.packet;
 
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
 import org.junit.jupiter.api.Test;
+
+import crypto.CryptoSuites;
+import crypto.EcCryptoSuite;
+import types.Bark;
 import types.TestUtils;
+import types.UuidBloomFilter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PacketTest {
 
@@ -36,4 +49,101 @@ public class PacketTest {
         // assert that the original BarkPacket is identical to the one we converted.
         assertEquals(kePacket, convertedKePacket);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBarkPacketBinaryConversion_convertsToBytes_convertsFromBytes_identicalObject() {
+        // create a BarkPacket with a few Barks in it.
+        final BarkPacket barkPacket = new BarkPacket(List.of(TestUtils.generateRandomizedBark(),
+                TestUtils.generateRandomizedBark(), TestUtils.generateRandomizedBark()));
+
+        // convert the BarkPacket to binary bytes and back.
+        final byte[] bytes = barkPacket.toNetworkBytes(Packet.WireFormat.BINARY);
+        final BarkPacket convertedBarkPacket = (BarkPacket) Packet.fromNetworkBytes(bytes);
+
+        // assert that the original BarkPacket is identical to the one we converted, and that the
+        // binary form is smaller than the JSON form.
+        assertEquals(barkPacket, convertedBarkPacket);
+        assertTrue(bytes.length < barkPacket.toNetworkBytes(Packet.WireFormat.JSON).length);
+    }
+
+    @Test
+    public void testKeyExchangePacketBinaryConversion_convertsToBytes_convertsFromBytes_identicalObject() {
+        // create a KeyExchangePacket.
+        final KeyExchangePacket kePacket = TestUtils.generateRandomizedKeyExchangePacket();
+
+        // convert the KeyExchangePacket to binary bytes and back.
+        final byte[] bytes = kePacket.toNetworkBytes(Packet.WireFormat.BINARY);
+        final KeyExchangePacket convertedKePacket = (KeyExchangePacket) Packet.fromNetworkBytes(bytes);
+
+        // assert that the original KeyExchangePacket is identical to the one we converted.
+        assertEquals(kePacket, convertedKePacket);
+        assertEquals(kePacket.getDawgId().getUsername(), convertedKePacket.getDawgId().getUsername());
+    }
+
+    @Test
+    public void testKeyExchangePacketConversion_ecKey_keepsCryptoSuite() {
+        // create a KeyExchangePacket carrying an EC public key.
+        final KeyPair ecKeys = CryptoSuites.EC.generateKeyPair();
+        final KeyExchangePacket kePacket = new KeyExchangePacket(ecKeys.getPublic(), TestUtils.DUMMY_SECRETKEY,
+                TestUtils.generateRandomizedDawgIdentifier());
+        assertEquals(EcCryptoSuite.ID, kePacket.getCryptoSuiteId());
+
+        // convert the KeyExchangePacket to both formats and back.
+        for (final Packet.WireFormat format : Packet.WireFormat.values()) {
+            final KeyExchangePacket convertedKePacket =
+                    (KeyExchangePacket) Packet.fromNetworkBytes(kePacket.toNetworkBytes(format));
+            assertEquals(kePacket, convertedKePacket);
+            assertEquals(ecKeys.getPublic(), convertedKePacket.getPublicKey());
+            assertEquals(EcCryptoSuite.ID, convertedKePacket.getCryptoSuiteId());
+        }
+    }
+
+    @Test
+    public void testDigestPacketConversion_convertsToBytes_convertsFromBytes_identicalObject() {
+        // create a DigestPacket holding a few ids.
+        final UuidBloomFilter digest = UuidBloomFilter.forCapacity(100, 0.01, 42L);
+        final List<UUID> heldIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        heldIds.forEach(digest::add);
+        final DigestPacket digestPacket = new DigestPacket(digest);
+
+        // convert the DigestPacket to both formats and back.
+        for (final Packet.WireFormat format : Packet.WireFormat.values()) {
+            final DigestPacket convertedDigestPacket =
+                    (DigestPacket) Packet.fromNetworkBytes(digestPacket.toNetworkBytes(format));
+            assertEquals(digestPacket, convertedDigestPacket);
+            for (final UUID heldId : heldIds) {
+                assertTrue(convertedDigestPacket.mightHold(heldId));
+            }
+        }
+        assertFalse(digestPacket.mightHold(UUID.randomUUID()) && digestPacket.mightHold(UUID.randomUUID())
+                && digestPacket.mightHold(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testAckPacketConversion_convertsToBytes_convertsFromBytes_identicalObject() {
+        final AckPacket ackPacket = new AckPacket(UUID.randomUUID(), new byte[Bark.ACK_SECRET_SIZE],
+                AckPacket.DEFAULT_HOP_LIMIT);
+
+        // convert the AckPacket to both formats and back.
+        for (final Packet.WireFormat format : Packet.WireFormat.values()) {
+            final AckPacket convertedAckPacket = (AckPacket) Packet.fromNetworkBytes(ackPacket.toNetworkBytes(format));
+            assertEquals(ackPacket, convertedAckPacket);
+        }
+        assertEquals(AckPacket.DEFAULT_HOP_LIMIT - 1, ackPacket.decrementHops().getHopsRemaining());
+        assertThrows(PacketException.class,
+                () -> new AckPacket(UUID.randomUUID(), new byte[Bark.ACK_SECRET_SIZE], 0).decrementHops());
+    }
+
+    @Test
+    public void testBinaryConversion_unknownType_throwsPacketException() {
+        final byte[] bytes = {BinaryPacketCodec.VERSION, 42};
+        assertThrows(PacketException.class, () -> Packet.fromNetworkBytes(bytes));
+    }
+
+    @Test
+    public void testBinaryConversion_truncatedPacket_throwsPacketException() {
+        final byte[] bytes = TestUtils.generateRandomizedBarkPacket().toNetworkBytes(Packet.WireFormat.BINARY);
+        final byte[] truncatedBytes = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(PacketException.class, () -> Packet.fromNetworkBytes(truncatedBytes));
+    }
+}
@@ -3,11 +3,22 @@ package types.serialization;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.security.Key;
+import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.UUID;
 
 import javax.crypto.SecretKey;
 
@@ -15,7 +26,14 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.SerializationException;
 import org.junit.jupiter.api.Test;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
 import crypto.Crypto;
+import crypto.CryptoSuites;
+import crypto.EcCryptoSuite;
+import types.TestUtils;
 
 public class SerializationUtilsTest {
     private static final int NUM_KEYS_IN_LIST = 10;  // the number of Keys in the List when
@@ -24,7 +42,7 @@ public class SerializationUtilsTest {
     @Test
     public void testSecretKeySerializationLifecycle() {
         // get a SecretKey.
-        final SecretKey key = Crypto.DUMMY_SECRETKEY;
+        final SecretKey key = TestUtils.DUMMY_SECRETKEY;
 
         // serialize the SecretKey.
         final byte[] secretKeyBytes = SerializationUtils.serializeKey(key);
@@ -39,7 +57,7 @@ public class SerializationUtilsTest {
     @Test
     public void testPublicKeyBytesSerializationLifecycle() {
         // create a PublicKey.
-        final PublicKey key = Crypto.ALICE_KEYPAIR.getPublic();
+        final PublicKey key = TestUtils.ALICE_KEYPAIR.getPublic();
 
         // serialize the PublicKey.
         final byte[] pubKeyBytes = SerializationUtils.serializeKey(key);
@@ -54,7 +72,7 @@ public class SerializationUtilsTest {
     @Test
     public void testPublicKeySerializationLifecycle() {
         // create a PublicKey.
-        final PublicKey publicKey = Crypto.ALICE_KEYPAIR.getPublic();
+        final PublicKey publicKey = TestUtils.ALICE_KEYPAIR.getPublic();
 
         // serialize the PublicKey.
         final byte[] publicKeyBytes = SerializationUtils.serializeKey(publicKey);
@@ -66,6 +84,22 @@ public class SerializationUtilsTest {
         assertEquals(publicKey, deserializedPublicKey);
     }
 
+    @Test
+    public void testEcKeyPairSerializationLifecycle() {
+        // create an EC KeyPair.
+        final KeyPair keyPair = CryptoSuites.EC.generateKeyPair();
+
+        // serialize both halves + check that they're tagged with the suite id.
+        final byte[] publicKeyBytes = SerializationUtils.serializeKey(keyPair.getPublic());
+        final byte[] privateKeyBytes = SerializationUtils.serializeKey(keyPair.getPrivate());
+        assertTrue(new String(publicKeyBytes).startsWith("publickey@" + EcCryptoSuite.ID + ":"));
+        assertTrue(new String(privateKeyBytes).startsWith("privatekey@" + EcCryptoSuite.ID + ":"));
+
+        // assert that the deserialized keys are identical to the originals.
+        assertEquals(keyPair.getPublic(), SerializationUtils.deserializeKey(publicKeyBytes));
+        assertEquals(keyPair.getPrivate(), SerializationUtils.deserializeKey(privateKeyBytes));
+    }
+
     @Test
     public void testKeyListSerializationLifecycle() {
         // generate the Keys we're using for testing.
@@ -92,4 +126,64 @@ public class SerializationUtilsTest {
         // assert that the exception is thrown when attempting to deserialize the byte[].
         assertThrows(SerializationException.class, () -> SerializationUtils.deserializeKey(randomBytes));
     }
+
+    @Test
+    public void testBinaryHelpersLifecycle() throws IOException {
+        final UUID uuid = UUID.randomUUID();
+        final byte[] payload = RandomStringUtils.randomAlphanumeric(300).getBytes();
+
+        // write a few values with the binary helpers.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        SerializationUtils.writeVarInt(out, 0);
+        SerializationUtils.writeVarInt(out, 300);
+        SerializationUtils.writeVarInt(out, Integer.MAX_VALUE);
+        SerializationUtils.writeSignedVarLong(out, -1L);
+        SerializationUtils.writeSignedVarLong(out, Long.MIN_VALUE);
+        SerializationUtils.writeUUID(out, uuid);
+        SerializationUtils.writeLengthPrefixed(out, payload);
+
+        // read them back + assert that they're identical.
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(0, SerializationUtils.readVarInt(in));
+        assertEquals(300, SerializationUtils.readVarInt(in));
+        assertEquals(Integer.MAX_VALUE, SerializationUtils.readVarInt(in));
+        assertEquals(-1L, SerializationUtils.readSignedVarLong(in));
+        assertEquals(Long.MIN_VALUE, SerializationUtils.readSignedVarLong(in));
+        assertEquals(uuid, SerializationUtils.readUUID(in));
+        assertArrayEquals(payload, SerializationUtils.readLengthPrefixed(in, payload.length));
+    }
+
+    @Test
+    public void testReadLengthPrefixed_lengthTooLarge_throwsIOException() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SerializationUtils.writeLengthPrefixed(new DataOutputStream(bytes), new byte[64]);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> SerializationUtils.readLengthPrefixed(in, 32));
+    }
+
+    @Test
+    public void testLengthPrefixedSize_matchesBytesWritten() throws IOException {
+        for (final int length : new int[] {0, 1, 127, 128, 16383, 16384}) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SerializationUtils.writeLengthPrefixed(new DataOutputStream(bytes), new byte[length]);
+            assertEquals(bytes.size(), SerializationUtils.lengthPrefixedSize(new byte[length]));
+        }
+        assertEquals(1, SerializationUtils.lengthPrefixedSize(null));
+    }
+
+    @Test
+    public void testReadJsonBytes_base64AndLegacyArray_returnSameBytes() throws IOException {
+        final byte[] payload = new byte[] {-128, -1, 0, 1, 127};
+
+        // bytes we write are Base64 strings.
+        final StringWriter json = new StringWriter();
+        SerializationUtils.writeJsonBytes(new JsonWriter(json), payload);
+        assertEquals("\"" + Base64.getEncoder().encodeToString(payload) + "\"", json.toString());
+        assertArrayEquals(payload, SerializationUtils.readJsonBytes(new JsonReader(new StringReader(json.toString()))));
+
+        // bytes written by reflective Gson are arrays of numbers.
+        final String legacyJson = new Gson().toJson(payload);
+        assertArrayEquals(payload, SerializationUtils.readJsonBytes(new JsonReader(new StringReader(legacyJson))));
+    }
 }